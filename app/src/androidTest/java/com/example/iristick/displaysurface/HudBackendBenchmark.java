@@ -0,0 +1,126 @@
+package com.example.iristick.displaysurface;
+
+import android.graphics.PixelFormat;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.example.iristick.hud.CanvasBackend;
+import com.example.iristick.hud.DamageTracker;
+import com.example.iristick.hud.GlesBackend;
+import com.example.iristick.hud.HudBackend;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the CPU time per frame of the HUD rendering backends, drawing the bubble scene
+ * offscreen at the resolution of the headset display, with moving and with still bubbles.  Run on a device with:
+ * <pre>./gradlew :app:connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=com.example.iristick.displaysurface.HudBackendBenchmark</pre>
+ * and read the results with {@code adb logcat -s HudBackendBenchmark}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class HudBackendBenchmark {
+
+    private static final String TAG = "HudBackendBenchmark";
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final int WARMUP_FRAMES = 60;
+    private static final int FRAMES = 600;
+
+    private HandlerThread mConsumerThread;
+    private ImageReader mReader;
+
+    @Before
+    public void setUp() {
+        /* Consume the frames as they are posted, like the display would. */
+        mConsumerThread = new HandlerThread("FrameConsumer");
+        mConsumerThread.start();
+        mReader = ImageReader.newInstance(WIDTH, HEIGHT, PixelFormat.RGBA_8888, 3);
+        mReader.setOnImageAvailableListener(reader -> {
+            Image image = reader.acquireLatestImage();
+            if (image != null)
+                image.close();
+        }, new Handler(mConsumerThread.getLooper()));
+    }
+
+    @After
+    public void tearDown() {
+        mReader.close();
+        mConsumerThread.quitSafely();
+    }
+
+    @Test
+    public void canvas40() {
+        run(new CanvasBackend(), 40);
+    }
+
+    @Test
+    public void gles40() {
+        run(new GlesBackend(), 40);
+    }
+
+    @Test
+    public void canvas10000() {
+        run(new CanvasBackend(), 10000);
+    }
+
+    @Test
+    public void gles10000() {
+        run(new GlesBackend(), 10000);
+    }
+
+    @Test
+    public void canvasStatic() {
+        run(new CanvasBackend(), 40, 0);
+    }
+
+    @Test
+    public void glesStatic() {
+        run(new GlesBackend(), 40, 0);
+    }
+
+    private void run(HudBackend backend, int bubbles) {
+        run(backend, bubbles, 1 / 30f);
+    }
+
+    private void run(HudBackend backend, int bubbles, float deltaT) {
+        BubbleScene scene = new BubbleScene(bubbles, WIDTH, HEIGHT, new Random(42));
+        backend.open(mReader.getSurface(), WIDTH, HEIGHT);
+        try {
+            for (int i = 0; i < WARMUP_FRAMES; i++) {
+                scene.update(deltaT);
+                assertTrue(scene.draw(backend));
+            }
+
+            long cpuStart = Debug.threadCpuTimeNanos();
+            long wallStart = System.nanoTime();
+            for (int i = 0; i < FRAMES; i++) {
+                scene.update(deltaT);
+                assertTrue(scene.draw(backend));
+            }
+            long cpu = (Debug.threadCpuTimeNanos() - cpuStart) / FRAMES;
+            long wall = (System.nanoTime() - wallStart) / FRAMES;
+            DamageTracker damage = scene.getDamageTracker();
+            Log.i(TAG, String.format(Locale.US,
+                    "%s, %d bubbles%s: %.3f ms CPU, %.3f ms wall, %.1f%% redrawn per frame",
+                    backend.getName(), bubbles, deltaT == 0 ? " (static)" : "", cpu / 1e6, wall / 1e6,
+                    damage.getMeanCoverage() * 100));
+        } finally {
+            backend.close();
+        }
+    }
+
+}
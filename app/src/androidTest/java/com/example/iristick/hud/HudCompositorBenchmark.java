@@ -0,0 +1,152 @@
+package com.example.iristick.hud;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.view.Surface;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the CPU time per frame of a HUD made of static chrome and a live value, repainted
+ * from scratch every frame, and composed by the {@link HudCompositor} from cached layers.
+ * Run on a device with:
+ * <pre>./gradlew :app:connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=com.example.iristick.hud.HudCompositorBenchmark</pre>
+ * and read the results with {@code adb logcat -s HudCompositorBenchmark}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class HudCompositorBenchmark {
+
+    private static final String TAG = "HudCompositorBenchmark";
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final int WARMUP_FRAMES = 60;
+    private static final int FRAMES = 600;
+    /** Number of labels and gauges of the chrome */
+    private static final int LABELS = 24;
+
+    private HandlerThread mConsumerThread;
+    private ImageReader mReader;
+
+    /** Static chrome: frame, grid and labels */
+    private static final class Chrome extends HudLayer {
+        private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+        Chrome() {
+            super(0, 0, WIDTH, HEIGHT, true);
+            mPaint.setTextSize(18);
+        }
+
+        @Override
+        protected void onDraw(Canvas canvas) {
+            drawChrome(canvas, mPaint);
+        }
+    }
+
+    static void drawChrome(Canvas canvas, Paint paint) {
+        canvas.drawColor(Color.BLACK);
+        paint.setColor(Color.GRAY);
+        paint.setStyle(Paint.Style.STROKE);
+        canvas.drawRoundRect(8, 8, WIDTH - 8, HEIGHT - 8, 16, 16, paint);
+        paint.setStyle(Paint.Style.FILL);
+        for (int i = 0; i < LABELS; i++) {
+            float x = 24 + (i % 4) * 150;
+            float y = 48 + (i / 4) * 70;
+            canvas.drawText("Label " + i, x, y, paint);
+            canvas.drawRect(x, y + 10, x + 120, y + 16, paint);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mConsumerThread = new HandlerThread("FrameConsumer");
+        mConsumerThread.start();
+        mReader = ImageReader.newInstance(WIDTH, HEIGHT, PixelFormat.RGBA_8888, 3);
+        mReader.setOnImageAvailableListener(reader -> {
+            Image image = reader.acquireLatestImage();
+            if (image != null)
+                image.close();
+        }, new Handler(mConsumerThread.getLooper()));
+    }
+
+    @After
+    public void tearDown() {
+        mReader.close();
+        mConsumerThread.quitSafely();
+    }
+
+    @Test
+    public void repaint() {
+        Surface surface = mReader.getSurface();
+        Paint chrome = new Paint(Paint.ANTI_ALIAS_FLAG);
+        chrome.setTextSize(18);
+        Paint value = new Paint(Paint.ANTI_ALIAS_FLAG);
+        value.setTextSize(60);
+        value.setColor(Color.WHITE);
+        value.setTextAlign(Paint.Align.CENTER);
+        measure("repaint", frame -> {
+            Canvas canvas = surface.lockCanvas(null);
+            drawChrome(canvas, chrome);
+            canvas.drawText(Integer.toString(frame), WIDTH / 2f, HEIGHT - 60, value);
+            surface.unlockCanvasAndPost(canvas);
+            return true;
+        });
+    }
+
+    @Test
+    public void composeEveryFrame() {
+        compose(1);
+    }
+
+    @Test
+    public void composeEverySecond() {
+        compose(30);
+    }
+
+    /** Compose, changing the live value every given number of frames. */
+    private void compose(int period) {
+        Surface surface = mReader.getSurface();
+        HudCompositor compositor = new HudCompositor(WIDTH, HEIGHT, Color.BLACK);
+        compositor.addLayer(new Chrome());
+        TextLayer value = new TextLayer(0, HEIGHT - 120, WIDTH, 100, 60, Color.WHITE);
+        compositor.addLayer(value);
+        measure("compose, value changed every " + period + " frames", frame -> {
+            if (frame % period == 0)
+                value.setText(Integer.toString(frame));
+            return compositor.render(surface);
+        });
+        Log.i(TAG, String.format(Locale.US, "%.1f%% of the display redrawn per frame",
+                compositor.getDamageTracker().getMeanCoverage() * 100));
+    }
+
+    private interface Frame {
+        boolean draw(int frame);
+    }
+
+    private void measure(String name, Frame frame) {
+        for (int i = 0; i < WARMUP_FRAMES; i++)
+            assertTrue(frame.draw(i));
+        long cpuStart = Debug.threadCpuTimeNanos();
+        for (int i = 0; i < FRAMES; i++)
+            assertTrue(frame.draw(WARMUP_FRAMES + i));
+        long cpu = (Debug.threadCpuTimeNanos() - cpuStart) / FRAMES;
+        Log.i(TAG, String.format(Locale.US, "%s: %.3f ms CPU per frame", name, cpu / 1e6));
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.example.iristick.hud;
+
+import android.graphics.Paint;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/** Needs the framework's {@link Paint}, hence an instrumented test. */
+@RunWith(AndroidJUnit4.class)
+public class HudTextTest {
+
+    private static Paint paint() {
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setTextSize(20);
+        return paint;
+    }
+
+    @Test
+    public void laysOutStringsOnce() {
+        Paint paint = paint();
+        HudText text = new HudText(paint, null, 4);
+        assertEquals(paint.measureText("Label"), text.measure("Label"), 0);
+        assertEquals(paint.measureText("Label"), text.measure("Label"), 0);
+        assertEquals(1, text.getMissCount());
+        assertEquals(1, text.getHitCount());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        HudText text = new HudText(paint(), null, 2);
+        text.measure("a");
+        text.measure("b");
+        /* Makes b the least recently used */
+        text.measure("a");
+        text.measure("c");
+        assertEquals(3, text.getMissCount());
+        assertEquals(1, text.getHitCount());
+
+        /* a was kept, b was evicted. */
+        text.measure("a");
+        assertEquals(2, text.getHitCount());
+        text.measure("b");
+        assertEquals(4, text.getMissCount());
+        /* c was evicted in turn. */
+        text.measure("c");
+        assertEquals(5, text.getMissCount());
+        assertEquals(2, text.getHitCount());
+    }
+
+    @Test
+    public void rangesBypassTheCache() {
+        Paint paint = paint();
+        GlyphAtlas atlas = new GlyphAtlas(paint, "0123456789:");
+        HudText text = new HudText(paint, atlas, 4);
+        char[] value = "12:34".toCharArray();
+        assertEquals(atlas.measure(value, 0, value.length), text.measure(value, 0, value.length), 0);
+        /* Not in the atlas: measured by the paint */
+        char[] label = "ab".toCharArray();
+        assertEquals(paint.measureText(label, 0, 2), text.measure(label, 0, 2), 0);
+        assertEquals(0, text.getHitCount());
+        assertEquals(0, text.getMissCount());
+    }
+
+}
@@ -0,0 +1,142 @@
+package com.example.iristick.hud;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+/**
+ * Compares the CPU time of drawing HUD text with {@link Canvas#drawText} and from a
+ * {@link GlyphAtlas}: a clock value formatted every frame, labels drawn through the
+ * {@link HudText} run cache with and without room for all of them, and a {@link TextLayer}
+ * whose text changes every frame, composed by a {@link HudCompositor}.
+ * Run on a device with:
+ * <pre>./gradlew :app:connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=com.example.iristick.hud.TextDrawBenchmark</pre>
+ * and read the results with {@code adb logcat -s TextDrawBenchmark}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TextDrawBenchmark {
+
+    private static final String TAG = "TextDrawBenchmark";
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final int WARMUP_FRAMES = 60;
+    private static final int FRAMES = 600;
+    private static final float TEXT_SIZE = 60;
+    private static final String CLOCK_CHARACTERS = "0123456789: ";
+    /** Number of labels drawn per frame */
+    private static final int LABELS = 24;
+
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+    private final char[] mBuffer = new char[16];
+
+    @Before
+    public void setUp() {
+        mBitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+    }
+
+    @After
+    public void tearDown() {
+        mBitmap.recycle();
+    }
+
+    private static Paint paint(float size) {
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setTextSize(size);
+        paint.setColor(Color.WHITE);
+        return paint;
+    }
+
+    /** Format a clock value changing every frame. */
+    private int clock(int frame) {
+        return FieldFormatter.formatTime(mBuffer, 0, frame / 3600 % 24, frame / 60 % 60, frame % 60, true);
+    }
+
+    @Test
+    public void clock() {
+        Paint paint = paint(TEXT_SIZE);
+        paint.setTextAlign(Paint.Align.CENTER);
+        measure("clock, drawText", frame -> {
+            mCanvas.drawColor(Color.BLACK);
+            mCanvas.drawText(mBuffer, 0, clock(frame), WIDTH / 2f, HEIGHT / 2f, paint);
+        });
+
+        HudText atlas = new HudText(paint(TEXT_SIZE), new GlyphAtlas(paint(TEXT_SIZE), CLOCK_CHARACTERS), 16);
+        measure("clock, atlas", frame -> {
+            mCanvas.drawColor(Color.BLACK);
+            atlas.draw(mCanvas, mBuffer, 0, clock(frame), WIDTH / 2f, HEIGHT / 2f, Paint.Align.CENTER);
+        });
+    }
+
+    @Test
+    public void labels() {
+        String[] labels = new String[LABELS];
+        for (int i = 0; i < LABELS; i++)
+            labels[i] = "Label " + i;
+        GlyphAtlas atlas = new GlyphAtlas(paint(18), GlyphAtlas.ASCII);
+        Paint paint = paint(18);
+        measure("labels, drawText", frame -> drawLabels(labels, (text, x, y) -> mCanvas.drawText(text, x, y, paint)));
+        for (int cacheSize : new int[] {LABELS, LABELS / 3}) {
+            HudText text = new HudText(paint(18), atlas, cacheSize);
+            measure("labels, atlas, cache of " + cacheSize, frame -> drawLabels(labels,
+                    (label, x, y) -> text.draw(mCanvas, label, x, y, Paint.Align.LEFT)));
+            Log.i(TAG, String.format(Locale.US, "cache of %d: %d hits, %d misses",
+                    cacheSize, text.getHitCount(), text.getMissCount()));
+        }
+    }
+
+    private interface Label {
+        void draw(String text, float x, float y);
+    }
+
+    private void drawLabels(String[] labels, Label label) {
+        mCanvas.drawColor(Color.BLACK);
+        for (int i = 0; i < labels.length; i++)
+            label.draw(labels[i], 24 + (i % 4) * 150, 48 + (i / 4) * 70);
+    }
+
+    @Test
+    public void textLayer() {
+        measureLayer("text layer, drawText", null);
+        measureLayer("text layer, atlas", CLOCK_CHARACTERS);
+    }
+
+    private void measureLayer(String name, String characters) {
+        HudCompositor compositor = new HudCompositor(WIDTH, HEIGHT, Color.BLACK);
+        TextLayer layer = new TextLayer(0, HEIGHT / 2 - 60, WIDTH, 120, TEXT_SIZE, Color.WHITE, characters);
+        compositor.addLayer(layer);
+        measure(name, frame -> {
+            layer.setText(mBuffer, 0, clock(frame));
+            compositor.draw(mCanvas);
+        });
+        compositor.release();
+    }
+
+    private interface Frame {
+        void draw(int frame);
+    }
+
+    private void measure(String name, Frame frame) {
+        for (int i = 0; i < WARMUP_FRAMES; i++)
+            frame.draw(i);
+        long cpuStart = Debug.threadCpuTimeNanos();
+        for (int i = 0; i < FRAMES; i++)
+            frame.draw(WARMUP_FRAMES + i);
+        long cpu = (Debug.threadCpuTimeNanos() - cpuStart) / FRAMES;
+        Log.i(TAG, String.format(Locale.US, "%s: %.3f ms CPU per frame", name, cpu / 1e6));
+    }
+
+}
@@ -1,6 +1,8 @@
 package com.example.iristick;
 
 import android.app.Application;
+
+import com.example.iristick.camera.CameraRegistry;
 import com.iristick.smartglass.support.app.IristickApp;
 
 public class IriApp extends Application {
@@ -9,6 +11,7 @@ public class IriApp extends Application {
     public void onCreate() {
         super.onCreate();
         IristickApp.init(this);
+        CameraRegistry.init(this);
     }
 
 }
@@ -0,0 +1,29 @@
+package com.example.iristick.barcode;
+
+import com.google.zxing.BarcodeFormat;
+
+/**
+ * Barcode found by a {@link BarcodeScanner}.
+ */
+public final class Barcode {
+
+    public final String text;
+    public final BarcodeFormat format;
+    /** Sensor timestamp of the frame the barcode was found in, in nanoseconds. */
+    public final long timestamp;
+    /** Time between the arrival of the frame and the end of decoding, in nanoseconds. */
+    public final long latencyNanos;
+
+    public Barcode(String text, BarcodeFormat format, long timestamp, long latencyNanos) {
+        this.text = text;
+        this.format = format;
+        this.timestamp = timestamp;
+        this.latencyNanos = latencyNanos;
+    }
+
+    @Override
+    public String toString() {
+        return format + ": " + text;
+    }
+
+}
@@ -3,7 +3,12 @@ package com.example.iristick.barcode;
 import android.app.AlertDialog;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
 import android.view.View;
+import android.widget.Button;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.Nullable;
@@ -11,23 +16,141 @@ import androidx.annotation.Nullable;
 import com.iristick.smartglass.core.Intents;
 import com.iristick.smartglass.examples.BaseActivity;
 import com.example.iristick.R;
+import com.example.iristick.camera.CameraFragment;
+import com.example.iristick.camera.FrameAnalyzer;
+import com.google.zxing.BarcodeFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
 
 /**
  * This example scans for a barcode using intents provided by the Iristick Services.
+ *
+ * It also demonstrates continuous scanning in-process: the frames of the headset camera are
+ * decoded by a {@link BarcodeScanner} and every new barcode is shown as soon as it is found,
+ * without leaving the activity.  In batch mode, all barcodes scanned are collected in a list,
+ * each label counting once, until the user finishes the batch.
+ *
+ * Every scan is persisted in a {@link ScanJournal}, which is replayed on startup, and looked up
+ * in the on-device {@link ProductCatalog} to show the matching item.  A {@link FormatHinter}
+ * learns from the scans which formats are in use, so scans only look for those.  In
+ * multi-code mode, all barcodes in view are decoded at once by a {@link MultiBarcodeScanner}.
  */
 public class BarcodeActivity extends BaseActivity {
 
+    private static final String TAG = "BarcodeActivity";
     private static final int REQUEST_CODE = 0;
 
+    /* Format hinting, shared by intent and in-process scans */
+    private final FormatHinter mHinter = new FormatHinter();
+    private boolean mIntentHinted;
+    private boolean mNextIntentUnhinted;
+    private long mIntentStartNanos;
+
+    /* Scan persistence */
+    private static final String JOURNAL_FILE = "scans.journal";
+    /** Format journaled for scan results which do not report one. */
+    private static final String UNKNOWN_FORMAT = "UNKNOWN";
+    private ScanJournal mJournal;
+    private volatile long mSessionId;
+
+    /* Product lookup */
+    private static final String PRODUCT_INDEX_FILE = "products.index";
+    private ProductCatalog mCatalog;
+
+    /* Continuous scanning */
+    private static final int SCAN_WORKERS = 2;
+    private static final long SCAN_DUPLICATE_WINDOW_NANOS = 3_000_000_000L;
+    private static final int SCAN_DUPLICATE_CAPACITY = 64;
+    private final DuplicateFilter mScanFilter = new DuplicateFilter(SCAN_DUPLICATE_WINDOW_NANOS,
+            SCAN_DUPLICATE_CAPACITY);
+    private BarcodeScanner mScanner;
+    private CameraFragment mScanFragment;
+    private Button mScanButton;
+    private TextView mScanResults;
+
+    /* Batch scanning: every label counts once during the whole session */
+    private static final long BATCH_TTL_NANOS = 30 * 60_000_000_000L;
+    private static final int BATCH_CAPACITY = 4096;
+    private volatile BatchScanSession mBatch;
+    private Button mBatchButton;
+
+    /* Multi-code scanning: all barcodes in view at once */
+    private MultiBarcodeScanner mMultiScanner;
+    private boolean mMultiMode;
+    private Button mMultiButton;
+
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.barcode_activity);
+        mScanButton = findViewById(R.id.scan_continuous);
+        mBatchButton = findViewById(R.id.scan_batch);
+        mMultiButton = findViewById(R.id.scan_multi);
+        mScanResults = findViewById(R.id.scan_results);
+
+        /* Open the journal; the existing scans are replayed in the background. */
+        mCatalog = new ProductCatalog(new File(getFilesDir(), PRODUCT_INDEX_FILE));
+        mSessionId = System.currentTimeMillis();
+        mJournal = new ScanJournal(new File(getFilesDir(), JOURNAL_FILE), new ScanJournal.ReplayListener() {
+            @Override
+            public void onRecord(ScanJournal.Record record) {
+                /* Start hinting from the formats scanned before. */
+                try {
+                    mHinter.onDecoded(BarcodeFormat.valueOf(record.format));
+                } catch (IllegalArgumentException e) {
+                    /* Format unknown to the decoder */
+                }
+            }
+
+            @Override
+            public void onReplayFinished(int records, long discardedBytes) {
+                if (discardedBytes > 0)
+                    Log.w(TAG, "Discarded " + discardedBytes + " bytes of damaged journal");
+                runOnUiThread(() -> mScanResults.setText(getString(R.string.barcode_journal_replayed, records)));
+            }
+        });
+
+        mScanner = new BarcodeScanner(this::onBarcode, SCAN_WORKERS, null, mScanFilter);
+        /* Only decode the center of the image, where the user aims. */
+        mScanner.setRegionOfInterest(0.2f, 0.2f, 0.8f, 0.8f);
+        mScanner.setFormatHinter(mHinter);
+        mMultiScanner = new MultiBarcodeScanner(this::onBarcodes, null);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        /* Pick up a new product index if one was delivered. */
+        try {
+            mCatalog.update();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open the product index", e);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        mScanner.shutdown();
+        mMultiScanner.shutdown();
+        /* Do not wait for the last commit on the UI thread. */
+        mJournal.closeAsync();
+        super.onDestroy();
     }
 
     public void doScanAny(View view) {
         /* The user clicked on the "Scan any barcode" button. */
         Intent intent = new Intent(Intents.ACTION_SCAN_BARCODE);
+        /*
+         * Look for the formats scanned recently, unless the previous hinted scan was cancelled:
+         * the barcode may have had another format.
+         */
+        List<BarcodeFormat> hints = mHinter.getHints();
+        mIntentHinted = hints != null && !mNextIntentUnhinted;
+        if (mIntentHinted)
+            intent.putExtra(Intents.EXTRA_BARCODE_SCAN_FORMATS, TextUtils.join(",", hints));
+        mIntentStartNanos = SystemClock.elapsedRealtimeNanos();
         startActivityForResult(intent, REQUEST_CODE);
     }
 
@@ -36,19 +159,175 @@ public class BarcodeActivity extends BaseActivity {
         Intent intent = new Intent(Intents.ACTION_SCAN_BARCODE);
         /* You can set the barcode formats to search for with a comma-separated string. */
         intent.putExtra(Intents.EXTRA_BARCODE_SCAN_FORMATS, "QR_CODE");
+        /* Not counted in the hinting statistics, since the user chose the format. */
+        mIntentStartNanos = 0;
         startActivityForResult(intent, REQUEST_CODE);
     }
 
+    public void doScanContinuous(View view) {
+        /* The user clicked on the "Scan continuously" button. */
+        if (mScanFragment == null) {
+            startCamera();
+        } else {
+            if (mBatch != null)
+                finishBatch();
+            stopCamera();
+        }
+    }
+
+    public void doScanBatch(View view) {
+        /* The user clicked on the "Batch scan" button. */
+        if (mBatch == null) {
+            mBatch = new BatchScanSession(BATCH_TTL_NANOS, BATCH_CAPACITY, System.nanoTime());
+            mSessionId = System.currentTimeMillis();
+            mScanner.setDuplicateFilter(mBatch.getFilter());
+            mBatchButton.setText(R.string.barcode_batch_finish);
+            mScanResults.setText(null);
+            if (mScanFragment == null)
+                startCamera();
+        } else {
+            finishBatch();
+            stopCamera();
+        }
+    }
+
+    public void doScanMulti(View view) {
+        /* The user clicked on the "All codes in view" button. */
+        mMultiMode = !mMultiMode;
+        mMultiButton.setText(mMultiMode ? R.string.barcode_multi_stop : R.string.barcode_multi_start);
+        if (mScanFragment != null) {
+            /* Add the new analyzer first, so the capture session is not reconfigured. */
+            mScanFragment.addFrameAnalyzer("barcode", getAnalyzer());
+            mScanFragment.removeFrameAnalyzer(mMultiMode ? mScanner : mMultiScanner);
+        }
+    }
+
+    /** Analyzer for the current scan mode. */
+    private FrameAnalyzer getAnalyzer() {
+        return mMultiMode ? mMultiScanner : mScanner;
+    }
+
+    private void startCamera() {
+        mScanFragment = new CameraFragment();
+        getFragmentManager().beginTransaction().add(R.id.scan_camera, mScanFragment).commitNow();
+        mScanFragment.addFrameAnalyzer("barcode", getAnalyzer());
+        findViewById(R.id.scan_camera).setVisibility(View.VISIBLE);
+        mScanButton.setText(R.string.barcode_scan_stop);
+    }
+
+    private void stopCamera() {
+        mScanFragment.removeFrameAnalyzer(getAnalyzer());
+        getFragmentManager().beginTransaction().remove(mScanFragment).commitNow();
+        mScanFragment = null;
+        mScanFilter.clear();
+        findViewById(R.id.scan_camera).setVisibility(View.GONE);
+        mScanButton.setText(R.string.barcode_scan_continuous);
+    }
+
+    /** End the batch scan session and show its results. */
+    private void finishBatch() {
+        BatchScanSession.Summary summary = mBatch.finish(System.nanoTime());
+        mBatch = null;
+        mSessionId = System.currentTimeMillis();
+        mScanner.setDuplicateFilter(mScanFilter);
+        mBatchButton.setText(R.string.barcode_batch_start);
+
+        StringBuilder message = new StringBuilder(getString(R.string.barcode_batch_summary,
+                summary.barcodes.size(), summary.durationNanos / 60e9f, summary.getCodesPerMinute(),
+                summary.getDuplicateRatio() * 100));
+        for (Barcode barcode : summary.barcodes)
+            message.append('\n').append(barcode);
+        new AlertDialog.Builder(this)
+                .setMessage(message)
+                .setNeutralButton(R.string.ok, null)
+                .show();
+    }
+
+    /** Called on a decoding thread for every new barcode. */
+    private void onBarcode(Barcode barcode) {
+        record(barcode.format.name(), barcode.text);
+        BatchScanSession batch = mBatch;
+        if (batch != null) {
+            batch.add(barcode);
+            int count = batch.getCount();
+            runOnUiThread(() -> mScanResults.setText(
+                    getString(R.string.barcode_batch_progress, count, barcode)));
+            return;
+        }
+        long count = mScanner.getBarcodeCount();
+        FormatHinter.Stats hinted = mHinter.getHintedStats();
+        FormatHinter.Stats unhinted = mHinter.getUnhintedStats();
+        String message = describe(barcode.format.name(), barcode.text) + "\n" +
+                getString(R.string.barcode_scan_latency, count, barcode.latencyNanos / 1_000_000) + "\n" +
+                getString(R.string.barcode_hint_stats,
+                        hinted.getHitRate() * 100, hinted.getMeanNanos() / 1e6f,
+                        unhinted.getHitRate() * 100, unhinted.getMeanNanos() / 1e6f);
+        runOnUiThread(() -> mScanResults.setText(message));
+    }
+
+    /** Called on the analysis thread with all barcodes found in a frame. */
+    private void onBarcodes(List<DetectedBarcode> barcodes, int frameWidth, int frameHeight, long timestamp) {
+        /* Journal the new ones, and count them in the batch if there is one. */
+        DuplicateFilter filter = mScanner.getDuplicateFilter();
+        BatchScanSession batch = mBatch;
+        long now = System.nanoTime();
+        for (DetectedBarcode barcode : barcodes) {
+            if (filter.accept(barcode.format + ":" + barcode.text, now)) {
+                record(barcode.format.name(), barcode.text);
+                if (batch != null)
+                    batch.add(new Barcode(barcode.text, barcode.format, timestamp, 0));
+            }
+        }
+
+        StringBuilder message = new StringBuilder(getString(R.string.barcode_multi_result,
+                barcodes.size(), mMultiScanner.getLastDecodeNanos() / 1_000_000));
+        for (DetectedBarcode barcode : barcodes)
+            message.append('\n').append(barcode);
+        runOnUiThread(() -> mScanResults.setText(message));
+    }
+
+    /** Describe a scanned barcode, with the matching item if it is in the product index. */
+    private String describe(String format, String code) {
+        String result = getString(R.string.barcode_result, format, code);
+        String product = mCatalog.lookup(code);
+        return product != null ? result + "\n" + product : result;
+    }
+
+    /** Persist a scan.  Only queues it for the journal writer; can be called from any thread. */
+    private void record(String format, String code) {
+        try {
+            mJournal.append(new ScanJournal.Record(mSessionId, System.currentTimeMillis(), format, code));
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to journal scan", e);
+        }
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         if (requestCode == REQUEST_CODE) {
+            if (mIntentStartNanos != 0) {
+                mHinter.record(mIntentHinted, resultCode == Intents.RESULT_OK,
+                        SystemClock.elapsedRealtimeNanos() - mIntentStartNanos);
+                mNextIntentUnhinted = mIntentHinted && resultCode != Intents.RESULT_OK;
+            }
             switch (resultCode) {
             case Intents.RESULT_OK:
                 /* A barcode was found. */
                 String text = data.getStringExtra(Intents.EXTRA_BARCODE_RESULT);
                 String format = data.getStringExtra(Intents.EXTRA_BARCODE_FORMAT);
+                if (format == null) {
+                    /* Nothing to hint from. */
+                    format = UNKNOWN_FORMAT;
+                } else {
+                    try {
+                        mHinter.onDecoded(BarcodeFormat.valueOf(format));
+                    } catch (IllegalArgumentException e) {
+                        /* Format unknown to the decoder */
+                    }
+                }
+                record(format, text);
                 new AlertDialog.Builder(this)
-                        .setMessage(getString(R.string.barcode_result, format, text))
+                        .setMessage(describe(format, text))
                         .setNeutralButton(R.string.ok, null)
                         .show();
                 break;
@@ -0,0 +1,166 @@
+package com.example.iristick.barcode;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.common.HybridBinarizer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Barcode decoder working on raw luminance buffers.
+ *
+ * This is the decoding core of the {@link BarcodeScanner}.  It does not depend on the Android
+ * framework, so it can be benchmarked on the JVM.  Instances are not thread-safe; use one
+ * decoder per thread.
+ */
+public final class BarcodeDecoder {
+
+    /* Same limits as ZXing's GenericMultipleBarcodeReader */
+    private static final int MAX_DEPTH = 4;
+    private static final int MIN_DIMENSION = 100;
+
+    private final MultiFormatReader mReader = new MultiFormatReader();
+    private EnumSet<BarcodeFormat> mFormats;
+
+    /**
+     * @param formats Formats to look for, or {@code null} or empty for all supported formats.
+     */
+    public BarcodeDecoder(Collection<BarcodeFormat> formats) {
+        configure(formats == null || formats.isEmpty() ? null : EnumSet.copyOf(formats));
+    }
+
+    /**
+     * Change the formats to look for.
+     * Reconfiguring the reader is costly, so this does nothing if the formats are unchanged.
+     * @param formats Formats to look for, or {@code null} or empty for all supported formats.
+     */
+    public void setFormats(Collection<BarcodeFormat> formats) {
+        EnumSet<BarcodeFormat> set = formats == null || formats.isEmpty() ? null : EnumSet.copyOf(formats);
+        if (set == null ? mFormats != null : !set.equals(mFormats))
+            configure(set);
+    }
+
+    private void configure(EnumSet<BarcodeFormat> formats) {
+        Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+        if (formats != null)
+            hints.put(DecodeHintType.POSSIBLE_FORMATS, formats);
+        mReader.setHints(hints);
+        mFormats = formats;
+    }
+
+    /**
+     * Decode a barcode from the whole image.
+     * @param luma Luminance samples, one byte per pixel, row after row without padding.
+     * @return The decoded barcode, or {@code null} if none was found.
+     */
+    public Result decode(byte[] luma, int width, int height) {
+        return decode(luma, width, height, 0, 0, width, height);
+    }
+
+    /**
+     * Decode a barcode from a region of the image.
+     * @param luma Luminance samples, one byte per pixel, row after row without padding.
+     * @param dataWidth Width of the image.
+     * @param dataHeight Height of the image.
+     * @return The decoded barcode, or {@code null} if none was found.
+     */
+    public Result decode(byte[] luma, int dataWidth, int dataHeight,
+                         int left, int top, int width, int height) {
+        PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(luma, dataWidth, dataHeight,
+                left, top, width, height, false);
+        BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
+        try {
+            return mReader.decodeWithState(bitmap);
+        } catch (ReaderException e) {
+            /* No barcode, or a barcode which could not be read. */
+            return null;
+        } finally {
+            mReader.reset();
+        }
+    }
+
+    /**
+     * Decode all barcodes from a region of the image.
+     *
+     * After each barcode found, the parts of the region left of, right of, above and below it
+     * are searched again, like ZXing's {@code GenericMultipleBarcodeReader} does.  Unlike it,
+     * identical codes are all kept, since several labels can carry the same code.  So a
+     * barcode can also be reported more than once, found again from the parts above and below
+     * it; see {@link DetectedBarcode#merge}.  Each barcode found costs several decode passes.
+     * @param luma Luminance samples, one byte per pixel, row after row without padding.
+     * @param dataWidth Width of the image.
+     * @param dataHeight Height of the image.
+     * @return The decoded barcodes, with their result points relative to the region.
+     */
+    public List<Result> decodeMultiple(byte[] luma, int dataWidth, int dataHeight,
+                                       int left, int top, int width, int height) {
+        List<Result> results = new ArrayList<>();
+        decodeMultiple(luma, dataWidth, dataHeight, left, top, width, height, 0, 0, 0, results);
+        return results;
+    }
+
+    /**
+     * @param offsetX Horizontal offset of the region in the region first searched.
+     * @param offsetY Vertical offset of the region in the region first searched.
+     */
+    private void decodeMultiple(byte[] luma, int dataWidth, int dataHeight,
+                                int left, int top, int width, int height,
+                                int offsetX, int offsetY, int depth, List<Result> results) {
+        Result result = decode(luma, dataWidth, dataHeight, left, top, width, height);
+        if (result == null)
+            return;
+        ResultPoint[] points = result.getResultPoints();
+        if (points == null || points.length == 0) {
+            results.add(result);
+            return;
+        }
+
+        float minX = width, minY = height, maxX = 0, maxY = 0;
+        ResultPoint[] translated = new ResultPoint[points.length];
+        for (int i = 0; i < points.length; i++) {
+            ResultPoint point = points[i];
+            if (point == null)
+                continue;
+            minX = Math.min(minX, point.getX());
+            minY = Math.min(minY, point.getY());
+            maxX = Math.max(maxX, point.getX());
+            maxY = Math.max(maxY, point.getY());
+            translated[i] = new ResultPoint(point.getX() + offsetX, point.getY() + offsetY);
+        }
+        Result copy = new Result(result.getText(), result.getRawBytes(), result.getNumBits(),
+                translated, result.getBarcodeFormat(), result.getTimestamp());
+        copy.putAllMetadata(result.getResultMetadata());
+        results.add(copy);
+
+        if (depth >= MAX_DEPTH)
+            return;
+        int x0 = (int) minX;
+        int y0 = (int) minY;
+        int x1 = (int) maxX;
+        int y1 = (int) maxY;
+        if (x0 > MIN_DIMENSION)
+            decodeMultiple(luma, dataWidth, dataHeight, left, top, x0, height,
+                    offsetX, offsetY, depth + 1, results);
+        if (y0 > MIN_DIMENSION)
+            decodeMultiple(luma, dataWidth, dataHeight, left, top, width, y0,
+                    offsetX, offsetY, depth + 1, results);
+        if (x1 < width - MIN_DIMENSION)
+            decodeMultiple(luma, dataWidth, dataHeight, left + x1, top, width - x1, height,
+                    offsetX + x1, offsetY, depth + 1, results);
+        if (y1 < height - MIN_DIMENSION)
+            decodeMultiple(luma, dataWidth, dataHeight, left, top + y1, width, height - y1,
+                    offsetX, offsetY + y1, depth + 1, results);
+    }
+
+}
@@ -0,0 +1,224 @@
+package com.example.iristick.barcode;
+
+import com.example.iristick.camera.Frame;
+import com.example.iristick.camera.FrameAnalyzer;
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Continuous in-process barcode scanner.
+ *
+ * Registered as a {@link FrameAnalyzer}, the scanner copies the region of interest of every
+ * frame and hands it to one of a fixed set of decoding workers, each with its own
+ * {@link BarcodeDecoder} and buffer.  When all workers are busy, the frame is skipped, so
+ * decoding never lags behind the camera.  Barcodes are reported on the worker thread as
+ * soon as they are decoded, unless the {@link DuplicateFilter} saw them recently.
+ *
+ * With a {@link FormatHinter}, workers only look for the formats seen recently.  After a few
+ * hinted frames without barcode, a frame is decoded with all formats, so that a barcode of
+ * another format is still found.
+ */
+public final class BarcodeScanner implements FrameAnalyzer {
+
+    public interface Listener {
+        /** Called on a worker thread for every new barcode. */
+        void onBarcode(Barcode barcode);
+    }
+
+    /** Region of interest as fractions of the frame size. */
+    private static final class Region {
+        final float left;
+        final float top;
+        final float right;
+        final float bottom;
+
+        Region(float left, float top, float right, float bottom) {
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+        }
+    }
+
+    /** Number of consecutive hinted misses after which a frame is decoded with all formats. */
+    private static final int FALLBACK_INTERVAL = 4;
+
+    private final Listener mListener;
+    private final Collection<BarcodeFormat> mFormats;
+    private volatile DuplicateFilter mFilter;
+    private volatile FormatHinter mHinter;
+    private final ExecutorService mExecutor;
+    private final ArrayBlockingQueue<Job> mIdleJobs;
+    private volatile Region mRegion = new Region(0, 0, 1, 1);
+
+    private final AtomicLong mFrameCount = new AtomicLong();
+    private final AtomicLong mSkippedCount = new AtomicLong();
+    private final AtomicLong mDecodeCount = new AtomicLong();
+    private final AtomicLong mDecodeNanos = new AtomicLong();
+    private final AtomicLong mBarcodeCount = new AtomicLong();
+
+    /**
+     * @param workers Number of frames decoded in parallel.
+     * @param formats Formats to look for, or {@code null} for all supported formats.
+     * @param filter Filter suppressing barcodes seen recently.
+     */
+    public BarcodeScanner(Listener listener, int workers, Collection<BarcodeFormat> formats,
+                          DuplicateFilter filter) {
+        mListener = listener;
+        mFormats = formats;
+        mFilter = filter;
+        mIdleJobs = new ArrayBlockingQueue<>(workers);
+        for (int i = 0; i < workers; i++)
+            mIdleJobs.add(new Job(new BarcodeDecoder(formats)));
+        AtomicInteger threadCount = new AtomicInteger();
+        mExecutor = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "BarcodeDecoder-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Restrict decoding to a region of the frame, e.g. around an aiming guide.
+     * Coordinates are fractions of the frame size, between 0 and 1.
+     */
+    public void setRegionOfInterest(float left, float top, float right, float bottom) {
+        if (left < 0 || top < 0 || right > 1 || bottom > 1 || left >= right || top >= bottom)
+            throw new IllegalArgumentException("invalid region of interest");
+        mRegion = new Region(left, top, right, bottom);
+    }
+
+    /** Replace the duplicate filter, e.g. by the one of a {@link BatchScanSession}. */
+    public void setDuplicateFilter(DuplicateFilter filter) {
+        mFilter = filter;
+    }
+
+    public DuplicateFilter getDuplicateFilter() {
+        return mFilter;
+    }
+
+    /** Restrict decoding to the formats hinted, or to the formats given at construction if null. */
+    public void setFormatHinter(FormatHinter hinter) {
+        mHinter = hinter;
+    }
+
+    @Override
+    public void analyze(Frame frame) {
+        mFrameCount.incrementAndGet();
+        Job job = mIdleJobs.poll();
+        if (job == null) {
+            mSkippedCount.incrementAndGet();
+            return;
+        }
+
+        /* Copy the region of interest: the frame is recycled as soon as we return. */
+        Region region = mRegion;
+        int frameWidth = frame.getWidth();
+        int frameHeight = frame.getHeight();
+        int left = (int) (region.left * frameWidth);
+        int top = (int) (region.top * frameHeight);
+        int width = Math.max(1, (int) (region.right * frameWidth) - left);
+        int height = Math.max(1, (int) (region.bottom * frameHeight) - top);
+        job.set(frame.getLuma(), frameWidth, left, top, width, height,
+                frame.getTimestamp(), frame.getArrivalNanos());
+        try {
+            mExecutor.execute(job);
+        } catch (RuntimeException e) {
+            /* Shut down */
+            mIdleJobs.offer(job);
+        }
+    }
+
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    /** Number of frames received. */
+    public long getFrameCount() {
+        return mFrameCount.get();
+    }
+
+    /** Number of frames skipped because all workers were busy. */
+    public long getSkippedCount() {
+        return mSkippedCount.get();
+    }
+
+    /** Mean time spent decoding a frame. */
+    public long getMeanDecodeNanos() {
+        long count = mDecodeCount.get();
+        return count == 0 ? 0 : mDecodeNanos.get() / count;
+    }
+
+    /** Number of barcodes reported. */
+    public long getBarcodeCount() {
+        return mBarcodeCount.get();
+    }
+
+    /** A decoding worker with its own decoder and copy of the region of interest. */
+    private final class Job implements Runnable {
+        private final BarcodeDecoder mDecoder;
+        private int mHintedMisses;
+        private byte[] mLuma = new byte[0];
+        private int mWidth;
+        private int mHeight;
+        private long mTimestamp;
+        private long mArrivalNanos;
+
+        Job(BarcodeDecoder decoder) {
+            mDecoder = decoder;
+        }
+
+        void set(byte[] luma, int stride, int left, int top, int width, int height,
+                 long timestamp, long arrivalNanos) {
+            int size = width * height;
+            if (mLuma.length < size)
+                mLuma = new byte[size];
+            for (int y = 0; y < height; y++)
+                System.arraycopy(luma, (top + y) * stride + left, mLuma, y * width, width);
+            mWidth = width;
+            mHeight = height;
+            mTimestamp = timestamp;
+            mArrivalNanos = arrivalNanos;
+        }
+
+        @Override
+        public void run() {
+            try {
+                FormatHinter hinter = mHinter;
+                Collection<BarcodeFormat> hints = hinter != null ? hinter.getHints() : null;
+                if (hints != null && mFormats != null && !mFormats.containsAll(hints))
+                    hints = null;
+                boolean hinted = hints != null && mHintedMisses < FALLBACK_INTERVAL;
+                mDecoder.setFormats(hinted ? hints : mFormats);
+
+                long start = System.nanoTime();
+                Result result = mDecoder.decode(mLuma, mWidth, mHeight);
+                long end = System.nanoTime();
+                mDecodeCount.incrementAndGet();
+                mDecodeNanos.addAndGet(end - start);
+
+                mHintedMisses = hinted && result == null ? mHintedMisses + 1 : 0;
+                if (hinter != null)
+                    hinter.record(hinted, result != null, end - start);
+                if (result != null && mFilter.accept(result.getBarcodeFormat() + ":" + result.getText(), end)) {
+                    /* Learn from new barcodes only, not from every frame a barcode stays in view. */
+                    if (hinter != null)
+                        hinter.onDecoded(result.getBarcodeFormat());
+                    mBarcodeCount.incrementAndGet();
+                    mListener.onBarcode(new Barcode(result.getText(), result.getBarcodeFormat(),
+                            mTimestamp, end - mArrivalNanos));
+                }
+            } finally {
+                mIdleJobs.offer(this);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.example.iristick.barcode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the barcodes of a batch scan, e.g. all items of a pallet.
+ *
+ * The session owns the {@link DuplicateFilter} to install on the {@link BarcodeScanner}, so
+ * that each label counts once however many frames it is seen in, and reports the throughput
+ * and duplicate ratio when finished.
+ */
+public final class BatchScanSession {
+
+    /** Results of a finished session. */
+    public static final class Summary {
+        /** Distinct barcodes, in the order they were scanned. */
+        public final List<Barcode> barcodes;
+        public final long durationNanos;
+        /** Number of times a barcode was decoded, including duplicates. */
+        public final long sightings;
+        /** Number of decodes suppressed as duplicates. */
+        public final long duplicates;
+
+        Summary(List<Barcode> barcodes, long durationNanos, long sightings, long duplicates) {
+            this.barcodes = barcodes;
+            this.durationNanos = durationNanos;
+            this.sightings = sightings;
+            this.duplicates = duplicates;
+        }
+
+        public float getCodesPerMinute() {
+            return durationNanos <= 0 ? 0 : barcodes.size() * 60e9f / durationNanos;
+        }
+
+        /** Fraction of the decodes which hit the duplicate cache. */
+        public float getDuplicateRatio() {
+            return sightings == 0 ? 0 : (float) duplicates / sightings;
+        }
+    }
+
+    private final DuplicateFilter mFilter;
+    private final long mStartNanos;
+    private final List<Barcode> mBarcodes = new ArrayList<>();
+
+    /**
+     * @param ttlNanos Time a barcode is not counted again after its last sighting.
+     * @param capacity Maximum number of barcodes remembered for duplicate suppression.
+     * @param startNanos Start time of the session.
+     */
+    public BatchScanSession(long ttlNanos, int capacity, long startNanos) {
+        mFilter = new DuplicateFilter(ttlNanos, capacity);
+        mStartNanos = startNanos;
+    }
+
+    /** Filter to install on the scanner for the duration of the session. */
+    public DuplicateFilter getFilter() {
+        return mFilter;
+    }
+
+    /** Add a barcode accepted by the filter.  Can be called from any thread. */
+    public synchronized void add(Barcode barcode) {
+        mBarcodes.add(barcode);
+    }
+
+    public synchronized int getCount() {
+        return mBarcodes.size();
+    }
+
+    public synchronized Summary finish(long nowNanos) {
+        return new Summary(new ArrayList<>(mBarcodes), nowNanos - mStartNanos,
+                mFilter.getSightingCount(), mFilter.getDuplicateCount());
+    }
+
+}
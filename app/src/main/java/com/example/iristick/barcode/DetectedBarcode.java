@@ -0,0 +1,86 @@
+package com.example.iristick.barcode;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Barcode found in a frame, with its location.
+ */
+public final class DetectedBarcode {
+
+    public final String text;
+    public final BarcodeFormat format;
+    /** Bounding box of the barcode in frame coordinates, right and bottom exclusive. */
+    public final int left;
+    public final int top;
+    public final int right;
+    public final int bottom;
+
+    public DetectedBarcode(String text, BarcodeFormat format, int left, int top, int right, int bottom) {
+        this.text = text;
+        this.format = format;
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    /**
+     * True if this is the same barcode as {@code other}, found at about the same location.
+     *
+     * Detections of one barcode cover the same bars or modules, so they overlap along the
+     * barcode.  A 1D barcode is located by the row it was read on, though, and its box is a
+     * line: two detections can be up to the height of the bars apart, which scales with the
+     * width of the barcode.  So the slack on each axis is proportional to the size of the
+     * boxes on the other axis: identical labels next to each other are kept apart, and a 1D
+     * barcode read on different rows is merged.
+     * @param tolerance Slack as a fraction of the size of the smaller box.
+     */
+    boolean isSameAs(DetectedBarcode other, float tolerance) {
+        if (format != other.format || !text.equals(other.text))
+            return false;
+        int slackX = (int) (tolerance * Math.min(bottom - top, other.bottom - other.top));
+        int slackY = (int) (tolerance * Math.min(right - left, other.right - other.left));
+        return left - slackX < other.right && other.left - slackX < right &&
+                top - slackY < other.bottom && other.top - slackY < bottom;
+    }
+
+    /**
+     * Merge detections of the same barcodes, e.g. found in overlapping tiles.
+     * Detections of the same code at about the same location are merged into one with the
+     * union of their bounding boxes.  Identical labels at different locations are kept apart.
+     * @param tolerance Slack allowed between two detections of the same barcode, as a
+     *                  fraction of their size; see {@link #isSameAs}.
+     */
+    static List<DetectedBarcode> merge(List<DetectedBarcode> detections, float tolerance) {
+        List<DetectedBarcode> merged = new ArrayList<>(detections);
+        boolean changed = true;
+        /* Repeat until stable, since a union can bridge two boxes found separately. */
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < merged.size() && !changed; i++) {
+                for (int j = i + 1; j < merged.size(); j++) {
+                    DetectedBarcode a = merged.get(i);
+                    DetectedBarcode b = merged.get(j);
+                    if (a.isSameAs(b, tolerance)) {
+                        merged.set(i, new DetectedBarcode(a.text, a.format,
+                                Math.min(a.left, b.left), Math.min(a.top, b.top),
+                                Math.max(a.right, b.right), Math.max(a.bottom, b.bottom)));
+                        merged.remove(j);
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return merged;
+    }
+
+    @Override
+    public String toString() {
+        return format + ": " + text + " [" + left + "," + top + "-" + right + "," + bottom + "]";
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.example.iristick.barcode;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Suppresses barcodes seen again within their time-to-live.
+ *
+ * A barcode held in view is decoded in frame after frame; only its first sighting is
+ * reported.  Every sighting renews the time-to-live of the code, so a code is reported again
+ * only after it was out of view for that long.
+ *
+ * The filter is a bounded LRU cache: when it is full, the code seen least recently is
+ * forgotten first, so memory stays constant however many codes are scanned.
+ */
+public final class DuplicateFilter {
+
+    private final long mTtlNanos;
+    private final int mCapacity;
+    /* Last sighting of each code, least recently seen first */
+    private final LinkedHashMap<String, Long> mLastSeen;
+    private long mSightings;
+    private long mDuplicates;
+
+    /**
+     * @param ttlNanos Time a code is remembered after its last sighting.
+     * @param capacity Maximum number of codes remembered.
+     */
+    public DuplicateFilter(long ttlNanos, int capacity) {
+        mTtlNanos = ttlNanos;
+        mCapacity = capacity;
+        mLastSeen = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > mCapacity;
+            }
+        };
+    }
+
+    /**
+     * Record a sighting.
+     * @param key Identification of the code, e.g. its format and text.
+     * @param nowNanos Time of the sighting.
+     * @return True if the code was not seen within its time-to-live.
+     */
+    public synchronized boolean accept(String key, long nowNanos) {
+        /* Forget expired codes.  Since every sighting moves its code to the end, they come first. */
+        Iterator<Map.Entry<String, Long>> it = mLastSeen.entrySet().iterator();
+        while (it.hasNext() && nowNanos - it.next().getValue() > mTtlNanos)
+            it.remove();
+
+        mSightings++;
+        boolean duplicate = mLastSeen.put(key, nowNanos) != null;
+        if (duplicate)
+            mDuplicates++;
+        return !duplicate;
+    }
+
+    /** Number of sightings recorded. */
+    public synchronized long getSightingCount() {
+        return mSightings;
+    }
+
+    /** Number of sightings suppressed. */
+    public synchronized long getDuplicateCount() {
+        return mDuplicates;
+    }
+
+    /** Number of codes currently remembered. */
+    public synchronized int size() {
+        return mLastSeen.size();
+    }
+
+    /** Forget all codes and reset the counters. */
+    public synchronized void clear() {
+        mLastSeen.clear();
+        mSightings = 0;
+        mDuplicates = 0;
+    }
+
+}
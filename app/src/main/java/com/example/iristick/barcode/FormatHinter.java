@@ -0,0 +1,123 @@
+package com.example.iristick.barcode;
+
+import com.google.zxing.BarcodeFormat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Learns which barcode formats are in use from the scan history, so scans can look for
+ * those formats only.
+ *
+ * Every decoded barcode adds to the score of its format, while all scores decay, so the
+ * hints follow changes of workflow.  The hints list the formats by decreasing score, leaving
+ * out formats seen too rarely.  Until enough barcodes have been seen, there are no hints and
+ * scans look for all formats.
+ *
+ * Since a hinted scan cannot find a barcode of another format, callers must fall back to all
+ * formats on a miss.  The hinter keeps separate statistics of hinted and unhinted scans to
+ * assess the gain.  All methods are thread-safe.
+ */
+public final class FormatHinter {
+
+    /** Statistics of hinted or unhinted scans. */
+    public static final class Stats {
+        public final long attempts;
+        public final long hits;
+        public final long totalNanos;
+
+        Stats(long attempts, long hits, long totalNanos) {
+            this.attempts = attempts;
+            this.hits = hits;
+            this.totalNanos = totalNanos;
+        }
+
+        /** Fraction of the attempts which found a barcode. */
+        public float getHitRate() {
+            return attempts == 0 ? 0 : (float) hits / attempts;
+        }
+
+        /** Mean decoding time of an attempt. */
+        public long getMeanNanos() {
+            return attempts == 0 ? 0 : totalNanos / attempts;
+        }
+    }
+
+    /** Weight kept by past scans at every new scan. */
+    private static final float DECAY = 0.98f;
+    /** Number of scans needed before hinting. */
+    private static final int MIN_HISTORY = 5;
+    /** Share of the total score below which a format is left out of the hints. */
+    private static final float MIN_SHARE = 0.05f;
+    /** Maximum number of formats hinted. */
+    private static final int MAX_HINTS = 3;
+
+    private static final BarcodeFormat[] FORMATS = BarcodeFormat.values();
+
+    private final float[] mScores = new float[FORMATS.length];
+    private long mHistory;
+    private List<BarcodeFormat> mHints;
+    private long mHintedAttempts, mHintedHits, mHintedNanos;
+    private long mFullAttempts, mFullHits, mFullNanos;
+
+    /** Learn from a decoded barcode. */
+    public synchronized void onDecoded(BarcodeFormat format) {
+        float total = 0;
+        for (int i = 0; i < mScores.length; i++) {
+            mScores[i] *= DECAY;
+            total += mScores[i];
+        }
+        mScores[format.ordinal()] += 1;
+        total += 1;
+        mHistory++;
+        mHints = mHistory < MIN_HISTORY ? null : rank(total);
+    }
+
+    /**
+     * Formats to look for, most frequent first.
+     * @return The hints, or {@code null} to look for all formats.  The list is immutable.
+     */
+    public synchronized List<BarcodeFormat> getHints() {
+        return mHints;
+    }
+
+    /**
+     * Record the outcome of a scan.
+     * @param hinted True if the scan only looked for the hinted formats.
+     */
+    public synchronized void record(boolean hinted, boolean hit, long nanos) {
+        if (hinted) {
+            mHintedAttempts++;
+            mHintedNanos += nanos;
+            if (hit)
+                mHintedHits++;
+        } else {
+            mFullAttempts++;
+            mFullNanos += nanos;
+            if (hit)
+                mFullHits++;
+        }
+    }
+
+    public synchronized Stats getHintedStats() {
+        return new Stats(mHintedAttempts, mHintedHits, mHintedNanos);
+    }
+
+    public synchronized Stats getUnhintedStats() {
+        return new Stats(mFullAttempts, mFullHits, mFullNanos);
+    }
+
+    private List<BarcodeFormat> rank(float total) {
+        List<BarcodeFormat> formats = new ArrayList<>();
+        for (BarcodeFormat format : FORMATS) {
+            if (mScores[format.ordinal()] >= total * MIN_SHARE)
+                formats.add(format);
+        }
+        formats.sort((a, b) -> Float.compare(mScores[b.ordinal()], mScores[a.ordinal()]));
+        if (formats.size() > MAX_HINTS)
+            formats = formats.subList(0, MAX_HINTS);
+        return Collections.unmodifiableList(new ArrayList<>(formats));
+    }
+
+}
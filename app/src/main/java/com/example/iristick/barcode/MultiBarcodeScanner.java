@@ -0,0 +1,65 @@
+package com.example.iristick.barcode;
+
+import com.example.iristick.camera.Frame;
+import com.example.iristick.camera.FrameAnalyzer;
+import com.google.zxing.BarcodeFormat;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Frame analyzer finding all barcodes in view at once, e.g. a whole shelf face.
+ *
+ * Every frame is decoded by a {@link TiledDecoder} on a fork-join pool with one worker per
+ * core, so a frame with many labels takes about as long as a frame with one.  Decoding works
+ * on the frame buffer directly, within {@link #analyze}; when it takes longer than the frame
+ * interval, the pipeline skips frames.
+ */
+public final class MultiBarcodeScanner implements FrameAnalyzer {
+
+    public interface Listener {
+        /**
+         * Called on the analysis thread after each frame in which barcodes were found.
+         * @param timestamp Sensor timestamp of the frame.
+         */
+        void onBarcodes(List<DetectedBarcode> barcodes, int frameWidth, int frameHeight, long timestamp);
+    }
+
+    private static final int COLUMNS = 3;
+    private static final int ROWS = 2;
+    private static final float OVERLAP = 0.25f;
+
+    private final Listener mListener;
+    private final ForkJoinPool mPool;
+    private final TiledDecoder mDecoder;
+    private volatile long mLastDecodeNanos;
+
+    /**
+     * @param formats Formats to look for, or {@code null} for all supported formats.
+     */
+    public MultiBarcodeScanner(Listener listener, Collection<BarcodeFormat> formats) {
+        mListener = listener;
+        mPool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors()));
+        mDecoder = new TiledDecoder(mPool, COLUMNS, ROWS, OVERLAP, formats);
+    }
+
+    @Override
+    public void analyze(Frame frame) {
+        long start = System.nanoTime();
+        List<DetectedBarcode> barcodes = mDecoder.decode(frame.getLuma(), frame.getWidth(), frame.getHeight());
+        mLastDecodeNanos = System.nanoTime() - start;
+        if (!barcodes.isEmpty())
+            mListener.onBarcodes(barcodes, frame.getWidth(), frame.getHeight(), frame.getTimestamp());
+    }
+
+    /** Wall-clock time spent decoding the last frame. */
+    public long getLastDecodeNanos() {
+        return mLastDecodeNanos;
+    }
+
+    public void shutdown() {
+        mPool.shutdownNow();
+    }
+
+}
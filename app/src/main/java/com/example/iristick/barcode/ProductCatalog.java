@@ -0,0 +1,68 @@
+package com.example.iristick.barcode;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Holds the current {@link ProductIndex}, which can be replaced while lookups are going on.
+ *
+ * A new index file is delivered next to the current one under a pending name.
+ * {@link #update} opens and validates it, renames it over the current file and swaps the
+ * index atomically: a lookup sees either the old or the new index, never a mix.  The old
+ * mapping stays valid for lookups still using it.
+ */
+public final class ProductCatalog {
+
+    private static final String PENDING_SUFFIX = ".new";
+
+    private final File mFile;
+    private volatile ProductIndex mIndex;
+
+    /**
+     * @param file Location of the index file.  A new index is expected at the same
+     *             location with a {@code .new} suffix.
+     */
+    public ProductCatalog(File file) {
+        mFile = file;
+    }
+
+    /** Location where a new index file must be delivered. */
+    public File getPendingFile() {
+        return new File(mFile.getPath() + PENDING_SUFFIX);
+    }
+
+    /**
+     * Install the pending index if there is one, or open the current one if not done yet.
+     * @return True if the index changed.
+     */
+    public synchronized boolean update() throws IOException {
+        File pending = getPendingFile();
+        if (pending.exists()) {
+            ProductIndex index = ProductIndex.open(pending);
+            if (!pending.renameTo(mFile))
+                throw new IOException("cannot rename " + pending + " to " + mFile);
+            mIndex = index;
+            return true;
+        }
+        if (mIndex == null && mFile.exists()) {
+            mIndex = ProductIndex.open(mFile);
+            return true;
+        }
+        return false;
+    }
+
+    /** Current index, or {@code null} if none is installed. */
+    public ProductIndex getIndex() {
+        return mIndex;
+    }
+
+    /**
+     * Look up the item record of a barcode.
+     * @return The record, or {@code null} if the code is unknown or no index is installed.
+     */
+    public String lookup(String code) {
+        ProductIndex index = mIndex;
+        return index != null ? index.lookup(code) : null;
+    }
+
+}
@@ -0,0 +1,147 @@
+package com.example.iristick.barcode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Immutable on-device product index, mapping barcodes to item records.
+ *
+ * The index file is built offline by {@link ProductIndexBuilder} and memory-mapped, so
+ * millions of products can be looked up without loading them on the Java heap.  The file
+ * consists of:
+ * <ul>
+ * <li>a header: magic number, version, number of entries and size of the data area;</li>
+ * <li>the 64-bit hashes of all keys, sorted;</li>
+ * <li>for each hash, the offset of its entry in the data area;</li>
+ * <li>the data area, holding for each entry its key and value in UTF-8.</li>
+ * </ul>
+ * A lookup is a binary search over the mapped hashes, followed by a comparison of the key
+ * bytes to rule out hash collisions.  Only the returned value is allocated.
+ *
+ * Offsets and lengths read from the data area are checked against the bounds of the file
+ * on every lookup, so a corrupt entry makes its lookup fail instead of reading outside the
+ * mapping or allocating a bogus length.  Checking them once at open would touch every page.
+ *
+ * Instances are thread-safe.  The mapping is released when the index is garbage collected.
+ */
+public final class ProductIndex {
+
+    static final int MAGIC = 0x50524f44; /* "PROD" */
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    private final File mFile;
+    private final ByteBuffer mBuffer;
+    private final int mCount;
+    private final int mOffsetsStart;
+    private final int mDataStart;
+
+    private ProductIndex(File file, ByteBuffer buffer) throws IOException {
+        mFile = file;
+        mBuffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+            throw new IOException("not a product index: " + file);
+        mCount = buffer.getInt(8);
+        int dataSize = buffer.getInt(12);
+        if (mCount < 0 || dataSize < 0 || HEADER_SIZE + mCount * 12L + dataSize != buffer.capacity())
+            throw new IOException("truncated product index: " + file);
+        mOffsetsStart = HEADER_SIZE + mCount * 8;
+        mDataStart = mOffsetsStart + mCount * 4;
+    }
+
+    /** Map an index file. */
+    public static ProductIndex open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("product index too large: " + file);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new ProductIndex(file, buffer);
+        }
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    /** Number of products in the index. */
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Look up the item record of a barcode.
+     * @return The record, or {@code null} if the code is not in the index or its entry is
+     *         corrupt.
+     */
+    public String lookup(String code) {
+        byte[] key = code.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(key);
+
+        /* Find the first entry with this hash. */
+        int low = 0;
+        int high = mCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mBuffer.getLong(HEADER_SIZE + mid * 8) < hash)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+
+        /* Compare keys of all entries with the same hash. */
+        for (int i = low; i < mCount && mBuffer.getLong(HEADER_SIZE + i * 8) == hash; i++) {
+            int offset = mBuffer.getInt(mOffsetsStart + i * 4);
+            /* The smallest entry is a key length and a value length. */
+            if (offset < 0 || mDataStart + (long) offset + 6 > mBuffer.capacity())
+                continue;
+            int entry = mDataStart + offset;
+            if (keyEquals(entry, key))
+                return readValue(entry + 2 + key.length);
+        }
+        return null;
+    }
+
+    /** Entries start with the key length on 2 bytes and the key. */
+    private boolean keyEquals(int entry, byte[] key) {
+        if ((mBuffer.getShort(entry) & 0xffff) != key.length)
+            return false;
+        if (entry + 2L + key.length + 4 > mBuffer.capacity())
+            return false;
+        for (int i = 0; i < key.length; i++) {
+            if (mBuffer.get(entry + 2 + i) != key[i])
+                return false;
+        }
+        return true;
+    }
+
+    /** Values are stored as their length on 4 bytes and their bytes. */
+    private String readValue(int position) {
+        int length = mBuffer.getInt(position);
+        if (length < 0 || position + 4L + length > mBuffer.capacity())
+            return null;
+        byte[] value = new byte[length];
+        for (int i = 0; i < length; i++)
+            value[i] = mBuffer.get(position + 4 + i);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 64-bit FNV-1a hash of a key.
+     * Keys are sorted by this hash; do not change it without changing {@link #VERSION}.
+     */
+    static long hash(byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.example.iristick.barcode;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds a {@link ProductIndex} file.
+ *
+ * Meant to run offline, e.g. on the server exporting the product catalog, or in tests.
+ * The file is written under a temporary name and renamed when complete, so a reader never
+ * sees a partial index.
+ */
+public final class ProductIndexBuilder {
+
+    private static final class Entry {
+        final byte[] key;
+        final byte[] value;
+        final long hash;
+
+        Entry(byte[] key, byte[] value) {
+            this.key = key;
+            this.value = value;
+            this.hash = ProductIndex.hash(key);
+        }
+    }
+
+    private final List<Entry> mEntries = new ArrayList<>();
+
+    /**
+     * Add a product.
+     * @param code Barcode of the product.
+     * @param record Item record returned by {@link ProductIndex#lookup}.
+     */
+    public ProductIndexBuilder add(String code, String record) {
+        byte[] key = code.getBytes(StandardCharsets.UTF_8);
+        if (key.length > 0xffff)
+            throw new IllegalArgumentException("code too long");
+        mEntries.add(new Entry(key, record.getBytes(StandardCharsets.UTF_8)));
+        return this;
+    }
+
+    /**
+     * Write the index.
+     * @throws IllegalArgumentException if a code was added twice.
+     */
+    public void write(File file) throws IOException {
+        mEntries.sort((a, b) -> a.hash != b.hash ? Long.compare(a.hash, b.hash) : compare(a.key, b.key));
+        int count = mEntries.size();
+        long dataSize = 0;
+        for (int i = 0; i < count; i++) {
+            Entry entry = mEntries.get(i);
+            if (i > 0 && entry.hash == mEntries.get(i - 1).hash && compare(entry.key, mEntries.get(i - 1).key) == 0)
+                throw new IllegalArgumentException("duplicate code: " + new String(entry.key, StandardCharsets.UTF_8));
+            dataSize += 2 + entry.key.length + 4 + entry.value.length;
+        }
+        if (ProductIndex.HEADER_SIZE + count * 12L + dataSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("index too large");
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(tmp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024));
+            out.writeInt(ProductIndex.MAGIC);
+            out.writeInt(ProductIndex.VERSION);
+            out.writeInt(count);
+            out.writeInt((int) dataSize);
+            for (Entry entry : mEntries)
+                out.writeLong(entry.hash);
+            int offset = 0;
+            for (Entry entry : mEntries) {
+                out.writeInt(offset);
+                offset += 2 + entry.key.length + 4 + entry.value.length;
+            }
+            for (Entry entry : mEntries) {
+                out.writeShort(entry.key.length);
+                out.write(entry.key);
+                out.writeInt(entry.value.length);
+                out.write(entry.value);
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("cannot rename " + tmp + " to " + file);
+        }
+    }
+
+    private static int compare(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            if (a[i] != b[i])
+                return (a[i] & 0xff) - (b[i] & 0xff);
+        }
+        return a.length - b.length;
+    }
+
+}
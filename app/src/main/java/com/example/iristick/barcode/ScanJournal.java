@@ -0,0 +1,317 @@
+package com.example.iristick.barcode;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal persisting every scan.
+ *
+ * The journal is a binary file starting with a magic number and a version, followed by one
+ * record per scan.  Every record is framed by its length and a CRC-32 of its content, so a
+ * record torn by a crash is detected and cut off when the journal is opened.
+ *
+ * {@link #append} only encodes the record into an in-memory buffer and never touches the
+ * disk.  A writer thread first replays the existing records, then repeatedly takes all the
+ * records appended so far, writes them in one go and forces them to storage (group commit).
+ * Records appended while a commit is in progress are committed together by the next one, so
+ * the number of fsyncs adapts to the storage speed rather than to the scan rate.
+ */
+public final class ScanJournal implements Closeable {
+
+    /** A scan, as stored in the journal. */
+    public static final class Record {
+        /** Identification of the scan session, e.g. its start time. */
+        public final long session;
+        /** Wall-clock time of the scan, in milliseconds. */
+        public final long timeMillis;
+        public final String format;
+        public final String code;
+
+        public Record(long session, long timeMillis, String format, String code) {
+            this.session = session;
+            this.timeMillis = timeMillis;
+            this.format = format;
+            this.code = code;
+        }
+    }
+
+    public interface ReplayListener {
+        /** Called on the writer thread for every valid record found when opening. */
+        void onRecord(Record record);
+
+        /**
+         * Called on the writer thread once all records are replayed.
+         * @param records Number of valid records.
+         * @param discardedBytes Number of bytes cut off after the last valid record.
+         */
+        void onReplayFinished(int records, long discardedBytes);
+    }
+
+    private static final int MAGIC = 0x5343414e; /* "SCAN" */
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 8;
+    /* Length and CRC of a record */
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 64 * 1024;
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final File mFile;
+    private final ReplayListener mReplayListener;
+    private final Thread mWriter;
+    private final CRC32 mCrc = new CRC32();
+
+    /* Guarded by this */
+    private ByteBuffer mPending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private ByteBuffer mSpare = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private long mAppended;
+    private long mCommitted;
+    private long mCommits;
+    private boolean mClosing;
+    private IOException mError;
+
+    /**
+     * Open the journal, creating the file if needed.
+     * Returns immediately; replaying and all disk accesses happen on the writer thread.
+     * @param replayListener Listener for the existing records, or {@code null}.
+     */
+    public ScanJournal(File file, ReplayListener replayListener) {
+        mFile = file;
+        mReplayListener = replayListener;
+        mWriter = new Thread(this::run, "ScanJournal");
+        mWriter.start();
+    }
+
+    /**
+     * Append a record.  Never blocks on the disk.
+     * @return Sequence number of the record, to pass to {@link #sync}.
+     * @throws IOException if the journal has failed or is closed.
+     * @throws IllegalArgumentException if the format or the code is missing, or too long.
+     */
+    public synchronized long append(Record record) throws IOException {
+        if (record.format == null || record.code == null)
+            throw new IllegalArgumentException("record without format or code");
+        if (mError != null)
+            throw mError;
+        if (mClosing)
+            throw new IOException("journal closed");
+        byte[] format = record.format.getBytes(StandardCharsets.UTF_8);
+        byte[] code = record.code.getBytes(StandardCharsets.UTF_8);
+        int size = 8 + 8 + 2 + format.length + 2 + code.length;
+        if (format.length > 0xffff || code.length > 0xffff || size > MAX_RECORD_SIZE)
+            throw new IllegalArgumentException("record too large");
+
+        ensureCapacity(RECORD_HEADER_SIZE + size);
+        ByteBuffer buffer = mPending;
+        int start = buffer.position();
+        buffer.putInt(size);
+        buffer.putInt(0); /* CRC, filled in below */
+        buffer.putLong(record.session);
+        buffer.putLong(record.timeMillis);
+        buffer.putShort((short) format.length);
+        buffer.put(format);
+        buffer.putShort((short) code.length);
+        buffer.put(code);
+        mCrc.reset();
+        mCrc.update(buffer.array(), start + RECORD_HEADER_SIZE, size);
+        buffer.putInt(start + 4, (int) mCrc.getValue());
+
+        notifyAll();
+        return ++mAppended;
+    }
+
+    /**
+     * Wait until the given record, and all records before it, are on storage.
+     * @throws IOException if the journal failed before.
+     */
+    public synchronized void sync(long sequence) throws IOException, InterruptedException {
+        while (mCommitted < sequence && mError == null)
+            wait();
+        if (mError != null)
+            throw mError;
+    }
+
+    /**
+     * Close the journal without waiting.  Returns immediately; the writer thread commits all
+     * appended records and exits.  A failure to commit them is only reported by {@link #close}.
+     */
+    public synchronized void closeAsync() {
+        mClosing = true;
+        notifyAll();
+    }
+
+    /** Commit all appended records and close the journal. */
+    @Override
+    public void close() throws IOException {
+        closeAsync();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                mWriter.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        synchronized (this) {
+            if (mError != null)
+                throw mError;
+        }
+    }
+
+    /** Number of records appended since opening. */
+    public synchronized long getAppendCount() {
+        return mAppended;
+    }
+
+    /** Number of group commits, i.e. fsyncs, since opening. */
+    public synchronized long getCommitCount() {
+        return mCommits;
+    }
+
+    private void ensureCapacity(int size) {
+        if (mPending.remaining() >= size)
+            return;
+        int capacity = mPending.capacity();
+        while (capacity - mPending.position() < size)
+            capacity *= 2;
+        ByteBuffer buffer = ByteBuffer.allocate(capacity);
+        mPending.flip();
+        buffer.put(mPending);
+        mPending = buffer;
+    }
+
+    private void run() {
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            FileChannel channel = file.getChannel();
+            replay(channel);
+            while (true) {
+                ByteBuffer batch;
+                long sequence;
+                synchronized (this) {
+                    while (mPending.position() == 0 && !mClosing)
+                        wait();
+                    if (mPending.position() == 0)
+                        break;
+                    /* Swap buffers, so appends go on while this batch is written. */
+                    batch = mPending;
+                    mPending = mSpare;
+                    mSpare = batch;
+                    sequence = mAppended;
+                }
+                batch.flip();
+                while (batch.hasRemaining())
+                    channel.write(batch);
+                channel.force(false);
+                batch.clear();
+                synchronized (this) {
+                    mCommitted = sequence;
+                    mCommits++;
+                    notifyAll();
+                }
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                mError = e;
+                notifyAll();
+            }
+        } catch (InterruptedException e) {
+            synchronized (this) {
+                mError = new IOException("journal writer interrupted", e);
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Read all valid records, cut off anything after the last one and position the channel
+     * for appending.
+     */
+    private void replay(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < FILE_HEADER_SIZE) {
+            /* New file, or crashed while creating it. */
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            channel.truncate(0);
+            channel.write(header, 0);
+            channel.force(true);
+            channel.position(FILE_HEADER_SIZE);
+            if (mReplayListener != null)
+                mReplayListener.onReplayFinished(0, size);
+            return;
+        }
+
+        channel.position(0);
+        InputStream stream = new BufferedInputStream(Channels.newInputStream(channel), INITIAL_BUFFER_SIZE);
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC || in.readInt() != VERSION)
+            throw new IOException("not a scan journal: " + mFile);
+
+        long valid = FILE_HEADER_SIZE;
+        int records = 0;
+        byte[] payload = new byte[256];
+        CRC32 crc = new CRC32();
+        try {
+            while (valid + RECORD_HEADER_SIZE <= size) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length < 20 || length > MAX_RECORD_SIZE || valid + RECORD_HEADER_SIZE + length > size)
+                    break;
+                if (payload.length < length)
+                    payload = new byte[length];
+                in.readFully(payload, 0, length);
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum)
+                    break;
+                Record record = decode(ByteBuffer.wrap(payload, 0, length));
+                if (record == null)
+                    break;
+                valid += RECORD_HEADER_SIZE + length;
+                records++;
+                if (mReplayListener != null)
+                    mReplayListener.onRecord(record);
+            }
+        } catch (EOFException e) {
+            /* Torn record at the end */
+        }
+
+        if (valid < size) {
+            channel.truncate(valid);
+            channel.force(true);
+        }
+        channel.position(valid);
+        if (mReplayListener != null)
+            mReplayListener.onReplayFinished(records, size - valid);
+    }
+
+    /** Decode a record payload, or return {@code null} if it is malformed. */
+    private static Record decode(ByteBuffer buffer) {
+        long session = buffer.getLong();
+        long time = buffer.getLong();
+        int formatLength = buffer.getShort() & 0xffff;
+        if (formatLength + 2 > buffer.remaining())
+            return null;
+        String format = new String(buffer.array(), buffer.position(), formatLength, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + formatLength);
+        int codeLength = buffer.getShort() & 0xffff;
+        if (codeLength != buffer.remaining())
+            return null;
+        String code = new String(buffer.array(), buffer.position(), codeLength, StandardCharsets.UTF_8);
+        return new Record(session, time, format, code);
+    }
+
+}
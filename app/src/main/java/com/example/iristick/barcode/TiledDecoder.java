@@ -0,0 +1,155 @@
+package com.example.iristick.barcode;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Decodes all barcodes in a frame by splitting it into overlapping tiles.
+ *
+ * A single decode pass finds one barcode, and each barcode found costs several more passes
+ * to search around it.  To find every label in view at a bounded cost per pass, the frame is
+ * split into a grid of tiles, each extended by an overlap so that a barcode cut by a tile
+ * border is still whole in a neighbouring tile.  Every tile is searched for several
+ * barcodes, so labels next to each other in one tile are all found.  The whole frame is
+ * decoded as well, for barcodes larger than a tile.  Tiles are decoded in parallel on a
+ * fork-join pool, each worker with its own {@link BarcodeDecoder}, and the results are
+ * merged, removing the barcodes found several times.
+ *
+ * Like {@link BarcodeDecoder}, this class does not depend on the Android framework.
+ * {@link #decode} can be called from several threads.
+ */
+public final class TiledDecoder {
+
+    /**
+     * Slack between two detections of the same barcode, as a fraction of their size.
+     * Covers the bar height of EAN and UPC codes, about 70% of their width.
+     */
+    private static final float MERGE_TOLERANCE = 0.75f;
+
+    private final ForkJoinPool mPool;
+    private final int mColumns;
+    private final int mRows;
+    private final float mOverlap;
+    private final ThreadLocal<BarcodeDecoder> mDecoders;
+
+    /**
+     * @param pool Pool on which to decode the tiles.
+     * @param columns Number of tile columns.
+     * @param rows Number of tile rows.
+     * @param overlap Extension of each tile on every side, as a fraction of the tile size.
+     * @param formats Formats to look for, or {@code null} for all supported formats.
+     */
+    public TiledDecoder(ForkJoinPool pool, int columns, int rows, float overlap,
+                        Collection<BarcodeFormat> formats) {
+        mPool = pool;
+        mColumns = columns;
+        mRows = rows;
+        mOverlap = overlap;
+        mDecoders = ThreadLocal.withInitial(() -> new BarcodeDecoder(formats));
+    }
+
+    /**
+     * Decode all barcodes of an image.
+     * @param luma Luminance samples, one byte per pixel, row after row without padding.
+     * @return The barcodes found, with their bounding boxes in image coordinates.
+     */
+    public List<DetectedBarcode> decode(byte[] luma, int width, int height) {
+        /* Tile 0 is the whole image. */
+        int tiles = 1 + mColumns * mRows;
+        int[] bounds = new int[tiles * 4];
+        bounds[2] = width;
+        bounds[3] = height;
+        int tileWidth = width / mColumns;
+        int tileHeight = height / mRows;
+        int marginX = (int) (tileWidth * mOverlap);
+        int marginY = (int) (tileHeight * mOverlap);
+        for (int row = 0; row < mRows; row++) {
+            for (int column = 0; column < mColumns; column++) {
+                int i = 4 * (1 + row * mColumns + column);
+                bounds[i] = Math.max(0, column * tileWidth - marginX);
+                bounds[i + 1] = Math.max(0, row * tileHeight - marginY);
+                bounds[i + 2] = Math.min(width, (column + 1) * tileWidth + marginX);
+                bounds[i + 3] = Math.min(height, (row + 1) * tileHeight + marginY);
+            }
+        }
+
+        List<DetectedBarcode> found = mPool.invoke(new TileTask(luma, width, height, bounds, 0, tiles));
+        return DetectedBarcode.merge(found, MERGE_TOLERANCE);
+    }
+
+    /** Decodes a range of tiles, splitting it in halves until a single tile is left. */
+    private final class TileTask extends RecursiveTask<List<DetectedBarcode>> {
+        private final byte[] mLuma;
+        private final int mWidth;
+        private final int mHeight;
+        private final int[] mBounds;
+        private final int mFrom;
+        private final int mTo;
+
+        TileTask(byte[] luma, int width, int height, int[] bounds, int from, int to) {
+            mLuma = luma;
+            mWidth = width;
+            mHeight = height;
+            mBounds = bounds;
+            mFrom = from;
+            mTo = to;
+        }
+
+        @Override
+        protected List<DetectedBarcode> compute() {
+            if (mTo - mFrom > 1) {
+                int mid = (mFrom + mTo) >>> 1;
+                TileTask first = new TileTask(mLuma, mWidth, mHeight, mBounds, mFrom, mid);
+                first.fork();
+                List<DetectedBarcode> second = new TileTask(mLuma, mWidth, mHeight, mBounds, mid, mTo).compute();
+                List<DetectedBarcode> result = new ArrayList<>(first.join());
+                result.addAll(second);
+                return result;
+            }
+
+            int left = mBounds[4 * mFrom];
+            int top = mBounds[4 * mFrom + 1];
+            int right = mBounds[4 * mFrom + 2];
+            int bottom = mBounds[4 * mFrom + 3];
+            List<Result> results = mDecoders.get().decodeMultiple(mLuma, mWidth, mHeight,
+                    left, top, right - left, bottom - top);
+            List<DetectedBarcode> found = new ArrayList<>(results.size());
+            for (Result result : results)
+                found.add(locate(result, left, top));
+            return found;
+        }
+    }
+
+    /** Compute the bounding box of a result found in the tile at the given offset. */
+    private static DetectedBarcode locate(Result result, int offsetX, int offsetY) {
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        ResultPoint[] points = result.getResultPoints();
+        if (points != null) {
+            for (ResultPoint point : points) {
+                if (point == null)
+                    continue;
+                minX = Math.min(minX, point.getX());
+                minY = Math.min(minY, point.getY());
+                maxX = Math.max(maxX, point.getX());
+                maxY = Math.max(maxY, point.getY());
+            }
+        }
+        if (minX > maxX) {
+            /* No location reported */
+            minX = maxX = minY = maxY = 0;
+        }
+        /* Right and bottom are exclusive. */
+        return new DetectedBarcode(result.getText(), result.getBarcodeFormat(),
+                offsetX + (int) minX, offsetY + (int) minY,
+                offsetX + (int) maxX + 1, offsetY + (int) maxY + 1);
+    }
+
+}
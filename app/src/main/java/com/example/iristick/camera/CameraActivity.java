@@ -19,8 +19,11 @@ import com.iristick.smartglass.support.app.IristickApp;
  * The stream can be zoomed in with pinch-and-zoom and moved by dragging the image.
  * Click on the info text to reset the settings.
  * For the zoom camera, a tap on the image triggers auto-focus.
+ * Say "instant replay" to keep the last seconds of the zoom camera in memory,
+ * and "save replay" to save them together with the following seconds.
  *
  * Most functionality is implemented in {@link CameraFragment}.
+ * Both cameras are opened in parallel through a {@link MultiCameraSession}.
  */
 public class CameraActivity extends BaseActivity {
 
@@ -33,6 +36,8 @@ public class CameraActivity extends BaseActivity {
         ZOOM_IN(R.string.camera_voice_zoom_in),
         ZOOM_OUT(R.string.camera_voice_zoom_out),
         RESET(R.string.camera_voice_reset),
+        REPLAY(R.string.camera_voice_replay),
+        SAVE(R.string.camera_voice_save),
         ;
 
         static final VoiceCommand[] VALUES = VoiceCommand.values();
@@ -45,10 +50,15 @@ public class CameraActivity extends BaseActivity {
         }
     }
 
+    private MultiCameraSession mCameraSession;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.camera_activity);
+        mCameraSession = new MultiCameraSession(
+                (CameraFragment) getFragmentManager().findFragmentById(R.id.camera0),
+                (CameraFragment) getFragmentManager().findFragmentById(R.id.camera1));
 
         /* To open a camera, the app needs the Android CAMERA permission. */
         if (checkSelfPermission(Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED)
@@ -70,6 +80,16 @@ public class CameraActivity extends BaseActivity {
         }
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+
+        /* Start opening both cameras before the fragments ask for them. */
+        Headset headset = IristickApp.getHeadset();
+        if (headset != null && checkSelfPermission(Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED)
+            mCameraSession.open(headset);
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
@@ -111,6 +131,15 @@ public class CameraActivity extends BaseActivity {
         case RESET:
             fragment.resetSettings();
             break;
+        case REPLAY:
+            fragment.setReplayEnabled(!fragment.isReplayEnabled());
+            Toast.makeText(this, fragment.isReplayEnabled() ? R.string.camera_replay_on : R.string.camera_replay_off,
+                    Toast.LENGTH_SHORT).show();
+            break;
+        case SAVE:
+            if (!fragment.saveReplay())
+                Toast.makeText(this, R.string.camera_replay_unavailable, Toast.LENGTH_SHORT).show();
+            break;
         }
     };
 }
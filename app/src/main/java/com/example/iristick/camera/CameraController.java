@@ -0,0 +1,313 @@
+package com.example.iristick.camera;
+
+import android.graphics.Point;
+import android.os.Handler;
+import android.view.Surface;
+
+import com.iristick.smartglass.core.camera.CameraDevice;
+import com.iristick.smartglass.core.camera.CaptureRequest;
+import com.iristick.smartglass.core.camera.CaptureSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Controls the capture session and settings of one camera from the camera thread.
+ *
+ * Callers on any thread submit commands, which are put in a lock-free queue and never block.
+ * The camera thread drains the queue in one go, merging redundant commands with a
+ * {@link CommandMerger}: any number of zoom, pan and reset commands result in a single
+ * repeating request, and any number of auto-focus triggers in a single one-shot capture.
+ * The capture session and the settings are only ever touched from the camera thread.
+ *
+ * After every change, an immutable {@link State} is published to the listener.
+ *
+ * Commands are executed before any action posted to the camera handler after submitting them.
+ * Such an action can thus release the outputs of a session closed or replaced by a command.
+ */
+class CameraController {
+
+    /** Snapshot of the controller state. */
+    static final class State {
+        /** True if a capture session is configured and streaming. */
+        final boolean configured;
+        /** True if the last capture session could not be configured. */
+        final boolean configureFailed;
+        final float zoom;
+        final int offsetX;
+        final int offsetY;
+        /** Number of commands received. */
+        final long commandCount;
+        /** Number of requests sent to the camera. */
+        final long requestCount;
+
+        State(boolean configured, boolean configureFailed, float zoom, int offsetX, int offsetY,
+              long commandCount, long requestCount) {
+            this.configured = configured;
+            this.configureFailed = configureFailed;
+            this.zoom = zoom;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+            this.commandCount = commandCount;
+            this.requestCount = requestCount;
+        }
+    }
+
+    interface Listener {
+        /** Called on the listener handler after the state has changed. */
+        void onStateChanged(State state);
+    }
+
+    private static final int CMD_CONFIGURE = 0;
+    private static final int CMD_CLOSE = 1;
+    private static final int CMD_ADJUST = 2;
+    private static final int CMD_RESET = 3;
+    private static final int CMD_TRIGGER_AF = 4;
+
+    private static final class Command {
+        final int type;
+        final CameraDevice device;
+        final List<Surface> outputs;
+        final float zoomFactor;
+        final int dx;
+        final int dy;
+
+        Command(int type, CameraDevice device, List<Surface> outputs, float zoomFactor, int dx, int dy) {
+            this.type = type;
+            this.device = device;
+            this.outputs = outputs;
+            this.zoomFactor = zoomFactor;
+            this.dx = dx;
+            this.dy = dy;
+        }
+    }
+
+    private final CameraRegistry.CameraInfo mInfo;
+    private final Handler mHandler;
+    private final Listener mListener;
+    private final Handler mListenerHandler;
+    private final ConcurrentLinkedQueue<Command> mQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean mDrainScheduled = new AtomicBoolean();
+    private volatile State mState = new State(false, false, 1.0f, 0, 0, 0, 0);
+    private volatile boolean mReleased;
+
+    /* Only accessed on the camera thread */
+    private CameraDevice mDevice;
+    private List<Surface> mOutputs;
+    private CaptureSession mSession;
+    private final CommandMerger mMerger;
+    private boolean mConfigureFailed;
+    private final Point mOffset = new Point(0, 0);
+    private long mCommandCount;
+    private long mRequestCount;
+
+    /**
+     * @param handler Handler of the camera thread.
+     * @param listenerHandler Handler on which to call the listener.
+     */
+    CameraController(CameraRegistry.CameraInfo info, Handler handler, Listener listener,
+                     Handler listenerHandler) {
+        mInfo = info;
+        mHandler = handler;
+        mListener = listener;
+        mListenerHandler = listenerHandler;
+        mMerger = new CommandMerger(info.maxZoom, info.maxOffset.x, info.maxOffset.y, info.hasAutoFocus);
+    }
+
+    /** Latest published state. */
+    State getState() {
+        return mState;
+    }
+
+    /** (Re)create the capture session with the given outputs. */
+    void configure(CameraDevice device, List<Surface> outputs) {
+        submit(new Command(CMD_CONFIGURE, device, new ArrayList<>(outputs), 1.0f, 0, 0));
+    }
+
+    /** Close the capture session. */
+    void close() {
+        submit(new Command(CMD_CLOSE, null, null, 1.0f, 0, 0));
+    }
+
+    /**
+     * Close the capture session and stop notifying the listener.
+     * Must be called on the listener thread; no listener call happens after this returns.
+     */
+    void release() {
+        mReleased = true;
+        close();
+    }
+
+    /** Multiply the zoom factor and move the image offset. */
+    void adjust(float zoomFactor, int dx, int dy) {
+        submit(new Command(CMD_ADJUST, null, null, zoomFactor, dx, dy));
+    }
+
+    void reset() {
+        submit(new Command(CMD_RESET, null, null, 1.0f, 0, 0));
+    }
+
+    void triggerAF() {
+        submit(new Command(CMD_TRIGGER_AF, null, null, 1.0f, 0, 0));
+    }
+
+    private void submit(Command command) {
+        mQueue.offer(command);
+        /* Either a drain is already pending on the handler, or it is posted here. */
+        if (mDrainScheduled.compareAndSet(false, true))
+            mHandler.post(mDrain);
+    }
+
+    private final Runnable mDrain = () -> {
+        mDrainScheduled.set(false);
+        mMerger.begin();
+        boolean stateChanged = false;
+        Command command;
+        while ((command = mQueue.poll()) != null) {
+            mCommandCount++;
+            stateChanged = true;
+            switch (command.type) {
+            case CMD_CONFIGURE:
+                closeSession();
+                mDevice = command.device;
+                mOutputs = command.outputs;
+                mConfigureFailed = false;
+                /* The new session gets the current settings once configured. */
+                mDevice.createCaptureSession(mOutputs, new SessionListener(mMerger.configure()), mHandler);
+                break;
+            case CMD_CLOSE:
+                mMerger.close();
+                closeSession();
+                mDevice = null;
+                mOutputs = null;
+                break;
+            case CMD_ADJUST:
+                mMerger.adjust(command.zoomFactor, command.dx, command.dy, mSession != null);
+                break;
+            case CMD_RESET:
+                mMerger.reset(mSession != null);
+                break;
+            case CMD_TRIGGER_AF:
+                mMerger.triggerAF(mSession != null);
+                break;
+            }
+        }
+
+        if (mMerger.isSettingsChanged())
+            setRepeatingRequest();
+        if (mMerger.isTriggerAF()) {
+            /*
+             * Note: CONTROL_AF_TRIGGER_START should only be specified for one frame.  Hence, the
+             * use of capture() here.
+             */
+            mSession.capture(createCaptureRequest(true), null, null);
+            mRequestCount++;
+        }
+        if (stateChanged)
+            publish();
+    };
+
+    private void closeSession() {
+        if (mSession != null) {
+            mSession.close();
+            mSession = null;
+        }
+    }
+
+    private void setRepeatingRequest() {
+        mSession.setRepeatingRequest(createCaptureRequest(false), null, null);
+        mRequestCount++;
+    }
+
+    /**
+     * Create a capture request with all current settings applied.
+     * @param triggerAF True if the request should trigger auto focus.
+     */
+    private CaptureRequest createCaptureRequest(boolean triggerAF) {
+        /*
+         * Create a builder, specifying the intended use through the template.
+         * This sets some sane defaults for our use case.
+         */
+        CaptureRequest.Builder builder = mDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+
+        /* Add target outputs. */
+        for (Surface output : mOutputs)
+            builder.addTarget(output);
+
+        /* Set parameters. */
+        mOffset.set(mMerger.getOffsetX(), mMerger.getOffsetY());
+        builder.set(CaptureRequest.SCALER_ZOOM, mMerger.getZoom());
+        builder.set(CaptureRequest.SCALER_OFFSET, mOffset);
+        if (mInfo.hasAutoFocus) {
+            builder.set(CaptureRequest.CONTROL_AF_MODE,
+                    mInfo.hasLaserAssistedAF ? CaptureRequest.CONTROL_AF_MODE_LASER_ASSISTED
+                                             : CaptureRequest.CONTROL_AF_MODE_AUTO);
+            if (triggerAF)
+                builder.set(CaptureRequest.CONTROL_AF_TRIGGER, CaptureRequest.CONTROL_AF_TRIGGER_START);
+        }
+
+        /* Build the capture request. */
+        return builder.build();
+    }
+
+    private void publish() {
+        State state = new State(mSession != null, mConfigureFailed, mMerger.getZoom(),
+                mMerger.getOffsetX(), mMerger.getOffsetY(), mCommandCount, mRequestCount);
+        mState = state;
+        mListenerHandler.post(() -> {
+            if (!mReleased)
+                mListener.onStateChanged(state);
+        });
+    }
+
+    private final class SessionListener implements CaptureSession.Listener {
+        private final int mSessionGeneration;
+
+        SessionListener(int generation) {
+            mSessionGeneration = generation;
+        }
+
+        @Override
+        public void onConfigured(CaptureSession session) {
+            /* Ignore sessions superseded by a later configure or close command. */
+            if (!mMerger.isCurrent(mSessionGeneration)) {
+                session.close();
+                return;
+            }
+            mSession = session;
+            setRepeatingRequest();
+            publish();
+        }
+
+        @Override
+        public void onConfigureFailed(CaptureSession session, int error) {
+            if (!mMerger.isCurrent(mSessionGeneration))
+                return;
+            mConfigureFailed = true;
+            publish();
+        }
+
+        @Override
+        public void onClosed(CaptureSession session) {
+            if (mSession == session) {
+                mSession = null;
+                publish();
+            }
+        }
+
+        @Override
+        public void onActive(CaptureSession session) {
+        }
+
+        @Override
+        public void onCaptureQueueEmpty(CaptureSession session) {
+        }
+
+        @Override
+        public void onReady(CaptureSession session) {
+        }
+    }
+
+}
@@ -9,24 +9,32 @@ import android.graphics.Matrix;
 import android.graphics.Point;
 import android.graphics.SurfaceTexture;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.os.Environment;
 import android.util.AttributeSet;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Surface;
 import android.view.TextureView;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import com.example.iristick.R;
+import com.example.iristick.util.FrameTimingRecorder;
 import com.iristick.smartglass.core.Headset;
-import com.iristick.smartglass.core.camera.CameraCharacteristics;
 import com.iristick.smartglass.core.camera.CameraDevice;
-import com.iristick.smartglass.core.camera.CaptureRequest;
-import com.iristick.smartglass.core.camera.CaptureSession;
 import com.iristick.smartglass.support.app.IristickApp;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Fragment handling one camera.
@@ -35,25 +43,59 @@ import java.util.List;
  */
 public class CameraFragment extends Fragment {
 
+    private static final String TAG = "CameraFragment";
+
     private int mCameraIndex;
+    private String mCameraId;
     private CameraPreview mPreview;
     private TextView mInfo;
 
     private SurfaceTexture mSurfaceTexture;
     private Surface mSurface;
     private CameraDevice mCamera;
-    private CaptureSession mCaptureSession;
+    /* Camera thread of the last camera used, kept after onStop() to release its outputs */
+    private Handler mCameraHandler;
+    /* True from the open request until the camera is given back to the registry */
+    private boolean mCameraRequested;
+    private boolean mFirstFrameReported;
 
-    /* Camera characteristics */
-    private boolean mHasAutoFocus;
-    private boolean mHasLaserAssistedAF;
-    private float mMaxZoom;
-    private Point mMaxOffset;
+    /* Capture session and settings, owned by the controller on the camera thread */
+    private CameraController mController;
+    private CameraController.State mState;
 
     /* Current settings */
     private Point mFrameSize;
-    private float mZoom = 1.0f;
-    private Point mOffset = new Point(0, 0);
+
+    /* Stream size selection */
+    private static final float TARGET_FPS = 30.0f;
+    private static final long SIZE_POLICY_INTERVAL_MILLIS = 1000;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private StreamSizePolicy mSizePolicy;
+
+    /* Frame timing */
+    private final FrameTimingRecorder mFrameTiming = new FrameTimingRecorder();
+    private boolean mShowFrameTiming;
+
+    /* Frame analysis */
+    private static final int ANALYSIS_QUEUE_DEPTH = 2;
+    private static final int ANALYSIS_POOL_CAPACITY = 8;
+    private final FramePipeline mFramePipeline = new FramePipeline(ANALYSIS_QUEUE_DEPTH, ANALYSIS_POOL_CAPACITY);
+    private FrameReader mFrameReader;
+
+    /* Focus monitoring, only for cameras with auto-focus */
+    private FocusMonitor mFocusMonitor;
+
+    /* Instant replay */
+    private static final long REPLAY_PRE_ROLL_US = 10_000_000;
+    private static final long REPLAY_POST_ROLL_US = 5_000_000;
+    private static final int REPLAY_MAX_FRAMES = 1024;
+    private final ExecutorService mReplayWriter = Executors.newSingleThreadExecutor();
+    private boolean mReplayEnabled;
+    private ReplayEncoder mReplayEncoder;
+    private ReplayRecorder mReplayRecorder;
+
+    /* Gesture coalescing */
+    private final CaptureRequestCoalescer mCoalescer = new CaptureRequestCoalescer(this::applySettings);
 
     @Override
     public void onInflate(Context context, AttributeSet attrs, Bundle savedInstanceState) {
@@ -85,6 +127,10 @@ public class CameraFragment extends Fragment {
 
         mInfo = view.findViewById(R.id.info);
         mInfo.setOnClickListener(v -> resetSettings());
+        mInfo.setOnLongClickListener(v -> {
+            setFrameTimingVisible(!mShowFrameTiming);
+            return true;
+        });
 
         return view;
     }
@@ -100,65 +146,195 @@ public class CameraFragment extends Fragment {
             return;
         }
 
-        /* Find camera. */
-        String[] cameras = headset.getCameraIdList();
-        if (mCameraIndex >= cameras.length ||
+        /* Find camera, using the characteristics cached by the registry. */
+        CameraRegistry registry = CameraRegistry.getInstance();
+        CameraRegistry.CameraInfo info = registry.getCameraInfo(headset, mCameraIndex);
+        if (info == null ||
                 getActivity().checkSelfPermission(Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
             mInfo.setText(R.string.camera_not_available);
             return;
         }
-        String cameraId = cameras[mCameraIndex];
-        CameraCharacteristics characteristics = headset.getCameraCharacteristics(cameraId);
-
-        /* Find out smallest frame size. */
-        CameraCharacteristics.StreamConfigurationMap streams = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-        Point[] sizes = streams.getSizes();
-        mFrameSize = sizes[sizes.length - 1];
-
-        /* Check whether this camera has auto focus control. */
-        mHasAutoFocus = false;
-        mHasLaserAssistedAF = false;
-        if (characteristics.containsKey(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES)) {
-            int[] afModes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
-            for (int afMode : afModes) {
-                switch (afMode) {
-                case CaptureRequest.CONTROL_AF_MODE_AUTO:
-                    mHasAutoFocus = true;
-                    break;
-                case CaptureRequest.CONTROL_AF_MODE_LASER_ASSISTED:
-                    mHasLaserAssistedAF = true;
-                    break;
-                }
-            }
+        mCameraId = info.id;
+        mCameraHandler = registry.getCameraHandler(mCameraId);
+        mController = new CameraController(info, mCameraHandler, mControllerListener, mHandler);
+        mState = mController.getState();
+
+        /* Watch the sharpness of the frames to re-focus when needed. */
+        if (info.hasAutoFocus && mFocusMonitor == null) {
+            mFocusMonitor = new FocusMonitor((score, threshold) -> mHandler.post(mAutoFocusAction));
+            addFrameAnalyzer("focus", mFocusMonitor);
         }
 
-        /* Get the maximum digital zoom level. */
-        if (characteristics.containsKey(CameraCharacteristics.SCALER_MAX_ZOOM))
-            mMaxZoom = characteristics.get(CameraCharacteristics.SCALER_MAX_ZOOM);
-        else
-            mMaxZoom = 1.0f;
-
-        /* Get the maximum frame offset. */
-        if (characteristics.containsKey(CameraCharacteristics.SCALER_MAX_OFFSET))
-            mMaxOffset = characteristics.get(CameraCharacteristics.SCALER_MAX_OFFSET);
-        else
-            mMaxOffset = new Point(0, 0);
-
-        /* Open the camera. */
-        headset.openCamera(cameraId, mCameraListener, null);
+        /* Select the initial frame size from the available stream sizes. */
+        List<StreamSizePolicy.Size> sizes = new ArrayList<>();
+        for (Point size : info.sizes)
+            sizes.add(new StreamSizePolicy.Size(size.x, size.y));
+        mSizePolicy = new StreamSizePolicy(sizes, TARGET_FPS);
+        /* Before the first layout, the size is selected when the preview surface is available. */
+        mFrameSize = null;
+        updateFrameSize(mPreview.getWidth(), mPreview.getHeight(), 0);
+
+        /* Open the camera, or take over the one kept open by the registry. */
+        mFirstFrameReported = false;
+        mCameraRequested = true;
+        registry.openCamera(mCameraId, mCameraListener, null);
+
+        /* Periodically re-evaluate the stream size. */
+        mFrameTiming.reset();
+        mHandler.postDelayed(mSizePolicyAction, SIZE_POLICY_INTERVAL_MILLIS);
     }
 
     @Override
     public void onStop() {
-        /* Close the camera as soon as possible. */
-        if (mCamera != null) {
-            mCamera.close();
-            mCaptureSession = null;
-            mCamera = null;
+        mHandler.removeCallbacks(mSizePolicyAction);
+        mCoalescer.cancel();
+
+        /*
+         * Stop streaming as soon as possible, and give the camera back to the registry,
+         * which keeps it open for a while in case it is needed again soon.
+         * Both run on the camera thread, in that order.
+         */
+        if (mController != null) {
+            mController.release();
+            mController = null;
+        }
+        /* Release even if the camera is still opening, so the registry does not keep it for us. */
+        if (mCameraRequested) {
+            CameraRegistry.getInstance().releaseCamera(mCameraId);
+            mCameraRequested = false;
         }
+        mCamera = null;
+        /* Close the outputs once the session released above no longer uses them. */
+        if (mFrameReader != null) {
+            afterSessionChange(mFrameReader::close);
+            mFrameReader = null;
+        }
+        closeReplayEncoder();
         super.onStop();
     }
 
+    @Override
+    public void onDestroy() {
+        mFramePipeline.shutdown();
+        mReplayWriter.shutdown();
+        super.onDestroy();
+    }
+
+    /** Index of the camera shown by this fragment. */
+    public int getCameraIndex() {
+        return mCameraIndex;
+    }
+
+    /**
+     * Register an analyzer receiving the frames of this camera on a worker thread.
+     * A second camera output is added to the capture session when the first analyzer is
+     * registered.
+     * @param name Name of the analyzer, as reported in the pipeline statistics.
+     */
+    public void addFrameAnalyzer(String name, FrameAnalyzer analyzer) {
+        boolean reconfigure = !mFramePipeline.hasAnalyzers();
+        mFramePipeline.addAnalyzer(name, analyzer);
+        if (reconfigure)
+            createCaptureSession();
+    }
+
+    /**
+     * Unregister an analyzer added with {@link #addFrameAnalyzer}.
+     * The frame output is removed from the capture session when no analyzers are left.
+     */
+    public void removeFrameAnalyzer(FrameAnalyzer analyzer) {
+        mFramePipeline.removeAnalyzer(analyzer);
+        if (!mFramePipeline.hasAnalyzers())
+            createCaptureSession();
+    }
+
+    /** Frame analysis pipeline of this camera, e.g. to query its statistics. */
+    public FramePipeline getFramePipeline() {
+        return mFramePipeline;
+    }
+
+    /**
+     * Enable or disable instant replay.
+     * When enabled, the stream is encoded continuously and the last seconds are kept in memory,
+     * ready to be saved with {@link #saveReplay()}.
+     */
+    public void setReplayEnabled(boolean enabled) {
+        if (enabled == mReplayEnabled)
+            return;
+        mReplayEnabled = enabled;
+        createCaptureSession();
+    }
+
+    public boolean isReplayEnabled() {
+        return mReplayEnabled;
+    }
+
+    /**
+     * Save the buffered seconds of video and the following seconds to a file.
+     * The result is reported with a toast.
+     * @return False if instant replay is not running or a replay is already being saved.
+     */
+    public boolean saveReplay() {
+        ReplayEncoder encoder = mReplayEncoder;
+        ReplayRecorder recorder = mReplayRecorder;
+        if (encoder == null || recorder.isSaving())
+            return false;
+
+        File dir = getActivity().getExternalFilesDir(Environment.DIRECTORY_MOVIES);
+        File file = new File(dir, "replay-" + mCameraId + "-" + System.currentTimeMillis() + ".mp4");
+        ReplayRecorder.Sink sink;
+        try {
+            sink = encoder.createSink(file);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to create replay file", e);
+            return false;
+        }
+        if (sink == null)
+            return false;
+
+        Context context = getActivity().getApplicationContext();
+        boolean started = recorder.trigger(REPLAY_POST_ROLL_US, sink, (frames, error) -> mHandler.post(() -> {
+            if (error != null)
+                Log.e(TAG, "Failed to save replay", error);
+            Toast.makeText(context, error == null ? context.getString(R.string.camera_replay_saved, file.getName())
+                                                  : context.getString(R.string.camera_replay_failed),
+                    Toast.LENGTH_SHORT).show();
+        }));
+        if (!started) {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to close replay file", e);
+            }
+            file.delete();
+        }
+        return started;
+    }
+
+    /**
+     * Run an action on the camera thread once the commands submitted to the controller so far
+     * have been executed, i.e. once a session closed or replaced by them no longer uses its
+     * outputs.  Run it right away if no camera was used.
+     */
+    private void afterSessionChange(Runnable action) {
+        if (mCameraHandler != null)
+            mCameraHandler.post(action);
+        else
+            action.run();
+    }
+
+    /**
+     * Drop the replay encoder and close it once the session no longer uses its surface.
+     * Must be called after submitting the command which removes the surface from the session.
+     */
+    private void closeReplayEncoder() {
+        if (mReplayEncoder != null) {
+            afterSessionChange(mReplayEncoder::close);
+            mReplayEncoder = null;
+            mReplayRecorder = null;
+        }
+    }
+
     /**
      * Set up the TextureView transform matrix to preserve the image aspect ratio.
      * Do nothing if the frame size is unknown.
@@ -181,7 +357,7 @@ public class CameraFragment extends Fragment {
      * the texture surface are ready.
      */
     private void createCaptureSession() {
-        if (mCamera == null || mSurface == null)
+        if (mController == null || mCamera == null || mSurface == null || mFrameSize == null)
             return;
 
         /* Set the desired camera resolution. */
@@ -189,107 +365,219 @@ public class CameraFragment extends Fragment {
         setupTransform(mPreview);
 
         /* Create the capture session. */
-        mCaptureSession = null;
+        mFrameTiming.reset();
         List<Surface> outputs = new ArrayList<>();
         outputs.add(mSurface);
-        mCamera.createCaptureSession(outputs, mCaptureSessionListener, null);
-    }
 
-    /**
-     * Create a capture request with all current settings applied.
-     * @param triggerAF True if the request should trigger auto focus (see {@link #triggerAF()}).
-     */
-    private CaptureRequest createCaptureRequest(boolean triggerAF) {
-        /*
-         * Create a builder, specifying the intended use through the template.
-         * This sets some sane defaults for our use case.
-         */
-        CaptureRequest.Builder builder = mCamera.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
-
-        /* Add target output. */
-        builder.addTarget(mSurface);
-
-        /* Set parameters. */
-        builder.set(CaptureRequest.SCALER_ZOOM, mZoom);
-        builder.set(CaptureRequest.SCALER_OFFSET, mOffset);
-        if (mHasAutoFocus) {
-            builder.set(CaptureRequest.CONTROL_AF_MODE,
-                    mHasLaserAssistedAF ? CaptureRequest.CONTROL_AF_MODE_LASER_ASSISTED
-                                        : CaptureRequest.CONTROL_AF_MODE_AUTO);
-            if (triggerAF)
-                builder.set(CaptureRequest.CONTROL_AF_TRIGGER, CaptureRequest.CONTROL_AF_TRIGGER_START);
+        /* Add the analysis output at the same resolution, if anyone is interested. */
+        FrameReader oldReader = null;
+        if (mFrameReader != null && (!mFramePipeline.hasAnalyzers() ||
+                mFrameReader.getWidth() != mFrameSize.x || mFrameReader.getHeight() != mFrameSize.y)) {
+            oldReader = mFrameReader;
+            mFrameReader = null;
         }
-
-        /* Build the capture request. */
-        return builder.build();
+        if (mFrameReader == null && mFramePipeline.hasAnalyzers())
+            mFrameReader = new FrameReader(mFramePipeline, mFrameSize.x, mFrameSize.y);
+        if (mFrameReader != null)
+            outputs.add(mFrameReader.getSurface());
+
+        /* Add the replay encoder input.  Its buffer is sized for twice the saved duration. */
+        ReplayEncoder oldEncoder = null;
+        if (mReplayEncoder != null && (!mReplayEnabled ||
+                mReplayEncoder.getWidth() != mFrameSize.x || mReplayEncoder.getHeight() != mFrameSize.y)) {
+            oldEncoder = mReplayEncoder;
+            mReplayEncoder = null;
+            mReplayRecorder = null;
+        }
+        if (mReplayEncoder == null && mReplayEnabled) {
+            long bytes = (long) ReplayEncoder.getBitRate(mFrameSize.x, mFrameSize.y) / 8
+                    * (REPLAY_PRE_ROLL_US + REPLAY_POST_ROLL_US) / 1_000_000 * 2;
+            ReplayBuffer buffer = new ReplayBuffer((int) bytes, REPLAY_MAX_FRAMES, REPLAY_PRE_ROLL_US);
+            mReplayRecorder = new ReplayRecorder(buffer, mReplayWriter);
+            try {
+                mReplayEncoder = new ReplayEncoder(mReplayRecorder, mFrameSize.x, mFrameSize.y);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to create replay encoder", e);
+                mReplayRecorder = null;
+            }
+        }
+        if (mReplayEncoder != null)
+            outputs.add(mReplayEncoder.getSurface());
+
+        mController.configure(mCamera, outputs);
+        /* The old session streams into the previous outputs until the new one replaced it. */
+        if (oldReader != null)
+            afterSessionChange(oldReader::close);
+        if (oldEncoder != null)
+            afterSessionChange(oldEncoder::close);
     }
 
-    /**
-     * Start the stream by setting a repeating capture request.
-     * Do nothing if the capture session is not configured.
-     */
-    private void setCapture() {
-        if (mCaptureSession == null || mSurface == null)
+    /** Update info text. */
+    private void updateInfo() {
+        if (mState.configureFailed) {
+            mInfo.setText(R.string.camera_error_configure);
             return;
-        mCaptureSession.setRepeatingRequest(createCaptureRequest(false), null, null);
-
-        /* Update info text. */
+        }
         StringBuilder str = new StringBuilder();
-        if (mZoom > 1.0f) {
-            str.append(getString(R.string.camera_info_zoom, (int) mZoom));
+        if (mState.zoom > 1.0f) {
+            str.append(getString(R.string.camera_info_zoom, (int) mState.zoom));
         }
-        if (mOffset.x != 0 || mOffset.y != 0) {
+        if (mState.offsetX != 0 || mState.offsetY != 0) {
             if (str.length() > 0)
                 str.append("\n");
-            str.append(getString(R.string.camera_info_offset, mOffset.x, mOffset.y));
+            str.append(getString(R.string.camera_info_offset, mState.offsetX, mState.offsetY));
+        }
+        if (mShowFrameTiming) {
+            if (str.length() > 0)
+                str.append("\n");
+            str.append(getString(R.string.camera_info_timing, mFrameTiming.getFps(),
+                    getFrameIntervalMillis(0.50), getFrameIntervalMillis(0.95),
+                    getFrameIntervalMillis(0.99), mFrameTiming.getStallCount()));
         }
         mInfo.setText(str.toString());
     }
 
     /**
      * Trigger auto-focus.
-     * Do nothing if the capture session is not configured or the camera does not support
+     * Ignored if the capture session is not configured or the camera does not support
      * auto-focus.
      */
     public void triggerAF() {
-        if (mCaptureSession == null || mSurface == null || !mHasAutoFocus)
-            return;
-        /*
-         * Note: CONTROL_AF_TRIGGER_START should only be specified for one frame.  Hence, the use
-         * of capture() here.
-         */
-        mCaptureSession.capture(createCaptureRequest(true), null, null);
+        if (mController != null)
+            mController.triggerAF();
+        if (mFocusMonitor != null)
+            mFocusMonitor.notifyTriggered();
+    }
+
+    /**
+     * Enable or disable automatic auto-focus triggering when the image becomes blurry.
+     * Enabled by default on cameras with auto-focus.
+     */
+    public void setAutoFocusMonitorEnabled(boolean enabled) {
+        if (mFocusMonitor != null)
+            mFocusMonitor.setEnabled(enabled);
+    }
+
+    /** Sharpness score of the last analyzed frame, or 0 if focus is not monitored. */
+    public float getSharpness() {
+        return mFocusMonitor != null ? mFocusMonitor.getScore() : 0;
+    }
+
+    /** Number of auto-focus requests issued because the image became blurry. */
+    public long getAutoFocusTriggerCount() {
+        return mFocusMonitor != null ? mFocusMonitor.getTriggerCount() : 0;
     }
 
     /** Reset capture settings */
     public void resetSettings() {
-        if (mCaptureSession == null)
+        if (mController == null)
             return;
-        mZoom = 1.0f;
-        mOffset.set(0, 0);
-        setCapture();
+        mCoalescer.cancel();
+        mController.reset();
     }
 
-    /** Adjust zoom factor */
+    /**
+     * Adjust zoom factor.
+     * The change is applied on the next frame, together with any other pending gesture.
+     */
     public void zoom(float factor) {
-        if (mCaptureSession == null)
+        if (mController == null)
             return;
-        mZoom *= factor;
-        mZoom = Math.max(1.0f, Math.min(mZoom, mMaxZoom));
-        setCapture();
+        mCoalescer.zoom(factor);
     }
 
-    /** Move the image offset */
+    /**
+     * Move the image offset.
+     * The change is applied on the next frame, together with any other pending gesture.
+     */
     public void move(int dx, int dy) {
-        if (mCaptureSession == null)
+        if (mController == null)
             return;
-        mOffset.x += dx;
-        mOffset.y += dy;
-        mOffset.x = Math.max(-mMaxOffset.x, Math.min(mOffset.x, mMaxOffset.x));
-        mOffset.y = Math.max(-mMaxOffset.y, Math.min(mOffset.y, mMaxOffset.y));
-        setCapture();
+        mCoalescer.move(dx, dy);
     }
 
+    /** Show or hide the frame timing statistics in the info text. */
+    public void setFrameTimingVisible(boolean visible) {
+        mShowFrameTiming = visible;
+        if (mState != null)
+            updateInfo();
+    }
+
+    /** Delivered frame rate over the last frames. */
+    public float getFps() {
+        return mFrameTiming.getFps();
+    }
+
+    /**
+     * Frame interval percentile over the last frames.
+     * @param fraction Fraction between 0 and 1, e.g. 0.95 for the 95th percentile.
+     */
+    public float getFrameIntervalMillis(double fraction) {
+        return mFrameTiming.getPercentileNanos(fraction) / 1e6f;
+    }
+
+    /** Number of frames delivered much later than usual since the stream was configured. */
+    public long getStallCount() {
+        return mFrameTiming.getStallCount();
+    }
+
+    /** Number of zoom and pan gestures received. */
+    public long getGestureCount() {
+        return mCoalescer.getGestureCount();
+    }
+
+    /** Number of repeating requests issued in response to zoom and pan gestures. */
+    public long getGestureRequestCount() {
+        return mCoalescer.getRequestCount();
+    }
+
+    /** Trigger auto-focus on request of the focus monitor. */
+    private final Runnable mAutoFocusAction = () -> {
+        if (mController != null)
+            mController.triggerAF();
+    };
+
+    /**
+     * Hand the coalesced gesture deltas to the controller as a single command.
+     * The controller ignores settings while no session is configured, so they are dropped here.
+     */
+    private boolean applySettings(float zoomFactor, int dx, int dy) {
+        if (mController == null || mState == null || !mState.configured)
+            return false;
+        mController.adjust(zoomFactor, dx, dy);
+        return true;
+    }
+
+    /**
+     * Evaluate the stream size policy.
+     * @param fps Measured frame rate, or 0 if not measured.
+     * @return True if the policy selected another frame size.
+     */
+    private boolean updateFrameSize(int viewWidth, int viewHeight, float fps) {
+        StreamSizePolicy.Size size = mSizePolicy.update(viewWidth, viewHeight, mState.zoom, fps,
+                SystemClock.elapsedRealtime());
+        if (size == null || (mFrameSize != null && size.width == mFrameSize.x && size.height == mFrameSize.y))
+            return false;
+        mFrameSize = new Point(size.width, size.height);
+        return true;
+    }
+
+    /**
+     * Feed the measured frame rate to the stream size policy and renegotiate the capture
+     * session if it selects another size.  Also refresh the frame timing statistics.
+     */
+    private final Runnable mSizePolicyAction = new Runnable() {
+        @Override
+        public void run() {
+            float fps = mState.configured ? mFrameTiming.getFps() : 0;
+            if (updateFrameSize(mPreview.getWidth(), mPreview.getHeight(), fps))
+                createCaptureSession();
+            else if (mShowFrameTiming && mState.configured)
+                updateInfo();
+            mHandler.postDelayed(this, SIZE_POLICY_INTERVAL_MILLIS);
+        }
+    };
+
     ////////////////////////////////////////////////////////////////////////////////////////////////
     // Camera listeners implementations
 
@@ -298,6 +586,8 @@ public class CameraFragment extends Fragment {
         public void onSurfaceTextureAvailable(SurfaceTexture surface, int width, int height) {
             mSurfaceTexture = surface;
             mSurface = new Surface(mSurfaceTexture);
+            if (mController != null && mFrameSize == null)
+                updateFrameSize(width, height, 0);
             createCaptureSession();
         }
 
@@ -308,24 +598,35 @@ public class CameraFragment extends Fragment {
 
         @Override
         public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
-            if (mCaptureSession != null) {
-                mCaptureSession.close();
-                mCaptureSession = null;
-            }
-            mSurface.release();
+            if (mController != null)
+                mController.close();
+            /* The session streams into the surface until the close ran on the camera thread. */
+            Surface output = mSurface;
+            afterSessionChange(() -> {
+                output.release();
+                surface.release();
+            });
             mSurface = null;
             mSurfaceTexture = null;
-            return true;
+            return false;
         }
 
         @Override
         public void onSurfaceTextureUpdated(SurfaceTexture surface) {
+            mFrameTiming.onFrame(System.nanoTime());
+            if (!mFirstFrameReported && mState != null && mState.configured) {
+                mFirstFrameReported = true;
+                CameraRegistry.getInstance().reportFirstFrame(mCameraId);
+            }
         }
     };
 
     private final CameraDevice.Listener mCameraListener = new CameraDevice.Listener() {
         @Override
         public void onOpened(CameraDevice device) {
+            /* The open may complete after the camera was released in onStop(). */
+            if (!mCameraRequested)
+                return;
             mCamera = device;
             createCaptureSession();
         }
@@ -345,35 +646,9 @@ public class CameraFragment extends Fragment {
         }
     };
 
-    private final CaptureSession.Listener mCaptureSessionListener = new CaptureSession.Listener() {
-        @Override
-        public void onConfigured(CaptureSession session) {
-            mCaptureSession = session;
-            setCapture();
-        }
-
-        @Override
-        public void onConfigureFailed(CaptureSession session, int error) {
-            mInfo.setText(R.string.camera_error_configure);
-        }
-
-        @Override
-        public void onClosed(CaptureSession session) {
-            if (mCaptureSession == session)
-                mCaptureSession = null;
-        }
-
-        @Override
-        public void onActive(CaptureSession session) {
-        }
-
-        @Override
-        public void onCaptureQueueEmpty(CaptureSession session) {
-        }
-
-        @Override
-        public void onReady(CaptureSession session) {
-        }
+    private final CameraController.Listener mControllerListener = state -> {
+        mState = state;
+        updateInfo();
     };
 
 }
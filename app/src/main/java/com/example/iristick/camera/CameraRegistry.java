@@ -0,0 +1,383 @@
+package com.example.iristick.camera;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.Point;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.iristick.smartglass.core.Headset;
+import com.iristick.smartglass.core.IristickBinding;
+import com.iristick.smartglass.core.IristickConnection;
+import com.iristick.smartglass.core.camera.CameraCharacteristics;
+import com.iristick.smartglass.core.camera.CameraDevice;
+import com.iristick.smartglass.core.camera.CaptureRequest;
+import com.iristick.smartglass.support.app.IristickApp;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide registry of the headset cameras.
+ *
+ * The registry parses the characteristics of every camera once per headset connection and
+ * keeps camera devices open for a short while when nobody uses them: cameras are pre-opened
+ * in the background as soon as a headset connects, and a camera released by a fragment stays
+ * open so that the next fragment (e.g. after an activity restart) can take it over without
+ * going through the slow open sequence again.
+ *
+ * Every camera has its own thread on which it is opened and its device callbacks are handled,
+ * so that the cameras of a headset open in parallel and independently of the main thread.
+ *
+ * The time between an open request and the first frame is recorded for every camera.
+ *
+ * The registry must be initialized with {@link #init(Context)} from the application.
+ */
+public final class CameraRegistry {
+
+    private static final String TAG = "CameraRegistry";
+
+    /** How long an unused camera is kept open. */
+    private static final long KEEP_ALIVE_MILLIS = 15000;
+
+    private static CameraRegistry sInstance;
+
+    /** Parsed characteristics of a camera. */
+    public static final class CameraInfo {
+        public final String id;
+        /** Supported stream sizes, as reported by the camera. */
+        public final Point[] sizes;
+        public final boolean hasAutoFocus;
+        public final boolean hasLaserAssistedAF;
+        public final float maxZoom;
+        public final Point maxOffset;
+
+        CameraInfo(String id, CameraCharacteristics characteristics) {
+            this.id = id;
+
+            CameraCharacteristics.StreamConfigurationMap streams = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+            sizes = streams.getSizes();
+
+            /* Check whether this camera has auto focus control. */
+            boolean autoFocus = false;
+            boolean laserAssistedAF = false;
+            if (characteristics.containsKey(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES)) {
+                int[] afModes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+                for (int afMode : afModes) {
+                    switch (afMode) {
+                    case CaptureRequest.CONTROL_AF_MODE_AUTO:
+                        autoFocus = true;
+                        break;
+                    case CaptureRequest.CONTROL_AF_MODE_LASER_ASSISTED:
+                        laserAssistedAF = true;
+                        break;
+                    }
+                }
+            }
+            hasAutoFocus = autoFocus;
+            hasLaserAssistedAF = laserAssistedAF;
+
+            /* Get the maximum digital zoom level. */
+            if (characteristics.containsKey(CameraCharacteristics.SCALER_MAX_ZOOM))
+                maxZoom = characteristics.get(CameraCharacteristics.SCALER_MAX_ZOOM);
+            else
+                maxZoom = 1.0f;
+
+            /* Get the maximum frame offset. */
+            if (characteristics.containsKey(CameraCharacteristics.SCALER_MAX_OFFSET))
+                maxOffset = characteristics.get(CameraCharacteristics.SCALER_MAX_OFFSET);
+            else
+                maxOffset = new Point(0, 0);
+        }
+    }
+
+    private final Context mContext;
+    private final Handler mHandler;
+
+    /* Guarded by this */
+    private Headset mHeadset;
+    private String[] mCameraIds;
+    private final Map<String, CameraInfo> mInfos = new HashMap<>();
+
+    /* Created on demand; the state of each entry is confined to its camera thread */
+    private final Map<String, Entry> mEntries = new ConcurrentHashMap<>();
+
+    private CameraRegistry(Context context) {
+        mContext = context.getApplicationContext();
+        HandlerThread thread = new HandlerThread(TAG);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+        IristickApp.registerConnectionListener(mConnection, mHandler);
+    }
+
+    /** Create the registry.  Call this from {@code Application.onCreate()}. */
+    public static synchronized void init(Context context) {
+        if (sInstance == null)
+            sInstance = new CameraRegistry(context);
+    }
+
+    public static synchronized CameraRegistry getInstance() {
+        if (sInstance == null)
+            throw new IllegalStateException("CameraRegistry.init() has not been called");
+        return sInstance;
+    }
+
+    /**
+     * Get the parsed characteristics of a camera of the given headset.
+     * @return The camera information, or {@code null} if there is no such camera.
+     */
+    @Nullable
+    public synchronized CameraInfo getCameraInfo(Headset headset, int index) {
+        if (headset != mHeadset || mCameraIds == null) {
+            mHeadset = headset;
+            mCameraIds = headset.getCameraIdList();
+            mInfos.clear();
+        }
+        if (index >= mCameraIds.length)
+            return null;
+        String id = mCameraIds[index];
+        CameraInfo info = mInfos.get(id);
+        if (info == null) {
+            info = new CameraInfo(id, headset.getCameraCharacteristics(id));
+            mInfos.put(id, info);
+        }
+        return info;
+    }
+
+    /**
+     * Open a camera, taking over an idle device if one is available.
+     * The listener receives the same callbacks as with {@link Headset#openCamera}.
+     * @param handler Handler on which to call the listener, or {@code null} for the main thread.
+     */
+    public void openCamera(String cameraId, CameraDevice.Listener listener, @Nullable Handler handler) {
+        Handler ownerHandler = handler != null ? handler : new Handler(Looper.getMainLooper());
+        long requestTime = SystemClock.elapsedRealtime();
+        Entry entry = getEntry(cameraId);
+        entry.mCameraHandler.post(() -> entry.acquire(listener, ownerHandler, requestTime));
+    }
+
+    /**
+     * Start opening a camera in the background, if it is not open yet, so that a later
+     * {@link #openCamera} call can take it over immediately.
+     * The camera is closed again if nobody claims it.
+     */
+    public void preopenCamera(String cameraId) {
+        Entry entry = getEntry(cameraId);
+        entry.mCameraHandler.post(() -> {
+            Headset headset = IristickApp.getHeadset();
+            if (headset != null)
+                entry.preopen(headset);
+        });
+    }
+
+    /** Handler of the dedicated thread of a camera. */
+    public Handler getCameraHandler(String cameraId) {
+        return getEntry(cameraId).mCameraHandler;
+    }
+
+    /**
+     * Give a camera obtained through {@link #openCamera} back to the registry.
+     * The caller must not use the device anymore.  It is kept open for a while, and closed
+     * if nobody claims it.
+     */
+    public void releaseCamera(String cameraId) {
+        Entry entry = getEntry(cameraId);
+        entry.mCameraHandler.post(entry::release);
+    }
+
+    /** Record that the first frame of a camera has been displayed. */
+    public void reportFirstFrame(String cameraId) {
+        long now = SystemClock.elapsedRealtime();
+        Entry entry = getEntry(cameraId);
+        entry.mCameraHandler.post(() -> entry.firstFrame(now));
+    }
+
+    /**
+     * Time between the last open request for a camera and its first frame.
+     * @return The time in milliseconds, or -1 if not measured yet.
+     */
+    public long getTimeToFirstFrame(String cameraId) {
+        Entry entry = mEntries.get(cameraId);
+        return entry == null ? -1 : entry.mTimeToFirstFrame;
+    }
+
+    private Entry getEntry(String cameraId) {
+        return mEntries.computeIfAbsent(cameraId, Entry::new);
+    }
+
+    /** Open all cameras of a newly connected headset, so they are ready when needed. */
+    private void preopen(Headset headset) {
+        if (mContext.checkSelfPermission(Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED)
+            return;
+        String[] ids = headset.getCameraIdList();
+        for (int i = 0; i < ids.length; i++) {
+            /* Parse the characteristics in the background as well. */
+            getCameraInfo(headset, i);
+            Entry entry = getEntry(ids[i]);
+            entry.mCameraHandler.post(() -> entry.preopen(headset));
+        }
+    }
+
+    /**
+     * State of one camera device.
+     * All methods run on the thread of the camera, where device callbacks arrive as well
+     * before being forwarded to the current owner.
+     */
+    private final class Entry implements CameraDevice.Listener {
+        private final String mId;
+        final Handler mCameraHandler;
+        private CameraDevice mDevice;
+        private boolean mOpening;
+        private CameraDevice.Listener mOwner;
+        private Handler mOwnerHandler;
+        private long mRequestTime;
+        private boolean mWarm;
+        volatile long mTimeToFirstFrame = -1;
+
+        private final Runnable mCloseIdle = this::closeIdle;
+
+        Entry(String id) {
+            mId = id;
+            HandlerThread thread = new HandlerThread("Camera-" + id);
+            thread.start();
+            mCameraHandler = new Handler(thread.getLooper());
+        }
+
+        void preopen(Headset headset) {
+            if (mDevice != null || mOpening)
+                return;
+            mOpening = true;
+            headset.openCamera(mId, this, mCameraHandler);
+            mCameraHandler.postDelayed(mCloseIdle, KEEP_ALIVE_MILLIS);
+        }
+
+        void acquire(CameraDevice.Listener owner, Handler ownerHandler, long requestTime) {
+            mCameraHandler.removeCallbacks(mCloseIdle);
+            mOwner = owner;
+            mOwnerHandler = ownerHandler;
+            mRequestTime = requestTime;
+            mTimeToFirstFrame = -1;
+            if (mDevice != null) {
+                /* Fast path: hand over the idle device. */
+                mWarm = true;
+                CameraDevice device = mDevice;
+                ownerHandler.post(() -> owner.onOpened(device));
+            } else {
+                mWarm = false;
+                if (!mOpening) {
+                    Headset headset = IristickApp.getHeadset();
+                    if (headset == null)
+                        return;
+                    mOpening = true;
+                    headset.openCamera(mId, this, mCameraHandler);
+                }
+            }
+        }
+
+        void release() {
+            mOwner = null;
+            mOwnerHandler = null;
+            mCameraHandler.removeCallbacks(mCloseIdle);
+            mCameraHandler.postDelayed(mCloseIdle, KEEP_ALIVE_MILLIS);
+        }
+
+        void firstFrame(long time) {
+            if (mTimeToFirstFrame >= 0 || mOwner == null)
+                return;
+            mTimeToFirstFrame = time - mRequestTime;
+            Log.i(TAG, "Camera " + mId + ": first frame after " + mTimeToFirstFrame + " ms ("
+                    + (mWarm ? "warm" : "cold") + " start)");
+        }
+
+        void disconnected() {
+            mDevice = null;
+            mOpening = false;
+        }
+
+        private void closeIdle() {
+            if (mOwner == null && mDevice != null) {
+                mDevice.close();
+                mDevice = null;
+            }
+        }
+
+        @Override
+        public void onOpened(CameraDevice device) {
+            mOpening = false;
+            mDevice = device;
+            CameraDevice.Listener owner = mOwner;
+            if (owner != null) {
+                mOwnerHandler.post(() -> owner.onOpened(device));
+            } else {
+                /*
+                 * Pre-opened, or released by its owner while opening: keep it open for a while
+                 * from now on, then close it if nobody claims it.
+                 */
+                mCameraHandler.removeCallbacks(mCloseIdle);
+                mCameraHandler.postDelayed(mCloseIdle, KEEP_ALIVE_MILLIS);
+            }
+        }
+
+        @Override
+        public void onClosed(CameraDevice device) {
+            if (mDevice == device)
+                mDevice = null;
+            CameraDevice.Listener owner = mOwner;
+            if (owner != null)
+                mOwnerHandler.post(() -> owner.onClosed(device));
+        }
+
+        @Override
+        public void onDisconnected(CameraDevice device) {
+            CameraDevice.Listener owner = mOwner;
+            if (owner != null)
+                mOwnerHandler.post(() -> owner.onDisconnected(device));
+        }
+
+        @Override
+        public void onError(CameraDevice device, int error) {
+            mOpening = false;
+            CameraDevice.Listener owner = mOwner;
+            if (owner != null)
+                mOwnerHandler.post(() -> owner.onError(device, error));
+            if (mDevice == device) {
+                mDevice.close();
+                mDevice = null;
+            }
+        }
+    }
+
+    private final IristickConnection mConnection = new IristickConnection() {
+        @Override
+        public void onHeadsetConnected(Headset headset) {
+            preopen(headset);
+        }
+
+        @Override
+        public void onHeadsetDisconnected(Headset headset) {
+            synchronized (CameraRegistry.this) {
+                mHeadset = null;
+                mCameraIds = null;
+                mInfos.clear();
+            }
+            for (Entry entry : mEntries.values())
+                entry.mCameraHandler.post(entry::disconnected);
+        }
+
+        @Override
+        public void onIristickServiceInitialized(IristickBinding binding) {
+        }
+
+        @Override
+        public void onIristickServiceError(int error) {
+        }
+    };
+
+}
@@ -0,0 +1,128 @@
+package com.example.iristick.camera;
+
+import android.view.Choreographer;
+
+/**
+ * Coalesces zoom and pan gestures into at most one capture request per display frame.
+ *
+ * Gesture callbacks arrive much faster than the headset camera can apply new settings.
+ * Instead of building and sending a repeating request for every callback, the deltas are
+ * accumulated here and handed over to the {@link Target} once on the next vsync.
+ *
+ * This class must be used from the main thread only.
+ */
+class CaptureRequestCoalescer implements Choreographer.FrameCallback {
+
+    /** Receiver of the coalesced settings. */
+    interface Target {
+        /**
+         * Apply the accumulated gesture deltas and issue a single capture request.
+         * @param zoomFactor Product of all zoom factors received since the last flush.
+         * @param dx Sum of all horizontal pan deltas received since the last flush.
+         * @param dy Sum of all vertical pan deltas received since the last flush.
+         * @return True if a request was submitted, false if it could not be, e.g. because no
+         *         capture session is configured.
+         */
+        boolean onFlush(float zoomFactor, int dx, int dy);
+    }
+
+    /** Runs the flush on the next display frame. */
+    interface FrameTrigger {
+        void post(Choreographer.FrameCallback callback);
+
+        void remove(Choreographer.FrameCallback callback);
+    }
+
+    private final Target mTarget;
+    private final FrameTrigger mTrigger;
+
+    /* Pending deltas */
+    private float mZoomFactor = 1.0f;
+    private int mDx;
+    private int mDy;
+    private boolean mScheduled;
+
+    /* Statistics */
+    private long mGestureCount;
+    private long mRequestCount;
+
+    CaptureRequestCoalescer(Target target) {
+        this(target, choreographerTrigger(Choreographer.getInstance()));
+    }
+
+    CaptureRequestCoalescer(Target target, FrameTrigger trigger) {
+        mTarget = target;
+        mTrigger = trigger;
+    }
+
+    /** Accumulate a zoom gesture. */
+    void zoom(float factor) {
+        mGestureCount++;
+        mZoomFactor *= factor;
+        schedule();
+    }
+
+    /** Accumulate a pan gesture. */
+    void move(int dx, int dy) {
+        mGestureCount++;
+        mDx += dx;
+        mDy += dy;
+        schedule();
+    }
+
+    /** Drop all pending deltas, e.g. when the settings are reset or the session is closed. */
+    void cancel() {
+        if (mScheduled) {
+            mTrigger.remove(this);
+            mScheduled = false;
+        }
+        mZoomFactor = 1.0f;
+        mDx = 0;
+        mDy = 0;
+    }
+
+    /** Number of gesture callbacks received since creation. */
+    long getGestureCount() {
+        return mGestureCount;
+    }
+
+    /** Number of coalesced requests submitted by the target since creation. */
+    long getRequestCount() {
+        return mRequestCount;
+    }
+
+    private void schedule() {
+        if (mScheduled)
+            return;
+        mScheduled = true;
+        mTrigger.post(this);
+    }
+
+    private static FrameTrigger choreographerTrigger(Choreographer choreographer) {
+        return new FrameTrigger() {
+            @Override
+            public void post(Choreographer.FrameCallback callback) {
+                choreographer.postFrameCallback(callback);
+            }
+
+            @Override
+            public void remove(Choreographer.FrameCallback callback) {
+                choreographer.removeFrameCallback(callback);
+            }
+        };
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mScheduled = false;
+        float zoomFactor = mZoomFactor;
+        int dx = mDx;
+        int dy = mDy;
+        mZoomFactor = 1.0f;
+        mDx = 0;
+        mDy = 0;
+        if (mTarget.onFlush(zoomFactor, dx, dy))
+            mRequestCount++;
+    }
+
+}
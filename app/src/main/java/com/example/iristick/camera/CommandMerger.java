@@ -0,0 +1,111 @@
+package com.example.iristick.camera;
+
+/**
+ * Merges the commands drained by the {@link CameraController} in one go into the settings
+ * to apply, and tracks the generation of the capture session.
+ *
+ * Any number of zoom, pan and reset commands result in one settings change, and any number
+ * of auto-focus triggers in one trigger.  Configuring or closing the session discards the
+ * pending changes, since a new session gets the current settings once configured, and starts
+ * a new generation, so callbacks of superseded sessions can be ignored.
+ *
+ * This class does not depend on the Android framework and is not thread-safe.
+ */
+final class CommandMerger {
+
+    private final float mMaxZoom;
+    private final int mMaxOffsetX;
+    private final int mMaxOffsetY;
+    private final boolean mHasAutoFocus;
+
+    private float mZoom = 1.0f;
+    private int mOffsetX;
+    private int mOffsetY;
+    private int mGeneration;
+    private boolean mSettingsChanged;
+    private boolean mTriggerAF;
+
+    CommandMerger(float maxZoom, int maxOffsetX, int maxOffsetY, boolean hasAutoFocus) {
+        mMaxZoom = maxZoom;
+        mMaxOffsetX = maxOffsetX;
+        mMaxOffsetY = maxOffsetY;
+        mHasAutoFocus = hasAutoFocus;
+    }
+
+    /** Start merging a new batch of commands. */
+    void begin() {
+        mSettingsChanged = false;
+        mTriggerAF = false;
+    }
+
+    /**
+     * A new session is being configured.
+     * @return The generation of the new session.
+     */
+    int configure() {
+        begin();
+        return ++mGeneration;
+    }
+
+    /** The session is closed; callbacks of earlier sessions are stale from now on. */
+    void close() {
+        begin();
+        mGeneration++;
+    }
+
+    /** True if a callback of the session of the given generation is still relevant. */
+    boolean isCurrent(int generation) {
+        return generation == mGeneration;
+    }
+
+    /**
+     * Multiply the zoom factor and move the offset, within the limits of the camera.
+     * @param sessionOpen False if there is no session to apply the settings to; the command
+     *                    is then ignored.
+     */
+    void adjust(float zoomFactor, int dx, int dy, boolean sessionOpen) {
+        if (!sessionOpen)
+            return;
+        mZoom = Math.max(1.0f, Math.min(mZoom * zoomFactor, mMaxZoom));
+        mOffsetX = Math.max(-mMaxOffsetX, Math.min(mOffsetX + dx, mMaxOffsetX));
+        mOffsetY = Math.max(-mMaxOffsetY, Math.min(mOffsetY + dy, mMaxOffsetY));
+        mSettingsChanged = true;
+    }
+
+    void reset(boolean sessionOpen) {
+        if (!sessionOpen)
+            return;
+        mZoom = 1.0f;
+        mOffsetX = 0;
+        mOffsetY = 0;
+        mSettingsChanged = true;
+    }
+
+    void triggerAF(boolean sessionOpen) {
+        if (sessionOpen && mHasAutoFocus)
+            mTriggerAF = true;
+    }
+
+    /** True if the batch changed the settings, so a new repeating request is needed. */
+    boolean isSettingsChanged() {
+        return mSettingsChanged;
+    }
+
+    /** True if the batch requested an auto-focus trigger. */
+    boolean isTriggerAF() {
+        return mTriggerAF;
+    }
+
+    float getZoom() {
+        return mZoom;
+    }
+
+    int getOffsetX() {
+        return mOffsetX;
+    }
+
+    int getOffsetY() {
+        return mOffsetY;
+    }
+
+}
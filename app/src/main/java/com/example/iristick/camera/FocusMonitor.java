@@ -0,0 +1,186 @@
+package com.example.iristick.camera;
+
+/**
+ * Frame analyzer estimating focus quality and requesting auto-focus when it degrades.
+ *
+ * The sharpness score is the variance of the Laplacian of the luminance, computed over a
+ * centered region of interest downscaled to at most {@link #GRID_SIZE} pixels square.  All
+ * buffers are allocated up front, so analyzing a frame takes constant memory and time.
+ *
+ * The threshold adapts to the scene: the monitor tracks a reference score, which follows the
+ * best recent sharpness and slowly decays towards the current one.  Auto-focus is requested
+ * only when the score stays below a fraction of that reference for a few frames, and never
+ * again until the previous request had time to settle.  Scenes without enough contrast to
+ * tell focus apart never trigger.
+ */
+public final class FocusMonitor implements FrameAnalyzer {
+
+    public interface Listener {
+        /**
+         * Called on the analysis thread when auto-focus should be triggered.
+         * @param score Current sharpness score.
+         * @param threshold Threshold the score fell below.
+         */
+        void onFocusLost(float score, float threshold);
+    }
+
+    /** Side of the downscaled region of interest, in pixels. */
+    static final int GRID_SIZE = 64;
+    /** Fraction of the smallest frame dimension covered by the region of interest. */
+    private static final float ROI_FRACTION = 0.5f;
+    /** Fraction of the reference score below which the image is considered out of focus. */
+    private static final float THRESHOLD_RATIO = 0.6f;
+    /** Per-frame decay of the reference score towards the current score. */
+    private static final float REFERENCE_DECAY = 0.01f;
+    /** Reference score below which the scene is too flat to judge focus. */
+    private static final float MIN_REFERENCE = 20.0f;
+    /** Number of consecutive blurry frames before triggering. */
+    private static final int BLURRY_FRAMES = 3;
+    /** Time for an auto-focus sweep to settle, during which no new trigger is issued. */
+    private static final long SETTLE_NANOS = 1_500_000_000L;
+
+    private final Listener mListener;
+    private final int[] mGrid = new int[GRID_SIZE * GRID_SIZE];
+
+    private volatile boolean mEnabled = true;
+    private volatile boolean mTriggered;
+    private volatile float mScore;
+    private volatile float mReference;
+    private volatile long mTriggerCount;
+
+    /* Only accessed on the analysis thread */
+    private int mBlurryFrames;
+    private long mSettleUntil = Long.MIN_VALUE;
+    private boolean mSettling;
+
+    public FocusMonitor(Listener listener) {
+        mListener = listener;
+    }
+
+    /** Enable or disable automatic triggering.  Scores are computed in both cases. */
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Notify that auto-focus was triggered by other means, e.g. by the user.
+     * The monitor then waits for focus to settle before judging it again.
+     */
+    public void notifyTriggered() {
+        mTriggered = true;
+    }
+
+    /** Sharpness score of the last analyzed frame. */
+    public float getScore() {
+        return mScore;
+    }
+
+    /** Current trigger threshold. */
+    public float getThreshold() {
+        return mReference * THRESHOLD_RATIO;
+    }
+
+    /** Number of auto-focus requests issued by the monitor. */
+    public long getTriggerCount() {
+        return mTriggerCount;
+    }
+
+    @Override
+    public void analyze(Frame frame) {
+        float score = score(frame.getLuma(), frame.getWidth(), frame.getHeight());
+        mScore = score;
+        long now = frame.getTimestamp();
+
+        if (mTriggered) {
+            mTriggered = false;
+            startSettling(now);
+        }
+        if (mSettling) {
+            if (now - mSettleUntil < 0)
+                return;
+            /* Focus has settled: its result is the new reference. */
+            mSettling = false;
+            mReference = score;
+            mBlurryFrames = 0;
+            return;
+        }
+
+        float reference = mReference;
+        if (score >= reference)
+            reference = score;
+        else
+            reference += (score - reference) * REFERENCE_DECAY;
+        mReference = reference;
+
+        if (!mEnabled || reference < MIN_REFERENCE || score >= reference * THRESHOLD_RATIO) {
+            mBlurryFrames = 0;
+            return;
+        }
+        if (++mBlurryFrames < BLURRY_FRAMES)
+            return;
+
+        mTriggerCount++;
+        startSettling(now);
+        mListener.onFocusLost(score, reference * THRESHOLD_RATIO);
+    }
+
+    private void startSettling(long now) {
+        mSettling = true;
+        mSettleUntil = now + SETTLE_NANOS;
+        mBlurryFrames = 0;
+    }
+
+    /**
+     * Compute the sharpness score of an image.
+     * The centered region of interest is downscaled by averaging blocks of pixels, then the
+     * variance of the 4-neighbour Laplacian is computed over the downscaled grid.
+     * @param luma Luminance samples, one byte per pixel, row after row without padding.
+     */
+    float score(byte[] luma, int width, int height) {
+        int roi = (int) (Math.min(width, height) * ROI_FRACTION);
+        int step = Math.max(1, roi / GRID_SIZE);
+        int size = Math.min(GRID_SIZE, roi / step);
+        if (size < 3)
+            return 0;
+        int left = (width - size * step) / 2;
+        int top = (height - size * step) / 2;
+
+        /* Downscale into the grid. */
+        int[] grid = mGrid;
+        for (int gy = 0; gy < size; gy++) {
+            int rowStart = (top + gy * step) * width + left;
+            for (int gx = 0; gx < size; gx++) {
+                int sum = 0;
+                int start = rowStart + gx * step;
+                for (int y = 0; y < step; y++) {
+                    int p = start + y * width;
+                    for (int x = 0; x < step; x++)
+                        sum += luma[p + x] & 0xff;
+                }
+                grid[gy * GRID_SIZE + gx] = sum / (step * step);
+            }
+        }
+
+        /* Variance of the Laplacian over the inner grid. */
+        long sum = 0;
+        long sumSq = 0;
+        for (int gy = 1; gy < size - 1; gy++) {
+            int row = gy * GRID_SIZE;
+            for (int gx = 1; gx < size - 1; gx++) {
+                int i = row + gx;
+                int laplacian = grid[i - 1] + grid[i + 1] + grid[i - GRID_SIZE] + grid[i + GRID_SIZE]
+                        - 4 * grid[i];
+                sum += laplacian;
+                sumSq += (long) laplacian * laplacian;
+            }
+        }
+        int n = (size - 2) * (size - 2);
+        double mean = (double) sum / n;
+        return (float) ((double) sumSq / n - mean * mean);
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.example.iristick.camera;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Luminance plane of a camera frame, as handed to {@link FrameAnalyzer}s.
+ *
+ * Frames are pooled by the {@link FramePipeline} and reference counted: the pixel buffer is
+ * reused as soon as every analyzer is done with the frame.  By default, an analyzer is done
+ * when {@link FrameAnalyzer#analyze} returns.  An analyzer which needs the frame longer, e.g.
+ * to pair it with a later frame, calls {@link #retain} during the analysis and
+ * {@link #release} once done, from any thread.  A retained frame holds a buffer of the pool,
+ * so frames must not be retained for long.
+ */
+public final class Frame {
+
+    private final FramePipeline mOwner;
+    private final AtomicInteger mRefCount = new AtomicInteger();
+
+    private byte[] mLuma = new byte[0];
+    private int mWidth;
+    private int mHeight;
+    private long mTimestamp;
+    private long mArrivalNanos;
+
+    Frame(FramePipeline owner) {
+        mOwner = owner;
+    }
+
+    /** Luminance samples, one byte per pixel, row after row without padding. */
+    public byte[] getLuma() {
+        return mLuma;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /** Sensor timestamp of the frame in nanoseconds, as reported by the camera. */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /** Value of {@link System#nanoTime()} when the frame entered the pipeline. */
+    public long getArrivalNanos() {
+        return mArrivalNanos;
+    }
+
+    /**
+     * Prepare the frame for new content.
+     * The buffer only grows, so no allocation happens while the stream size is stable.
+     */
+    void reset(int width, int height, long timestamp) {
+        int size = width * height;
+        if (mLuma.length < size)
+            mLuma = new byte[size];
+        mWidth = width;
+        mHeight = height;
+        mTimestamp = timestamp;
+        mArrivalNanos = System.nanoTime();
+    }
+
+    /** Keep the frame valid after the analysis, until a matching {@link #release}. */
+    public void retain() {
+        mRefCount.incrementAndGet();
+    }
+
+    /** Give back a frame kept with {@link #retain}.  The frame must not be used anymore. */
+    public void release() {
+        if (mRefCount.decrementAndGet() == 0)
+            mOwner.recycle(this);
+    }
+
+}
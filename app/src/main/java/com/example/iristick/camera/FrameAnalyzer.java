@@ -0,0 +1,18 @@
+package com.example.iristick.camera;
+
+/**
+ * Consumer of camera frames registered with a {@link FramePipeline}.
+ *
+ * Each analyzer is invoked from a worker thread, but never concurrently with itself,
+ * so implementations do not need to be thread-safe.
+ */
+public interface FrameAnalyzer {
+
+    /**
+     * Analyze one frame.
+     * The frame is only valid for the duration of this call, unless retained with
+     * {@link Frame#retain}.
+     */
+    void analyze(Frame frame);
+
+}
@@ -0,0 +1,121 @@
+package com.example.iristick.camera;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pairs frames of two cameras by sensor timestamp.
+ *
+ * Each camera feeds its frames through its own {@link FrameAnalyzer} ({@link #getAnalyzer}).
+ * A frame is matched with the frame of the other camera whose timestamp is closest, provided
+ * they are less than the tolerance apart.  Unmatched frames are kept in a short queue per
+ * camera and dropped when they become too old to ever be matched, or when the queue is full.
+ */
+public final class FramePairer {
+
+    /** Receiver of paired frames. */
+    public interface Listener {
+        /**
+         * Called with two frames captured at about the same time.
+         * The frames are only valid for the duration of this call.
+         */
+        void onFramePair(Frame first, Frame second);
+    }
+
+    private static final int MAX_PENDING = 4;
+
+    private final Listener mListener;
+    private final long mToleranceNanos;
+    private final List<ArrayDeque<Frame>> mPending;
+    private final FrameAnalyzer[] mAnalyzers;
+    private long mPairs;
+    private long mDropped;
+
+    /**
+     * @param toleranceNanos Maximum timestamp difference of two paired frames, typically half
+     *                       a frame interval.
+     */
+    public FramePairer(long toleranceNanos, Listener listener) {
+        mListener = listener;
+        mToleranceNanos = toleranceNanos;
+        mPending = Arrays.asList(new ArrayDeque<>(MAX_PENDING), new ArrayDeque<>(MAX_PENDING));
+        mAnalyzers = new FrameAnalyzer[] {frame -> onFrame(0, frame), frame -> onFrame(1, frame)};
+    }
+
+    /**
+     * Analyzer to register for the first (index 0) or second (index 1) camera.
+     */
+    public FrameAnalyzer getAnalyzer(int index) {
+        return mAnalyzers[index];
+    }
+
+    public synchronized long getPairCount() {
+        return mPairs;
+    }
+
+    /** Number of frames that could not be paired. */
+    public synchronized long getDroppedCount() {
+        return mDropped;
+    }
+
+    /** Release all pending frames. */
+    public synchronized void clear() {
+        for (ArrayDeque<Frame> queue : mPending) {
+            Frame frame;
+            while ((frame = queue.pollFirst()) != null)
+                frame.release();
+        }
+    }
+
+    private void onFrame(int index, Frame frame) {
+        Frame first = null;
+        Frame second = null;
+        synchronized (this) {
+            ArrayDeque<Frame> own = mPending.get(index);
+            ArrayDeque<Frame> other = mPending.get(1 - index);
+            long timestamp = frame.getTimestamp();
+
+            /* Frames of the other camera much older than this one will never be matched. */
+            while (!other.isEmpty() && other.peekFirst().getTimestamp() < timestamp - mToleranceNanos)
+                drop(other.pollFirst());
+
+            /* Find the closest frame of the other camera. */
+            Frame match = null;
+            for (Frame candidate : other) {
+                if (Math.abs(candidate.getTimestamp() - timestamp) <= mToleranceNanos &&
+                        (match == null || Math.abs(candidate.getTimestamp() - timestamp) <
+                                          Math.abs(match.getTimestamp() - timestamp)))
+                    match = candidate;
+            }
+
+            if (match != null) {
+                other.remove(match);
+                mPairs++;
+                first = index == 0 ? frame : match;
+                second = index == 0 ? match : frame;
+            } else {
+                /* Keep the frame until the matching frame of the other camera arrives. */
+                if (own.size() >= MAX_PENDING)
+                    drop(own.pollFirst());
+                frame.retain();
+                own.addLast(frame);
+            }
+        }
+
+        if (first != null) {
+            try {
+                mListener.onFramePair(first, second);
+            } finally {
+                /* The frame being analyzed is released by the pipeline. */
+                (first == frame ? second : first).release();
+            }
+        }
+    }
+
+    private void drop(Frame frame) {
+        mDropped++;
+        frame.release();
+    }
+
+}
@@ -0,0 +1,239 @@
+package com.example.iristick.camera;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pipeline distributing camera frames to a set of {@link FrameAnalyzer}s.
+ *
+ * Every analyzer forms a stage with its own small queue.  When a stage falls behind and its
+ * queue is full, the oldest queued frame is dropped in favor of the new one, so analyzers
+ * always work on recent frames and the producer never waits.  Stages run on a shared worker
+ * pool sized to the number of cores; a stage is executed by at most one worker at a time.
+ *
+ * Frame buffers are taken from a pool and returned to it once all stages have released them.
+ * When the pool is exhausted, {@link #obtain} returns {@code null} and the frame is dropped.
+ */
+public final class FramePipeline {
+
+    /** Snapshot of the counters of one stage. */
+    public static final class StageStats {
+        public final String name;
+        /** Number of frames analyzed. */
+        public final long processed;
+        /** Number of frames dropped because the stage was behind. */
+        public final long dropped;
+        /** Mean time between frame arrival and the start of the analysis. */
+        public final long meanQueueNanos;
+        /** Mean time spent in {@link FrameAnalyzer#analyze}. */
+        public final long meanAnalyzeNanos;
+        /** Longest time spent in {@link FrameAnalyzer#analyze}. */
+        public final long maxAnalyzeNanos;
+
+        StageStats(String name, long processed, long dropped, long queueNanos, long analyzeNanos,
+                   long maxAnalyzeNanos) {
+            this.name = name;
+            this.processed = processed;
+            this.dropped = dropped;
+            this.meanQueueNanos = processed == 0 ? 0 : queueNanos / processed;
+            this.meanAnalyzeNanos = processed == 0 ? 0 : analyzeNanos / processed;
+            this.maxAnalyzeNanos = maxAnalyzeNanos;
+        }
+    }
+
+    private final int mQueueDepth;
+    private final int mPoolCapacity;
+    private final ExecutorService mExecutor;
+    private final ConcurrentLinkedQueue<Frame> mFreeFrames = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger mAllocatedFrames = new AtomicInteger();
+    private final List<Stage> mStages = new CopyOnWriteArrayList<>();
+    private final AtomicLong mPoolDrops = new AtomicLong();
+    private volatile boolean mShutdown;
+
+    /**
+     * @param queueDepth Maximum number of frames waiting in each stage.
+     * @param poolCapacity Maximum number of frame buffers allocated.
+     */
+    public FramePipeline(int queueDepth, int poolCapacity) {
+        mQueueDepth = queueDepth;
+        mPoolCapacity = poolCapacity;
+        int workers = Math.max(1, Runtime.getRuntime().availableProcessors());
+        AtomicInteger threadCount = new AtomicInteger();
+        mExecutor = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "FrameAnalysis-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void addAnalyzer(String name, FrameAnalyzer analyzer) {
+        mStages.add(new Stage(name, analyzer));
+    }
+
+    public void removeAnalyzer(FrameAnalyzer analyzer) {
+        for (Stage stage : mStages) {
+            if (stage.mAnalyzer == analyzer) {
+                mStages.remove(stage);
+                stage.clear();
+            }
+        }
+    }
+
+    public boolean hasAnalyzers() {
+        return !mStages.isEmpty();
+    }
+
+    /**
+     * Get an empty frame to fill, or {@code null} if all buffers are in use.
+     * Never blocks.
+     */
+    public Frame obtain(int width, int height, long timestamp) {
+        if (mShutdown)
+            return null;
+        Frame frame = mFreeFrames.poll();
+        if (frame == null) {
+            if (mAllocatedFrames.incrementAndGet() > mPoolCapacity) {
+                mAllocatedFrames.decrementAndGet();
+                mPoolDrops.incrementAndGet();
+                return null;
+            }
+            frame = new Frame(this);
+        }
+        frame.reset(width, height, timestamp);
+        frame.retain();
+        return frame;
+    }
+
+    /**
+     * Hand a filled frame obtained from {@link #obtain} to all stages.
+     * Never blocks.
+     */
+    public void submit(Frame frame) {
+        if (!mShutdown) {
+            for (Stage stage : mStages)
+                stage.offer(frame);
+        }
+        /* Drop the producer's reference. */
+        frame.release();
+    }
+
+    /** Number of frames dropped because no buffer was available. */
+    public long getPoolDrops() {
+        return mPoolDrops.get();
+    }
+
+    public List<StageStats> getStats() {
+        List<StageStats> stats = new ArrayList<>(mStages.size());
+        for (Stage stage : mStages)
+            stats.add(stage.snapshot());
+        return stats;
+    }
+
+    /** Stop all workers.  Queued frames are discarded. */
+    public void shutdown() {
+        mShutdown = true;
+        for (Stage stage : mStages)
+            stage.clear();
+        mExecutor.shutdownNow();
+    }
+
+    void recycle(Frame frame) {
+        mFreeFrames.offer(frame);
+    }
+
+    private final class Stage implements Runnable {
+        private final String mName;
+        private final FrameAnalyzer mAnalyzer;
+        private final ArrayDeque<Frame> mQueue;
+        private boolean mRunning;
+
+        private final AtomicLong mProcessed = new AtomicLong();
+        private final AtomicLong mDropped = new AtomicLong();
+        private final AtomicLong mQueueNanos = new AtomicLong();
+        private final AtomicLong mAnalyzeNanos = new AtomicLong();
+        private volatile long mMaxAnalyzeNanos;
+
+        Stage(String name, FrameAnalyzer analyzer) {
+            mName = name;
+            mAnalyzer = analyzer;
+            mQueue = new ArrayDeque<>(mQueueDepth);
+        }
+
+        void offer(Frame frame) {
+            Frame dropped = null;
+            boolean schedule;
+            frame.retain();
+            synchronized (this) {
+                if (mQueue.size() >= mQueueDepth)
+                    dropped = mQueue.pollFirst();
+                mQueue.addLast(frame);
+                schedule = !mRunning;
+                mRunning = true;
+            }
+            if (dropped != null) {
+                mDropped.incrementAndGet();
+                dropped.release();
+            }
+            if (schedule)
+                mExecutor.execute(this);
+        }
+
+        void clear() {
+            synchronized (this) {
+                Frame frame;
+                while ((frame = mQueue.pollFirst()) != null)
+                    frame.release();
+            }
+        }
+
+        @Override
+        public void run() {
+            boolean done = false;
+            try {
+                while (true) {
+                    Frame frame;
+                    synchronized (this) {
+                        frame = mQueue.pollFirst();
+                        if (frame == null) {
+                            mRunning = false;
+                            done = true;
+                            return;
+                        }
+                    }
+                    long start = System.nanoTime();
+                    try {
+                        mAnalyzer.analyze(frame);
+                    } finally {
+                        long end = System.nanoTime();
+                        mQueueNanos.addAndGet(start - frame.getArrivalNanos());
+                        mAnalyzeNanos.addAndGet(end - start);
+                        if (end - start > mMaxAnalyzeNanos)
+                            mMaxAnalyzeNanos = end - start;
+                        mProcessed.incrementAndGet();
+                        frame.release();
+                    }
+                }
+            } finally {
+                /* Let the next frame reschedule the stage if the analyzer threw. */
+                if (!done) {
+                    synchronized (this) {
+                        mRunning = false;
+                    }
+                }
+            }
+        }
+
+        StageStats snapshot() {
+            return new StageStats(mName, mProcessed.get(), mDropped.get(), mQueueNanos.get(),
+                    mAnalyzeNanos.get(), mMaxAnalyzeNanos);
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.example.iristick.camera;
+
+import android.graphics.ImageFormat;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.view.Surface;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Second camera output next to the preview, feeding YUV frames into a {@link FramePipeline}.
+ *
+ * Images are read on a dedicated thread, their luminance plane is copied into a pooled
+ * {@link Frame}, and the image is closed right away, so a slow analyzer can never hold
+ * camera buffers and stall the preview.
+ */
+class FrameReader implements ImageReader.OnImageAvailableListener {
+
+    /* Two images: one being copied while the camera fills the other one. */
+    private static final int MAX_IMAGES = 2;
+
+    private final FramePipeline mPipeline;
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+    private final ImageReader mImageReader;
+    /* Only accessed on the reader thread */
+    private boolean mClosed;
+    private volatile long mReceived;
+
+    FrameReader(FramePipeline pipeline, int width, int height) {
+        mPipeline = pipeline;
+        mThread = new HandlerThread("FrameReader");
+        mThread.start();
+        mImageReader = ImageReader.newInstance(width, height, ImageFormat.YUV_420_888, MAX_IMAGES);
+        mHandler = new Handler(mThread.getLooper());
+        mImageReader.setOnImageAvailableListener(this, mHandler);
+    }
+
+    Surface getSurface() {
+        return mImageReader.getSurface();
+    }
+
+    int getWidth() {
+        return mImageReader.getWidth();
+    }
+
+    int getHeight() {
+        return mImageReader.getHeight();
+    }
+
+    /** Number of images received from the camera, including dropped ones. */
+    long getReceivedCount() {
+        return mReceived;
+    }
+
+    /**
+     * Close the reader.  Returns immediately; the reader is closed on the reader thread, once
+     * the image being copied, if any, is done.
+     */
+    void close() {
+        mHandler.post(() -> {
+            mClosed = true;
+            mImageReader.close();
+        });
+        mThread.quitSafely();
+    }
+
+    @Override
+    public void onImageAvailable(ImageReader reader) {
+        /* Ignore images announced before closing. */
+        if (mClosed)
+            return;
+        Image image = reader.acquireLatestImage();
+        if (image == null)
+            return;
+        Frame frame = null;
+        try {
+            mReceived++;
+            frame = mPipeline.obtain(image.getWidth(), image.getHeight(), image.getTimestamp());
+            if (frame == null)
+                return;
+            copyLuma(image.getPlanes()[0], image.getWidth(), image.getHeight(), frame.getLuma());
+            /* Submitting hands the producer's reference over to the pipeline. */
+            Frame filled = frame;
+            frame = null;
+            mPipeline.submit(filled);
+        } finally {
+            /* Return the frame to the pool if copying failed. */
+            if (frame != null)
+                frame.release();
+            image.close();
+        }
+    }
+
+    /** Copy the Y plane into a tightly packed buffer. */
+    private static void copyLuma(Image.Plane plane, int width, int height, byte[] dst) {
+        ByteBuffer src = plane.getBuffer();
+        int rowStride = plane.getRowStride();
+        int pixelStride = plane.getPixelStride();
+        if (pixelStride == 1 && rowStride == width) {
+            src.get(dst, 0, width * height);
+            return;
+        }
+        for (int y = 0; y < height; y++) {
+            int rowStart = y * rowStride;
+            if (pixelStride == 1) {
+                src.position(rowStart);
+                src.get(dst, y * width, width);
+            } else {
+                for (int x = 0; x < width; x++)
+                    dst[y * width + x] = src.get(rowStart + x * pixelStride);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.example.iristick.camera;
+
+import com.iristick.smartglass.core.Headset;
+
+/**
+ * Coordinates the cameras shown by several {@link CameraFragment}s of one activity.
+ *
+ * {@link #open} starts opening all cameras at once, each on its own camera thread (see
+ * {@link CameraRegistry}), before the fragments even start.  The fragments then take over
+ * their already opening or opened device, so the cold start of all views takes about as long
+ * as the slowest camera instead of the sum of all cameras.  Each fragment creates its capture
+ * session as soon as its own camera and surface are ready, without waiting for the others.
+ *
+ * Consumers needing simultaneous frames of the first two cameras can register a
+ * {@link FramePairer.Listener} with {@link #setFramePairListener}.
+ */
+public final class MultiCameraSession {
+
+    private final CameraFragment[] mFragments;
+    private FramePairer mPairer;
+
+    public MultiCameraSession(CameraFragment... fragments) {
+        mFragments = fragments;
+    }
+
+    /**
+     * Start opening the cameras of all fragments in parallel.
+     * Call this from {@code Activity.onStart()}, which runs before the fragments are started.
+     */
+    public void open(Headset headset) {
+        CameraRegistry registry = CameraRegistry.getInstance();
+        for (CameraFragment fragment : mFragments) {
+            CameraRegistry.CameraInfo info = registry.getCameraInfo(headset, fragment.getCameraIndex());
+            if (info != null)
+                registry.preopenCamera(info.id);
+        }
+    }
+
+    /**
+     * Receive pairs of frames of the first two fragments captured at about the same time.
+     * @param toleranceNanos Maximum timestamp difference of paired frames.
+     * @param listener Listener called from a worker thread, or {@code null} to stop pairing.
+     */
+    public void setFramePairListener(long toleranceNanos, FramePairer.Listener listener) {
+        if (mFragments.length < 2)
+            throw new IllegalStateException("frame pairing needs two cameras");
+        if (mPairer != null) {
+            mFragments[0].removeFrameAnalyzer(mPairer.getAnalyzer(0));
+            mFragments[1].removeFrameAnalyzer(mPairer.getAnalyzer(1));
+            mPairer.clear();
+            mPairer = null;
+        }
+        if (listener != null) {
+            mPairer = new FramePairer(toleranceNanos, listener);
+            mFragments[0].addFrameAnalyzer("pairing", mPairer.getAnalyzer(0));
+            mFragments[1].addFrameAnalyzer("pairing", mPairer.getAnalyzer(1));
+        }
+    }
+
+    /** Frame pairer in use, or {@code null} if pairing is not enabled. */
+    public FramePairer getFramePairer() {
+        return mPairer;
+    }
+
+}
@@ -0,0 +1,218 @@
+package com.example.iristick.camera;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-size ring buffer of encoded video frames.
+ *
+ * Frame data is stored in a single byte array allocated up front, and frame metadata in
+ * parallel arrays, so the memory used never grows.  Frames older than the pre-roll duration
+ * are evicted, as are the oldest frames when space runs out.
+ *
+ * Frames are identified by a sequence number which increases with every appended frame.
+ * A reader can {@link #pin} the buffer to prevent the frames it still has to read from being
+ * evicted.  While pinned, frames that do not fit anymore are dropped instead, and appending
+ * resumes at the next key frame so the stream stays decodable.
+ *
+ * All methods are thread-safe and only hold the lock for the duration of a copy.
+ */
+public final class ReplayBuffer {
+
+    /** Reusable holder for a frame read from the buffer. */
+    public static final class EncodedFrame {
+        public byte[] data = new byte[0];
+        public int size;
+        public long ptsUs;
+        public boolean keyFrame;
+    }
+
+    private final byte[] mArena;
+    private final int[] mOffsets;
+    private final int[] mSizes;
+    private final long[] mPts;
+    private final boolean[] mKeyFrames;
+    private final long mPreRollUs;
+
+    /* Sequence numbers of the oldest frame and of the next frame to append */
+    private long mFirstSeq;
+    private long mNextSeq;
+    /* Position in the arena where the next frame will be written */
+    private int mWritePos;
+    private long mPinnedSeq = -1;
+    private boolean mWaitForKeyFrame;
+    private long mDropped;
+
+    /**
+     * @param capacityBytes Size of the frame data storage.
+     * @param maxFrames Maximum number of frames held.
+     * @param preRollUs Duration of video to keep when not pinned.
+     */
+    public ReplayBuffer(int capacityBytes, int maxFrames, long preRollUs) {
+        mArena = new byte[capacityBytes];
+        mOffsets = new int[maxFrames];
+        mSizes = new int[maxFrames];
+        mPts = new long[maxFrames];
+        mKeyFrames = new boolean[maxFrames];
+        mPreRollUs = preRollUs;
+    }
+
+    /**
+     * Append an encoded frame, consuming the remaining bytes of {@code data}.
+     * @return False if the frame was dropped.
+     */
+    public synchronized boolean append(ByteBuffer data, long ptsUs, boolean keyFrame) {
+        int size = data.remaining();
+        if (mWaitForKeyFrame && !keyFrame) {
+            mDropped++;
+            return false;
+        }
+
+        /* Evict frames that fall out of the pre-roll window. */
+        while (count() > 0 && ptsUs - mPts[index(mFirstSeq)] > mPreRollUs && !isPinned(mFirstSeq))
+            mFirstSeq++;
+
+        /* Make room for the new frame. */
+        int offset = reserve(size);
+        if (offset < 0) {
+            mDropped++;
+            mWaitForKeyFrame = true;
+            return false;
+        }
+        mWaitForKeyFrame = false;
+
+        int i = index(mNextSeq);
+        data.get(mArena, offset, size);
+        mOffsets[i] = offset;
+        mSizes[i] = size;
+        mPts[i] = ptsUs;
+        mKeyFrames[i] = keyFrame;
+        mWritePos = offset + size;
+        mNextSeq++;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Pin the buffer from its oldest key frame on.
+     * @return The sequence number of the first frame to read, or -1 if there is no key frame.
+     */
+    public synchronized long pin() {
+        for (long seq = mFirstSeq; seq < mNextSeq; seq++) {
+            if (mKeyFrames[index(seq)]) {
+                mPinnedSeq = seq;
+                return seq;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Move the pin forward, allowing frames before {@code seq} to be evicted.
+     */
+    public synchronized void advancePin(long seq) {
+        if (mPinnedSeq >= 0)
+            mPinnedSeq = Math.max(mPinnedSeq, seq);
+    }
+
+    public synchronized void unpin() {
+        mPinnedSeq = -1;
+    }
+
+    /**
+     * Copy a frame into {@code out}, growing its data array if needed.
+     * @return False if the frame is not available (anymore).
+     */
+    public synchronized boolean read(long seq, EncodedFrame out) {
+        if (seq < mFirstSeq || seq >= mNextSeq)
+            return false;
+        int i = index(seq);
+        if (out.data.length < mSizes[i])
+            out.data = new byte[mSizes[i]];
+        System.arraycopy(mArena, mOffsets[i], out.data, 0, mSizes[i]);
+        out.size = mSizes[i];
+        out.ptsUs = mPts[i];
+        out.keyFrame = mKeyFrames[i];
+        return true;
+    }
+
+    /**
+     * Wait until the frame with the given sequence number has been appended.
+     * @return False if the timeout elapsed first.
+     */
+    public synchronized boolean await(long seq, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (mNextSeq <= seq) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0)
+                return false;
+            wait(remaining);
+        }
+        return true;
+    }
+
+    /** Sequence number of the next frame to be appended. */
+    public synchronized long getNextSequence() {
+        return mNextSeq;
+    }
+
+    /** Presentation time of the last appended frame, or -1 if the buffer is empty. */
+    public synchronized long getLastPts() {
+        return count() == 0 ? -1 : mPts[index(mNextSeq - 1)];
+    }
+
+    /** Number of frames dropped because the buffer was full while pinned. */
+    public synchronized long getDroppedCount() {
+        return mDropped;
+    }
+
+    /** Number of frames currently held. */
+    public synchronized int getFrameCount() {
+        return count();
+    }
+
+    private int count() {
+        return (int) (mNextSeq - mFirstSeq);
+    }
+
+    private int index(long seq) {
+        return (int) (seq % mOffsets.length);
+    }
+
+    private boolean isPinned(long seq) {
+        return mPinnedSeq >= 0 && seq >= mPinnedSeq;
+    }
+
+    /**
+     * Find room for {@code size} bytes, evicting the oldest frames if allowed.
+     * Frames are stored contiguously; when a frame does not fit at the end of the arena,
+     * writing wraps around to the start.
+     * @return The offset to write at, or -1 if there is no room.
+     */
+    private int reserve(int size) {
+        if (size > mArena.length)
+            return -1;
+        int offset = mWritePos;
+        if (offset + size > mArena.length)
+            offset = 0;
+        while (count() > 0) {
+            if (count() < mOffsets.length && !overlapsOldest(offset, size))
+                return offset;
+            if (isPinned(mFirstSeq))
+                return -1;
+            mFirstSeq++;
+        }
+        return offset;
+    }
+
+    /** Whether the range overlaps the data still in use, which starts at the oldest frame. */
+    private boolean overlapsOldest(int offset, int size) {
+        int oldest = mOffsets[index(mFirstSeq)];
+        if (oldest >= mWritePos) {
+            /* Live data wraps around: it occupies [oldest, end) and [0, mWritePos). */
+            return offset < mWritePos || offset + size > oldest;
+        }
+        /* Live data occupies [oldest, mWritePos); it only overlaps after a wrap to 0. */
+        return offset < mWritePos && offset + size > oldest;
+    }
+
+}
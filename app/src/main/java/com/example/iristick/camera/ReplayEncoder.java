@@ -0,0 +1,166 @@
+package com.example.iristick.camera;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.view.Surface;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * H.264 encoder feeding a {@link ReplayRecorder}.
+ *
+ * The encoder input surface is added as an output of the capture session.  Encoded frames are
+ * delivered on a dedicated thread and copied into the replay buffer.
+ */
+class ReplayEncoder {
+
+    private static final String TAG = "ReplayEncoder";
+    private static final String MIME_TYPE = MediaFormat.MIMETYPE_VIDEO_AVC;
+    private static final int FRAME_RATE = 30;
+    private static final int KEY_FRAME_INTERVAL_SECONDS = 1;
+    /* Bit rate in bits per second for each pixel of the frame */
+    private static final int BIT_RATE_PER_PIXEL = 4;
+
+    private final ReplayRecorder mRecorder;
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+    private final MediaCodec mCodec;
+    private final Surface mSurface;
+    private final int mWidth;
+    private final int mHeight;
+    /* Only accessed on the encoder thread */
+    private boolean mClosed;
+    private volatile MediaFormat mOutputFormat;
+
+    ReplayEncoder(ReplayRecorder recorder, int width, int height) throws IOException {
+        mRecorder = recorder;
+        mWidth = width;
+        mHeight = height;
+
+        MediaFormat format = MediaFormat.createVideoFormat(MIME_TYPE, width, height);
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, getBitRate(width, height));
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, FRAME_RATE);
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, KEY_FRAME_INTERVAL_SECONDS);
+
+        mThread = new HandlerThread(TAG);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        mCodec = MediaCodec.createEncoderByType(MIME_TYPE);
+        mCodec.setCallback(mCallback, mHandler);
+        mCodec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        mSurface = mCodec.createInputSurface();
+        mCodec.start();
+    }
+
+    /** Target bit rate of the encoder for the given frame size, in bits per second. */
+    static int getBitRate(int width, int height) {
+        return width * height * BIT_RATE_PER_PIXEL;
+    }
+
+    Surface getSurface() {
+        return mSurface;
+    }
+
+    int getWidth() {
+        return mWidth;
+    }
+
+    int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Close the encoder.  Returns immediately; the codec is stopped and released on the encoder
+     * thread, once the output buffer being copied, if any, is done.  The capture session must
+     * not use the input surface anymore.
+     */
+    void close() {
+        mHandler.post(() -> {
+            mClosed = true;
+            mCodec.stop();
+            mCodec.release();
+            mSurface.release();
+        });
+        mThread.quitSafely();
+    }
+
+    /**
+     * Create a sink writing an MP4 file.
+     * @return The sink, or {@code null} if the encoder has not produced any output yet.
+     */
+    ReplayRecorder.Sink createSink(File file) throws IOException {
+        MediaFormat format = mOutputFormat;
+        if (format == null)
+            return null;
+        MediaMuxer muxer = new MediaMuxer(file.getPath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        int track = muxer.addTrack(format);
+        muxer.start();
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        return new ReplayRecorder.Sink() {
+            private long mFirstPts = -1;
+
+            @Override
+            public void write(ReplayBuffer.EncodedFrame frame) {
+                if (mFirstPts < 0)
+                    mFirstPts = frame.ptsUs;
+                info.set(0, frame.size, frame.ptsUs - mFirstPts,
+                        frame.keyFrame ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0);
+                muxer.writeSampleData(track, ByteBuffer.wrap(frame.data, 0, frame.size), info);
+            }
+
+            @Override
+            public void close() {
+                try {
+                    muxer.stop();
+                } catch (IllegalStateException e) {
+                    /* No sample written. */
+                    Log.w(TAG, "Empty replay", e);
+                }
+                muxer.release();
+            }
+        };
+    }
+
+    private final MediaCodec.Callback mCallback = new MediaCodec.Callback() {
+        @Override
+        public void onInputBufferAvailable(@NonNull MediaCodec codec, int index) {
+            /* Input comes from the surface. */
+        }
+
+        @Override
+        public void onOutputBufferAvailable(@NonNull MediaCodec codec, int index, @NonNull MediaCodec.BufferInfo info) {
+            /* Ignore buffers announced before closing. */
+            if (mClosed)
+                return;
+            ByteBuffer buffer = codec.getOutputBuffer(index);
+            if (buffer != null && info.size > 0 && (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0) {
+                buffer.position(info.offset);
+                buffer.limit(info.offset + info.size);
+                mRecorder.onEncodedFrame(buffer, info.presentationTimeUs,
+                        (info.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0);
+            }
+            codec.releaseOutputBuffer(index, false);
+        }
+
+        @Override
+        public void onError(@NonNull MediaCodec codec, @NonNull MediaCodec.CodecException e) {
+            Log.e(TAG, "Encoder error", e);
+        }
+
+        @Override
+        public void onOutputFormatChanged(@NonNull MediaCodec codec, @NonNull MediaFormat format) {
+            mOutputFormat = format;
+        }
+    };
+
+}
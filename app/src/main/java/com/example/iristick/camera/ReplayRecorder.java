@@ -0,0 +1,110 @@
+package com.example.iristick.camera;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Instant replay: keeps the last seconds of encoded video and saves them on demand.
+ *
+ * The encoder feeds every encoded frame to {@link #onEncodedFrame}, which only copies it into
+ * the {@link ReplayBuffer}.  {@link #trigger} saves the buffered pre-roll, starting at its
+ * oldest key frame, followed by the frames of the next seconds.  Saving happens on the writer
+ * executor, which reads the frames one by one from the pinned buffer, so the encoder thread
+ * never waits for the storage.
+ *
+ * The recorder does not depend on the Android framework; the output format is abstracted by
+ * a {@link Sink}.
+ */
+public final class ReplayRecorder {
+
+    /** Destination of a saved replay. */
+    public interface Sink {
+        void write(ReplayBuffer.EncodedFrame frame) throws IOException;
+
+        /** Called once after the last frame, also if writing failed. */
+        void close() throws IOException;
+    }
+
+    public interface Callback {
+        /**
+         * Called on the writer thread when saving is finished.
+         * @param frames Number of frames written.
+         * @param error Error that interrupted saving, or {@code null} on success.
+         */
+        void onReplayFinished(int frames, IOException error);
+    }
+
+    /** Time to wait for the encoder before giving up on the post-roll. */
+    private static final long FRAME_TIMEOUT_MILLIS = 2000;
+
+    private final ReplayBuffer mBuffer;
+    private final Executor mWriter;
+    private final AtomicBoolean mSaving = new AtomicBoolean();
+
+    public ReplayRecorder(ReplayBuffer buffer, Executor writer) {
+        mBuffer = buffer;
+        mWriter = writer;
+    }
+
+    /** Store an encoded frame.  Called on the encoder thread. */
+    public void onEncodedFrame(ByteBuffer data, long ptsUs, boolean keyFrame) {
+        mBuffer.append(data, ptsUs, keyFrame);
+    }
+
+    public boolean isSaving() {
+        return mSaving.get();
+    }
+
+    /**
+     * Save the buffered pre-roll and the next {@code postRollUs} microseconds of video.
+     * @return False if nothing can be saved yet, or if a replay is already being saved.
+     */
+    public boolean trigger(long postRollUs, Sink sink, Callback callback) {
+        if (!mSaving.compareAndSet(false, true))
+            return false;
+        long first = mBuffer.pin();
+        long lastPts = mBuffer.getLastPts();
+        if (first < 0) {
+            mSaving.set(false);
+            return false;
+        }
+        long endPts = lastPts + postRollUs;
+        mWriter.execute(() -> save(first, endPts, sink, callback));
+        return true;
+    }
+
+    private void save(long seq, long endPts, Sink sink, Callback callback) {
+        ReplayBuffer.EncodedFrame frame = new ReplayBuffer.EncodedFrame();
+        int frames = 0;
+        IOException error = null;
+        try {
+            while (true) {
+                if (!mBuffer.await(seq, FRAME_TIMEOUT_MILLIS))
+                    break;
+                if (!mBuffer.read(seq, frame) || frame.ptsUs > endPts)
+                    break;
+                sink.write(frame);
+                frames++;
+                seq++;
+                mBuffer.advancePin(seq);
+            }
+        } catch (IOException e) {
+            error = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            mBuffer.unpin();
+            try {
+                sink.close();
+            } catch (IOException e) {
+                if (error == null)
+                    error = e;
+            }
+            mSaving.set(false);
+        }
+        callback.onReplayFinished(frames, error);
+    }
+
+}
@@ -0,0 +1,150 @@
+package com.example.iristick.camera;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Chooses the stream resolution of a camera from the preview size, the current zoom level and
+ * the measured frame rate.
+ *
+ * The ideal size is the smallest stream size covering the preview.  Since digital zoom crops
+ * the sensor image, streaming more pixels than the cropped area holds does not add sharpness,
+ * so the ideal size shrinks as the zoom level grows.  When the measured frame rate drops below
+ * the target, the link is assumed to be saturated and the policy steps down one size at a time.
+ *
+ * To avoid renegotiating the capture session over and over, a new size is only adopted once it
+ * has been proposed continuously for {@link #HOLD_MILLIS}, and after a throughput-induced step
+ * down, larger sizes are not considered again for {@link #THROTTLE_MILLIS}.
+ *
+ * This class does not depend on the Android framework and is not thread-safe.
+ */
+final class StreamSizePolicy {
+
+    /** Minimum time a different size must be proposed before switching to it. */
+    static final long HOLD_MILLIS = 2000;
+    /** Time during which larger sizes are not considered after a step down. */
+    static final long THROTTLE_MILLIS = 10000;
+    /** Below this fraction of the target frame rate, the stream is considered throttled. */
+    static final float LOW_FPS_RATIO = 0.8f;
+    /** Above this fraction of the target frame rate, a larger stream may be tried. */
+    static final float HIGH_FPS_RATIO = 0.95f;
+
+    /** Stream dimensions. */
+    static final class Size {
+        final int width;
+        final int height;
+
+        Size(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        long area() {
+            return (long) width * height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Size))
+                return false;
+            Size other = (Size) o;
+            return width == other.width && height == other.height;
+        }
+
+        @Override
+        public int hashCode() {
+            return width * 31 + height;
+        }
+
+        @Override
+        public String toString() {
+            return width + "x" + height;
+        }
+    }
+
+    /* Available sizes, sorted by increasing area. */
+    private final List<Size> mSizes;
+    private final float mTargetFps;
+
+    private int mCurrent = -1;
+    private int mPending = -1;
+    private long mPendingSince;
+    private long mThrottledUntil = Long.MIN_VALUE;
+
+    /**
+     * @param sizes Stream sizes supported by the camera, in any order.
+     * @param targetFps Frame rate the camera should sustain.
+     */
+    StreamSizePolicy(List<Size> sizes, float targetFps) {
+        if (sizes.isEmpty())
+            throw new IllegalArgumentException("no stream sizes");
+        mSizes = new ArrayList<>(sizes);
+        Collections.sort(mSizes, (a, b) -> Long.compare(a.area(), b.area()));
+        mTargetFps = targetFps;
+    }
+
+    /** Currently selected size, or {@code null} if no size was selected yet. */
+    Size getCurrent() {
+        return mCurrent < 0 ? null : mSizes.get(mCurrent);
+    }
+
+    /**
+     * Evaluate the policy with fresh measurements.
+     * The first call with a known view size selects a size immediately; later calls apply
+     * hysteresis.  Nothing is selected while the view size is unknown, e.g. before layout, since
+     * the size selected first would be held for at least {@link #HOLD_MILLIS}.
+     * @param viewWidth Width of the preview view in pixels, or 0 if unknown.
+     * @param viewHeight Height of the preview view in pixels, or 0 if unknown.
+     * @param zoom Current digital zoom factor (1.0 or more).
+     * @param fps Measured frame rate, or 0 if not measured yet.
+     * @param nowMillis Current time from a monotonic clock.
+     * @return The size to stream at, or {@code null} if none is selected yet.
+     */
+    Size update(int viewWidth, int viewHeight, float zoom, float fps, long nowMillis) {
+        int ideal = idealIndex(viewWidth, viewHeight, zoom);
+        if (mCurrent < 0) {
+            if (viewWidth <= 0 || viewHeight <= 0)
+                return null;
+            mCurrent = ideal;
+            mPending = -1;
+            return mSizes.get(mCurrent);
+        }
+
+        int candidate;
+        if (fps > 0 && fps < mTargetFps * LOW_FPS_RATIO) {
+            /* Throughput-limited: step down, and stay down for a while. */
+            candidate = Math.min(ideal, Math.max(mCurrent - 1, 0));
+            mThrottledUntil = nowMillis + THROTTLE_MILLIS;
+        } else if (nowMillis < mThrottledUntil || (fps > 0 && fps < mTargetFps * HIGH_FPS_RATIO)) {
+            /* Do not grow, but shrink if the view or zoom level no longer needs as many pixels. */
+            candidate = Math.min(ideal, mCurrent);
+        } else {
+            candidate = ideal;
+        }
+
+        if (candidate == mCurrent) {
+            mPending = -1;
+        } else if (candidate != mPending) {
+            mPending = candidate;
+            mPendingSince = nowMillis;
+        } else if (nowMillis - mPendingSince >= HOLD_MILLIS) {
+            mCurrent = candidate;
+            mPending = -1;
+        }
+        return mSizes.get(mCurrent);
+    }
+
+    /** Index of the smallest size holding as many pixels as the view and zoom level can show. */
+    private int idealIndex(int viewWidth, int viewHeight, float zoom) {
+        long largest = mSizes.get(mSizes.size() - 1).area();
+        float z = Math.max(zoom, 1.0f);
+        long needed = Math.min((long) viewWidth * viewHeight, (long) (largest / (z * z)));
+        for (int i = 0; i < mSizes.size(); i++) {
+            if (mSizes.get(i).area() >= needed)
+                return i;
+        }
+        return mSizes.size() - 1;
+    }
+
+}
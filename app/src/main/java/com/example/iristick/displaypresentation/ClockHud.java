@@ -1,28 +1,60 @@
 package com.example.iristick.displaypresentation;
 
 import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.hardware.SensorManager;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.HandlerThread;
+import android.text.format.DateFormat;
+import android.util.DisplayMetrics;
+import android.util.TypedValue;
 import android.view.Display;
-import android.widget.TextView;
 
 import com.example.iristick.R;
+import com.example.iristick.hud.FieldFormatter;
+import com.example.iristick.hud.GlyphAtlas;
+import com.example.iristick.hud.HandlerScheduler;
+import com.example.iristick.hud.HudBinding;
+import com.example.iristick.hud.HudCompositor;
+import com.example.iristick.hud.HudCompositorView;
+import com.example.iristick.hud.HudLayer;
+import com.example.iristick.hud.HudTicker;
+import com.example.iristick.hud.TextLayer;
+import com.example.iristick.hud.TickSchedule;
+import com.iristick.smartglass.core.Headset;
+import com.iristick.smartglass.core.Sensor;
+import com.iristick.smartglass.core.SensorEvent;
+import com.iristick.smartglass.core.SensorEventListener;
 import com.iristick.smartglass.support.app.HudPresentation;
-
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import com.iristick.smartglass.support.app.IristickApp;
 
 class ClockHud extends HudPresentation {
 
-    private TextView mDisplayText;
-    private Handler mHandler;
-    private final DateFormat mFormat;
+    /* The heading is sampled at 200 Hz, but shown at most 10 times per second. */
+    private static final int SENSOR_PERIOD_US = 5000;
+    private static final float HEADING_RATE = 10;
+
+    private HudCompositor mCompositor;
+    private TextLayer mClock;
+    private TextLayer mHeading;
+    private final Handler mHandler;
+    private final HudTicker mTicker;
+    private Sensor mSensor;
+    /* Receives the sensor events, off the main thread */
+    private HandlerThread mSensorThread;
+    private HudBinding<float[]> mHeadingBinding;
+    /* Reused every tick, so updating the clock does not allocate. */
+    private final char[] mTime = new char[32];
+    private final char[] mHeadingText = new char[16];
+    private boolean m24Hour;
 
     ClockHud(Context outerContext, Display display) {
         super(outerContext, display);
         mHandler = new Handler(getContext().getMainLooper());
-        mFormat = SimpleDateFormat.getTimeInstance();
+        mTicker = new HudTicker(mHandler);
     }
 
     @Override
@@ -32,26 +64,129 @@ class ClockHud extends HudPresentation {
         /* Set layout. */
         setContentView(R.layout.displaypresentation_hud);
 
+        /*
+         * Build the HUD from layers: the static chrome is rendered once, and only the clock
+         * layer is rendered again when the time changes.
+         */
+        DisplayMetrics metrics = getContext().getResources().getDisplayMetrics();
+        int width = metrics.widthPixels;
+        int height = metrics.heightPixels;
+        float textSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 30, metrics);
+        float labelSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 14, metrics);
+        int clockHeight = (int) (textSize * 2);
+        mCompositor = new HudCompositor(width, height, Color.BLACK);
+        mCompositor.addLayer(new ChromeLayer(width, height, labelSize,
+                getContext().getString(R.string.displaypresentation_clock_label)));
+        m24Hour = DateFormat.is24HourFormat(getContext());
+        /*
+         * The atlas holds the digits, the separators and the AM/PM markers.  A line with a
+         * character missing from the atlas is drawn with drawText, e.g. in locales whose
+         * markers are not Latin-1.
+         */
+        String clockCharacters = "0123456789: ";
+        if (!m24Hour)
+            clockCharacters += GlyphAtlas.supportedCharacters(mTicker.getMarkerCharacters());
+        mClock = new TextLayer(0, (height - clockHeight) / 2, width, clockHeight, textSize, Color.WHITE,
+                clockCharacters);
+        mCompositor.addLayer(mClock);
+        mHeading = new TextLayer(0, (height + clockHeight) / 2, width, clockHeight / 2, labelSize, Color.GRAY,
+                "0123456789.-\u00b0");
+        mCompositor.addLayer(mHeading);
+
         /* Get widgets defined in the layout. */
-        mDisplayText = findViewById(R.id.clock);
+        HudCompositorView view = findViewById(R.id.hud);
+        view.setCompositor(mCompositor);
 
-        /* Start updating the clock. */
-        mHandler.postDelayed(mAction, 0);
+        /* Start updating the clock, on every second. */
+        mTicker.add(mClockTick, 1000);
+        mTicker.start();
+
+        /* Bind the heading layer to the orientation of the headset. */
+        Headset headset = IristickApp.getHeadset();
+        if (headset != null)
+            mSensor = headset.getDefaultSensor(Sensor.TYPE_ROTATION_VECTOR);
+        if (mSensor != null) {
+            mHeadingBinding = new HudBinding<>(new HandlerScheduler(mHandler), HEADING_RATE, this::showHeading);
+            /* At 200 Hz, the events would compete with the drawing on the main thread. */
+            mSensorThread = new HandlerThread("HeadingSensor");
+            mSensorThread.start();
+            mSensor.registerListener(mHeadingProducer, SENSOR_PERIOD_US, new Handler(mSensorThread.getLooper()));
+        }
     }
 
     @Override
     public void onStop() {
         /* Called when the presentation is dismissed. Do cleanup here. */
-        mHandler.removeCallbacks(mAction);
+        mTicker.stop();
+        if (mSensor != null) {
+            mSensor.unregisterListener(mHeadingProducer);
+            mSensorThread.quitSafely();
+            /* Events still queued on the sensor thread are dropped by the closed binding. */
+            mHeadingBinding.close();
+        }
+        mCompositor.release();
         super.onStop();
     }
 
-    private final Runnable mAction = new Runnable() {
+    private final TickSchedule.Listener mClockTick = timeMillis -> {
+        int length = mTicker.formatTime(mTime, 0, m24Hour);
+        mClock.setText(mTime, 0, length);
+    };
+
+    /** Show the azimuth, in radians, of an orientation. */
+    private void showHeading(float[] orientation) {
+        double degrees = Math.toDegrees(orientation[0]);
+        if (degrees < 0)
+            degrees += 360;
+        /* Round to the tenth shown first, so that 359.95 and above read 0.0 rather than 360.0. */
+        degrees = Math.round(degrees * 10) / 10.0;
+        if (degrees >= 360)
+            degrees -= 360;
+        int length = FieldFormatter.formatFixed(mHeadingText, 0, degrees, 1);
+        mHeadingText[length++] = '\u00b0';
+        mHeading.setText(mHeadingText, 0, length);
+    }
+
+    /** Publishes the orientation of every sensor event to the heading binding, on the sensor thread. */
+    private final SensorEventListener mHeadingProducer = new SensorEventListener() {
+        private final float[] mRotation = new float[9];
+        /* Orientation replaced before being shown, reused for the next event */
+        private float[] mSpare;
+
         @Override
-        public void run() {
-            mDisplayText.setText(mFormat.format(new Date()));
-            mHandler.postDelayed(this, 1000);
+        public void onSensorChanged(SensorEvent event) {
+            float[] orientation = mSpare != null ? mSpare : new float[3];
+            SensorManager.getRotationMatrixFromVector(mRotation, event.values);
+            SensorManager.getOrientation(mRotation, orientation);
+            mSpare = mHeadingBinding.publish(orientation);
         }
     };
 
+    /** Static chrome: a frame around the display with a label on top. */
+    private static final class ChromeLayer extends HudLayer {
+        private final Paint mFramePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        private final Paint mLabelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        private final String mLabel;
+
+        ChromeLayer(int width, int height, float labelSize, String label) {
+            super(0, 0, width, height, true);
+            mLabel = label;
+            mFramePaint.setStyle(Paint.Style.STROKE);
+            mFramePaint.setStrokeWidth(2);
+            mFramePaint.setColor(Color.GRAY);
+            mLabelPaint.setTextSize(labelSize);
+            mLabelPaint.setColor(Color.GRAY);
+            mLabelPaint.setTextAlign(Paint.Align.CENTER);
+        }
+
+        @Override
+        protected void onDraw(Canvas canvas) {
+            float margin = mLabelPaint.getTextSize();
+            canvas.drawColor(Color.BLACK);
+            canvas.drawRoundRect(margin, margin, getWidth() - margin, getHeight() - margin,
+                    margin, margin, mFramePaint);
+            canvas.drawText(mLabel, getWidth() / 2f, 2.5f * margin, mLabelPaint);
+        }
+    }
+
 }
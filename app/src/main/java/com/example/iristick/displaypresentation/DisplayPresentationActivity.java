@@ -9,7 +9,7 @@ import com.iristick.smartglass.support.app.HudActivity;
 import com.iristick.smartglass.support.app.HudPresentation;
 
 /**
- * This example displays the current time on the display, using standard Android UI elements.
+ * This example displays the current time and the heading of the smart glasses on the display.
  */
 public class DisplayPresentationActivity extends BaseActivity implements HudActivity {
 
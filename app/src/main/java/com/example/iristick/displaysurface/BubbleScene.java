@@ -0,0 +1,95 @@
+package com.example.iristick.displaysurface;
+
+import android.graphics.Rect;
+
+import com.example.iristick.hud.DamageTracker;
+import com.example.iristick.hud.HudBackend;
+import com.example.iristick.hud.ParticlePhysics;
+import com.example.iristick.hud.ParticleSystem;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A bunch of colored bubbles moving across the display and wrapping around its borders.
+ * The scene draws through a {@link HudBackend}, so it can be rendered by any backend.
+ * Moving bubbles are reported to a {@link DamageTracker}, so only the region where bubbles
+ * moved is redrawn, and nothing is drawn while they stand still.
+ *
+ * The bubbles are particles of a {@link ParticleSystem}, so the scene scales to thousands of
+ * bubbles.  Radii are whole pixels and colors come from a small palette, so bubbles of the
+ * same color and size are drawn in one call.  Optionally, bubbles bounce off each other.
+ */
+final class BubbleScene {
+
+    private static final int BACKGROUND = 0xff000000;
+    private static final int COLORS = 8;
+
+    private final ParticleSystem mParticles;
+    private final ParticlePhysics mPhysics;
+    private boolean mCollisions;
+    private final DamageTracker mDamage;
+    private final Rect mDirty = new Rect();
+
+    BubbleScene(int count, int width, int height, Random random) {
+        mDamage = new DamageTracker(width, height);
+
+        /* Randomize colors. */
+        int[] palette = new int[COLORS];
+        for (int i = 0; i < COLORS; i++)
+            palette[i] = 0xff000000 | (random.nextInt(159) + 96) << 16
+                    | (random.nextInt(159) + 96) << 8 | (random.nextInt(159) + 96);
+
+        /* Randomize radius, starting position and velocity. */
+        mParticles = new ParticleSystem(palette, width, height, count);
+        for (int i = 0; i < count; i++) {
+            float radius = random.nextInt(11) + 10;
+            float speed = random.nextFloat() * 50 + 30;
+            double angle = random.nextDouble() * 2 * Math.PI;
+            mParticles.add(random.nextFloat() * (width - 2 * radius),
+                    random.nextFloat() * (height - 2 * radius),
+                    (float) Math.cos(angle) * speed, (float) Math.sin(angle) * speed,
+                    radius, random.nextInt(COLORS));
+        }
+        mPhysics = new ParticlePhysics(mParticles, width, height, ForkJoinPool.commonPool());
+    }
+
+    /** Enable or disable collisions between bubbles. */
+    void setCollisions(boolean enabled) {
+        mCollisions = enabled;
+    }
+
+    ParticlePhysics getPhysics() {
+        return mPhysics;
+    }
+
+    /** Move all bubbles by the given time step. */
+    void update(float deltaT) {
+        if (mCollisions)
+            mPhysics.step();
+        mParticles.update(deltaT, mDamage);
+    }
+
+    DamageTracker getDamageTracker() {
+        return mDamage;
+    }
+
+    /**
+     * Draw a frame, redrawing only the damaged region.
+     * @return False if the backend cannot draw anymore.
+     */
+    boolean draw(HudBackend backend) {
+        if (!mDamage.isDirty()) {
+            mDamage.onFrameSkipped();
+            return true;
+        }
+        mDirty.set(mDamage.getLeft(), mDamage.getTop(), mDamage.getRight(), mDamage.getBottom());
+        if (!backend.beginFrame(BACKGROUND, mDirty))
+            return false;
+        /* The backend clips the bubbles outside the dirty region. */
+        mParticles.draw(backend);
+        mDamage.onFrameDrawn(mDirty.left, mDirty.top, mDirty.right, mDirty.bottom);
+        return backend.endFrame();
+    }
+
+}
@@ -1,30 +1,38 @@
 package com.example.iristick.displaysurface;
 
-import android.graphics.Canvas;
-import android.graphics.Paint;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.util.Log;
 import android.view.Display;
 import android.view.Surface;
+import android.view.View;
+import android.widget.CheckBox;
 
 import com.example.iristick.R;
+import com.example.iristick.hud.CanvasBackend;
+import com.example.iristick.hud.DamageTracker;
+import com.example.iristick.hud.FrameScheduler;
+import com.example.iristick.hud.GlesBackend;
+import com.example.iristick.hud.HudBackend;
 import com.iristick.smartglass.core.DisplayListener;
 import com.iristick.smartglass.core.Headset;
 import com.iristick.smartglass.examples.BaseActivity;
 import com.iristick.smartglass.support.app.IristickApp;
 
-import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
 
 /**
  * This example draws a bunch of colored moving bubbles on the display,
- * using direct draw operations.
+ * using direct draw operations on the GPU, or on the CPU as fallback.
  */
 public class DisplaySurfaceActivity extends BaseActivity implements DisplayListener {
 
     private static final String TAG = "DisplaySurfaceExample";
+    private static final float TARGET_FPS = 30;
     private Renderer mRenderer;
+    private boolean mCollisions;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -61,6 +69,7 @@ public class DisplaySurfaceActivity extends BaseActivity implements DisplayListe
     @Override
     public void onDisplaySurfaceOpened(Surface surface, int width, int height, int density) {
         mRenderer = new Renderer(surface, width, height);
+        mRenderer.setCollisions(mCollisions);
     }
 
     @Override
@@ -71,108 +80,79 @@ public class DisplaySurfaceActivity extends BaseActivity implements DisplayListe
         }
     }
 
+    public void doToggleCollisions(View view) {
+        mCollisions = ((CheckBox) view).isChecked();
+        if (mRenderer != null)
+            mRenderer.setCollisions(mCollisions);
+    }
+
     /* Step 3: Draw something. */
 
-    class Renderer implements Runnable {
-        private final Surface mSurface;
-        private final int mSurfaceWidth;
-        private final int mSurfaceHeight;
-        private final ArrayList<Bubble> mBubbles;
+    class Renderer implements FrameScheduler.Renderer {
+        private final BubbleScene mScene;
         private final HandlerThread mHandlerThread;
         private final Handler mHandler;
-        private long mPreviousTime;
+        private final FrameScheduler mScheduler;
+        private HudBackend mBackend;
 
         Renderer(Surface surface, int width, int height) {
-            mSurface = surface;
-            mSurfaceWidth = width;
-            mSurfaceHeight = height;
-
             /* Create 40 colored bubbles. */
-            mBubbles = new ArrayList<>();
-            for (int i = 0; i < 40; ++i)
-                mBubbles.add(new Bubble());
+            mScene = new BubbleScene(40, width, height, new Random());
 
-            /* Start rendering in a new thread. */
+            /* Start rendering in a new thread, paced by vsync. */
             mHandlerThread = new HandlerThread("RenderThread");
             mHandlerThread.start();
             mHandler = new Handler(mHandlerThread.getLooper());
-            mPreviousTime = System.currentTimeMillis();
-            mHandler.post(this);
+            mScheduler = new FrameScheduler(mHandler, TARGET_FPS, this);
+            mHandler.post(() -> {
+                mBackend = openBackend(surface, width, height);
+                if (mBackend != null)
+                    mScheduler.start();
+            });
         }
 
         void stop() {
-            mHandlerThread.quit();
+            mScheduler.stop();
+            mHandler.post(() -> {
+                if (mBackend != null)
+                    mBackend.close();
+            });
+            mHandlerThread.quitSafely();
+            FrameScheduler.Stats stats = mScheduler.getStats();
+            Log.i(TAG, String.format(Locale.US,
+                    "%d frames, %.1f fps, %d dropped, interval p50 %.1f ms p99 %.1f ms, draw p95 %.1f ms",
+                    stats.frames, stats.fps, stats.dropped, stats.intervalP50Nanos / 1e6,
+                    stats.intervalP99Nanos / 1e6, stats.drawP95Nanos / 1e6));
+            DamageTracker damage = mScene.getDamageTracker();
+            Log.i(TAG, String.format(Locale.US, "%d frames skipped, %.0f pixels (%.1f%%) redrawn per frame",
+                    damage.getSkippedCount(), damage.getMeanPixels(), damage.getMeanCoverage() * 100));
         }
 
-        @Override
-        public void run() {
-            if (!mSurface.isValid())
-                return;
-
-            /* Calculate elapsed time. */
-            long newTime = System.currentTimeMillis();
-            float deltaT = (float) (newTime - mPreviousTime) / 1000;
-            mPreviousTime = newTime;
-
-            /* Draw scene. */
-            try {
-                Canvas canvas = mSurface.lockCanvas(null);
-                canvas.drawARGB(255, 0, 0, 0);
-                for (Bubble bubble : mBubbles)
-                    bubble.updateAndDraw(deltaT, canvas);
-                mSurface.unlockCanvasAndPost(canvas);
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to draw frame", e);
-                return;
-            }
-
-            /* Schedule next draw call (30 fps = 33 ms interval). */
-            long millisToWait = Math.max((long) (33 - deltaT), 0);
-            mHandler.postDelayed(this, millisToWait);
+        void setCollisions(boolean enabled) {
+            mHandler.post(() -> mScene.setCollisions(enabled));
         }
 
-        class Bubble {
-            private final float mRadius;
-            private float mPosX;
-            private float mPosY;
-            private float mDx;
-            private float mDy;
-            private final Paint mPaint;
-
-            Bubble() {
-                /* Randomize color. */
-                mPaint = new Paint();
-                mPaint.setARGB(255, (int) (Math.random() * 159 + 96),
-                        (int) (Math.random() * 159 + 96),
-                        (int) (Math.random() * 159 + 96));
-
-                /* Randomize radius, starting position and velocity. */
-                mRadius = (float) (Math.random() * 10 + 10);
-                mPosX = (float) (Math.random() * (mSurfaceWidth - 2 * mRadius));
-                mPosY = (float) (Math.random() * (mSurfaceHeight - 2 * mRadius));
-                float speed = (float) (Math.random() * 50 + 30);
-                double angle = Math.random() * 2 * Math.PI;
-                mDx = (float) Math.cos(angle) * speed;
-                mDy = (float) Math.sin(angle) * speed;
+        /** Render on the GPU if possible, otherwise fall back to a software canvas. */
+        private HudBackend openBackend(Surface surface, int width, int height) {
+            HudBackend[] backends = {new GlesBackend(), new CanvasBackend()};
+            for (HudBackend backend : backends) {
+                try {
+                    backend.open(surface, width, height);
+                    Log.i(TAG, "Rendering with " + backend.getName() + " backend");
+                    return backend;
+                } catch (IllegalStateException e) {
+                    Log.w(TAG, "Cannot render with " + backend.getName() + " backend", e);
+                }
             }
+            return null;
+        }
 
-            void updateAndDraw(float deltaT, Canvas canvas) {
-                /* Update current position. */
-                mPosX += mDx * deltaT;
-                mPosY += mDy * deltaT;
-
-                /* Wrap around screen bounds. */
-                if (mPosX < -mRadius)
-                    mPosX = mSurfaceWidth + mRadius;
-                else if (mPosX > mSurfaceWidth + mRadius)
-                    mPosX = -mRadius;
-                if (mPosY < -mRadius)
-                    mPosY = mSurfaceHeight + mRadius;
-                else if (mPosY > mSurfaceHeight + mRadius)
-                    mPosY = -mRadius;
-
-                /* Draw onto the surface. */
-                canvas.drawCircle(mPosX, mPosY, mRadius, mPaint);
+        @Override
+        public void onDrawFrame(long frameTimeNanos, float deltaT) {
+            mScene.update(deltaT);
+            if (!mScene.draw(mBackend)) {
+                Log.e(TAG, "Failed to draw frame");
+                mScheduler.stop();
             }
         }
     }
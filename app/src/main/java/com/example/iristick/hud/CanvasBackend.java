@@ -0,0 +1,100 @@
+package com.example.iristick.hud;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.Log;
+import android.view.Surface;
+
+/**
+ * Software rendering backend, drawing on the CPU with a {@link Canvas} locked on the surface.
+ * Only the dirty region is locked: the surface copies the rest from the previous frame.
+ * This backend works on any surface and serves as fallback for {@link GlesBackend}.
+ */
+public final class CanvasBackend implements HudBackend {
+
+    private static final String TAG = "CanvasBackend";
+
+    private final Paint mPaint = new Paint();
+    private final Paint mPointPaint = new Paint();
+    private Surface mSurface;
+    private Canvas mCanvas;
+
+    public CanvasBackend() {
+        /* Round points are circles with the stroke width as diameter. */
+        mPointPaint.setStrokeCap(Paint.Cap.ROUND);
+    }
+
+    @Override
+    public void open(Surface surface, int width, int height) {
+        if (!surface.isValid())
+            throw new IllegalStateException("invalid surface");
+        mSurface = surface;
+    }
+
+    @Override
+    public boolean beginFrame(int color, Rect dirty) {
+        if (!mSurface.isValid())
+            return false;
+        try {
+            /* The canvas is clipped to the dirty region, which the surface may enlarge. */
+            mCanvas = mSurface.lockCanvas(dirty);
+        } catch (IllegalArgumentException | Surface.OutOfResourcesException e) {
+            Log.e(TAG, "Failed to lock canvas", e);
+            return false;
+        }
+        mCanvas.drawColor(color);
+        return true;
+    }
+
+    @Override
+    public void fillCircle(float x, float y, float radius, int color) {
+        mPaint.setColor(color);
+        mCanvas.drawCircle(x, y, radius, mPaint);
+    }
+
+    @Override
+    public void fillCircles(float[] positions, float[] radii, int from, int to, int color) {
+        mPaint.setColor(color);
+        mPointPaint.setColor(color);
+        int i = from;
+        while (i < to) {
+            /* Draw runs of circles of the same radius as points in one call. */
+            float radius = radii[i];
+            int end = i + 1;
+            while (end < to && radii[end] == radius)
+                end++;
+            if (end - i == 1) {
+                mCanvas.drawCircle(positions[2 * i], positions[2 * i + 1], radius, mPaint);
+            } else {
+                mPointPaint.setStrokeWidth(2 * radius);
+                mCanvas.drawPoints(positions, 2 * i, 2 * (end - i), mPointPaint);
+            }
+            i = end;
+        }
+    }
+
+    @Override
+    public boolean endFrame() {
+        Canvas canvas = mCanvas;
+        mCanvas = null;
+        try {
+            mSurface.unlockCanvasAndPost(canvas);
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            Log.e(TAG, "Failed to post frame", e);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        mSurface = null;
+    }
+
+    @Override
+    public String getName() {
+        return "canvas";
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.example.iristick.hud;
+
+/**
+ * Tracks the region of a HUD surface which changed since the last frame.
+ *
+ * Scenes report the bounds of every element before and after it moved or changed, and the
+ * tracker merges them into the smallest rectangle containing all of them.  The renderer then
+ * locks and redraws only that rectangle, or skips the frame entirely when nothing changed.
+ * The tracker counts the frames drawn and skipped and the number of pixels redrawn, to
+ * assess the gain.
+ *
+ * Rectangles have exclusive right and bottom edges and are clipped to the surface.  The
+ * damage must be updated from the render thread only; the statistics can be read from any
+ * thread.
+ */
+public final class DamageTracker {
+
+    private final int mWidth;
+    private final int mHeight;
+
+    private int mLeft, mTop, mRight, mBottom;
+
+    /* Guarded by this */
+    private long mFrames;
+    private long mSkipped;
+    private long mLastPixels;
+    private long mTotalPixels;
+
+    /** Create a tracker for a surface of the given size, with the whole surface dirty. */
+    public DamageTracker(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        invalidateAll();
+    }
+
+    /** Mark the whole surface as dirty, e.g. when the surface content was lost. */
+    public void invalidateAll() {
+        mLeft = 0;
+        mTop = 0;
+        mRight = mWidth;
+        mBottom = mHeight;
+    }
+
+    /** Mark a rectangle as dirty. */
+    public void invalidate(int left, int top, int right, int bottom) {
+        left = Math.max(left, 0);
+        top = Math.max(top, 0);
+        right = Math.min(right, mWidth);
+        bottom = Math.min(bottom, mHeight);
+        if (left >= right || top >= bottom)
+            return;
+        if (!isDirty()) {
+            mLeft = left;
+            mTop = top;
+            mRight = right;
+            mBottom = bottom;
+        } else {
+            mLeft = Math.min(mLeft, left);
+            mTop = Math.min(mTop, top);
+            mRight = Math.max(mRight, right);
+            mBottom = Math.max(mBottom, bottom);
+        }
+    }
+
+    /** Mark the bounds of a circle as dirty. */
+    public void invalidateCircle(float x, float y, float radius) {
+        invalidate((int) Math.floor(x - radius), (int) Math.floor(y - radius),
+                (int) Math.ceil(x + radius) + 1, (int) Math.ceil(y + radius) + 1);
+    }
+
+    /** True if anything changed since the last frame drawn. */
+    public boolean isDirty() {
+        return mLeft < mRight && mTop < mBottom;
+    }
+
+    public int getLeft() {
+        return mLeft;
+    }
+
+    public int getTop() {
+        return mTop;
+    }
+
+    public int getRight() {
+        return mRight;
+    }
+
+    public int getBottom() {
+        return mBottom;
+    }
+
+    /**
+     * Record that a frame was drawn and clear the damage.
+     * The region drawn can be larger than the damage, if the backend had to redraw more.
+     */
+    public void onFrameDrawn(int left, int top, int right, int bottom) {
+        long pixels = (long) Math.max(0, right - left) * Math.max(0, bottom - top);
+        mLeft = mTop = mRight = mBottom = 0;
+        synchronized (this) {
+            mFrames++;
+            mLastPixels = pixels;
+            mTotalPixels += pixels;
+        }
+    }
+
+    /** Record that a frame was skipped because nothing changed. */
+    public synchronized void onFrameSkipped() {
+        mSkipped++;
+        mLastPixels = 0;
+    }
+
+    /** Number of frames drawn. */
+    public synchronized long getFrameCount() {
+        return mFrames;
+    }
+
+    /** Number of frames skipped because nothing changed. */
+    public synchronized long getSkippedCount() {
+        return mSkipped;
+    }
+
+    /** Number of pixels redrawn in the last frame, 0 if it was skipped. */
+    public synchronized long getLastPixels() {
+        return mLastPixels;
+    }
+
+    /** Mean number of pixels redrawn per frame, counting skipped frames. */
+    public synchronized float getMeanPixels() {
+        long frames = mFrames + mSkipped;
+        return frames == 0 ? 0 : (float) mTotalPixels / frames;
+    }
+
+    /** Mean fraction of the surface redrawn per frame, counting skipped frames. */
+    public synchronized float getMeanCoverage() {
+        return getMeanPixels() / ((float) mWidth * mHeight);
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.example.iristick.hud;
+
+/**
+ * Formats numeric and time fields into caller-provided character buffers, without
+ * allocating, for HUD values updated every frame or every second.
+ *
+ * All methods write at the given offset and return the offset after the last character
+ * written.  The buffer must be large enough; the longest output is 20 characters for a
+ * {@code long}.  This class does not depend on the Android framework.
+ */
+public final class FieldFormatter {
+
+    private FieldFormatter() {
+    }
+
+    /** Write a decimal integer. */
+    public static int formatLong(char[] buffer, int offset, long value) {
+        if (value == Long.MIN_VALUE) {
+            /* Its absolute value does not fit a long. */
+            String text = Long.toString(value);
+            text.getChars(0, text.length(), buffer, offset);
+            return offset + text.length();
+        }
+        if (value < 0) {
+            buffer[offset++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10)
+            digits++;
+        return formatPadded(buffer, offset, value, digits);
+    }
+
+    /**
+     * Write a non-negative integer with leading zeros.
+     * @param digits Minimum number of digits.
+     */
+    public static int formatPadded(char[] buffer, int offset, long value, int digits) {
+        if (value < 0)
+            throw new IllegalArgumentException("negative value");
+        int length = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10)
+            length++;
+        length = Math.max(length, digits);
+        for (int i = offset + length - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return offset + length;
+    }
+
+    /**
+     * Write a number with a fixed number of decimals, rounded half away from zero.
+     * @param decimals Number of decimals, at most 9.
+     */
+    public static int formatFixed(char[] buffer, int offset, double value, int decimals) {
+        if (decimals < 0 || decimals > 9)
+            throw new IllegalArgumentException("invalid number of decimals");
+        if (Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) >= 1e18) {
+            String text = Double.toString(value);
+            text.getChars(0, text.length(), buffer, offset);
+            return offset + text.length();
+        }
+        long scale = 1;
+        for (int i = 0; i < decimals; i++)
+            scale *= 10;
+        long scaled = Math.round(Math.abs(value) * scale);
+        if (value < 0 && scaled != 0)
+            buffer[offset++] = '-';
+        offset = formatLong(buffer, offset, scaled / scale);
+        if (decimals > 0) {
+            buffer[offset++] = '.';
+            offset = formatPadded(buffer, offset, scaled % scale, decimals);
+        }
+        return offset;
+    }
+
+    /** Write a time of day as H:MM:SS or HH:MM:SS. */
+    public static int formatTime(char[] buffer, int offset, int hours, int minutes, int seconds,
+                                 boolean padHours) {
+        offset = formatPadded(buffer, offset, hours, padHours ? 2 : 1);
+        buffer[offset++] = ':';
+        offset = formatPadded(buffer, offset, minutes, 2);
+        buffer[offset++] = ':';
+        return formatPadded(buffer, offset, seconds, 2);
+    }
+
+}
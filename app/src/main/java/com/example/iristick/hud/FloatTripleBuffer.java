@@ -0,0 +1,80 @@
+package com.example.iristick.hud;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free hand-off of fixed-size float vectors, such as orientations or poses, from one
+ * producer thread to one consumer thread, e.g. from a sensor listener to a GL renderer.
+ *
+ * Three buffers rotate between the producer, the consumer and a middle slot.  The producer
+ * fills its back buffer and swaps it with the middle one; the consumer swaps its front buffer
+ * with the middle one when it holds newer data.  Each side owns its buffer exclusively between
+ * swaps, so the consumer always sees a consistent vector, never a mix of two samples, and
+ * neither side ever waits for the other.  Intermediate vectors written while the consumer does
+ * not read are overwritten.  Nothing is allocated after construction.
+ *
+ * Each vector is tagged with a sequence number, incremented on every write, so the consumer
+ * can tell whether anything changed since its last read.
+ *
+ * This class does not depend on the Android framework.  {@link #beginWrite} and
+ * {@link #endWrite} must be called on a single producer thread, {@link #read} and the getters
+ * on a single consumer thread.
+ */
+public final class FloatTripleBuffer {
+
+    /* The state holds the index of the middle buffer, and a flag when it holds new data. */
+    private static final int INDEX_MASK = 0x3;
+    private static final int FRESH = 0x4;
+
+    private final float[][] mBuffers;
+    private final long[] mSequences = new long[3];
+    private final AtomicInteger mState = new AtomicInteger(1);
+    /* Only accessed by the producer */
+    private int mBack = 0;
+    private long mWritten;
+    /* Only accessed by the consumer */
+    private int mFront = 2;
+
+    /** @param size Number of floats of a vector. */
+    public FloatTripleBuffer(int size) {
+        mBuffers = new float[3][size];
+    }
+
+    /**
+     * Get the buffer to fill with the next vector.  Producer side.
+     * @return The back buffer, with undefined content, to fill before calling {@link #endWrite}.
+     */
+    public float[] beginWrite() {
+        return mBuffers[mBack];
+    }
+
+    /** Publish the vector written in the back buffer.  Producer side. */
+    public void endWrite() {
+        mSequences[mBack] = ++mWritten;
+        /* The atomic swap publishes the buffer content to the consumer. */
+        mBack = mState.getAndSet(mBack | FRESH) & INDEX_MASK;
+    }
+
+    /** Copy and publish a vector.  Producer side. */
+    public void write(float[] values) {
+        System.arraycopy(values, 0, beginWrite(), 0, mBuffers[0].length);
+        endWrite();
+    }
+
+    /**
+     * Get the latest vector.  Consumer side.
+     * @return The front buffer, which stays valid and unchanged until the next call.  Do not
+     *         modify.  All zeros until the first write.
+     */
+    public float[] read() {
+        if ((mState.get() & FRESH) != 0)
+            mFront = mState.getAndSet(mFront) & INDEX_MASK;
+        return mBuffers[mFront];
+    }
+
+    /** Sequence number of the vector returned by the last {@link #read}, 0 before the first write. */
+    public long getSequence() {
+        return mSequences[mFront];
+    }
+
+}
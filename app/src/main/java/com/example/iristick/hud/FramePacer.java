@@ -0,0 +1,69 @@
+package com.example.iristick.hud;
+
+/**
+ * Decides on which vsync pulses to draw to reach a target frame rate.
+ *
+ * Frame deadlines are laid out on a fixed grid of target intervals, starting at the first
+ * frame, so the pacing never drifts.  A vsync pulse triggers a frame when it reaches the
+ * next deadline, give or take a quarter interval to absorb vsync jitter.  When drawing
+ * overran one or more deadlines, those frames are dropped rather than drawn late in a burst,
+ * and the next frame is drawn at the next deadline on the grid.
+ *
+ * This class does not depend on the Android framework and is not thread-safe.
+ */
+public final class FramePacer {
+
+    private long mIntervalNanos;
+    private long mNextDeadline = -1;
+    private long mDropped;
+
+    /** @param targetFps Target frame rate. */
+    public FramePacer(float targetFps) {
+        setTargetFps(targetFps);
+    }
+
+    /** Change the target frame rate.  Takes effect from the next frame. */
+    public void setTargetFps(float targetFps) {
+        if (targetFps <= 0)
+            throw new IllegalArgumentException("invalid frame rate");
+        mIntervalNanos = (long) (1e9 / targetFps);
+        mNextDeadline = -1;
+    }
+
+    public long getIntervalNanos() {
+        return mIntervalNanos;
+    }
+
+    /**
+     * Called on every vsync pulse.
+     * @param frameTimeNanos Time of the pulse.
+     * @return True if a frame must be drawn for this pulse.
+     */
+    public boolean onVsync(long frameTimeNanos) {
+        if (mNextDeadline < 0) {
+            mNextDeadline = frameTimeNanos + mIntervalNanos;
+            return true;
+        }
+        long tolerance = mIntervalNanos / 4;
+        long late = frameTimeNanos + tolerance - mNextDeadline;
+        if (late < 0)
+            return false;
+
+        /* Drop the frames whose deadline has passed entirely. */
+        long missed = late / mIntervalNanos;
+        mDropped += missed;
+        mNextDeadline += (missed + 1) * mIntervalNanos;
+        return true;
+    }
+
+    /** Number of frames dropped because drawing overran their deadline. */
+    public long getDroppedCount() {
+        return mDropped;
+    }
+
+    /** Restart pacing at the next pulse, e.g. after a pause. */
+    public void reset() {
+        mNextDeadline = -1;
+    }
+
+}
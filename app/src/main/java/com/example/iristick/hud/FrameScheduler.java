@@ -0,0 +1,152 @@
+package com.example.iristick.hud;
+
+import android.os.Handler;
+import android.view.Choreographer;
+
+import com.example.iristick.util.FrameTimingRecorder;
+
+/**
+ * Vsync-paced render loop for HUD surfaces.
+ *
+ * The scheduler registers with the {@link Choreographer} of the render thread and calls the
+ * renderer on the vsync pulses selected by a {@link FramePacer}, so frames are drawn at the
+ * target rate, aligned on the display refresh, without drift.  Frames whose deadline was
+ * missed because drawing overran are dropped.
+ *
+ * The interval between frames and the time spent drawing are recorded in histograms, which
+ * can be queried from any thread through {@link #getStats} and {@link #copyIntervalHistogram}.
+ */
+public final class FrameScheduler {
+
+    public interface Renderer {
+        /**
+         * Draw a frame.  Called on the render thread.
+         * @param frameTimeNanos Vsync time of the frame, in the {@link System#nanoTime()} base.
+         * @param deltaSeconds Time elapsed since the previous frame, 0 for the first frame.
+         */
+        void onDrawFrame(long frameTimeNanos, float deltaSeconds);
+    }
+
+    /** Snapshot of the frame statistics. */
+    public static final class Stats {
+        public final float fps;
+        public final long frames;
+        /** Frames dropped because drawing overran. */
+        public final long dropped;
+        public final long intervalP50Nanos;
+        public final long intervalP95Nanos;
+        public final long intervalP99Nanos;
+        public final long drawP50Nanos;
+        public final long drawP95Nanos;
+
+        Stats(float fps, long frames, long dropped, long intervalP50Nanos, long intervalP95Nanos,
+              long intervalP99Nanos, long drawP50Nanos, long drawP95Nanos) {
+            this.fps = fps;
+            this.frames = frames;
+            this.dropped = dropped;
+            this.intervalP50Nanos = intervalP50Nanos;
+            this.intervalP95Nanos = intervalP95Nanos;
+            this.intervalP99Nanos = intervalP99Nanos;
+            this.drawP50Nanos = drawP50Nanos;
+            this.drawP95Nanos = drawP95Nanos;
+        }
+    }
+
+    private final Handler mHandler;
+    private final Renderer mRenderer;
+    private final FramePacer mPacer;
+    /* Guarded by the lock */
+    private final Object mLock = new Object();
+    private final FrameTimingRecorder mIntervals = new FrameTimingRecorder();
+    private final FrameTimingRecorder mDrawTimes = new FrameTimingRecorder();
+    /* Copy of the dropped count of the pacer, which belongs to the render thread */
+    private long mDropped;
+
+    /* Only accessed on the render thread */
+    private Choreographer mChoreographer;
+    private boolean mRunning;
+    private long mLastFrameTime = -1;
+
+    /**
+     * @param handler Handler of the render thread, which must have a looper.
+     * @param targetFps Target frame rate.
+     */
+    public FrameScheduler(Handler handler, float targetFps, Renderer renderer) {
+        mHandler = handler;
+        mRenderer = renderer;
+        mPacer = new FramePacer(targetFps);
+    }
+
+    /** Start the render loop.  Can be called from any thread. */
+    public void start() {
+        mHandler.post(() -> {
+            if (mRunning)
+                return;
+            if (mChoreographer == null)
+                mChoreographer = Choreographer.getInstance();
+            mRunning = true;
+            mLastFrameTime = -1;
+            mPacer.reset();
+            mChoreographer.postFrameCallback(mFrameCallback);
+        });
+    }
+
+    /**
+     * Stop the render loop.  Can be called from any thread; no frame is drawn after the render
+     * thread processed it.
+     */
+    public void stop() {
+        mHandler.post(() -> {
+            mRunning = false;
+            if (mChoreographer != null)
+                mChoreographer.removeFrameCallback(mFrameCallback);
+        });
+    }
+
+    /** Change the target frame rate.  Can be called from any thread. */
+    public void setTargetFps(float targetFps) {
+        mHandler.post(() -> mPacer.setTargetFps(targetFps));
+    }
+
+    public Stats getStats() {
+        synchronized (mLock) {
+            return new Stats(mIntervals.getFps(), mIntervals.getFrameCount(), mDropped,
+                    mIntervals.getPercentileNanos(0.50), mIntervals.getPercentileNanos(0.95),
+                    mIntervals.getPercentileNanos(0.99),
+                    mDrawTimes.getPercentileNanos(0.50), mDrawTimes.getPercentileNanos(0.95));
+        }
+    }
+
+    /**
+     * Copy the histogram of the recent frame intervals.
+     * @see FrameTimingRecorder#copyHistogram
+     */
+    public void copyIntervalHistogram(int[] counts) {
+        synchronized (mLock) {
+            mIntervals.copyHistogram(counts);
+        }
+    }
+
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!mRunning)
+                return;
+            mChoreographer.postFrameCallback(this);
+            if (!mPacer.onVsync(frameTimeNanos))
+                return;
+
+            float deltaSeconds = mLastFrameTime < 0 ? 0 : (frameTimeNanos - mLastFrameTime) / 1e9f;
+            mLastFrameTime = frameTimeNanos;
+            long start = System.nanoTime();
+            mRenderer.onDrawFrame(frameTimeNanos, deltaSeconds);
+            long drawNanos = System.nanoTime() - start;
+            synchronized (mLock) {
+                mIntervals.onFrame(frameTimeNanos);
+                mDrawTimes.addInterval(drawNanos);
+                mDropped = mPacer.getDroppedCount();
+            }
+        }
+    };
+
+}
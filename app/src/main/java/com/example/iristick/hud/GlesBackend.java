@@ -0,0 +1,327 @@
+package com.example.iristick.hud;
+
+import android.graphics.Rect;
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLSurface;
+import android.opengl.GLES20;
+import android.view.Surface;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * GPU rendering backend, creating an EGL context on the surface and drawing with OpenGL ES 2.
+ *
+ * Primitives are not drawn one by one: each circle is appended as a quad to a vertex buffer,
+ * and the fragment shader discards the pixels outside the circle.  The quads are drawn with a
+ * single draw call at the end of the frame, so the CPU cost per circle is only that of
+ * writing six vertices.  Batches of {@link #fillCircles} are drawn as point sprites, with one
+ * draw call per batch: their positions and radii are copied in bulk from the caller's arrays.
+ * Frames are always redrawn entirely, since the content of the surface is not preserved
+ * across buffer swaps.
+ */
+public final class GlesBackend implements HudBackend {
+
+    private static final String VERTEX_SHADER =
+              "uniform vec2 u_Scale;\n"
+            + "attribute vec2 a_Position;\n"
+            + "attribute vec2 a_Offset;\n"
+            + "attribute vec4 a_Color;\n"
+            + "varying vec2 v_Offset;\n"
+            + "varying vec4 v_Color;\n"
+            + "void main() {\n"
+            + "    v_Offset = a_Offset;\n"
+            + "    v_Color = a_Color;\n"
+            /* Pixels from the top left to normalized device coordinates */
+            + "    gl_Position = vec4(a_Position * u_Scale + vec2(-1.0, 1.0), 0.0, 1.0);\n"
+            + "}\n";
+
+    private static final String FRAGMENT_SHADER =
+              "precision mediump float;\n"
+            + "varying vec2 v_Offset;\n"
+            + "varying vec4 v_Color;\n"
+            + "void main() {\n"
+            + "    if (dot(v_Offset, v_Offset) > 1.0)\n"
+            + "        discard;\n"
+            + "    gl_FragColor = v_Color;\n"
+            + "}\n";
+
+    private static final String POINT_VERTEX_SHADER =
+              "uniform vec2 u_Scale;\n"
+            + "attribute vec2 a_Position;\n"
+            + "attribute float a_Radius;\n"
+            + "void main() {\n"
+            + "    gl_PointSize = 2.0 * a_Radius;\n"
+            + "    gl_Position = vec4(a_Position * u_Scale + vec2(-1.0, 1.0), 0.0, 1.0);\n"
+            + "}\n";
+
+    private static final String POINT_FRAGMENT_SHADER =
+              "precision mediump float;\n"
+            + "uniform vec4 u_Color;\n"
+            + "void main() {\n"
+            + "    vec2 offset = 2.0 * gl_PointCoord - 1.0;\n"
+            + "    if (dot(offset, offset) > 1.0)\n"
+            + "        discard;\n"
+            + "    gl_FragColor = u_Color;\n"
+            + "}\n";
+
+    /* Position and offset from the center as floats, color as 4 bytes */
+    private static final int VERTEX_SIZE = 4 * 4 + 4;
+    private static final int VERTICES_PER_CIRCLE = 6;
+    private static final int INITIAL_CIRCLES = 256;
+
+    private static final int ATTRIB_POSITION = 0;
+    private static final int ATTRIB_OFFSET = 1;
+    private static final int ATTRIB_COLOR = 2;
+    /* Attribute of the point program, at the location of the offset of the quad program */
+    private static final int ATTRIB_RADIUS = 1;
+
+    private EGLDisplay mDisplay = EGL14.EGL_NO_DISPLAY;
+    private EGLContext mContext = EGL14.EGL_NO_CONTEXT;
+    private EGLSurface mEglSurface = EGL14.EGL_NO_SURFACE;
+    private int mProgram;
+    private int mPointProgram;
+    private int mPointColor;
+    private float mMaxPointSize;
+    private FloatBuffer mPointPositions = allocateFloats(2 * INITIAL_CIRCLES);
+    private FloatBuffer mPointRadii = allocateFloats(INITIAL_CIRCLES);
+    private int mWidth;
+    private int mHeight;
+    private ByteBuffer mVertices = allocate(INITIAL_CIRCLES);
+    private int mVertexCount;
+
+    @Override
+    public void open(Surface surface, int width, int height) {
+        try {
+            mDisplay = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+            int[] version = new int[2];
+            if (mDisplay == EGL14.EGL_NO_DISPLAY || !EGL14.eglInitialize(mDisplay, version, 0, version, 1))
+                throw eglError("eglInitialize");
+
+            int[] configAttribs = {
+                    EGL14.EGL_RED_SIZE, 8,
+                    EGL14.EGL_GREEN_SIZE, 8,
+                    EGL14.EGL_BLUE_SIZE, 8,
+                    EGL14.EGL_ALPHA_SIZE, 8,
+                    EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+                    EGL14.EGL_SURFACE_TYPE, EGL14.EGL_WINDOW_BIT,
+                    EGL14.EGL_NONE,
+            };
+            EGLConfig[] configs = new EGLConfig[1];
+            int[] count = new int[1];
+            if (!EGL14.eglChooseConfig(mDisplay, configAttribs, 0, configs, 0, 1, count, 0) || count[0] == 0)
+                throw eglError("eglChooseConfig");
+
+            int[] contextAttribs = {EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE};
+            mContext = EGL14.eglCreateContext(mDisplay, configs[0], EGL14.EGL_NO_CONTEXT, contextAttribs, 0);
+            if (mContext == EGL14.EGL_NO_CONTEXT)
+                throw eglError("eglCreateContext");
+
+            int[] surfaceAttribs = {EGL14.EGL_NONE};
+            mEglSurface = EGL14.eglCreateWindowSurface(mDisplay, configs[0], surface, surfaceAttribs, 0);
+            if (mEglSurface == EGL14.EGL_NO_SURFACE)
+                throw eglError("eglCreateWindowSurface");
+            if (!EGL14.eglMakeCurrent(mDisplay, mEglSurface, mEglSurface, mContext))
+                throw eglError("eglMakeCurrent");
+
+            mWidth = width;
+            mHeight = height;
+            mProgram = createProgram(VERTEX_SHADER, FRAGMENT_SHADER, "a_Position", "a_Offset", "a_Color");
+            GLES20.glUseProgram(mProgram);
+            GLES20.glUniform2f(GLES20.glGetUniformLocation(mProgram, "u_Scale"), 2f / width, -2f / height);
+            mPointProgram = createProgram(POINT_VERTEX_SHADER, POINT_FRAGMENT_SHADER, "a_Position", "a_Radius");
+            GLES20.glUseProgram(mPointProgram);
+            GLES20.glUniform2f(GLES20.glGetUniformLocation(mPointProgram, "u_Scale"), 2f / width, -2f / height);
+            mPointColor = GLES20.glGetUniformLocation(mPointProgram, "u_Color");
+            float[] pointSizes = new float[2];
+            GLES20.glGetFloatv(GLES20.GL_ALIASED_POINT_SIZE_RANGE, pointSizes, 0);
+            mMaxPointSize = pointSizes[1];
+            GLES20.glViewport(0, 0, width, height);
+            GLES20.glDisable(GLES20.GL_DEPTH_TEST);
+            GLES20.glEnableVertexAttribArray(ATTRIB_POSITION);
+            GLES20.glEnableVertexAttribArray(ATTRIB_OFFSET);
+        } catch (IllegalStateException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean beginFrame(int color, Rect dirty) {
+        /* The content of the back buffer is undefined after a swap: redraw everything. */
+        if (dirty != null)
+            dirty.set(0, 0, mWidth, mHeight);
+        GLES20.glClearColor((color >> 16 & 0xff) / 255f, (color >> 8 & 0xff) / 255f,
+                (color & 0xff) / 255f, (color >>> 24) / 255f);
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+        mVertices.clear();
+        mVertexCount = 0;
+        return true;
+    }
+
+    @Override
+    public void fillCircle(float x, float y, float radius, int color) {
+        if (mVertices.remaining() < VERTICES_PER_CIRCLE * VERTEX_SIZE) {
+            ByteBuffer vertices = allocate(2 * mVertices.capacity() / (VERTICES_PER_CIRCLE * VERTEX_SIZE));
+            mVertices.flip();
+            vertices.put(mVertices);
+            mVertices = vertices;
+        }
+        float left = x - radius, right = x + radius;
+        float top = y - radius, bottom = y + radius;
+        /* Two triangles covering the bounding square */
+        putVertex(left, top, -1, -1, color);
+        putVertex(right, top, 1, -1, color);
+        putVertex(left, bottom, -1, 1, color);
+        putVertex(right, top, 1, -1, color);
+        putVertex(right, bottom, 1, 1, color);
+        putVertex(left, bottom, -1, 1, color);
+        mVertexCount += VERTICES_PER_CIRCLE;
+    }
+
+    @Override
+    public void fillCircles(float[] positions, float[] radii, int from, int to, int color) {
+        int count = to - from;
+        float maxRadius = 0;
+        for (int i = from; i < to; i++)
+            maxRadius = Math.max(maxRadius, radii[i]);
+        if (2 * maxRadius > mMaxPointSize) {
+            /* Points this large are not supported, fall back to quads. */
+            for (int i = from; i < to; i++)
+                fillCircle(positions[2 * i], positions[2 * i + 1], radii[i], color);
+            return;
+        }
+
+        /* Draw the circles before this batch first, to keep the drawing order. */
+        flushQuads();
+        if (mPointRadii.capacity() < count) {
+            mPointPositions = allocateFloats(2 * count);
+            mPointRadii = allocateFloats(count);
+        }
+        mPointPositions.clear();
+        mPointPositions.put(positions, 2 * from, 2 * count).flip();
+        mPointRadii.clear();
+        mPointRadii.put(radii, from, count).flip();
+
+        GLES20.glUseProgram(mPointProgram);
+        GLES20.glUniform4f(mPointColor, (color >> 16 & 0xff) / 255f, (color >> 8 & 0xff) / 255f,
+                (color & 0xff) / 255f, (color >>> 24) / 255f);
+        GLES20.glDisableVertexAttribArray(ATTRIB_COLOR);
+        GLES20.glVertexAttribPointer(ATTRIB_POSITION, 2, GLES20.GL_FLOAT, false, 0, mPointPositions);
+        GLES20.glVertexAttribPointer(ATTRIB_RADIUS, 1, GLES20.GL_FLOAT, false, 0, mPointRadii);
+        GLES20.glDrawArrays(GLES20.GL_POINTS, 0, count);
+    }
+
+    @Override
+    public boolean endFrame() {
+        flushQuads();
+        return EGL14.eglSwapBuffers(mDisplay, mEglSurface);
+    }
+
+    /** Draw the circles appended as quads. */
+    private void flushQuads() {
+        if (mVertexCount == 0)
+            return;
+        GLES20.glUseProgram(mProgram);
+        GLES20.glEnableVertexAttribArray(ATTRIB_COLOR);
+        mVertices.position(0);
+        GLES20.glVertexAttribPointer(ATTRIB_POSITION, 2, GLES20.GL_FLOAT, false, VERTEX_SIZE, mVertices);
+        mVertices.position(8);
+        GLES20.glVertexAttribPointer(ATTRIB_OFFSET, 2, GLES20.GL_FLOAT, false, VERTEX_SIZE, mVertices);
+        mVertices.position(16);
+        GLES20.glVertexAttribPointer(ATTRIB_COLOR, 4, GLES20.GL_UNSIGNED_BYTE, true, VERTEX_SIZE, mVertices);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, mVertexCount);
+        mVertices.clear();
+        mVertexCount = 0;
+    }
+
+    @Override
+    public void close() {
+        if (mDisplay == EGL14.EGL_NO_DISPLAY)
+            return;
+        if (mProgram != 0) {
+            GLES20.glDeleteProgram(mProgram);
+            mProgram = 0;
+        }
+        if (mPointProgram != 0) {
+            GLES20.glDeleteProgram(mPointProgram);
+            mPointProgram = 0;
+        }
+        EGL14.eglMakeCurrent(mDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+        if (mEglSurface != EGL14.EGL_NO_SURFACE)
+            EGL14.eglDestroySurface(mDisplay, mEglSurface);
+        if (mContext != EGL14.EGL_NO_CONTEXT)
+            EGL14.eglDestroyContext(mDisplay, mContext);
+        /* Do not terminate the display: it is shared with the rest of the process. */
+        EGL14.eglReleaseThread();
+        mEglSurface = EGL14.EGL_NO_SURFACE;
+        mContext = EGL14.EGL_NO_CONTEXT;
+        mDisplay = EGL14.EGL_NO_DISPLAY;
+    }
+
+    @Override
+    public String getName() {
+        return "gles";
+    }
+
+    private void putVertex(float x, float y, float offsetX, float offsetY, int color) {
+        mVertices.putFloat(x).putFloat(y).putFloat(offsetX).putFloat(offsetY);
+        /* RGBA byte order */
+        mVertices.put((byte) (color >> 16)).put((byte) (color >> 8)).put((byte) color).put((byte) (color >>> 24));
+    }
+
+    private static ByteBuffer allocate(int circles) {
+        return ByteBuffer.allocateDirect(circles * VERTICES_PER_CIRCLE * VERTEX_SIZE).order(ByteOrder.nativeOrder());
+    }
+
+    private static FloatBuffer allocateFloats(int count) {
+        return ByteBuffer.allocateDirect(count * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    private static IllegalStateException eglError(String function) {
+        return new IllegalStateException(function + " failed: 0x" + Integer.toHexString(EGL14.eglGetError()));
+    }
+
+    /** Link a program, binding the attributes to locations 0, 1, ... in order. */
+    private static int createProgram(String vertexSource, String fragmentSource, String... attributes) {
+        int vertexShader = compileShader(GLES20.GL_VERTEX_SHADER, vertexSource);
+        int fragmentShader = compileShader(GLES20.GL_FRAGMENT_SHADER, fragmentSource);
+        int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vertexShader);
+        GLES20.glAttachShader(program, fragmentShader);
+        for (int i = 0; i < attributes.length; i++)
+            GLES20.glBindAttribLocation(program, i, attributes[i]);
+        GLES20.glLinkProgram(program);
+        /* The shaders are freed with the program. */
+        GLES20.glDeleteShader(vertexShader);
+        GLES20.glDeleteShader(fragmentShader);
+
+        int[] status = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+        if (status[0] == 0) {
+            String log = GLES20.glGetProgramInfoLog(program);
+            GLES20.glDeleteProgram(program);
+            throw new IllegalStateException("Error linking program: " + log);
+        }
+        return program;
+    }
+
+    private static int compileShader(int type, String source) {
+        int shader = GLES20.glCreateShader(type);
+        GLES20.glShaderSource(shader, source);
+        GLES20.glCompileShader(shader);
+        int[] status = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+        if (status[0] == 0) {
+            String log = GLES20.glGetShaderInfoLog(shader);
+            GLES20.glDeleteShader(shader);
+            throw new IllegalStateException("Error compiling shader: " + log);
+        }
+        return shader;
+    }
+
+}
@@ -0,0 +1,195 @@
+package com.example.iristick.hud;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import java.util.Arrays;
+
+/**
+ * Pre-rasterised glyphs of a HUD font at one size.
+ *
+ * All glyphs of a character set are drawn once into an alpha-only atlas bitmap.  Text is
+ * then drawn by copying each glyph from the atlas, tinted with the color of the paint, which
+ * skips text shaping and glyph rasterisation and allocates nothing.  Glyphs are placed at
+ * whole pixels using their advance widths, without kerning; this suits HUD values, whose
+ * digits have equal advances in the usual fonts.
+ *
+ * Only characters up to U+00FF can be in the atlas.  Use {@link #canRender} to check whether
+ * a text can be drawn from the atlas, and fall back to {@link Canvas#drawText} otherwise.
+ */
+public final class GlyphAtlas {
+
+    /** Printable ASCII characters */
+    public static final String ASCII;
+
+    static {
+        StringBuilder builder = new StringBuilder();
+        for (char c = 0x20; c < 0x7f; c++)
+            builder.append(c);
+        ASCII = builder.toString();
+    }
+
+    private static final int MAX_CHAR = 0xff;
+    private static final int MAX_WIDTH = 1024;
+
+    private final Bitmap mBitmap;
+    private final float mAscent;
+    private final float mDescent;
+    private final int mPadding;
+    private final int mCellHeight;
+    /* Glyph of each character, -1 if not in the atlas */
+    private final short[] mGlyphs = new short[MAX_CHAR + 1];
+    /* Per glyph */
+    private final float[] mAdvances;
+    private final int[] mLefts;
+    private final int[] mTops;
+    private final int[] mWidths;
+    private final Rect mSource = new Rect();
+    private final Rect mTarget = new Rect();
+
+    /** The characters of a string which can be put in an atlas, i.e. its Latin-1 ones. */
+    public static String supportedCharacters(String characters) {
+        StringBuilder builder = new StringBuilder(characters.length());
+        for (int i = 0; i < characters.length(); i++) {
+            char c = characters.charAt(i);
+            if (c <= MAX_CHAR)
+                builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Rasterise the glyphs of a character set.
+     * @param paint Paint defining the typeface and the text size; its color is ignored.
+     * @param characters Characters to put in the atlas.
+     */
+    public GlyphAtlas(Paint paint, String characters) {
+        Paint glyphPaint = new Paint(paint);
+        glyphPaint.setColor(0xffffffff);
+        glyphPaint.setTextAlign(Paint.Align.LEFT);
+        Paint.FontMetrics metrics = glyphPaint.getFontMetrics();
+        mAscent = metrics.ascent;
+        mDescent = metrics.descent;
+        /* Room for glyphs whose ink goes beyond their advance, e.g. italics */
+        mPadding = (int) Math.ceil(glyphPaint.getTextSize() / 8);
+        mCellHeight = (int) Math.ceil(mDescent - mAscent) + 2 * mPadding;
+
+        Arrays.fill(mGlyphs, (short) -1);
+        int count = 0;
+        char[] unique = new char[characters.length()];
+        for (int i = 0; i < characters.length(); i++) {
+            char c = characters.charAt(i);
+            if (c > MAX_CHAR)
+                throw new IllegalArgumentException("character not supported: " + c);
+            if (mGlyphs[c] < 0) {
+                mGlyphs[c] = (short) count;
+                unique[count++] = c;
+            }
+        }
+        mAdvances = new float[count];
+        mLefts = new int[count];
+        mTops = new int[count];
+        mWidths = new int[count];
+        glyphPaint.getTextWidths(unique, 0, count, mAdvances);
+
+        /* Lay out the cells in rows. */
+        int x = 0, y = 0, width = 0;
+        for (int i = 0; i < count; i++) {
+            int cellWidth = (int) Math.ceil(mAdvances[i]) + 2 * mPadding;
+            if (x + cellWidth > MAX_WIDTH && x > 0) {
+                x = 0;
+                y += mCellHeight;
+            }
+            mLefts[i] = x;
+            mTops[i] = y;
+            mWidths[i] = cellWidth;
+            x += cellWidth;
+            width = Math.max(width, x);
+        }
+
+        mBitmap = Bitmap.createBitmap(Math.max(width, 1), y + mCellHeight, Bitmap.Config.ALPHA_8);
+        Canvas canvas = new Canvas(mBitmap);
+        for (int i = 0; i < count; i++)
+            canvas.drawText(unique, i, 1, mLefts[i] + mPadding, mTops[i] + mPadding - mAscent, glyphPaint);
+    }
+
+    /** Distance from the baseline to the top of the line, negative. */
+    public float getAscent() {
+        return mAscent;
+    }
+
+    /** Distance from the baseline to the bottom of the line. */
+    public float getDescent() {
+        return mDescent;
+    }
+
+    public Bitmap getBitmap() {
+        return mBitmap;
+    }
+
+    /** True if all characters of the range are in the atlas. */
+    public boolean canRender(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c > MAX_CHAR || mGlyphs[c] < 0)
+                return false;
+        }
+        return true;
+    }
+
+    /** True if all characters of the range are in the atlas. */
+    public boolean canRender(char[] text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text[i];
+            if (c > MAX_CHAR || mGlyphs[c] < 0)
+                return false;
+        }
+        return true;
+    }
+
+    /** Advance width of a character, which must be in the atlas. */
+    public float getAdvance(char c) {
+        return mAdvances[mGlyphs[c]];
+    }
+
+    /** Width of a range of characters, which must be in the atlas. */
+    public float measure(char[] text, int start, int end) {
+        float width = 0;
+        for (int i = start; i < end; i++)
+            width += mAdvances[mGlyphs[text[i]]];
+        return width;
+    }
+
+    /**
+     * Draw a character at a whole pixel position.
+     * @param x Left of the character.
+     * @param baseline Baseline of the character.
+     * @param paint Paint giving the color of the glyph.
+     */
+    public void drawChar(Canvas canvas, char c, float x, float baseline, Paint paint) {
+        int glyph = mGlyphs[c];
+        int left = Math.round(x) - mPadding;
+        int top = Math.round(baseline + mAscent) - mPadding;
+        mSource.set(mLefts[glyph], mTops[glyph], mLefts[glyph] + mWidths[glyph], mTops[glyph] + mCellHeight);
+        mTarget.set(left, top, left + mWidths[glyph], top + mCellHeight);
+        canvas.drawBitmap(mBitmap, mSource, mTarget, paint);
+    }
+
+    /**
+     * Draw a range of characters, which must be in the atlas.
+     * @param x Left of the text.
+     * @param baseline Baseline of the text.
+     * @param paint Paint giving the color of the text.
+     * @return The position after the last character.
+     */
+    public float draw(Canvas canvas, char[] text, int start, int end, float x, float baseline, Paint paint) {
+        for (int i = start; i < end; i++) {
+            drawChar(canvas, text[i], x, baseline, paint);
+            x += mAdvances[mGlyphs[text[i]]];
+        }
+        return x;
+    }
+
+}
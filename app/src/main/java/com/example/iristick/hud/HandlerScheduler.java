@@ -0,0 +1,30 @@
+package com.example.iristick.hud;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+/** Runs the deliveries of {@link HudBinding}s on the thread of a handler. */
+public final class HandlerScheduler implements HudBinding.Scheduler {
+
+    private final Handler mHandler;
+
+    public HandlerScheduler(Handler handler) {
+        mHandler = handler;
+    }
+
+    @Override
+    public long now() {
+        return SystemClock.uptimeMillis();
+    }
+
+    @Override
+    public void postDelayed(Runnable task, long delayMillis) {
+        mHandler.postDelayed(task, delayMillis);
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        mHandler.removeCallbacks(task);
+    }
+
+}
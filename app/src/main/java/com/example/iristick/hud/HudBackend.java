@@ -0,0 +1,67 @@
+package com.example.iristick.hud;
+
+import android.graphics.Rect;
+import android.view.Surface;
+
+/**
+ * Rendering backend for HUD surfaces.
+ *
+ * A backend draws simple primitives onto the {@link Surface} of the headset display.  Scenes
+ * draw through this interface only, so they can be rendered on the CPU with
+ * {@link CanvasBackend} or on the GPU with {@link GlesBackend}.
+ *
+ * All methods must be called on the render thread.  A frame is drawn by calling
+ * {@link #beginFrame}, the drawing methods, and then {@link #endFrame}.
+ */
+public interface HudBackend {
+
+    /**
+     * Bind the backend to a surface.
+     * @throws IllegalStateException if the backend cannot render onto the surface.
+     */
+    void open(Surface surface, int width, int height);
+
+    /**
+     * Start a frame, clearing the region to redraw.
+     * The rest of the surface keeps the content of the previous frame.
+     * @param color Background color, as ARGB.
+     * @param dirty Region to redraw, or {@code null} for the whole surface.  The backend may
+     *              enlarge it, e.g. if it cannot preserve the previous content; on return it
+     *              holds the region which must be redrawn.
+     * @return False if the surface is not drawable anymore; do not draw nor end the frame then.
+     */
+    boolean beginFrame(int color, Rect dirty);
+
+    /**
+     * Fill a circle.
+     * @param x Horizontal position of the center, in pixels from the left.
+     * @param y Vertical position of the center, in pixels from the top.
+     * @param color Opaque color, as ARGB.
+     */
+    void fillCircle(float x, float y, float radius, int color);
+
+    /**
+     * Fill a batch of circles of the same color.
+     * Backends draw a batch with as few calls as possible, especially when consecutive
+     * circles have the same radius.
+     * @param positions Centers of the circles, as x, y pairs.
+     * @param radii Radii of the circles.
+     * @param from Index of the first circle.
+     * @param to Index after the last circle.
+     * @param color Opaque color, as ARGB.
+     */
+    void fillCircles(float[] positions, float[] radii, int from, int to, int color);
+
+    /**
+     * Post the frame to the surface.
+     * @return False if the surface is not drawable anymore.
+     */
+    boolean endFrame();
+
+    /** Release all resources.  The surface itself is not released. */
+    void close();
+
+    /** Short name of the backend, for logging. */
+    String getName();
+
+}
@@ -0,0 +1,133 @@
+package com.example.iristick.hud;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Connects a producer of live values, such as a sensor, a barcode scanner or camera
+ * statistics, to a HUD widget, at a bounded refresh rate.
+ *
+ * Producers {@link #publish} values from any thread, as fast as they come.  The binding keeps
+ * only the latest value (conflation) and delivers it to the widget on the widget's thread, at
+ * most at the maximum rate of the widget.  At most one delivery is pending at any time, so a
+ * slow widget or a fast producer never piles up messages on the widget's looper
+ * (backpressure): a 200 Hz sensor bound at 10 Hz causes 10 invalidations per second.
+ *
+ * Values must not be modified once published.  To avoid allocating at the producer rate,
+ * {@link #publish} returns the value it replaced, which was never delivered and can be
+ * reused for the next one.
+ *
+ * This class does not depend on the Android framework; see {@link HandlerScheduler}.
+ *
+ * @param <T> Type of the values.
+ */
+public final class HudBinding<T> {
+
+    /** Runs deliveries on the widget's thread. */
+    public interface Scheduler {
+        /** Current time, in milliseconds, in the time base of {@link #postDelayed}. */
+        long now();
+
+        void postDelayed(Runnable task, long delayMillis);
+
+        void cancel(Runnable task);
+    }
+
+    public interface Listener<T> {
+        /** Called on the widget's thread with the latest value. */
+        void onValue(T value);
+    }
+
+    private final Scheduler mScheduler;
+    private final Listener<T> mListener;
+    private final long mMinIntervalMillis;
+    private final Runnable mDeliver = this::deliver;
+    private final AtomicReference<T> mLatest = new AtomicReference<>();
+    private final AtomicBoolean mScheduled = new AtomicBoolean();
+    private final AtomicLong mPublished = new AtomicLong();
+    private final AtomicLong mConflated = new AtomicLong();
+    private volatile long mNextDelivery;
+    private volatile boolean mClosed;
+    /* Only accessed on the widget's thread */
+    private long mDelivered;
+
+    /**
+     * @param scheduler Scheduler of the widget's thread.
+     * @param maxRate Maximum number of deliveries per second.
+     * @param listener Widget receiving the values.
+     */
+    public HudBinding(Scheduler scheduler, float maxRate, Listener<T> listener) {
+        if (maxRate <= 0)
+            throw new IllegalArgumentException("invalid rate");
+        mScheduler = scheduler;
+        mListener = listener;
+        mMinIntervalMillis = (long) Math.ceil(1000 / maxRate);
+    }
+
+    /**
+     * Publish a new value.  Can be called from any thread; never blocks.
+     * @return The previous value if it was replaced before being delivered, or {@code null}.
+     */
+    public T publish(T value) {
+        if (value == null)
+            throw new NullPointerException("value");
+        if (mClosed)
+            return null;
+        mPublished.incrementAndGet();
+        T replaced = mLatest.getAndSet(value);
+        if (replaced != null)
+            mConflated.incrementAndGet();
+        schedule(0);
+        return replaced;
+    }
+
+    /** Stop delivering values.  Can be called from any thread. */
+    public void close() {
+        mClosed = true;
+        mScheduler.cancel(mDeliver);
+        mLatest.set(null);
+    }
+
+    /** Number of values published. */
+    public long getPublishedCount() {
+        return mPublished.get();
+    }
+
+    /** Number of values replaced by a newer one before being delivered. */
+    public long getConflatedCount() {
+        return mConflated.get();
+    }
+
+    /** Number of values delivered.  Call on the widget's thread. */
+    public long getDeliveredCount() {
+        return mDelivered;
+    }
+
+    /** Post a delivery, unless one is pending. */
+    private void schedule(long minDelay) {
+        if (!mScheduled.compareAndSet(false, true))
+            return;
+        long delay = Math.max(minDelay, mNextDelivery - mScheduler.now());
+        mScheduler.postDelayed(mDeliver, delay);
+    }
+
+    private void deliver() {
+        if (mClosed)
+            return;
+        T value = mLatest.getAndSet(null);
+        mNextDelivery = mScheduler.now() + mMinIntervalMillis;
+        mScheduled.set(false);
+        /*
+         * A value published after taking the latest one, but before clearing the flag, did not
+         * post a delivery: post it here.
+         */
+        if (mLatest.get() != null)
+            schedule(mMinIntervalMillis);
+        if (value != null) {
+            mDelivered++;
+            mListener.onValue(value);
+        }
+    }
+
+}
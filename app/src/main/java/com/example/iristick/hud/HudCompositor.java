@@ -0,0 +1,175 @@
+package com.example.iristick.hud;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.util.Log;
+import android.view.Surface;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Retained-mode compositor for the headset display.
+ *
+ * The HUD is a stack of {@link HudLayer}s, each rendered into its own cached bitmap.  A
+ * frame is composed by drawing the cached bitmaps, bottom to top; only the layers which were
+ * invalidated since the previous frame are rendered again.  The bounds of the invalidated
+ * layers are collected in a {@link DamageTracker}, so that when composing onto a surface,
+ * only the damaged region is locked and redrawn, and frames without changes are skipped.
+ * A HUD of static chrome with a live value thus only renders the value and copies a small
+ * region per frame.
+ *
+ * The compositor can draw onto a {@link Surface}, with {@link #render}, or onto the canvas
+ * of a view, with {@link #draw}.  On a hardware-accelerated canvas, the cached bitmaps are
+ * kept as textures and only uploaded again when their layer was re-rendered.
+ *
+ * All methods must be called on the thread which composes the frames.
+ */
+public final class HudCompositor {
+
+    private static final String TAG = "HudCompositor";
+
+    /** Called when the compositor needs a new frame. */
+    public interface Callback {
+        void onInvalidated(HudCompositor compositor);
+    }
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mBackground;
+    private final List<HudLayer> mLayers = new ArrayList<>();
+    private final DamageTracker mDamage;
+    private final Rect mDirty = new Rect();
+    private final Paint mPaint = new Paint();
+    private Callback mCallback;
+
+    /**
+     * @param background Color of the display where no opaque layer is drawn, as ARGB.
+     */
+    public HudCompositor(int width, int height, int background) {
+        mWidth = width;
+        mHeight = height;
+        mBackground = background;
+        mDamage = new DamageTracker(width, height);
+    }
+
+    public void setCallback(Callback callback) {
+        mCallback = callback;
+    }
+
+    /** Add a layer on top of the others. */
+    public void addLayer(HudLayer layer) {
+        layer.attach(this);
+        mLayers.add(layer);
+        invalidate(layer);
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /** Damage and frame statistics. */
+    public DamageTracker getDamageTracker() {
+        return mDamage;
+    }
+
+    /** True if a layer changed since the last frame. */
+    public boolean isDirty() {
+        return mDamage.isDirty();
+    }
+
+    void invalidate(HudLayer layer) {
+        boolean wasDirty = mDamage.isDirty();
+        mDamage.invalidate(layer.getLeft(), layer.getTop(),
+                layer.getLeft() + layer.getWidth(), layer.getTop() + layer.getHeight());
+        if (!wasDirty && mDamage.isDirty() && mCallback != null)
+            mCallback.onInvalidated(this);
+    }
+
+    /**
+     * Compose a frame onto a surface, redrawing only the damaged region.
+     * @return False if the surface could not be drawn.
+     */
+    public boolean render(Surface surface) {
+        if (!mDamage.isDirty()) {
+            mDamage.onFrameSkipped();
+            return true;
+        }
+        mDirty.set(mDamage.getLeft(), mDamage.getTop(), mDamage.getRight(), mDamage.getBottom());
+        Canvas canvas;
+        try {
+            /* The surface may enlarge the dirty region, e.g. for its first frames. */
+            canvas = surface.lockCanvas(mDirty);
+        } catch (IllegalArgumentException | Surface.OutOfResourcesException e) {
+            Log.e(TAG, "Failed to lock canvas", e);
+            return false;
+        }
+        compose(canvas, mDirty);
+        try {
+            surface.unlockCanvasAndPost(canvas);
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            Log.e(TAG, "Failed to post frame", e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Compose a frame onto a canvas, e.g. in {@link android.view.View#onDraw}.
+     * The whole display area is composed; the canvas clip limits the pixels drawn.
+     */
+    public void draw(Canvas canvas) {
+        mDirty.set(0, 0, mWidth, mHeight);
+        compose(canvas, mDirty);
+    }
+
+    /** Drop the cached bitmaps of all layers, e.g. when the HUD is hidden. */
+    public void release() {
+        for (HudLayer layer : mLayers)
+            layer.release();
+        mDamage.invalidateAll();
+    }
+
+    private void compose(Canvas canvas, Rect dirty) {
+        /* Start from the topmost opaque layer covering the dirty region: the ones below are hidden. */
+        int first = -1;
+        for (int i = mLayers.size() - 1; i >= 0 && first < 0; i--) {
+            HudLayer layer = mLayers.get(i);
+            if (layer.isVisible() && layer.isOpaque() && covers(layer, dirty))
+                first = i;
+        }
+        if (first < 0) {
+            canvas.drawColor(mBackground, PorterDuff.Mode.SRC);
+            first = 0;
+        }
+
+        for (int i = first; i < mLayers.size(); i++) {
+            HudLayer layer = mLayers.get(i);
+            if (!layer.isVisible() || !intersects(layer, dirty))
+                continue;
+            Bitmap bitmap = layer.getBitmap();
+            canvas.drawBitmap(bitmap, layer.getLeft(), layer.getTop(), mPaint);
+        }
+        mDamage.onFrameDrawn(dirty.left, dirty.top, dirty.right, dirty.bottom);
+    }
+
+    private static boolean covers(HudLayer layer, Rect rect) {
+        return layer.getLeft() <= rect.left && layer.getTop() <= rect.top
+                && layer.getLeft() + layer.getWidth() >= rect.right
+                && layer.getTop() + layer.getHeight() >= rect.bottom;
+    }
+
+    private static boolean intersects(HudLayer layer, Rect rect) {
+        return layer.getLeft() < rect.right && layer.getTop() < rect.bottom
+                && layer.getLeft() + layer.getWidth() > rect.left
+                && layer.getTop() + layer.getHeight() > rect.top;
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.example.iristick.hud;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * View showing the frames of a {@link HudCompositor}, for HUDs built on a presentation.
+ * The view is redrawn whenever a layer of the compositor is invalidated.
+ */
+public class HudCompositorView extends View implements HudCompositor.Callback {
+
+    private HudCompositor mCompositor;
+
+    public HudCompositorView(Context context) {
+        super(context);
+    }
+
+    public HudCompositorView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public void setCompositor(HudCompositor compositor) {
+        if (mCompositor != null)
+            mCompositor.setCallback(null);
+        mCompositor = compositor;
+        if (compositor != null)
+            compositor.setCallback(this);
+        invalidate();
+    }
+
+    @Override
+    public void onInvalidated(HudCompositor compositor) {
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mCompositor != null)
+            mCompositor.draw(canvas);
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.example.iristick.hud;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+
+/**
+ * A layer of a {@link HudCompositor}: a rectangular part of the HUD, such as the background,
+ * static labels, a live value or an overlay, rendered into its own cached bitmap.
+ *
+ * Subclasses draw their content in {@link #onDraw}, in layer coordinates, and call
+ * {@link #invalidate} whenever the content changes.  The layer is only re-rendered when
+ * invalidated; otherwise the compositor reuses the cached bitmap.  All methods must be
+ * called on the thread which composes the frames.
+ */
+public abstract class HudLayer {
+
+    private final int mLeft;
+    private final int mTop;
+    private final int mWidth;
+    private final int mHeight;
+    private final boolean mOpaque;
+
+    private HudCompositor mCompositor;
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+    private boolean mValid;
+    private boolean mVisible = true;
+    private long mRenderCount;
+
+    /**
+     * @param left Position of the layer on the display, in pixels.
+     * @param top Position of the layer on the display, in pixels.
+     * @param opaque True if {@link #onDraw} covers the whole layer with opaque pixels, so the
+     *               cached bitmap does not need to be cleared nor blended.
+     */
+    protected HudLayer(int left, int top, int width, int height, boolean opaque) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("empty layer");
+        mLeft = left;
+        mTop = top;
+        mWidth = width;
+        mHeight = height;
+        mOpaque = opaque;
+    }
+
+    /** Draw the content of the layer, with the origin at the top left corner of the layer. */
+    protected abstract void onDraw(Canvas canvas);
+
+    /** Mark the content as changed, so the layer is re-rendered for the next frame. */
+    public final void invalidate() {
+        mValid = false;
+        if (mCompositor != null)
+            mCompositor.invalidate(this);
+    }
+
+    public final void setVisible(boolean visible) {
+        if (visible == mVisible)
+            return;
+        mVisible = visible;
+        /* The layers below must be drawn again. */
+        if (mCompositor != null)
+            mCompositor.invalidate(this);
+    }
+
+    public final boolean isVisible() {
+        return mVisible;
+    }
+
+    public final int getLeft() {
+        return mLeft;
+    }
+
+    public final int getTop() {
+        return mTop;
+    }
+
+    public final int getWidth() {
+        return mWidth;
+    }
+
+    public final int getHeight() {
+        return mHeight;
+    }
+
+    public final boolean isOpaque() {
+        return mOpaque;
+    }
+
+    /** Number of times the layer was rendered into its bitmap. */
+    public final long getRenderCount() {
+        return mRenderCount;
+    }
+
+    final void attach(HudCompositor compositor) {
+        if (mCompositor != null)
+            throw new IllegalStateException("layer already added");
+        mCompositor = compositor;
+    }
+
+    /** Return the cached bitmap, rendering the layer first if it was invalidated. */
+    final Bitmap getBitmap() {
+        if (mBitmap == null) {
+            mBitmap = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+            mBitmap.setHasAlpha(!mOpaque);
+            mCanvas = new Canvas(mBitmap);
+            mValid = false;
+        }
+        if (!mValid) {
+            if (!mOpaque)
+                mBitmap.eraseColor(Color.TRANSPARENT);
+            onDraw(mCanvas);
+            mValid = true;
+            mRenderCount++;
+        }
+        return mBitmap;
+    }
+
+    /**
+     * Drop the cached bitmap.  It is recreated if the layer is drawn again.
+     * The bitmap is not recycled, since a view may still hold it in a display list.
+     */
+    final void release() {
+        mBitmap = null;
+        mCanvas = null;
+    }
+
+}
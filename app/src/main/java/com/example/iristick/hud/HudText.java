@@ -0,0 +1,146 @@
+package com.example.iristick.hud;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Text renderer for HUD canvases, drawing from a {@link GlyphAtlas} when possible.
+ *
+ * Strings, such as labels, are laid out once and kept in a bounded cache of text runs, least
+ * recently used first out, so drawing the same label again neither measures nor allocates.
+ * Character ranges, such as values formatted with {@link FieldFormatter}, are laid out on
+ * the fly from the atlas advances, without allocating.  Text with characters outside the
+ * atlas falls back to {@link Canvas#drawText}.
+ *
+ * Instances are not thread-safe.
+ */
+public final class HudText {
+
+    /** A laid-out string */
+    private static final class Run {
+        final char[] chars;
+        final float width;
+        /** True if the run can be drawn from the atlas */
+        final boolean atlas;
+
+        Run(char[] chars, float width, boolean atlas) {
+            this.chars = chars;
+            this.width = width;
+            this.atlas = atlas;
+        }
+    }
+
+    private final Paint mPaint;
+    private final GlyphAtlas mAtlas;
+    private final Map<String, Run> mRuns;
+    private long mHits;
+    private long mMisses;
+
+    /**
+     * @param paint Paint of the text: color, typeface and size.  It must match the atlas.
+     * @param atlas Glyphs of the paint's font, or {@code null} to always draw with the canvas.
+     * @param cacheSize Maximum number of strings kept laid out.
+     */
+    public HudText(Paint paint, GlyphAtlas atlas, int cacheSize) {
+        mPaint = paint;
+        mAtlas = atlas;
+        mRuns = new LinkedHashMap<String, Run>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Run> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    public Paint getPaint() {
+        return mPaint;
+    }
+
+    /** Width of a string. */
+    public float measure(String text) {
+        return run(text).width;
+    }
+
+    /** Width of a range of characters. */
+    public float measure(char[] text, int start, int end) {
+        if (mAtlas != null && mAtlas.canRender(text, start, end))
+            return mAtlas.measure(text, start, end);
+        return mPaint.measureText(text, start, end - start);
+    }
+
+    /**
+     * Draw a string.
+     * @param x Position of the text, interpreted according to the alignment.
+     * @param align Alignment of the text relative to x.
+     */
+    public void draw(Canvas canvas, String text, float x, float baseline, Paint.Align align) {
+        Run run = run(text);
+        x = align(x, run.width, align);
+        if (run.atlas)
+            mAtlas.draw(canvas, run.chars, 0, run.chars.length, x, baseline, mPaint);
+        else
+            canvas.drawText(run.chars, 0, run.chars.length, x, baseline, leftAligned());
+    }
+
+    /**
+     * Draw a range of characters, without allocating.
+     * @param x Position of the text, interpreted according to the alignment.
+     * @param align Alignment of the text relative to x.
+     */
+    public void draw(Canvas canvas, char[] text, int start, int end, float x, float baseline, Paint.Align align) {
+        if (mAtlas != null && mAtlas.canRender(text, start, end)) {
+            x = align(x, mAtlas.measure(text, start, end), align);
+            mAtlas.draw(canvas, text, start, end, x, baseline, mPaint);
+        } else {
+            x = align(x, mPaint.measureText(text, start, end - start), align);
+            canvas.drawText(text, start, end - start, x, baseline, leftAligned());
+        }
+    }
+
+    /** Number of strings drawn or measured from the cache. */
+    public long getHitCount() {
+        return mHits;
+    }
+
+    /** Number of strings laid out because they were not in the cache. */
+    public long getMissCount() {
+        return mMisses;
+    }
+
+    private Run run(String text) {
+        Run run = mRuns.get(text);
+        if (run != null) {
+            mHits++;
+            return run;
+        }
+        mMisses++;
+        char[] chars = text.toCharArray();
+        boolean atlas = mAtlas != null && mAtlas.canRender(chars, 0, chars.length);
+        float width = atlas ? mAtlas.measure(chars, 0, chars.length) : mPaint.measureText(text);
+        run = new Run(chars, width, atlas);
+        mRuns.put(text, run);
+        return run;
+    }
+
+    private static float align(float x, float width, Paint.Align align) {
+        switch (align) {
+        case CENTER:
+            return x - width / 2;
+        case RIGHT:
+            return x - width;
+        default:
+            return x;
+        }
+    }
+
+    /** The paint, which must be left aligned since the position is already aligned. */
+    private Paint leftAligned() {
+        if (mPaint.getTextAlign() != Paint.Align.LEFT)
+            mPaint.setTextAlign(Paint.Align.LEFT);
+        return mPaint;
+    }
+
+}
@@ -0,0 +1,199 @@
+package com.example.iristick.hud;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.text.format.DateFormat;
+
+import java.text.DateFormatSymbols;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Shared tick source for HUD widgets showing time-dependent values, such as clocks.
+ *
+ * Widgets register a {@link TickSchedule.Listener} with a period; they tick on the wall-clock
+ * boundaries of the period, without drift, as laid out by a {@link TickSchedule}.  However many
+ * widgets are registered, the ticker keeps a single message on the looper, posted for the next
+ * deadline, and ticks all due widgets in one wakeup.
+ *
+ * During a tick, {@link #getCalendar} holds the time of the tick, computed once for all
+ * widgets, and {@link #formatTime} writes it into a caller-provided buffer, so ticking does not
+ * allocate.  The time zone and the locale are read when the ticker is created.
+ *
+ * All methods must be called on the handler's thread.
+ */
+public final class HudTicker {
+
+    private final Handler mHandler;
+    private final TickSchedule mSchedule;
+    private final Calendar mCalendar;
+    private final String[] mAmPm;
+    /* Placement of the AM/PM marker in the 12-hour format of the locale */
+    private final boolean mMarkerFirst;
+    private final String mMarkerSeparator;
+    private final Runnable mTick = this::onTick;
+    private boolean mRunning;
+    private long mPostedDeadline = Long.MAX_VALUE;
+
+    /** @param handler Handler of the thread on which widgets tick, e.g. the main thread. */
+    public HudTicker(Handler handler) {
+        mHandler = handler;
+        TimeZone timeZone = TimeZone.getDefault();
+        mSchedule = new TickSchedule(timeZone);
+        mCalendar = Calendar.getInstance(timeZone);
+        mAmPm = DateFormatSymbols.getInstance().getAmPmStrings();
+        String pattern = DateFormat.getBestDateTimePattern(Locale.getDefault(), "hmmssa");
+        mMarkerFirst = isMarkerFirst(pattern);
+        mMarkerSeparator = markerSeparator(pattern);
+    }
+
+    /**
+     * Register a widget.  It ticks as soon as possible, then on every boundary of its period.
+     * @param periodMillis Period of the ticks, e.g. 1000 to tick on every second.
+     */
+    public void add(TickSchedule.Listener listener, long periodMillis) {
+        mSchedule.add(listener, periodMillis);
+        reschedule();
+    }
+
+    public void remove(TickSchedule.Listener listener) {
+        mSchedule.remove(listener);
+        reschedule();
+    }
+
+    /** Start ticking the registered widgets. */
+    public void start() {
+        mRunning = true;
+        reschedule();
+    }
+
+    /** Stop ticking, e.g. while the HUD is not shown.  Widgets stay registered. */
+    public void stop() {
+        mRunning = false;
+        mHandler.removeCallbacks(mTick);
+        mPostedDeadline = Long.MAX_VALUE;
+    }
+
+    /** Time of the current tick, valid during the tick.  Do not modify. */
+    public Calendar getCalendar() {
+        return mCalendar;
+    }
+
+    /**
+     * Write the time of the current tick, as HH:MM:SS, or as H:MM:SS with the AM/PM marker of
+     * the locale, placed as in the 12-hour format of the locale: after the time in English,
+     * before it in Chinese or Korean.  The digits and separators are those of H:MM:SS in all
+     * locales.
+     * @param hours24 True for the 24-hour format, see
+     *                {@link DateFormat#is24HourFormat}.
+     * @return The offset after the last character written.
+     */
+    public int formatTime(char[] buffer, int offset, boolean hours24) {
+        int minutes = mCalendar.get(Calendar.MINUTE);
+        int seconds = mCalendar.get(Calendar.SECOND);
+        if (hours24)
+            return FieldFormatter.formatTime(buffer, offset, mCalendar.get(Calendar.HOUR_OF_DAY), minutes, seconds, true);
+        int hours = mCalendar.get(Calendar.HOUR);
+        String marker = mAmPm[mCalendar.get(Calendar.AM_PM)];
+        if (mMarkerFirst) {
+            offset = append(buffer, offset, marker);
+            offset = append(buffer, offset, mMarkerSeparator);
+        }
+        offset = FieldFormatter.formatTime(buffer, offset, hours == 0 ? 12 : hours, minutes, seconds, false);
+        if (!mMarkerFirst) {
+            offset = append(buffer, offset, mMarkerSeparator);
+            offset = append(buffer, offset, marker);
+        }
+        return offset;
+    }
+
+    /**
+     * Characters written by {@link #formatTime} in the 12-hour format besides the digits and
+     * separators of H:MM:SS: those of the AM/PM markers and of the space next to them.
+     */
+    public String getMarkerCharacters() {
+        return mAmPm[0] + mAmPm[1] + mMarkerSeparator;
+    }
+
+    private static int append(char[] buffer, int offset, String text) {
+        text.getChars(0, text.length(), buffer, offset);
+        return offset + text.length();
+    }
+
+    /** True if the AM/PM marker comes before the hours in a time pattern, e.g. "ah:mm:ss". */
+    static boolean isMarkerFirst(String pattern) {
+        int marker = pattern.indexOf('a');
+        int hours = Math.max(pattern.indexOf('h'), pattern.indexOf('K'));
+        return marker >= 0 && hours >= 0 && marker < hours;
+    }
+
+    /**
+     * Literal text between the AM/PM marker and the time in a time pattern, e.g. " " for
+     * "h:mm:ss a" and "" for "ah:mm:ss".  A space if the pattern has no marker.
+     */
+    static String markerSeparator(String pattern) {
+        int marker = pattern.indexOf('a');
+        if (marker < 0)
+            return " ";
+        int start, end;
+        if (isMarkerFirst(pattern)) {
+            start = marker;
+            while (start < pattern.length() && pattern.charAt(start) == 'a')
+                start++;
+            end = start;
+            while (end < pattern.length() && !Character.isLetter(pattern.charAt(end)))
+                end++;
+        } else {
+            end = marker;
+            start = end;
+            while (start > 0 && !Character.isLetter(pattern.charAt(start - 1)))
+                start--;
+        }
+        /* Drop the quotes of quoted literals. */
+        return pattern.substring(start, end).replace("'", "");
+    }
+
+    /** Number of wakeups which ticked at least one widget. */
+    public long getWakeupCount() {
+        return mSchedule.getWakeupCount();
+    }
+
+    /** Number of ticks delivered, over all widgets. */
+    public long getTickCount() {
+        return mSchedule.getTickCount();
+    }
+
+    /** Number of ticks skipped because a wakeup came more than a period late. */
+    public long getSkippedCount() {
+        return mSchedule.getSkippedCount();
+    }
+
+    private void onTick() {
+        mPostedDeadline = Long.MAX_VALUE;
+        long now = System.currentTimeMillis();
+        mCalendar.setTimeInMillis(now);
+        mSchedule.dispatch(now);
+        reschedule();
+    }
+
+    /** Keep a single message posted, for the earliest deadline. */
+    private void reschedule() {
+        if (!mRunning)
+            return;
+        long deadline = mSchedule.getNextDeadline();
+        if (deadline == mPostedDeadline)
+            return;
+        mHandler.removeCallbacks(mTick);
+        mPostedDeadline = deadline;
+        if (deadline == Long.MAX_VALUE)
+            return;
+        /*
+         * Handler times are in the uptime base.  Should the message come slightly early in wall
+         * time, nothing ticks and the message is posted again.
+         */
+        long delay = deadline == Long.MIN_VALUE ? 0 : Math.max(0, deadline - System.currentTimeMillis());
+        mHandler.postAtTime(mTick, SystemClock.uptimeMillis() + delay);
+    }
+
+}
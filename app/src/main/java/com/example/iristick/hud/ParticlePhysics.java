@@ -0,0 +1,247 @@
+package com.example.iristick.hud;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Elastic collisions between the particles of a {@link ParticleSystem}.
+ *
+ * Every step, the particles are bucketed in a uniform grid whose cells are as large as the
+ * largest particle, so a particle can only touch particles in its own cell and the eight
+ * neighbouring ones.  The cost of a step is therefore linear in the number of particles at a
+ * given density, instead of quadratic when testing all pairs.
+ *
+ * Collisions are resolved per particle: each particle sums the impulses of all the particles
+ * it touches, reading the state before the step and writing only its own new state.  The
+ * particles are thus independent, and large systems are split across cores on a fork-join
+ * pool.  The result does not depend on the number of workers nor on their scheduling, so a
+ * simulation started from a fixed seed is reproducible.  The mass of a particle is
+ * proportional to its area.  Collisions across the wrapped surface borders are ignored.
+ *
+ * This class does not depend on the Android framework.  A step must not run concurrently
+ * with other accesses to the particles.
+ */
+public final class ParticlePhysics {
+
+    /** Number of particles from which a step is split across cores. */
+    private static final int PARALLEL_THRESHOLD = 4096;
+    /** Number of particles resolved by a single fork-join task. */
+    private static final int LEAF_SIZE = 1024;
+
+    private final ParticleSystem mParticles;
+    private final ForkJoinPool mPool;
+    private final float mWidth;
+    private final float mHeight;
+
+    /* Grid: particles sorted by cell, and index of the first particle of each cell */
+    private int[] mCellStarts = new int[1];
+    private int[] mCellParticles = new int[0];
+    private int[] mParticleCells = new int[0];
+    private float mCellSize;
+    private float mMaxRadius;
+    private int mColumns;
+    private int mRows;
+
+    /* State after the step */
+    private float[] mNewPositions = new float[0];
+    private float[] mNewVelocities = new float[0];
+
+    private long mGridNanos;
+    private long mCollisionNanos;
+
+    /**
+     * @param pool Pool on which large systems are resolved, or {@code null} to always
+     *             resolve on the calling thread.
+     */
+    public ParticlePhysics(ParticleSystem particles, int width, int height, ForkJoinPool pool) {
+        mParticles = particles;
+        mWidth = width;
+        mHeight = height;
+        mPool = pool;
+    }
+
+    /**
+     * Resolve the collisions between the particles: bounce the particles which touch and
+     * move toward each other, and push them apart.  Call before {@link ParticleSystem#update}.
+     */
+    public void step() {
+        int count = mParticles.getCount();
+        if (count == 0)
+            return;
+        float[] positions = mParticles.getPositions();
+        float[] velocities = mParticles.getVelocities();
+        float[] radii = mParticles.getRadii();
+
+        long start = System.nanoTime();
+        buildGrid(positions, radii, count);
+        long built = System.nanoTime();
+
+        if (mNewPositions.length < 2 * count) {
+            mNewPositions = new float[2 * count];
+            mNewVelocities = new float[2 * count];
+        }
+        Resolver resolver = new Resolver(positions, velocities, radii, 0, count);
+        if (mPool != null && count >= PARALLEL_THRESHOLD)
+            mPool.invoke(resolver);
+        else
+            resolver.resolve();
+        System.arraycopy(mNewPositions, 0, positions, 0, 2 * count);
+        System.arraycopy(mNewVelocities, 0, velocities, 0, 2 * count);
+        if (resolver.mPushed)
+            mParticles.onMoved();
+
+        mGridNanos = built - start;
+        mCollisionNanos = System.nanoTime() - built;
+    }
+
+    /** Time spent bucketing the particles in the grid during the last step. */
+    public long getGridNanos() {
+        return mGridNanos;
+    }
+
+    /** Time spent resolving the collisions during the last step. */
+    public long getCollisionNanos() {
+        return mCollisionNanos;
+    }
+
+    /** Bucket the particles in the grid with a counting sort. */
+    private void buildGrid(float[] positions, float[] radii, int count) {
+        float maxRadius = 0;
+        for (int i = 0; i < count; i++)
+            maxRadius = Math.max(maxRadius, radii[i]);
+        mMaxRadius = maxRadius;
+        /* The grid covers the surface and the wrapping margin around it. */
+        mCellSize = Math.max(2 * maxRadius, 1);
+        mColumns = (int) ((mWidth + 2 * maxRadius) / mCellSize) + 1;
+        mRows = (int) ((mHeight + 2 * maxRadius) / mCellSize) + 1;
+        int cells = mColumns * mRows;
+        if (mCellStarts.length < cells + 1)
+            mCellStarts = new int[cells + 1];
+        if (mCellParticles.length < count) {
+            mCellParticles = new int[count];
+            mParticleCells = new int[count];
+        }
+
+        int[] starts = mCellStarts;
+        Arrays.fill(starts, 0, cells + 1, 0);
+        for (int i = 0; i < count; i++) {
+            int cell = cellOf(positions[2 * i], positions[2 * i + 1]);
+            mParticleCells[i] = cell;
+            starts[cell + 1]++;
+        }
+        for (int cell = 0; cell < cells; cell++)
+            starts[cell + 1] += starts[cell];
+        /* Fill each cell in particle order, restoring the starts afterwards. */
+        for (int i = 0; i < count; i++)
+            mCellParticles[starts[mParticleCells[i]]++] = i;
+        for (int cell = cells; cell > 0; cell--)
+            starts[cell] = starts[cell - 1];
+        starts[0] = 0;
+    }
+
+    private int cellOf(float x, float y) {
+        int column = (int) ((x + mMaxRadius) / mCellSize);
+        int row = (int) ((y + mMaxRadius) / mCellSize);
+        column = Math.max(0, Math.min(mColumns - 1, column));
+        row = Math.max(0, Math.min(mRows - 1, row));
+        return row * mColumns + column;
+    }
+
+    /** Resolves a range of particles, splitting it in halves when large. */
+    private final class Resolver extends RecursiveAction {
+        private final float[] mPositions;
+        private final float[] mVelocities;
+        private final float[] mRadii;
+        private final int mFrom;
+        private final int mTo;
+        /* True if a particle of the range was pushed */
+        boolean mPushed;
+
+        Resolver(float[] positions, float[] velocities, float[] radii, int from, int to) {
+            mPositions = positions;
+            mVelocities = velocities;
+            mRadii = radii;
+            mFrom = from;
+            mTo = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (mTo - mFrom > LEAF_SIZE) {
+                int mid = (mFrom + mTo) >>> 1;
+                Resolver first = new Resolver(mPositions, mVelocities, mRadii, mFrom, mid);
+                Resolver second = new Resolver(mPositions, mVelocities, mRadii, mid, mTo);
+                invokeAll(first, second);
+                mPushed = first.mPushed | second.mPushed;
+            } else {
+                resolve();
+            }
+        }
+
+        void resolve() {
+            final float[] positions = mPositions;
+            final float[] velocities = mVelocities;
+            final float[] radii = mRadii;
+            final int[] starts = mCellStarts;
+            final int[] particles = mCellParticles;
+            final int columns = mColumns;
+            boolean pushed = false;
+
+            for (int i = mFrom; i < mTo; i++) {
+                float x = positions[2 * i];
+                float y = positions[2 * i + 1];
+                float dx = velocities[2 * i];
+                float dy = velocities[2 * i + 1];
+                float radius = radii[i];
+                float mass = radius * radius;
+                float newX = x, newY = y, newDx = dx, newDy = dy;
+
+                int cell = mParticleCells[i];
+                int column = cell % columns;
+                int row = cell / columns;
+                for (int r = Math.max(0, row - 1), rowEnd = Math.min(mRows - 1, row + 1); r <= rowEnd; r++) {
+                    for (int c = Math.max(0, column - 1), columnEnd = Math.min(columns - 1, column + 1); c <= columnEnd; c++) {
+                        int neighbourCell = r * columns + c;
+                        for (int k = starts[neighbourCell], end = starts[neighbourCell + 1]; k < end; k++) {
+                            int j = particles[k];
+                            if (j == i)
+                                continue;
+                            float nx = x - positions[2 * j];
+                            float ny = y - positions[2 * j + 1];
+                            float reach = radius + radii[j];
+                            float distance2 = nx * nx + ny * ny;
+                            if (distance2 >= reach * reach || distance2 == 0)
+                                continue;
+
+                            float distance = (float) Math.sqrt(distance2);
+                            nx /= distance;
+                            ny /= distance;
+                            float otherMass = radii[j] * radii[j];
+                            float share = otherMass / (mass + otherMass);
+
+                            /* Push apart, each by its share of the overlap. */
+                            newX += nx * (reach - distance) * share;
+                            newY += ny * (reach - distance) * share;
+
+                            /* Bounce if moving toward each other. */
+                            float approach = (dx - velocities[2 * j]) * nx + (dy - velocities[2 * j + 1]) * ny;
+                            if (approach < 0) {
+                                newDx -= 2 * share * approach * nx;
+                                newDy -= 2 * share * approach * ny;
+                            }
+                        }
+                    }
+                }
+
+                mNewPositions[2 * i] = newX;
+                mNewPositions[2 * i + 1] = newY;
+                mNewVelocities[2 * i] = newDx;
+                mNewVelocities[2 * i + 1] = newDy;
+                pushed |= newX != x | newY != y;
+            }
+            mPushed = pushed;
+        }
+    }
+
+}
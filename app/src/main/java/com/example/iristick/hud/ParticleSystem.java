@@ -0,0 +1,255 @@
+package com.example.iristick.hud;
+
+import java.util.Arrays;
+
+/**
+ * Circular particles moving across a HUD surface and wrapping around its borders.
+ *
+ * The particles are not objects: their positions, velocities, radii and colors are stored in
+ * primitive arrays, indexed by particle, so the update is a tight loop over contiguous memory
+ * and a frame allocates nothing.  Positions and velocities are interleaved x, y pairs.
+ *
+ * Colors are indices in a fixed palette.  The particles are kept sorted by color, then by
+ * radius, so each color is drawn with a single call to {@link HudBackend#fillCircles}.  Adding
+ * particles reorders them; indices are only stable until the next {@link #add}.
+ *
+ * This class does not depend on the Android framework and is not thread-safe.
+ */
+public final class ParticleSystem {
+
+    /** Maximum number of particles, bounded by the sort keys. */
+    public static final int MAX_PARTICLES = 1 << 24;
+    /** Maximum number of palette colors, bounded by the sort keys. */
+    public static final int MAX_COLORS = 256;
+
+    private final int[] mPalette;
+    private final float mWidth;
+    private final float mHeight;
+    private final int[] mBatchStarts;
+
+    private int mCount;
+    private float[] mPositions;
+    private float[] mVelocities;
+    private float[] mRadii;
+    private int[] mColors;
+    private boolean mSorted = true;
+    /* Bounds of all particles after the last update, as left, top, right, bottom */
+    private final int[] mBounds = new int[4];
+    private boolean mBoundsValid;
+    /* True if particles were moved outside of update, e.g. by the physics */
+    private boolean mMoved;
+
+    /**
+     * @param palette Colors of the particles, as ARGB.
+     * @param width Width of the surface, in pixels.
+     * @param height Height of the surface, in pixels.
+     * @param capacity Initial capacity; the arrays grow as needed.
+     */
+    public ParticleSystem(int[] palette, int width, int height, int capacity) {
+        if (palette.length == 0 || palette.length > MAX_COLORS)
+            throw new IllegalArgumentException("invalid palette size");
+        mPalette = palette.clone();
+        mWidth = width;
+        mHeight = height;
+        mBatchStarts = new int[palette.length + 1];
+        capacity = Math.max(capacity, 1);
+        mPositions = new float[2 * capacity];
+        mVelocities = new float[2 * capacity];
+        mRadii = new float[capacity];
+        mColors = new int[capacity];
+    }
+
+    /**
+     * Add a particle.
+     * @param color Index of the color in the palette.
+     */
+    public void add(float x, float y, float dx, float dy, float radius, int color) {
+        if (color < 0 || color >= mPalette.length)
+            throw new IllegalArgumentException("invalid color index");
+        if (mCount == MAX_PARTICLES)
+            throw new IllegalStateException("too many particles");
+        if (mCount == mRadii.length) {
+            int capacity = (int) Math.min(2L * mCount, MAX_PARTICLES);
+            mPositions = Arrays.copyOf(mPositions, 2 * capacity);
+            mVelocities = Arrays.copyOf(mVelocities, 2 * capacity);
+            mRadii = Arrays.copyOf(mRadii, capacity);
+            mColors = Arrays.copyOf(mColors, capacity);
+        }
+        int i = mCount++;
+        mPositions[2 * i] = x;
+        mPositions[2 * i + 1] = y;
+        mVelocities[2 * i] = dx;
+        mVelocities[2 * i + 1] = dy;
+        mRadii[i] = radius;
+        mColors[i] = color;
+        mSorted = false;
+        mBoundsValid = false;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    /** Positions of the particles, as x, y pairs.  Only the first {@link #getCount} pairs are valid. */
+    public float[] getPositions() {
+        sort();
+        return mPositions;
+    }
+
+    /** Velocities of the particles in pixels per second, as x, y pairs. */
+    public float[] getVelocities() {
+        sort();
+        return mVelocities;
+    }
+
+    public float[] getRadii() {
+        sort();
+        return mRadii;
+    }
+
+    /** Palette index of the color of each particle. */
+    public int[] getColors() {
+        sort();
+        return mColors;
+    }
+
+    /**
+     * Move all particles by the given time step, wrapping around the surface borders.
+     * @param damage Tracker to which the region covered by the particles before and after
+     *               moving is reported, or {@code null}.  Nothing is reported if no particle
+     *               moved, neither here nor since the previous update.
+     */
+    public void update(float deltaT, DamageTracker damage) {
+        final float[] positions = mPositions;
+        final float[] velocities = mVelocities;
+        final float[] radii = mRadii;
+        final float width = mWidth;
+        final float height = mHeight;
+        boolean moved = mMoved;
+        mMoved = false;
+
+        for (int i = 0, n = mCount; i < n; i++) {
+            float radius = radii[i];
+            float oldX = positions[2 * i];
+            float oldY = positions[2 * i + 1];
+            float x = oldX + velocities[2 * i] * deltaT;
+            float y = oldY + velocities[2 * i + 1] * deltaT;
+
+            /* Wrap around screen bounds. */
+            if (x < -radius)
+                x = width + radius;
+            else if (x > width + radius)
+                x = -radius;
+            if (y < -radius)
+                y = height + radius;
+            else if (y > height + radius)
+                y = -radius;
+            positions[2 * i] = x;
+            positions[2 * i + 1] = y;
+            moved |= x != oldX | y != oldY;
+        }
+
+        if (damage == null) {
+            mBoundsValid = false;
+        } else if (moved || !mBoundsValid) {
+            /* The old positions are covered by the bounds of the previous update. */
+            if (mBoundsValid)
+                damage.invalidate(mBounds[0], mBounds[1], mBounds[2], mBounds[3]);
+            else
+                damage.invalidateAll();
+            computeBounds();
+            damage.invalidate(mBounds[0], mBounds[1], mBounds[2], mBounds[3]);
+        }
+    }
+
+    /**
+     * Report that particles were moved outside of {@link #update}, so the next update reports
+     * the damage even if its own step does not move anything.  The bounds of the previous
+     * update still cover the positions drawn last.
+     */
+    void onMoved() {
+        mMoved = true;
+    }
+
+    /**
+     * Compute the bounds of all particles.
+     * This is a separate pass, so the update loop stays free of the extra comparisons.
+     */
+    private void computeBounds() {
+        final float[] positions = mPositions;
+        final float[] radii = mRadii;
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for (int i = 0, n = mCount; i < n; i++) {
+            float radius = radii[i];
+            float x = positions[2 * i];
+            float y = positions[2 * i + 1];
+            minX = Math.min(minX, x - radius);
+            maxX = Math.max(maxX, x + radius);
+            minY = Math.min(minY, y - radius);
+            maxY = Math.max(maxY, y + radius);
+        }
+        mBounds[0] = (int) Math.floor(minX);
+        mBounds[1] = (int) Math.floor(minY);
+        mBounds[2] = (int) Math.ceil(maxX) + 1;
+        mBounds[3] = (int) Math.ceil(maxY) + 1;
+        mBoundsValid = true;
+    }
+
+    /** Draw all particles, with one batch per color.  Must be called within a frame. */
+    public void draw(HudBackend backend) {
+        sort();
+        for (int color = 0; color < mPalette.length; color++) {
+            int from = mBatchStarts[color];
+            int to = mBatchStarts[color + 1];
+            if (from < to)
+                backend.fillCircles(mPositions, mRadii, from, to, mPalette[color]);
+        }
+    }
+
+    /** Index of the first particle of each color, followed by the number of particles. */
+    int[] getBatchStarts() {
+        sort();
+        return mBatchStarts;
+    }
+
+    /** Sort the particles by color and radius, if particles were added. */
+    private void sort() {
+        if (mSorted)
+            return;
+        mSorted = true;
+
+        /* Key: color on 8 bits, radius in 1/16 pixel on 16 bits, index on 24 bits */
+        int n = mCount;
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            long radius = Math.max(0, Math.min(0xffff, (int) (mRadii[i] * 16)));
+            keys[i] = (long) mColors[i] << 40 | radius << 24 | i;
+        }
+        Arrays.sort(keys);
+
+        float[] positions = new float[mPositions.length];
+        float[] velocities = new float[mVelocities.length];
+        float[] radii = new float[mRadii.length];
+        int[] colors = new int[mColors.length];
+        Arrays.fill(mBatchStarts, n);
+        for (int i = n - 1; i >= 0; i--) {
+            int from = (int) (keys[i] & 0xffffff);
+            positions[2 * i] = mPositions[2 * from];
+            positions[2 * i + 1] = mPositions[2 * from + 1];
+            velocities[2 * i] = mVelocities[2 * from];
+            velocities[2 * i + 1] = mVelocities[2 * from + 1];
+            radii[i] = mRadii[from];
+            colors[i] = mColors[from];
+            mBatchStarts[colors[i]] = i;
+        }
+        /* Colors without particles start where the next color starts. */
+        for (int color = mPalette.length - 1; color >= 0; color--)
+            mBatchStarts[color] = Math.min(mBatchStarts[color], mBatchStarts[color + 1]);
+        mPositions = positions;
+        mVelocities = velocities;
+        mRadii = radii;
+        mColors = colors;
+    }
+
+}
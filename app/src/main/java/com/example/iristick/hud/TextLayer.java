@@ -0,0 +1,93 @@
+package com.example.iristick.hud;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+/**
+ * Layer showing a single line of text, centered, for live values such as a clock.
+ *
+ * The text is kept in a character buffer, so values formatted with {@link FieldFormatter}
+ * are set without allocating.  Setting the same text again does not re-render the layer.
+ * With a {@link GlyphAtlas}, the text is drawn from pre-rasterised glyphs.
+ */
+public class TextLayer extends HudLayer {
+
+    private final HudText mText;
+    private final float mAscent;
+    private final float mDescent;
+    private char[] mChars = new char[32];
+    private int mLength;
+
+    public TextLayer(int left, int top, int width, int height, float textSize, int color) {
+        this(left, top, width, height, textSize, color, null);
+    }
+
+    /**
+     * @param textSize Size of the text, in pixels.
+     * @param color Color of the text, as ARGB.
+     * @param characters Characters to rasterise in a glyph atlas, e.g. the digits and
+     *                   separators of a value, or {@code null} to draw without an atlas.
+     */
+    public TextLayer(int left, int top, int width, int height, float textSize, int color, String characters) {
+        super(left, top, width, height, false);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setTextSize(textSize);
+        paint.setColor(color);
+        GlyphAtlas atlas = characters != null ? new GlyphAtlas(paint, characters) : null;
+        mText = new HudText(paint, atlas, 16);
+        Paint.FontMetrics metrics = paint.getFontMetrics();
+        mAscent = metrics.ascent;
+        mDescent = metrics.descent;
+    }
+
+    public void setText(String text) {
+        int length = text.length();
+        if (length == mLength && regionEquals(text))
+            return;
+        if (length > mChars.length)
+            mChars = new char[Math.max(length, 2 * mChars.length)];
+        text.getChars(0, length, mChars, 0);
+        mLength = length;
+        invalidate();
+    }
+
+    /** Set the text from a range of characters, without allocating unless the text grows. */
+    public void setText(char[] text, int start, int end) {
+        int length = end - start;
+        if (length == mLength && regionEquals(text, start))
+            return;
+        if (length > mChars.length)
+            mChars = new char[Math.max(length, 2 * mChars.length)];
+        System.arraycopy(text, start, mChars, 0, length);
+        mLength = length;
+        invalidate();
+    }
+
+    public String getText() {
+        return new String(mChars, 0, mLength);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        /* Center the line box vertically. */
+        float baseline = (getHeight() - mDescent - mAscent) / 2;
+        mText.draw(canvas, mChars, 0, mLength, getWidth() / 2f, baseline, Paint.Align.CENTER);
+    }
+
+    private boolean regionEquals(String text) {
+        for (int i = 0; i < mLength; i++) {
+            if (mChars[i] != text.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean regionEquals(char[] text, int start) {
+        for (int i = 0; i < mLength; i++) {
+            if (mChars[i] != text[start + i])
+                return false;
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,168 @@
+package com.example.iristick.hud;
+
+import java.util.ArrayList;
+import java.util.TimeZone;
+
+/**
+ * Schedule of periodic HUD ticks aligned on wall-clock boundaries.
+ *
+ * Each listener ticks on the boundaries of its period in local time: every second on the
+ * second, every minute on the minute, and so on.  Deadlines are computed from the current
+ * time at every tick rather than by adding the period to the last tick, so ticks never
+ * drift.  A listener never ticks before its boundary, so a clock never shows the previous
+ * second twice; when a wakeup comes so late that whole periods have passed, the missed
+ * ticks are counted as skipped instead of being delivered in a burst.  Listeners with the
+ * same or commensurate periods share deadlines, so their ticks are merged into one wakeup.
+ *
+ * A new listener ticks at the first dispatch after it was added, so it has something to
+ * show.  When the wall clock is set back, deadlines are aligned again.
+ *
+ * This class does not depend on the Android framework and is not thread-safe.
+ */
+public final class TickSchedule {
+
+    public interface Listener {
+        /**
+         * Called on a tick.
+         * @param timeMillis Wall-clock time of the dispatch, at or after the boundary.
+         */
+        void onTick(long timeMillis);
+    }
+
+    private static final class Entry {
+        Listener listener;
+        final long period;
+        /** Next deadline, or -1 to tick at the next dispatch */
+        long deadline = -1;
+
+        Entry(Listener listener, long period) {
+            this.listener = listener;
+            this.period = period;
+        }
+    }
+
+    private final TimeZone mTimeZone;
+    private final ArrayList<Entry> mEntries = new ArrayList<>();
+    private boolean mDispatching;
+    private boolean mRemoved;
+    private long mWakeups;
+    private long mTicks;
+    private long mSkipped;
+
+    /** @param timeZone Time zone of the boundaries, e.g. for hourly ticks. */
+    public TickSchedule(TimeZone timeZone) {
+        mTimeZone = timeZone;
+    }
+
+    /**
+     * Add a listener.
+     * @param periodMillis Period of the ticks, e.g. 1000 for every second.
+     */
+    public void add(Listener listener, long periodMillis) {
+        if (periodMillis <= 0)
+            throw new IllegalArgumentException("invalid period");
+        mEntries.add(new Entry(listener, periodMillis));
+    }
+
+    /** Remove a listener.  It does not tick anymore, even during the current dispatch. */
+    public void remove(Listener listener) {
+        for (int i = 0; i < mEntries.size(); i++) {
+            Entry entry = mEntries.get(i);
+            if (entry.listener == listener) {
+                entry.listener = null;
+                mRemoved = true;
+            }
+        }
+        if (!mDispatching)
+            compact();
+    }
+
+    public boolean isEmpty() {
+        return mEntries.isEmpty();
+    }
+
+    /**
+     * Time at which the next dispatch is due.
+     * @return The wall-clock time, or {@link Long#MIN_VALUE} if a listener must tick right
+     *         away, or {@link Long#MAX_VALUE} if there is no listener.
+     */
+    public long getNextDeadline() {
+        long next = Long.MAX_VALUE;
+        for (int i = 0; i < mEntries.size(); i++) {
+            long deadline = mEntries.get(i).deadline;
+            next = Math.min(next, deadline < 0 ? Long.MIN_VALUE : deadline);
+        }
+        return next;
+    }
+
+    /**
+     * Tick all listeners whose deadline has passed.
+     * @param nowMillis Current wall-clock time.
+     * @return Number of listeners which ticked.
+     */
+    public int dispatch(long nowMillis) {
+        int ticked = 0;
+        mDispatching = true;
+        try {
+            /* Listeners added during the dispatch tick at the next one. */
+            int count = mEntries.size();
+            for (int i = 0; i < count; i++) {
+                Entry entry = mEntries.get(i);
+                if (entry.listener == null)
+                    continue;
+                if (entry.deadline >= 0 && nowMillis < entry.deadline) {
+                    if (entry.deadline - nowMillis > entry.period) {
+                        /* The clock was set back. */
+                        entry.deadline = nextBoundary(nowMillis, entry.period);
+                    }
+                    continue;
+                }
+                if (entry.deadline >= 0)
+                    mSkipped += (nowMillis - entry.deadline) / entry.period;
+                entry.deadline = nextBoundary(nowMillis, entry.period);
+                ticked++;
+                entry.listener.onTick(nowMillis);
+            }
+        } finally {
+            mDispatching = false;
+            if (mRemoved)
+                compact();
+        }
+        if (ticked > 0) {
+            mWakeups++;
+            mTicks += ticked;
+        }
+        return ticked;
+    }
+
+    /** Number of dispatches which ticked at least one listener. */
+    public long getWakeupCount() {
+        return mWakeups;
+    }
+
+    /** Number of ticks delivered, over all listeners. */
+    public long getTickCount() {
+        return mTicks;
+    }
+
+    /** Number of ticks skipped because a dispatch came more than a period late. */
+    public long getSkippedCount() {
+        return mSkipped;
+    }
+
+    /** First boundary of the period strictly after the given time, in local time. */
+    private long nextBoundary(long nowMillis, long period) {
+        long offset = mTimeZone.getOffset(nowMillis);
+        long local = nowMillis + offset;
+        return (Math.floorDiv(local, period) + 1) * period - offset;
+    }
+
+    private void compact() {
+        for (int i = mEntries.size() - 1; i >= 0; i--) {
+            if (mEntries.get(i).listener == null)
+                mEntries.remove(i);
+        }
+        mRemoved = false;
+    }
+
+}
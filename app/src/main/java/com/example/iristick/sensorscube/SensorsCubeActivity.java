@@ -8,6 +8,7 @@ import android.os.Bundle;
 import android.util.Log;
 
 import com.example.iristick.R;
+import com.example.iristick.hud.FloatTripleBuffer;
 import com.iristick.smartglass.core.Headset;
 import com.iristick.smartglass.core.Sensor;
 import com.iristick.smartglass.core.SensorEvent;
@@ -32,7 +33,10 @@ public class SensorsCubeActivity extends BaseActivity implements SensorEventList
 
     private GLSurfaceView mGLView;
     private Sensor mSensor;
-    private float[] mOrientation = new float[3];
+    /* Orientation handed from the sensor thread to the GL thread */
+    private final FloatTripleBuffer mOrientation = new FloatTripleBuffer(3);
+    /* Only accessed on the sensor thread */
+    private final float[] mRotation = new float[9];
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -74,9 +78,9 @@ public class SensorsCubeActivity extends BaseActivity implements SensorEventList
     @Override
     public void onSensorChanged(SensorEvent event) {
         /* Update the orientation of the cube with the new rotation vector. */
-        float[] rot = new float[9];
-        SensorManager.getRotationMatrixFromVector(rot, event.values);
-        SensorManager.getOrientation(rot, mOrientation);
+        SensorManager.getRotationMatrixFromVector(mRotation, event.values);
+        SensorManager.getOrientation(mRotation, mOrientation.beginWrite());
+        mOrientation.endWrite();
     }
 
     /**
@@ -356,12 +360,13 @@ public class SensorsCubeActivity extends BaseActivity implements SensorEventList
             mPositionHandle = GLES20.glGetAttribLocation(mPerVertexProgramHandle, "a_Position");
             mColorHandle = GLES20.glGetAttribLocation(mPerVertexProgramHandle, "a_Color");
 
-            /* Draw some cubes. */
+            /* Draw some cubes, with a consistent snapshot of the orientation. */
+            float[] orientation = mOrientation.read();
             Matrix.setIdentityM(mModelMatrix, 0);
             Matrix.translateM(mModelMatrix, 0, 0.0f, 0.0f, -5.0f);
-            Matrix.rotateM(mModelMatrix, 0, (float) Math.toDegrees(mOrientation[1]), 1.0f, 0.0f, 0.0f); // pitch
-            Matrix.rotateM(mModelMatrix, 0, (float) Math.toDegrees(mOrientation[0]), 0.0f, 1.0f, 0.0f); // roll
-            Matrix.rotateM(mModelMatrix, 0, (float) Math.toDegrees(mOrientation[2]), 0.0f, 0.0f, 1.0f); // yaw
+            Matrix.rotateM(mModelMatrix, 0, (float) Math.toDegrees(orientation[1]), 1.0f, 0.0f, 0.0f); // pitch
+            Matrix.rotateM(mModelMatrix, 0, (float) Math.toDegrees(orientation[0]), 0.0f, 1.0f, 0.0f); // roll
+            Matrix.rotateM(mModelMatrix, 0, (float) Math.toDegrees(orientation[2]), 0.0f, 0.0f, 1.0f); // yaw
             drawCube();
         }
 
@@ -0,0 +1,163 @@
+package com.example.iristick.util;
+
+/**
+ * Records the timing of delivered frames over a rolling window.
+ *
+ * The recorder keeps the last {@link #WINDOW} frame intervals in a ring and a histogram of
+ * these intervals with {@link #BUCKET_NANOS} resolution, both updated incrementally, and
+ * tracks the bucket of the median interval as intervals come and go, so {@link #onFrame}
+ * never scans the histogram and never allocates.  From these, it provides the frame rate and
+ * interval percentiles, and it counts stalls, i.e. intervals longer than
+ * {@link #STALL_FACTOR} times the median interval.
+ *
+ * It is used for camera frames and for the frames of the HUD renderers, where durations
+ * such as the draw time can be recorded as well with {@link #addInterval}.
+ *
+ * This class is not thread-safe.
+ */
+public final class FrameTimingRecorder {
+
+    /** Number of intervals in the rolling window. */
+    public static final int WINDOW = 128;
+    /** Width of a histogram bucket. */
+    public static final long BUCKET_NANOS = 250_000;
+    /** Number of histogram buckets; the last one holds all longer intervals. */
+    public static final int BUCKETS = 1000;
+    /** An interval longer than this multiple of the median is a stall. */
+    public static final int STALL_FACTOR = 3;
+
+    private final long[] mIntervals = new long[WINDOW];
+    private final int[] mHistogram = new int[BUCKETS];
+    private int mHead;
+    private int mCount;
+    private long mSum;
+    /* Bucket of the median, and number of intervals in the buckets below it */
+    private int mMedianBucket;
+    private int mBelowMedian;
+    private long mLastFrame = -1;
+    private long mStalls;
+    private long mFrames;
+
+    /** Record a new frame delivered at the given time, in nanoseconds. */
+    public void onFrame(long nanos) {
+        mFrames++;
+        long last = mLastFrame;
+        mLastFrame = nanos;
+        if (last >= 0)
+            addInterval(nanos - last);
+    }
+
+    /** Record an interval or duration directly, in nanoseconds. */
+    public void addInterval(long interval) {
+        /* Check for a stall against the window before this frame. */
+        if (mCount >= WINDOW / 4 && interval > STALL_FACTOR * getMedianNanos())
+            mStalls++;
+
+        /* Evict the oldest interval if the window is full. */
+        if (mCount == WINDOW) {
+            long old = mIntervals[mHead];
+            int oldBucket = bucket(old);
+            mHistogram[oldBucket]--;
+            if (oldBucket < mMedianBucket)
+                mBelowMedian--;
+            mSum -= old;
+        } else {
+            mCount++;
+        }
+        mIntervals[mHead] = interval;
+        mHead = (mHead + 1) % WINDOW;
+        int bucket = bucket(interval);
+        mHistogram[bucket]++;
+        if (bucket < mMedianBucket)
+            mBelowMedian++;
+        mSum += interval;
+        updateMedian();
+    }
+
+    /** Forget all measurements, e.g. after the stream has been reconfigured. */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++)
+            mHistogram[i] = 0;
+        mHead = 0;
+        mCount = 0;
+        mSum = 0;
+        mMedianBucket = 0;
+        mBelowMedian = 0;
+        mLastFrame = -1;
+        mStalls = 0;
+        mFrames = 0;
+    }
+
+    /** Frame rate over the rolling window, or 0 if unknown. */
+    public float getFps() {
+        return mSum == 0 ? 0 : mCount * 1e9f / mSum;
+    }
+
+    /**
+     * Frame interval below which the given fraction of the intervals in the window fall.
+     * The result is rounded up to the histogram resolution.
+     * @param fraction Fraction between 0 and 1, e.g. 0.95 for the 95th percentile.
+     * @return The interval in nanoseconds, or 0 if unknown.
+     */
+    public long getPercentileNanos(double fraction) {
+        if (mCount == 0)
+            return 0;
+        int rank = (int) Math.ceil(fraction * mCount);
+        int seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mHistogram[i];
+            if (seen >= rank)
+                return (i + 1) * BUCKET_NANOS;
+        }
+        return BUCKETS * BUCKET_NANOS;
+    }
+
+    /**
+     * Median frame interval, the same as {@code getPercentileNanos(0.5)} without scanning the
+     * histogram.
+     * @return The interval in nanoseconds, rounded up to the histogram resolution, or 0 if unknown.
+     */
+    public long getMedianNanos() {
+        return mCount == 0 ? 0 : (mMedianBucket + 1) * BUCKET_NANOS;
+    }
+
+    /** Number of stalls since the last reset. */
+    public long getStallCount() {
+        return mStalls;
+    }
+
+    /** Number of frames since the last reset. */
+    public long getFrameCount() {
+        return mFrames;
+    }
+
+    /**
+     * Copy the histogram of the intervals in the window.
+     * @param counts Array of at least {@link #BUCKETS} elements receiving the number of
+     *               intervals in each bucket of {@link #BUCKET_NANOS}.
+     */
+    public void copyHistogram(int[] counts) {
+        System.arraycopy(mHistogram, 0, counts, 0, BUCKETS);
+    }
+
+    /**
+     * Move the median bucket to the one holding the interval of rank ceil(count / 2).
+     * It only crosses the buckets between the old and the new median.
+     */
+    private void updateMedian() {
+        int rank = (mCount + 1) / 2;
+        while (mBelowMedian >= rank) {
+            mMedianBucket--;
+            mBelowMedian -= mHistogram[mMedianBucket];
+        }
+        while (mBelowMedian + mHistogram[mMedianBucket] < rank) {
+            mBelowMedian += mHistogram[mMedianBucket];
+            mMedianBucket++;
+        }
+    }
+
+    private static int bucket(long interval) {
+        return (int) Math.min(interval / BUCKET_NANOS, BUCKETS - 1);
+    }
+
+}
@@ -0,0 +1,171 @@
+package com.example.iristick.barcode;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Decodes a folder of captured images with the {@link BarcodeDecoder} and reports the
+ * decoding time, looking for all formats and for the formats hinted by a {@link FormatHinter}
+ * which learned from the images.  The {@link TiledDecoder} is timed with one worker and with
+ * one worker per core.
+ *
+ * The folder is given by the {@code BARCODE_IMAGES} environment variable; the benchmark is
+ * skipped when it is not set, e.g.:
+ * <pre>BARCODE_IMAGES=/path/to/captures ./gradlew :app:testDebugUnitTest --tests '*BarcodeDecoderBenchmark'</pre>
+ */
+public class BarcodeDecoderBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 10;
+
+    /** A captured image converted to luminance. */
+    static final class LumaImage {
+        final String name;
+        final byte[] luma;
+        final int width;
+        final int height;
+
+        LumaImage(String name, byte[] luma, int width, int height) {
+            this.name = name;
+            this.luma = luma;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    /** Load the images of the benchmark folder, or skip the test if there is none. */
+    static List<LumaImage> loadImages() throws IOException {
+        String path = System.getenv("BARCODE_IMAGES");
+        Assume.assumeTrue("BARCODE_IMAGES not set", path != null);
+        File[] files = new File(path).listFiles();
+        Assume.assumeTrue("no images in " + path, files != null && files.length > 0);
+        Arrays.sort(files);
+
+        List<LumaImage> images = new ArrayList<>();
+        for (File file : files) {
+            BufferedImage image = ImageIO.read(file);
+            if (image == null)
+                continue;
+            int width = image.getWidth();
+            int height = image.getHeight();
+            byte[] luma = new byte[width * height];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int rgb = image.getRGB(x, y);
+                    /* BT.601 luma, as produced by the camera */
+                    int r = (rgb >> 16) & 0xff;
+                    int g = (rgb >> 8) & 0xff;
+                    int b = rgb & 0xff;
+                    luma[y * width + x] = (byte) ((66 * r + 129 * g + 25 * b + 128 >> 8) + 16);
+                }
+            }
+            images.add(new LumaImage(file.getName(), luma, width, height));
+        }
+        return images;
+    }
+
+    @Test
+    public void decodeFolder() throws IOException {
+        List<LumaImage> images = loadImages();
+        BarcodeDecoder decoder = new BarcodeDecoder(null);
+
+        for (int round = 0; round < WARMUP_ROUNDS; round++)
+            for (LumaImage image : images)
+                decoder.decode(image.luma, image.width, image.height);
+
+        long[] nanos = new long[images.size()];
+        int found = 0;
+        for (int i = 0; i < images.size(); i++) {
+            LumaImage image = images.get(i);
+            Result result = null;
+            long start = System.nanoTime();
+            for (int round = 0; round < ROUNDS; round++)
+                result = decoder.decode(image.luma, image.width, image.height);
+            nanos[i] = (System.nanoTime() - start) / ROUNDS;
+            if (result != null)
+                found++;
+            System.out.printf("%-40s %8.2f ms  %s%n", image.name, nanos[i] / 1e6,
+                    result != null ? result.getBarcodeFormat() + ": " + result.getText() : "-");
+        }
+
+        Arrays.sort(nanos);
+        System.out.printf("%d images, %d decoded, median %.2f ms, p95 %.2f ms%n",
+                images.size(), found, nanos[nanos.length / 2] / 1e6,
+                nanos[Math.min(nanos.length - 1, nanos.length * 95 / 100)] / 1e6);
+    }
+
+    @Test
+    public void decodeFolderHinted() throws IOException {
+        List<LumaImage> images = loadImages();
+        BarcodeDecoder decoder = new BarcodeDecoder(null);
+
+        /* Learn the formats from a first pass over the images. */
+        FormatHinter hinter = new FormatHinter();
+        for (LumaImage image : images) {
+            Result result = decoder.decode(image.luma, image.width, image.height);
+            if (result != null)
+                hinter.onDecoded(result.getBarcodeFormat());
+        }
+        List<BarcodeFormat> hints = hinter.getHints();
+        System.out.println("hints: " + hints);
+
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            boolean measure = round >= WARMUP_ROUNDS;
+            for (boolean hinted : new boolean[] {false, true}) {
+                decoder.setFormats(hinted ? hints : null);
+                for (LumaImage image : images) {
+                    long start = System.nanoTime();
+                    Result result = decoder.decode(image.luma, image.width, image.height);
+                    if (measure)
+                        hinter.record(hinted, result != null, System.nanoTime() - start);
+                }
+            }
+        }
+
+        FormatHinter.Stats unhinted = hinter.getUnhintedStats();
+        FormatHinter.Stats hinted = hinter.getHintedStats();
+        System.out.printf("all formats: %.1f%% hits, mean %.2f ms%n",
+                unhinted.getHitRate() * 100, unhinted.getMeanNanos() / 1e6);
+        System.out.printf("hinted:      %.1f%% hits, mean %.2f ms%n",
+                hinted.getHitRate() * 100, hinted.getMeanNanos() / 1e6);
+    }
+
+    @Test
+    public void decodeFolderTiled() throws IOException {
+        List<LumaImage> images = loadImages();
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int workers : new int[] {1, cores}) {
+            ForkJoinPool pool = new ForkJoinPool(workers);
+            TiledDecoder decoder = new TiledDecoder(pool, 3, 2, 0.25f, null);
+            for (int round = 0; round < WARMUP_ROUNDS; round++)
+                for (LumaImage image : images)
+                    decoder.decode(image.luma, image.width, image.height);
+
+            long start = System.nanoTime();
+            int found = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                found = 0;
+                for (LumaImage image : images)
+                    found += decoder.decode(image.luma, image.width, image.height).size();
+            }
+            long nanos = (System.nanoTime() - start) / ROUNDS / images.size();
+            System.out.printf("tiled, %d workers: %d codes in %d images, mean %.2f ms per image%n",
+                    workers, found, images.size(), nanos / 1e6);
+            pool.shutdown();
+        }
+    }
+
+}
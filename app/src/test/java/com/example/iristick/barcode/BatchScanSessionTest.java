@@ -0,0 +1,53 @@
+package com.example.iristick.barcode;
+
+import com.google.zxing.BarcodeFormat;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BatchScanSessionTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    /** Simulate the scanner: decode a code, and add it to the session if the filter accepts it. */
+    private static void scan(BatchScanSession session, String text, long nowNanos) {
+        if (session.getFilter().accept(BarcodeFormat.EAN_13 + ":" + text, nowNanos))
+            session.add(new Barcode(text, BarcodeFormat.EAN_13, nowNanos, 0));
+    }
+
+    @Test
+    public void labelSeenInManyFrames_countsOnce() {
+        BatchScanSession session = new BatchScanSession(60 * SECOND, 100, 0);
+        for (int frame = 0; frame < 30; frame++)
+            scan(session, "5400000000001", frame * SECOND / 30);
+        assertEquals(1, session.getCount());
+    }
+
+    @Test
+    public void summary_reportsThroughputAndDuplicateRatio() {
+        BatchScanSession session = new BatchScanSession(60 * SECOND, 100, 0);
+        /* 50 items in 30 seconds, each seen in 4 frames. */
+        for (int item = 0; item < 50; item++) {
+            long t = item * 600_000_000L;
+            for (int frame = 0; frame < 4; frame++)
+                scan(session, "54000000" + (10000 + item), t + frame * SECOND / 30);
+        }
+        BatchScanSession.Summary summary = session.finish(30 * SECOND);
+        assertEquals(50, summary.barcodes.size());
+        assertEquals("5400000010000", summary.barcodes.get(0).text);
+        assertEquals(200, summary.sightings);
+        assertEquals(150, summary.duplicates);
+        assertEquals(100.0f, summary.getCodesPerMinute(), 0.01f);
+        assertEquals(0.75f, summary.getDuplicateRatio(), 0.0001f);
+    }
+
+    @Test
+    public void emptySession_hasZeroRates() {
+        BatchScanSession.Summary summary = new BatchScanSession(SECOND, 10, 0).finish(0);
+        assertEquals(0, summary.barcodes.size());
+        assertEquals(0.0f, summary.getCodesPerMinute(), 0.0f);
+        assertEquals(0.0f, summary.getDuplicateRatio(), 0.0f);
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.example.iristick.barcode;
+
+import com.google.zxing.BarcodeFormat;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DetectedBarcodeTest {
+
+    private static DetectedBarcode ean(String text, int left, int top, int right, int bottom) {
+        return new DetectedBarcode(text, BarcodeFormat.EAN_13, left, top, right, bottom);
+    }
+
+    @Test
+    public void merge_combinesOverlappingDetections() {
+        List<DetectedBarcode> merged = DetectedBarcode.merge(Arrays.asList(
+                ean("1", 100, 100, 200, 101),
+                ean("1", 90, 120, 210, 121)), 0.75f);
+        assertEquals(1, merged.size());
+        DetectedBarcode barcode = merged.get(0);
+        assertEquals(90, barcode.left);
+        assertEquals(100, barcode.top);
+        assertEquals(210, barcode.right);
+        assertEquals(121, barcode.bottom);
+    }
+
+    @Test
+    public void merge_keepsDistinctCodes() {
+        List<DetectedBarcode> merged = DetectedBarcode.merge(Arrays.asList(
+                ean("1", 100, 100, 200, 101),
+                ean("2", 100, 100, 200, 101),
+                new DetectedBarcode("1", BarcodeFormat.CODE_128, 100, 100, 200, 101)), 0.75f);
+        assertEquals(3, merged.size());
+    }
+
+    @Test
+    public void merge_keepsIdenticalLabelsApart() {
+        /* The same product twice on the shelf */
+        List<DetectedBarcode> merged = DetectedBarcode.merge(Arrays.asList(
+                ean("1", 0, 0, 100, 1),
+                ean("1", 500, 0, 600, 1)), 0.75f);
+        assertEquals(2, merged.size());
+    }
+
+    @Test
+    public void merge_keepsAdjacentIdenticalLabelsApart() {
+        /* Much closer than the size of the barcodes, but on the same row */
+        List<DetectedBarcode> merged = DetectedBarcode.merge(Arrays.asList(
+                ean("1", 0, 50, 300, 51),
+                ean("1", 320, 50, 620, 51)), 0.75f);
+        assertEquals(2, merged.size());
+    }
+
+    @Test
+    public void merge_combinesRowsOfOneBarcode() {
+        /* Read on rows 200 pixels apart, within the bar height of a 300 pixel wide EAN-13 */
+        List<DetectedBarcode> merged = DetectedBarcode.merge(Arrays.asList(
+                ean("1", 0, 0, 300, 1),
+                ean("1", 2, 200, 301, 201)), 0.75f);
+        assertEquals(1, merged.size());
+        assertEquals(0, merged.get(0).top);
+        assertEquals(201, merged.get(0).bottom);
+    }
+
+    @Test
+    public void merge_isTransitive() {
+        /* The second box bridges the first and the third. */
+        List<DetectedBarcode> merged = DetectedBarcode.merge(Arrays.asList(
+                ean("1", 0, 0, 100, 10),
+                ean("1", 300, 0, 400, 10),
+                ean("1", 50, 0, 350, 10)), 0f);
+        assertEquals(1, merged.size());
+        assertEquals(0, merged.get(0).left);
+        assertEquals(400, merged.get(0).right);
+    }
+
+}
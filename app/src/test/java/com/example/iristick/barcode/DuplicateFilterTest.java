@@ -0,0 +1,83 @@
+package com.example.iristick.barcode;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DuplicateFilterTest {
+
+    private static final long TTL = 1000;
+    private static final int CAPACITY = 4;
+
+    private DuplicateFilter mFilter;
+
+    @Before
+    public void setUp() {
+        mFilter = new DuplicateFilter(TTL, CAPACITY);
+    }
+
+    @Test
+    public void firstSighting_isAccepted() {
+        assertTrue(mFilter.accept("a", 0));
+        assertTrue(mFilter.accept("b", 10));
+        assertEquals(0, mFilter.getDuplicateCount());
+    }
+
+    @Test
+    public void repeatWithinWindow_isSuppressed() {
+        assertTrue(mFilter.accept("a", 0));
+        assertFalse(mFilter.accept("a", 500));
+        assertFalse(mFilter.accept("a", 1000));
+        assertEquals(2, mFilter.getDuplicateCount());
+    }
+
+    @Test
+    public void sightingExtendsWindow() {
+        assertTrue(mFilter.accept("a", 0));
+        for (long t = 800; t < 5000; t += 800)
+            assertFalse(mFilter.accept("a", t));
+    }
+
+    @Test
+    public void repeatAfterWindow_isAccepted() {
+        assertTrue(mFilter.accept("a", 0));
+        assertTrue(mFilter.accept("b", 900));
+        assertTrue(mFilter.accept("a", 1001));
+        assertFalse(mFilter.accept("b", 1500));
+    }
+
+    @Test
+    public void full_forgetsLeastRecentlySeen() {
+        assertTrue(mFilter.accept("a", 0));
+        assertTrue(mFilter.accept("b", 1));
+        assertTrue(mFilter.accept("c", 2));
+        assertTrue(mFilter.accept("d", 3));
+        assertFalse(mFilter.accept("a", 4));
+        assertTrue(mFilter.accept("e", 5));
+        assertEquals(CAPACITY, mFilter.size());
+        /* "b" was evicted, "a" was kept since it was seen again. */
+        assertFalse(mFilter.accept("a", 6));
+        assertTrue(mFilter.accept("b", 7));
+    }
+
+    @Test
+    public void counters_reportSightingsAndDuplicates() {
+        mFilter.accept("a", 0);
+        mFilter.accept("a", 1);
+        mFilter.accept("b", 2);
+        mFilter.accept("a", 3);
+        assertEquals(4, mFilter.getSightingCount());
+        assertEquals(2, mFilter.getDuplicateCount());
+    }
+
+    @Test
+    public void clear_forgetsCodes() {
+        assertTrue(mFilter.accept("a", 0));
+        mFilter.clear();
+        assertTrue(mFilter.accept("a", 1));
+        assertEquals(1, mFilter.getSightingCount());
+        assertEquals(0, mFilter.getDuplicateCount());
+    }
+
+}
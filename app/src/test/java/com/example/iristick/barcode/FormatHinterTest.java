@@ -0,0 +1,85 @@
+package com.example.iristick.barcode;
+
+import com.google.zxing.BarcodeFormat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class FormatHinterTest {
+
+    private FormatHinter mHinter;
+
+    @Before
+    public void setUp() {
+        mHinter = new FormatHinter();
+    }
+
+    private void decode(BarcodeFormat format, int times) {
+        for (int i = 0; i < times; i++)
+            mHinter.onDecoded(format);
+    }
+
+    @Test
+    public void noHistory_noHints() {
+        assertNull(mHinter.getHints());
+        decode(BarcodeFormat.QR_CODE, 4);
+        assertNull(mHinter.getHints());
+        decode(BarcodeFormat.QR_CODE, 1);
+        assertEquals(Collections.singletonList(BarcodeFormat.QR_CODE), mHinter.getHints());
+    }
+
+    @Test
+    public void hints_areRankedByFrequency() {
+        decode(BarcodeFormat.CODE_128, 5);
+        decode(BarcodeFormat.EAN_13, 20);
+        decode(BarcodeFormat.QR_CODE, 10);
+        assertEquals(Arrays.asList(BarcodeFormat.EAN_13, BarcodeFormat.QR_CODE, BarcodeFormat.CODE_128),
+                mHinter.getHints());
+    }
+
+    @Test
+    public void hints_pruneRareFormats() {
+        decode(BarcodeFormat.DATA_MATRIX, 1);
+        decode(BarcodeFormat.EAN_13, 30);
+        assertEquals(Collections.singletonList(BarcodeFormat.EAN_13), mHinter.getHints());
+    }
+
+    @Test
+    public void hints_areLimited() {
+        for (int i = 0; i < 10; i++) {
+            decode(BarcodeFormat.EAN_13, 1);
+            decode(BarcodeFormat.EAN_8, 1);
+            decode(BarcodeFormat.QR_CODE, 1);
+            decode(BarcodeFormat.CODE_39, 1);
+        }
+        assertEquals(3, mHinter.getHints().size());
+    }
+
+    @Test
+    public void hints_followWorkflowChanges() {
+        decode(BarcodeFormat.EAN_13, 100);
+        decode(BarcodeFormat.QR_CODE, 200);
+        assertEquals(Collections.singletonList(BarcodeFormat.QR_CODE), mHinter.getHints());
+    }
+
+    @Test
+    public void stats_areKeptPerMode() {
+        mHinter.record(true, true, 2_000_000);
+        mHinter.record(true, false, 4_000_000);
+        mHinter.record(false, true, 10_000_000);
+        FormatHinter.Stats hinted = mHinter.getHintedStats();
+        assertEquals(2, hinted.attempts);
+        assertEquals(0.5f, hinted.getHitRate(), 0.0f);
+        assertEquals(3_000_000, hinted.getMeanNanos());
+        FormatHinter.Stats unhinted = mHinter.getUnhintedStats();
+        assertEquals(1, unhinted.attempts);
+        assertEquals(1.0f, unhinted.getHitRate(), 0.0f);
+        assertEquals(10_000_000, unhinted.getMeanNanos());
+    }
+
+}
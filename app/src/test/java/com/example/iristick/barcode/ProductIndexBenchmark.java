@@ -0,0 +1,69 @@
+package com.example.iristick.barcode;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Builds an index of a million products and measures the lookup time.
+ *
+ * The benchmark is skipped unless the {@code RUN_BENCHMARKS} environment variable is set, e.g.:
+ * <pre>RUN_BENCHMARKS=1 ./gradlew :app:testDebugUnitTest --tests '*ProductIndexBenchmark'</pre>
+ */
+public class ProductIndexBenchmark {
+
+    private static final int PRODUCTS = 1_000_000;
+    private static final int LOOKUPS = 1_000_000;
+
+    @Before
+    public void requireOptIn() {
+        Assume.assumeTrue("RUN_BENCHMARKS not set", System.getenv("RUN_BENCHMARKS") != null);
+    }
+
+    @Test
+    public void lookup() throws Exception {
+        File file = File.createTempFile("products", ".index");
+        try {
+            ProductIndexBuilder builder = new ProductIndexBuilder();
+            for (int i = 0; i < PRODUCTS; i++)
+                builder.add(code(i), "SKU-" + i + "\tAisle " + (i % 40) + "\tShelf " + (i % 7));
+            long start = System.nanoTime();
+            builder.write(file);
+            System.out.printf("build: %.0f ms, %d bytes%n", (System.nanoTime() - start) / 1e6, file.length());
+
+            start = System.nanoTime();
+            ProductIndex index = ProductIndex.open(file);
+            System.out.printf("open: %.3f ms%n", (System.nanoTime() - start) / 1e6);
+
+            /* Half of the lookups miss. */
+            String[] codes = new String[LOOKUPS];
+            Random random = new Random(42);
+            for (int i = 0; i < LOOKUPS; i++)
+                codes[i] = code(random.nextInt(PRODUCTS * 2));
+            int found = 0;
+            for (int round = 0; round < 2; round++) {
+                found = 0;
+                start = System.nanoTime();
+                for (String code : codes) {
+                    if (index.lookup(code) != null)
+                        found++;
+                }
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.printf("%d lookups: %.2f us per lookup, %d found%n", LOOKUPS, nanos / 1e3 / LOOKUPS, found);
+            assertTrue(found > LOOKUPS / 3 && found < LOOKUPS * 2 / 3);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static String code(int i) {
+        return Long.toString(5400000000000L + i * 7L);
+    }
+
+}
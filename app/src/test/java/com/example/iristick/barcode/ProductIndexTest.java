@@ -0,0 +1,144 @@
+package com.example.iristick.barcode;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+public class ProductIndexTest {
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("products", ".index");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+        new File(mFile.getPath() + ".new").delete();
+    }
+
+    @Test
+    public void lookup_findsAllProducts() throws IOException {
+        ProductIndexBuilder builder = new ProductIndexBuilder();
+        for (int i = 0; i < 10000; i++)
+            builder.add(Long.toString(5400000000000L + i), "Item " + i);
+        builder.write(mFile);
+
+        ProductIndex index = ProductIndex.open(mFile);
+        assertEquals(10000, index.size());
+        for (int i = 0; i < 10000; i++)
+            assertEquals("Item " + i, index.lookup(Long.toString(5400000000000L + i)));
+        assertNull(index.lookup("5400000010000"));
+        assertNull(index.lookup(""));
+    }
+
+    @Test
+    public void lookup_handlesUnicode() throws IOException {
+        new ProductIndexBuilder()
+                .add("\u00e9-123", "Cr\u00e8me br\u00fbl\u00e9e")
+                .add("e-123", "Plain")
+                .write(mFile);
+        ProductIndex index = ProductIndex.open(mFile);
+        assertEquals("Cr\u00e8me br\u00fbl\u00e9e", index.lookup("\u00e9-123"));
+        assertEquals("Plain", index.lookup("e-123"));
+    }
+
+    @Test
+    public void emptyIndex_findsNothing() throws IOException {
+        new ProductIndexBuilder().write(mFile);
+        ProductIndex index = ProductIndex.open(mFile);
+        assertEquals(0, index.size());
+        assertNull(index.lookup("123"));
+    }
+
+    @Test
+    public void duplicateCode_isRejected() throws IOException {
+        try {
+            new ProductIndexBuilder().add("1", "a").add("1", "b").write(mFile);
+            fail();
+        } catch (IllegalArgumentException e) {
+            /* expected */
+        }
+    }
+
+    @Test
+    public void truncatedFile_isRejected() throws IOException {
+        new ProductIndexBuilder().add("1", "a").add("2", "b").write(mFile);
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.setLength(file.length() - 1);
+        }
+        try {
+            ProductIndex.open(mFile);
+            fail();
+        } catch (IOException e) {
+            /* expected */
+        }
+    }
+
+    @Test
+    public void corruptEntries_areNotFound() throws IOException {
+        new ProductIndexBuilder().add("1", "a").add("2", "b").add("3", "c").write(mFile);
+        int offsetsStart = ProductIndex.HEADER_SIZE + 3 * 8;
+        int dataStart = offsetsStart + 3 * 4;
+        String[] codes = new String[3];
+        int valueStart = 0;
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            /* Keys are one byte long: read them back in hash order. */
+            for (int i = 0; i < 3; i++) {
+                file.seek(offsetsStart + i * 4);
+                int entry = dataStart + file.readInt();
+                file.seek(entry + 2);
+                codes[i] = String.valueOf((char) file.readByte());
+                valueStart = entry + 3;
+            }
+            /* Entry 0 points past the end of the file, entry 1 before the data area. */
+            file.seek(offsetsStart);
+            file.writeInt(Integer.MAX_VALUE - dataStart);
+            file.writeInt(-1);
+            /* Entry 2 has a negative value length. */
+            file.seek(valueStart);
+            file.writeInt(-5);
+        }
+        ProductIndex index = ProductIndex.open(mFile);
+        for (String code : codes)
+            assertNull(index.lookup(code));
+
+        /* A value length running past the end of the file. */
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.seek(valueStart);
+            file.writeInt(Integer.MAX_VALUE);
+        }
+        assertNull(ProductIndex.open(mFile).lookup(codes[2]));
+    }
+
+    @Test
+    public void catalog_swapsPendingIndex() throws IOException {
+        ProductCatalog catalog = new ProductCatalog(mFile);
+        mFile.delete();
+        assertFalse(catalog.update());
+        assertNull(catalog.lookup("1"));
+
+        new ProductIndexBuilder().add("1", "old").write(mFile);
+        assertTrue(catalog.update());
+        ProductIndex old = catalog.getIndex();
+        assertEquals("old", catalog.lookup("1"));
+        assertFalse(catalog.update());
+
+        new ProductIndexBuilder().add("1", "new").add("2", "added").write(catalog.getPendingFile());
+        assertTrue(catalog.update());
+        assertEquals("new", catalog.lookup("1"));
+        assertEquals("added", catalog.lookup("2"));
+        assertFalse(catalog.getPendingFile().exists());
+        /* Lookups still holding the old index keep working. */
+        assertEquals("old", old.lookup("1"));
+    }
+
+}
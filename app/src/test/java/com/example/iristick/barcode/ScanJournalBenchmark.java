@@ -0,0 +1,70 @@
+package com.example.iristick.barcode;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the append throughput of the {@link ScanJournal} and the time to replay it.
+ *
+ * Appends are issued at full speed from one thread, as a scanner would in bursts; every
+ * append is committed to storage before the journal is closed.
+ *
+ * The benchmark is skipped unless the {@code RUN_BENCHMARKS} environment variable is set, e.g.:
+ * <pre>RUN_BENCHMARKS=1 ./gradlew :app:testDebugUnitTest --tests '*ScanJournalBenchmark'</pre>
+ */
+public class ScanJournalBenchmark {
+
+    private static final int RECORDS = 100_000;
+
+    @Before
+    public void requireOptIn() {
+        Assume.assumeTrue("RUN_BENCHMARKS not set", System.getenv("RUN_BENCHMARKS") != null);
+    }
+
+    @Test
+    public void appendAndReplay() throws Exception {
+        File file = File.createTempFile("scans", ".journal");
+        assertTrue(file.delete());
+        try {
+            ScanJournal journal = new ScanJournal(file, null);
+            long start = System.nanoTime();
+            for (int i = 0; i < RECORDS; i++)
+                journal.append(new ScanJournal.Record(1, i, "EAN_13", Long.toString(5400000000000L + i)));
+            long appended = System.nanoTime();
+            journal.close();
+            long committed = System.nanoTime();
+            System.out.printf("%d appends: %.0f appends/s, %.0f committed/s, %d fsyncs, %d bytes%n",
+                    RECORDS, RECORDS / ((appended - start) / 1e9), RECORDS / ((committed - start) / 1e9),
+                    journal.getCommitCount(), file.length());
+
+            CountDownLatch done = new CountDownLatch(1);
+            int[] count = new int[1];
+            start = System.nanoTime();
+            ScanJournal reopened = new ScanJournal(file, new ScanJournal.ReplayListener() {
+                @Override
+                public void onRecord(ScanJournal.Record record) {
+                }
+
+                @Override
+                public void onReplayFinished(int records, long discardedBytes) {
+                    count[0] = records;
+                    done.countDown();
+                }
+            });
+            assertTrue(done.await(60, TimeUnit.SECONDS));
+            System.out.printf("replay: %.1f ms%n", (System.nanoTime() - start) / 1e6);
+            reopened.close();
+            assertEquals(RECORDS, count[0]);
+        } finally {
+            file.delete();
+        }
+    }
+
+}
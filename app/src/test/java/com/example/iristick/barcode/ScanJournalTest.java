@@ -0,0 +1,198 @@
+package com.example.iristick.barcode;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ScanJournalTest {
+
+    private File mFile;
+
+    /** Collects the replayed records. */
+    private static class Replay implements ScanJournal.ReplayListener {
+        final List<ScanJournal.Record> records = new ArrayList<>();
+        final CountDownLatch finished = new CountDownLatch(1);
+        long discardedBytes;
+
+        @Override
+        public void onRecord(ScanJournal.Record record) {
+            records.add(record);
+        }
+
+        @Override
+        public void onReplayFinished(int count, long discarded) {
+            assertEquals(records.size(), count);
+            discardedBytes = discarded;
+            finished.countDown();
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("scans", ".journal");
+        assertTrue(mFile.delete());
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    private Replay reopen() throws Exception {
+        Replay replay = new Replay();
+        ScanJournal journal = new ScanJournal(mFile, replay);
+        assertTrue(replay.finished.await(5, TimeUnit.SECONDS));
+        journal.close();
+        return replay;
+    }
+
+    private void write(int count) throws Exception {
+        ScanJournal journal = new ScanJournal(mFile, null);
+        for (int i = 0; i < count; i++)
+            journal.append(new ScanJournal.Record(7, 1000 + i, "QR_CODE", "code-" + i));
+        journal.close();
+    }
+
+    @Test
+    public void records_areReplayedAfterReopen() throws Exception {
+        write(100);
+        Replay replay = reopen();
+        assertEquals(100, replay.records.size());
+        ScanJournal.Record record = replay.records.get(42);
+        assertEquals(7, record.session);
+        assertEquals(1042, record.timeMillis);
+        assertEquals("QR_CODE", record.format);
+        assertEquals("code-42", record.code);
+        assertEquals(0, replay.discardedBytes);
+    }
+
+    @Test
+    public void appendsAfterReopen_followExistingRecords() throws Exception {
+        write(3);
+        write(2);
+        Replay replay = reopen();
+        assertEquals(5, replay.records.size());
+        assertEquals("code-1", replay.records.get(4).code);
+    }
+
+    @Test
+    public void tornRecord_isCutOff() throws Exception {
+        write(10);
+        long length = mFile.length();
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.setLength(length - 3);
+        }
+        Replay replay = reopen();
+        assertEquals(9, replay.records.size());
+        assertTrue(replay.discardedBytes > 0);
+        /* The journal is usable again after recovery. */
+        write(1);
+        assertEquals(10, reopen().records.size());
+    }
+
+    @Test
+    public void corruptRecord_endsReplay() throws Exception {
+        write(10);
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            /* Flip a byte in the code of the last record. */
+            file.seek(file.length() - 1);
+            int b = file.read();
+            file.seek(file.length() - 1);
+            file.write(b ^ 0xff);
+        }
+        assertEquals(9, reopen().records.size());
+    }
+
+    @Test
+    public void concurrentAppends_areAllCommitted() throws Exception {
+        ScanJournal journal = new ScanJournal(mFile, null);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int id = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 1000; i++)
+                        journal.append(new ScanJournal.Record(id, i, "EAN_13", id + "-" + i));
+                } catch (IOException e) {
+                    fail(e.toString());
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        journal.sync(journal.getAppendCount());
+        /* Group commit: at most one fsync per record, usually far fewer. */
+        assertTrue(journal.getCommitCount() <= journal.getAppendCount());
+        journal.close();
+        assertEquals(4000, reopen().records.size());
+    }
+
+    @Test
+    public void appendAfterClose_fails() throws Exception {
+        ScanJournal journal = new ScanJournal(mFile, null);
+        journal.close();
+        try {
+            journal.append(new ScanJournal.Record(0, 0, "QR_CODE", "x"));
+            fail();
+        } catch (IOException e) {
+            /* expected */
+        }
+    }
+
+    @Test
+    public void closeAsync_commitsAppendedRecords() throws Exception {
+        ScanJournal journal = new ScanJournal(mFile, null);
+        for (int i = 0; i < 10; i++)
+            journal.append(new ScanJournal.Record(7, 1000 + i, "QR_CODE", "code-" + i));
+        journal.closeAsync();
+        try {
+            journal.append(new ScanJournal.Record(0, 0, "QR_CODE", "x"));
+            fail();
+        } catch (IOException e) {
+            /* expected */
+        }
+        /* Wait for the writer thread to exit. */
+        journal.close();
+        assertEquals(10, reopen().records.size());
+    }
+
+    @Test
+    public void recordWithoutFormat_isRejected() throws Exception {
+        ScanJournal journal = new ScanJournal(mFile, null);
+        try {
+            journal.append(new ScanJournal.Record(0, 0, null, "x"));
+            fail();
+        } catch (IllegalArgumentException e) {
+            /* expected */
+        }
+        journal.append(new ScanJournal.Record(0, 0, "QR_CODE", "x"));
+        journal.close();
+        assertEquals(1, reopen().records.size());
+    }
+
+    @Test
+    public void notAJournal_fails() throws Exception {
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.writeLong(0x0123456789abcdefL);
+        }
+        ScanJournal journal = new ScanJournal(mFile, null);
+        try {
+            journal.close();
+            fail();
+        } catch (IOException e) {
+            /* expected */
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.example.iristick.barcode;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.oned.EAN13Writer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class TiledDecoderTest {
+
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 200;
+    private static final String CODE = "4006381333931";
+
+    private final ForkJoinPool mPool = new ForkJoinPool(2);
+
+    @After
+    public void tearDown() {
+        mPool.shutdown();
+    }
+
+    /** Blank image with an EAN-13 of {@link #CODE} drawn at each given position. */
+    private static byte[] image(int... lefts) {
+        byte[] luma = new byte[WIDTH * HEIGHT];
+        Arrays.fill(luma, (byte) 255);
+        /* 113 modules with the quiet zones, 2 pixels each */
+        BitMatrix matrix = new EAN13Writer().encode(CODE, BarcodeFormat.EAN_13, 226, 100);
+        for (int left : lefts) {
+            for (int y = 0; y < matrix.getHeight(); y++) {
+                for (int x = 0; x < matrix.getWidth(); x++) {
+                    if (matrix.get(x, y))
+                        luma[(50 + y) * WIDTH + left + x] = 0;
+                }
+            }
+        }
+        return luma;
+    }
+
+    @Test
+    public void decode_mergesBarcodeFoundInSeveralTiles() {
+        /* Whole in the image and both tiles */
+        TiledDecoder decoder = new TiledDecoder(mPool, 2, 1, 0.3f, null);
+        List<DetectedBarcode> found = decoder.decode(image(290), WIDTH, HEIGHT);
+        assertEquals(1, found.size());
+        assertEquals(CODE, found.get(0).text);
+    }
+
+    @Test
+    public void decode_keepsAdjacentIdenticalLabelsApart() {
+        /*
+         * Tiles span 0-520 and 280-800, so the first tile holds the first label and the second
+         * tile the second.  The bars are 80 pixels apart, closer than the 120 pixel tile overlap.
+         */
+        TiledDecoder decoder = new TiledDecoder(mPool, 2, 1, 0.3f, null);
+        List<DetectedBarcode> found = decoder.decode(image(60, 330), WIDTH, HEIGHT);
+        assertEquals(2, found.size());
+        assertEquals(CODE, found.get(0).text);
+        assertEquals(CODE, found.get(1).text);
+        DetectedBarcode first = found.get(0).left < found.get(1).left ? found.get(0) : found.get(1);
+        DetectedBarcode second = first == found.get(0) ? found.get(1) : found.get(0);
+        assertTrue(first.right <= second.left);
+    }
+
+    @Test
+    public void decode_findsSeveralBarcodesInOneTile() {
+        /* A single tile, covering both labels */
+        TiledDecoder decoder = new TiledDecoder(mPool, 1, 1, 0, null);
+        List<DetectedBarcode> found = decoder.decode(image(60, 400), WIDTH, HEIGHT);
+        assertEquals(2, found.size());
+        assertEquals(CODE, found.get(0).text);
+        assertEquals(CODE, found.get(1).text);
+    }
+
+}
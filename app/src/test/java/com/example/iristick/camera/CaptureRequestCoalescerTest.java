@@ -0,0 +1,91 @@
+package com.example.iristick.camera;
+
+import android.view.Choreographer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CaptureRequestCoalescerTest {
+
+    private final List<Choreographer.FrameCallback> mPosted = new ArrayList<>();
+    private final List<float[]> mFlushes = new ArrayList<>();
+    private boolean mSubmit = true;
+    private CaptureRequestCoalescer mCoalescer;
+
+    @Before
+    public void setUp() {
+        mCoalescer = new CaptureRequestCoalescer((zoomFactor, dx, dy) -> {
+            mFlushes.add(new float[] {zoomFactor, dx, dy});
+            return mSubmit;
+        }, new CaptureRequestCoalescer.FrameTrigger() {
+            @Override
+            public void post(Choreographer.FrameCallback callback) {
+                mPosted.add(callback);
+            }
+
+            @Override
+            public void remove(Choreographer.FrameCallback callback) {
+                mPosted.remove(callback);
+            }
+        });
+    }
+
+    /** Run the callbacks posted for the next frame. */
+    private void frame() {
+        List<Choreographer.FrameCallback> callbacks = new ArrayList<>(mPosted);
+        mPosted.clear();
+        for (Choreographer.FrameCallback callback : callbacks)
+            callback.doFrame(0);
+    }
+
+    @Test
+    public void accumulatesGesturesOfAFrame() {
+        mCoalescer.zoom(2.0f);
+        mCoalescer.zoom(1.5f);
+        mCoalescer.move(3, -4);
+        mCoalescer.move(10, 1);
+        assertEquals(1, mPosted.size());
+
+        frame();
+        assertEquals(1, mFlushes.size());
+        assertArrayEquals(new float[] {3.0f, 13, -3}, mFlushes.get(0), 1e-6f);
+        assertEquals(4, mCoalescer.getGestureCount());
+        assertEquals(1, mCoalescer.getRequestCount());
+
+        /* Deltas start over after a flush. */
+        mCoalescer.move(1, 1);
+        frame();
+        assertArrayEquals(new float[] {1.0f, 1, 1}, mFlushes.get(1), 1e-6f);
+        assertEquals(2, mCoalescer.getRequestCount());
+    }
+
+    @Test
+    public void countsSubmittedRequestsOnly() {
+        mSubmit = false;
+        mCoalescer.zoom(2.0f);
+        frame();
+        assertEquals(1, mFlushes.size());
+        assertEquals(0, mCoalescer.getRequestCount());
+        assertEquals(1, mCoalescer.getGestureCount());
+    }
+
+    @Test
+    public void cancelDropsPendingDeltas() {
+        mCoalescer.zoom(2.0f);
+        mCoalescer.move(5, 5);
+        mCoalescer.cancel();
+        assertTrue(mPosted.isEmpty());
+        frame();
+        assertTrue(mFlushes.isEmpty());
+
+        mCoalescer.move(1, 2);
+        frame();
+        assertArrayEquals(new float[] {1.0f, 1, 2}, mFlushes.get(0), 1e-6f);
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.example.iristick.camera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CommandMergerTest {
+
+    @Test
+    public void coalescesRepeatedAdjustments() {
+        CommandMerger merger = new CommandMerger(8.0f, 100, 50, true);
+        merger.configure();
+        merger.begin();
+        merger.adjust(2.0f, 10, 5, true);
+        merger.adjust(1.5f, 20, -10, true);
+        merger.adjust(1.0f, 5, 0, true);
+        assertTrue(merger.isSettingsChanged());
+        assertEquals(3.0f, merger.getZoom(), 1e-6f);
+        assertEquals(35, merger.getOffsetX());
+        assertEquals(-5, merger.getOffsetY());
+
+        /* The next batch starts without pending changes, but keeps the settings. */
+        merger.begin();
+        assertFalse(merger.isSettingsChanged());
+        assertEquals(3.0f, merger.getZoom(), 1e-6f);
+    }
+
+    @Test
+    public void clampsToCameraLimits() {
+        CommandMerger merger = new CommandMerger(4.0f, 100, 50, false);
+        merger.begin();
+        merger.adjust(10.0f, 500, -500, true);
+        assertEquals(4.0f, merger.getZoom(), 1e-6f);
+        assertEquals(100, merger.getOffsetX());
+        assertEquals(-50, merger.getOffsetY());
+        merger.adjust(0.01f, 0, 0, true);
+        assertEquals(1.0f, merger.getZoom(), 1e-6f);
+
+        merger.reset(true);
+        assertEquals(0, merger.getOffsetX());
+        assertEquals(0, merger.getOffsetY());
+    }
+
+    @Test
+    public void ignoresSettingsWithoutSession() {
+        CommandMerger merger = new CommandMerger(8.0f, 100, 50, true);
+        merger.begin();
+        merger.adjust(2.0f, 10, 10, false);
+        merger.reset(false);
+        merger.triggerAF(false);
+        assertFalse(merger.isSettingsChanged());
+        assertFalse(merger.isTriggerAF());
+        assertEquals(1.0f, merger.getZoom(), 1e-6f);
+    }
+
+    @Test
+    public void mergesAutoFocusTriggers() {
+        CommandMerger merger = new CommandMerger(8.0f, 100, 50, true);
+        merger.begin();
+        merger.triggerAF(true);
+        merger.triggerAF(true);
+        assertTrue(merger.isTriggerAF());
+        assertFalse(merger.isSettingsChanged());
+
+        CommandMerger fixedFocus = new CommandMerger(8.0f, 100, 50, false);
+        fixedFocus.begin();
+        fixedFocus.triggerAF(true);
+        assertFalse(fixedFocus.isTriggerAF());
+    }
+
+    @Test
+    public void configureDiscardsPendingChanges() {
+        CommandMerger merger = new CommandMerger(8.0f, 100, 50, true);
+        merger.begin();
+        merger.adjust(2.0f, 10, 0, true);
+        merger.triggerAF(true);
+        merger.configure();
+        assertFalse(merger.isSettingsChanged());
+        assertFalse(merger.isTriggerAF());
+        /* The new session is configured with the merged settings. */
+        assertEquals(2.0f, merger.getZoom(), 1e-6f);
+    }
+
+    @Test
+    public void ignoresStaleGenerations() {
+        CommandMerger merger = new CommandMerger(8.0f, 100, 50, true);
+        int first = merger.configure();
+        assertTrue(merger.isCurrent(first));
+        int second = merger.configure();
+        assertFalse(merger.isCurrent(first));
+        assertTrue(merger.isCurrent(second));
+        merger.close();
+        assertFalse(merger.isCurrent(second));
+    }
+
+}
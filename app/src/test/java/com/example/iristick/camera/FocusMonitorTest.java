@@ -0,0 +1,139 @@
+package com.example.iristick.camera;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class FocusMonitorTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final long FRAME_NANOS = 33_333_333;
+
+    private FocusMonitor mMonitor;
+    private Frame mFrame;
+    private int mTriggers;
+    private long mTime;
+
+    @Before
+    public void setUp() {
+        mMonitor = new FocusMonitor((score, threshold) -> {
+            assertTrue(score < threshold);
+            mTriggers++;
+        });
+        mFrame = new Frame(null);
+        mFrame.reset(WIDTH, HEIGHT, 0);
+    }
+
+    /** Fill the frame with a checkerboard, smoothed by a box blur of the given radius. */
+    private void render(int square, int blur) {
+        byte[] luma = mFrame.getLuma();
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int sum = 0;
+                int n = 0;
+                for (int dy = -blur; dy <= blur; dy++) {
+                    for (int dx = -blur; dx <= blur; dx++) {
+                        sum += (((x + dx + 64) / square + (y + dy + 64) / square) & 1) != 0 ? 200 : 50;
+                        n++;
+                    }
+                }
+                luma[y * WIDTH + x] = (byte) (sum / n);
+            }
+        }
+    }
+
+    /** Analyze the current content as a number of consecutive frames. */
+    private void analyze(int frames) {
+        for (int i = 0; i < frames; i++) {
+            mFrame.reset(WIDTH, HEIGHT, mTime);
+            mTime += FRAME_NANOS;
+            mMonitor.analyze(mFrame);
+        }
+    }
+
+    private float score() {
+        return mMonitor.score(mFrame.getLuma(), WIDTH, HEIGHT);
+    }
+
+    @Test
+    public void score_decreasesWithBlur() {
+        render(8, 0);
+        float sharp = score();
+        render(8, 2);
+        float soft = score();
+        render(8, 6);
+        float blurry = score();
+        assertTrue(sharp > soft);
+        assertTrue(soft > blurry);
+    }
+
+    @Test
+    public void score_flatImageIsZero() {
+        assertEquals(0.0f, score(), 0.0f);
+        assertEquals(0.0f, mMonitor.score(new byte[4], 2, 2), 0.0f);
+    }
+
+    @Test
+    public void sharpImage_doesNotTrigger() {
+        render(8, 0);
+        analyze(100);
+        assertEquals(0, mTriggers);
+    }
+
+    @Test
+    public void blur_triggersOnceUntilSettled() {
+        render(8, 0);
+        analyze(10);
+        render(8, 6);
+        analyze(3);
+        assertEquals(1, mTriggers);
+        /* Still blurry while the focus sweep settles: no new trigger. */
+        analyze(40);
+        assertEquals(1, mTriggers);
+        assertEquals(1, mMonitor.getTriggerCount());
+    }
+
+    @Test
+    public void settledScore_becomesReference() {
+        render(8, 0);
+        analyze(10);
+        render(8, 6);
+        analyze(200);
+        /* The settled score is the best focus achievable on this scene. */
+        assertEquals(1, mTriggers);
+        assertTrue(mMonitor.getThreshold() < mMonitor.getScore());
+    }
+
+    @Test
+    public void flatScene_doesNotTrigger() {
+        Arrays.fill(mFrame.getLuma(), (byte) 128);
+        analyze(100);
+        assertEquals(0, mTriggers);
+    }
+
+    @Test
+    public void manualTrigger_suppressesAutomaticOne() {
+        render(8, 0);
+        analyze(10);
+        mMonitor.notifyTriggered();
+        render(8, 6);
+        analyze(20);
+        assertEquals(0, mTriggers);
+    }
+
+    @Test
+    public void disabled_doesNotTrigger() {
+        mMonitor.setEnabled(false);
+        render(8, 0);
+        analyze(10);
+        render(8, 6);
+        analyze(10);
+        assertEquals(0, mTriggers);
+        assertTrue(mMonitor.getScore() > 0);
+    }
+
+}
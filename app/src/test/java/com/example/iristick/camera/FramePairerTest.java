@@ -0,0 +1,102 @@
+package com.example.iristick.camera;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FramePairerTest {
+
+    private static final long TOLERANCE = 10;
+    private static final int POOL = 16;
+
+    private FramePipeline mPipeline;
+    private FramePairer mPairer;
+    private final List<long[]> mPairs = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mPipeline = new FramePipeline(2, POOL);
+        mPairer = new FramePairer(TOLERANCE, (first, second) ->
+                mPairs.add(new long[] {first.getTimestamp(), second.getTimestamp()}));
+    }
+
+    @After
+    public void tearDown() {
+        mPipeline.shutdown();
+    }
+
+    /** Feed a frame of a camera as the pipeline does: analyze, then drop its reference. */
+    private void feed(int camera, long timestamp) {
+        Frame frame = mPipeline.obtain(2, 2, timestamp);
+        assertNotNull(frame);
+        mPairer.getAnalyzer(camera).analyze(frame);
+        mPipeline.submit(frame);
+    }
+
+    /** Check that all buffers are back in the pool. */
+    private void assertNoLeak() {
+        List<Frame> frames = new ArrayList<>();
+        for (int i = 0; i < POOL; i++) {
+            Frame frame = mPipeline.obtain(2, 2, 0);
+            assertNotNull("frame leaked", frame);
+            frames.add(frame);
+        }
+        for (Frame frame : frames)
+            mPipeline.submit(frame);
+    }
+
+    @Test
+    public void pairsByTimestamp() {
+        feed(0, 100);
+        feed(1, 105);
+        feed(1, 133);
+        feed(0, 134);
+        assertEquals(2, mPairs.size());
+        assertArrayEquals(new long[] {100, 105}, mPairs.get(0));
+        /* The first frame is always the one of the first camera. */
+        assertArrayEquals(new long[] {134, 133}, mPairs.get(1));
+        assertEquals(2, mPairer.getPairCount());
+        assertEquals(0, mPairer.getDroppedCount());
+        assertNoLeak();
+    }
+
+    @Test
+    public void pairsClosestFrame() {
+        feed(0, 100);
+        feed(0, 108);
+        feed(1, 106);
+        assertEquals(1, mPairs.size());
+        assertArrayEquals(new long[] {108, 106}, mPairs.get(0));
+        mPairer.clear();
+        assertNoLeak();
+    }
+
+    @Test
+    public void dropsExpiredFrames() {
+        feed(0, 100);
+        /* Too far apart to be paired; the first frame can never be matched anymore. */
+        feed(1, 200);
+        assertEquals(0, mPairs.size());
+        assertEquals(1, mPairer.getDroppedCount());
+        feed(0, 203);
+        assertEquals(1, mPairs.size());
+        assertNoLeak();
+    }
+
+    @Test
+    public void dropsFramesWhenQueueIsFull() {
+        for (long t = 100; t <= 600; t += 100)
+            feed(0, t);
+        assertEquals(2, mPairer.getDroppedCount());
+        feed(1, 600);
+        assertArrayEquals(new long[] {600, 600}, mPairs.get(0));
+        mPairer.clear();
+        assertNoLeak();
+    }
+
+}
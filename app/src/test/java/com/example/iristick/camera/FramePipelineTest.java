@@ -0,0 +1,145 @@
+package com.example.iristick.camera;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FramePipelineTest {
+
+    private FramePipeline mPipeline;
+
+    @After
+    public void tearDown() {
+        if (mPipeline != null)
+            mPipeline.shutdown();
+    }
+
+    /** Obtain a frame with the given timestamp and submit it. */
+    private void submit(long timestamp) {
+        Frame frame = mPipeline.obtain(4, 2, timestamp);
+        assertNotNull(frame);
+        mPipeline.submit(frame);
+    }
+
+    /** Analyzer blocking on its first frame until released, recording the timestamps. */
+    private static final class BlockingAnalyzer implements FrameAnalyzer {
+        final List<Long> timestamps = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done;
+
+        BlockingAnalyzer(int frames) {
+            done = new CountDownLatch(frames);
+        }
+
+        @Override
+        public void analyze(Frame frame) {
+            timestamps.add(frame.getTimestamp());
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        }
+    }
+
+    @Test
+    public void dropsOldestFramesOfSlowStage() throws InterruptedException {
+        mPipeline = new FramePipeline(2, 4);
+        BlockingAnalyzer analyzer = new BlockingAnalyzer(3);
+        mPipeline.addAnalyzer("slow", analyzer);
+
+        submit(1);
+        assertTrue(analyzer.started.await(5, TimeUnit.SECONDS));
+        for (long t = 2; t <= 10; t++)
+            submit(t);
+        analyzer.release.countDown();
+        assertTrue(analyzer.done.await(5, TimeUnit.SECONDS));
+
+        /* The frame being analyzed, then the two most recent ones */
+        assertEquals(Long.valueOf(1), analyzer.timestamps.get(0));
+        assertEquals(Long.valueOf(9), analyzer.timestamps.get(1));
+        assertEquals(Long.valueOf(10), analyzer.timestamps.get(2));
+        FramePipeline.StageStats stats = mPipeline.getStats().get(0);
+        assertEquals("slow", stats.name);
+        assertEquals(7, stats.dropped);
+        assertEquals(0, mPipeline.getPoolDrops());
+    }
+
+    @Test
+    public void dropsFramesWhenPoolIsExhausted() {
+        mPipeline = new FramePipeline(2, 2);
+        Frame first = mPipeline.obtain(4, 2, 1);
+        Frame second = mPipeline.obtain(4, 2, 2);
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull(mPipeline.obtain(4, 2, 3));
+        assertEquals(1, mPipeline.getPoolDrops());
+
+        /* Without analyzers, a submitted frame goes straight back to the pool. */
+        mPipeline.submit(first);
+        assertSame(first, mPipeline.obtain(4, 2, 4));
+        assertEquals(4, first.getTimestamp());
+    }
+
+    @Test
+    public void recyclesFramesReleasedByAllStages() throws InterruptedException {
+        mPipeline = new FramePipeline(2, 1);
+        CountDownLatch analyzed = new CountDownLatch(2);
+        List<Frame> seen = Collections.synchronizedList(new ArrayList<>());
+        FrameAnalyzer analyzer = frame -> {
+            seen.add(frame);
+            analyzed.countDown();
+        };
+        mPipeline.addAnalyzer("a", analyzer);
+        mPipeline.addAnalyzer("b", analyzer);
+
+        Frame frame = mPipeline.obtain(4, 2, 1);
+        mPipeline.submit(frame);
+        assertTrue(analyzed.await(5, TimeUnit.SECONDS));
+
+        /* The only buffer comes back once both stages released it. */
+        Frame next = null;
+        for (int i = 0; i < 500 && next == null; i++) {
+            next = mPipeline.obtain(4, 2, 2);
+            if (next == null)
+                Thread.sleep(10);
+        }
+        assertSame(frame, next);
+        assertEquals(2, seen.size());
+    }
+
+    @Test
+    public void countsProcessedFrames() throws InterruptedException {
+        mPipeline = new FramePipeline(8, 8);
+        CountDownLatch analyzed = new CountDownLatch(3);
+        mPipeline.addAnalyzer("count", frame -> analyzed.countDown());
+        for (long t = 1; t <= 3; t++) {
+            submit(t);
+            Thread.sleep(5);
+        }
+        assertTrue(analyzed.await(5, TimeUnit.SECONDS));
+
+        FramePipeline.StageStats stats = null;
+        for (int i = 0; i < 500; i++) {
+            stats = mPipeline.getStats().get(0);
+            if (stats.processed == 3)
+                break;
+            Thread.sleep(10);
+        }
+        assertEquals(3, stats.processed);
+        assertEquals(0, stats.dropped);
+        assertTrue(stats.meanQueueNanos >= 0);
+        assertTrue(stats.maxAnalyzeNanos >= stats.meanAnalyzeNanos);
+    }
+
+}
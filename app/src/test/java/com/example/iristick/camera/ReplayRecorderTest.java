@@ -0,0 +1,151 @@
+package com.example.iristick.camera;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ReplayRecorderTest {
+
+    private static final long FRAME_US = 33_333;
+
+    /** Sink collecting the timestamps of written frames. */
+    private static class ListSink implements ReplayRecorder.Sink {
+        final List<Long> pts = new ArrayList<>();
+        final List<Boolean> keyFrames = new ArrayList<>();
+        boolean closed;
+
+        @Override
+        public void write(ReplayBuffer.EncodedFrame frame) {
+            /* Synthetic frames carry their index in the first byte. */
+            assertEquals((byte) (frame.ptsUs / FRAME_US), frame.data[0]);
+            pts.add(frame.ptsUs);
+            keyFrames.add(frame.keyFrame);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    /** Append a synthetic frame; every 30th frame is a key frame. */
+    private static boolean append(ReplayBuffer buffer, int index, int size) {
+        byte[] data = new byte[size];
+        data[0] = (byte) index;
+        return buffer.append(ByteBuffer.wrap(data), index * FRAME_US, index % 30 == 0);
+    }
+
+    @Test
+    public void buffer_keepsPreRollOnly() {
+        ReplayBuffer buffer = new ReplayBuffer(1 << 20, 1024, 1_000_000);
+        for (int i = 0; i < 300; i++)
+            assertTrue(append(buffer, i, 100));
+        /* One second of pre-roll at 30 fps, both ends included. */
+        assertEquals(31, buffer.getFrameCount());
+        assertEquals(299 * FRAME_US, buffer.getLastPts());
+    }
+
+    @Test
+    public void buffer_evictsOldestWhenFull() {
+        ReplayBuffer buffer = new ReplayBuffer(10_000, 1024, Long.MAX_VALUE);
+        for (int i = 0; i < 1000; i++)
+            assertTrue(append(buffer, i, 1000 + i % 7));
+        assertTrue(buffer.getFrameCount() <= 10);
+        ReplayBuffer.EncodedFrame frame = new ReplayBuffer.EncodedFrame();
+        long last = buffer.getNextSequence() - 1;
+        for (long seq = last - buffer.getFrameCount() + 1; seq <= last; seq++) {
+            assertTrue(buffer.read(seq, frame));
+            assertEquals((byte) (frame.ptsUs / FRAME_US), frame.data[0]);
+        }
+    }
+
+    @Test
+    public void buffer_dropsUntilKeyFrameWhenPinnedAndFull() {
+        ReplayBuffer buffer = new ReplayBuffer(10_000, 1024, Long.MAX_VALUE);
+        for (int i = 0; i < 5; i++)
+            assertTrue(append(buffer, i, 1000));
+        assertEquals(0, buffer.pin());
+        for (int i = 5; i < 10; i++)
+            assertTrue(append(buffer, i, 1000));
+        /* Full: new frames are dropped instead of evicting pinned ones. */
+        assertFalse(append(buffer, 10, 1000));
+        buffer.unpin();
+        /* Appending resumes at the next key frame only. */
+        assertFalse(append(buffer, 11, 1000));
+        assertTrue(append(buffer, 30, 1000));
+        assertEquals(2, buffer.getDroppedCount());
+    }
+
+    @Test
+    public void recorder_savesPreRollFromKeyFrameAndPostRoll() throws Exception {
+        ReplayBuffer buffer = new ReplayBuffer(1 << 20, 1024, 2_000_000);
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        ReplayRecorder recorder = new ReplayRecorder(buffer, writer);
+        for (int i = 0; i < 200; i++)
+            recorder.onEncodedFrame(ByteBuffer.wrap(new byte[] {(byte) i, 0, 0}), i * FRAME_US, i % 30 == 0);
+
+        ListSink sink = new ListSink();
+        CountDownLatch done = new CountDownLatch(1);
+        int[] written = new int[1];
+        assertTrue(recorder.trigger(1_000_000, sink, (frames, error) -> {
+            assertNull(error);
+            written[0] = frames;
+            done.countDown();
+        }));
+        assertFalse(recorder.trigger(1_000_000, new ListSink(), (frames, error) -> fail()));
+
+        /* Keep encoding while the replay is being saved. */
+        for (int i = 200; i < 300; i++)
+            recorder.onEncodedFrame(ByteBuffer.wrap(new byte[] {(byte) i, 0, 0}), i * FRAME_US, i % 30 == 0);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        writer.shutdown();
+
+        /* The 2 s pre-roll holds frames 139..199; the oldest key frame among them is 150. */
+        assertTrue(sink.closed);
+        assertEquals(150 * FRAME_US, (long) sink.pts.get(0));
+        assertTrue(sink.keyFrames.get(0));
+        /* Post-roll: frames up to 1 s after frame 199. */
+        assertEquals(229 * FRAME_US, (long) sink.pts.get(sink.pts.size() - 1));
+        assertEquals(80, written[0]);
+        assertFalse(recorder.isSaving());
+    }
+
+    @Test
+    public void recorder_reportsSinkErrors() throws Exception {
+        ReplayBuffer buffer = new ReplayBuffer(1 << 20, 1024, 2_000_000);
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        ReplayRecorder recorder = new ReplayRecorder(buffer, writer);
+        for (int i = 0; i < 60; i++)
+            recorder.onEncodedFrame(ByteBuffer.wrap(new byte[] {(byte) i}), i * FRAME_US, i % 30 == 0);
+
+        CountDownLatch done = new CountDownLatch(1);
+        IOException[] reported = new IOException[1];
+        recorder.trigger(0, new ReplayRecorder.Sink() {
+            @Override
+            public void write(ReplayBuffer.EncodedFrame frame) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public void close() {
+            }
+        }, (frames, error) -> {
+            reported[0] = error;
+            done.countDown();
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        writer.shutdown();
+        assertNotNull(reported[0]);
+        assertFalse(recorder.isSaving());
+    }
+
+}
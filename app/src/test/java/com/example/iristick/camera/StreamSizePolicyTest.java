@@ -0,0 +1,79 @@
+package com.example.iristick.camera;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class StreamSizePolicyTest {
+
+    private static final StreamSizePolicy.Size LARGE = new StreamSizePolicy.Size(1920, 1080);
+    private static final StreamSizePolicy.Size MEDIUM = new StreamSizePolicy.Size(1280, 720);
+    private static final StreamSizePolicy.Size SMALL = new StreamSizePolicy.Size(640, 360);
+
+    private StreamSizePolicy mPolicy;
+
+    @Before
+    public void setUp() {
+        /* Same descending order as the camera stream configuration map. */
+        mPolicy = new StreamSizePolicy(Arrays.asList(LARGE, MEDIUM, SMALL), 30.0f);
+    }
+
+    @Test
+    public void initialSelection_coversView() {
+        assertEquals(MEDIUM, mPolicy.update(1000, 600, 1.0f, 0, 0));
+    }
+
+    @Test
+    public void initialSelection_waitsForViewSize() {
+        /* Before layout */
+        assertNull(mPolicy.update(0, 0, 1.0f, 0, 0));
+        assertNull(mPolicy.getCurrent());
+        /* Selected as soon as the view size is known, without hysteresis */
+        assertEquals(LARGE, mPolicy.update(1920, 1080, 1.0f, 0, 100));
+    }
+
+    @Test
+    public void zoom_shrinksIdealSize() {
+        mPolicy.update(1920, 1080, 1.0f, 30, 0);
+        assertEquals(LARGE, mPolicy.getCurrent());
+        /* At 3x zoom the cropped sensor area holds fewer pixels than the medium size. */
+        mPolicy.update(1920, 1080, 3.0f, 30, 1000);
+        assertEquals(LARGE, mPolicy.update(1920, 1080, 3.0f, 30, 2000));
+        assertEquals(SMALL, mPolicy.update(1920, 1080, 3.0f, 30, 3000));
+    }
+
+    @Test
+    public void lowFps_stepsDownOneSizeAfterHold() {
+        mPolicy.update(1920, 1080, 1.0f, 0, 0);
+        assertEquals(LARGE, mPolicy.update(1920, 1080, 1.0f, 15, 1000));
+        assertEquals(LARGE, mPolicy.update(1920, 1080, 1.0f, 15, 2000));
+        assertEquals(MEDIUM, mPolicy.update(1920, 1080, 1.0f, 15, 3000));
+    }
+
+    @Test
+    public void throttle_blocksGrowingBack() {
+        mPolicy.update(1920, 1080, 1.0f, 0, 0);
+        mPolicy.update(1920, 1080, 1.0f, 15, 1000);
+        mPolicy.update(1920, 1080, 1.0f, 15, 3000);
+        assertEquals(MEDIUM, mPolicy.getCurrent());
+        /* Frame rate recovered, but the throttle period is not over yet. */
+        for (long t = 4000; t < 3000 + StreamSizePolicy.THROTTLE_MILLIS; t += 1000)
+            assertEquals(MEDIUM, mPolicy.update(1920, 1080, 1.0f, 30, t));
+        long t = 3000 + StreamSizePolicy.THROTTLE_MILLIS;
+        mPolicy.update(1920, 1080, 1.0f, 30, t);
+        assertEquals(LARGE, mPolicy.update(1920, 1080, 1.0f, 30, t + StreamSizePolicy.HOLD_MILLIS));
+    }
+
+    @Test
+    public void hysteresis_ignoresShortFluctuations() {
+        mPolicy.update(1920, 1080, 1.0f, 0, 0);
+        for (long t = 1000; t < 20000; t += 2000) {
+            assertEquals(LARGE, mPolicy.update(640, 360, 1.0f, 30, t));
+            assertEquals(LARGE, mPolicy.update(1920, 1080, 1.0f, 30, t + 1000));
+        }
+    }
+
+}
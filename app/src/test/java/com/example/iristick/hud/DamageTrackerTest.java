@@ -0,0 +1,72 @@
+package com.example.iristick.hud;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DamageTrackerTest {
+
+    private static void assertDamage(DamageTracker damage, int left, int top, int right, int bottom) {
+        assertTrue(damage.isDirty());
+        assertEquals(left, damage.getLeft());
+        assertEquals(top, damage.getTop());
+        assertEquals(right, damage.getRight());
+        assertEquals(bottom, damage.getBottom());
+    }
+
+    @Test
+    public void startsFullyDirty() {
+        DamageTracker damage = new DamageTracker(640, 480);
+        assertDamage(damage, 0, 0, 640, 480);
+    }
+
+    @Test
+    public void mergesRectangles() {
+        DamageTracker damage = new DamageTracker(640, 480);
+        damage.onFrameDrawn(0, 0, 640, 480);
+        assertFalse(damage.isDirty());
+
+        damage.invalidate(10, 20, 30, 40);
+        assertDamage(damage, 10, 20, 30, 40);
+        damage.invalidate(100, 5, 110, 25);
+        assertDamage(damage, 10, 5, 110, 40);
+    }
+
+    @Test
+    public void clipsToSurface() {
+        DamageTracker damage = new DamageTracker(640, 480);
+        damage.onFrameDrawn(0, 0, 640, 480);
+        damage.invalidate(-10, -10, -1, 100);
+        assertFalse(damage.isDirty());
+        damage.invalidate(600, 400, 700, 500);
+        assertDamage(damage, 600, 400, 640, 480);
+    }
+
+    @Test
+    public void coversCircle() {
+        DamageTracker damage = new DamageTracker(640, 480);
+        damage.onFrameDrawn(0, 0, 640, 480);
+        damage.invalidateCircle(100.5f, 50.5f, 10);
+        assertDamage(damage, 90, 40, 112, 62);
+    }
+
+    @Test
+    public void countsPixels() {
+        DamageTracker damage = new DamageTracker(100, 100);
+        damage.onFrameDrawn(0, 0, 100, 100);
+        assertEquals(10000, damage.getLastPixels());
+        damage.onFrameSkipped();
+        assertEquals(0, damage.getLastPixels());
+        damage.invalidate(0, 0, 10, 10);
+        damage.onFrameDrawn(0, 0, 10, 10);
+        assertEquals(100, damage.getLastPixels());
+
+        assertEquals(2, damage.getFrameCount());
+        assertEquals(1, damage.getSkippedCount());
+        assertEquals(10100 / 3f, damage.getMeanPixels(), 0.01f);
+        assertEquals(10100 / 3f / 10000, damage.getMeanCoverage(), 1e-5f);
+    }
+
+}
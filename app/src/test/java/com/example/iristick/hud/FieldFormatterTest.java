@@ -0,0 +1,55 @@
+package com.example.iristick.hud;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class FieldFormatterTest {
+
+    private final char[] mBuffer = new char[32];
+
+    /** Return the text written between offset 2 and the returned offset. */
+    private String text(int end) {
+        return new String(mBuffer, 2, end - 2);
+    }
+
+    @Test
+    public void formatsLongs() {
+        long[] values = {0, 7, -7, 10, 99, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values)
+            assertEquals(Long.toString(value), text(FieldFormatter.formatLong(mBuffer, 2, value)));
+    }
+
+    @Test
+    public void padsWithZeros() {
+        assertEquals("007", text(FieldFormatter.formatPadded(mBuffer, 2, 7, 3)));
+        assertEquals("1234", text(FieldFormatter.formatPadded(mBuffer, 2, 1234, 3)));
+        assertEquals("00", text(FieldFormatter.formatPadded(mBuffer, 2, 0, 2)));
+        try {
+            FieldFormatter.formatPadded(mBuffer, 2, -1, 2);
+            fail("negative value accepted");
+        } catch (IllegalArgumentException e) {
+            /* Expected */
+        }
+    }
+
+    @Test
+    public void formatsFixedPoint() {
+        assertEquals("3.14", text(FieldFormatter.formatFixed(mBuffer, 2, Math.PI, 2)));
+        assertEquals("-2.50", text(FieldFormatter.formatFixed(mBuffer, 2, -2.5, 2)));
+        assertEquals("0.001", text(FieldFormatter.formatFixed(mBuffer, 2, 0.0005, 3)));
+        assertEquals("10", text(FieldFormatter.formatFixed(mBuffer, 2, 9.6, 0)));
+        /* No negative zero */
+        assertEquals("0.0", text(FieldFormatter.formatFixed(mBuffer, 2, -0.01, 1)));
+        assertEquals("NaN", text(FieldFormatter.formatFixed(mBuffer, 2, Double.NaN, 1)));
+    }
+
+    @Test
+    public void formatsTimes() {
+        assertEquals("09:05:03", text(FieldFormatter.formatTime(mBuffer, 2, 9, 5, 3, true)));
+        assertEquals("9:05:03", text(FieldFormatter.formatTime(mBuffer, 2, 9, 5, 3, false)));
+        assertEquals("23:59:59", text(FieldFormatter.formatTime(mBuffer, 2, 23, 59, 59, false)));
+    }
+
+}
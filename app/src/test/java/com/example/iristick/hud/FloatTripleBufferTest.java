@@ -0,0 +1,92 @@
+package com.example.iristick.hud;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FloatTripleBufferTest {
+
+    @Test
+    public void readsLatestVector() {
+        FloatTripleBuffer buffer = new FloatTripleBuffer(3);
+        assertArrayEquals(new float[3], buffer.read(), 0);
+        assertEquals(0, buffer.getSequence());
+
+        buffer.write(new float[] {1, 2, 3});
+        buffer.write(new float[] {4, 5, 6});
+        assertArrayEquals(new float[] {4, 5, 6}, buffer.read(), 0);
+        assertEquals(2, buffer.getSequence());
+
+        /* Nothing new: the same vector again */
+        assertArrayEquals(new float[] {4, 5, 6}, buffer.read(), 0);
+        assertEquals(2, buffer.getSequence());
+
+        buffer.write(new float[] {7, 8, 9});
+        assertArrayEquals(new float[] {7, 8, 9}, buffer.read(), 0);
+        assertEquals(3, buffer.getSequence());
+    }
+
+    @Test
+    public void readVectorIsNotOverwritten() {
+        FloatTripleBuffer buffer = new FloatTripleBuffer(2);
+        buffer.write(new float[] {1, 1});
+        float[] front = buffer.read();
+        for (int i = 2; i < 10; i++)
+            buffer.write(new float[] {i, i});
+        assertArrayEquals(new float[] {1, 1}, front, 0);
+        assertArrayEquals(new float[] {9, 9}, buffer.read(), 0);
+    }
+
+    @Test
+    public void consistentUnderConcurrentWrites() throws InterruptedException {
+        int size = 16;
+        int writes = 5_000_000;
+        FloatTripleBuffer buffer = new FloatTripleBuffer(size);
+        AtomicBoolean done = new AtomicBoolean();
+
+        /* Every vector is filled with its sequence number, one element at a time. */
+        Thread producer = new Thread(() -> {
+            for (int i = 1; i <= writes; i++) {
+                float[] back = buffer.beginWrite();
+                for (int j = 0; j < size; j++)
+                    back[j] = i;
+                buffer.endWrite();
+            }
+            done.set(true);
+        });
+        producer.start();
+
+        boolean consistent = true;
+        boolean ordered = true;
+        long reads = 0;
+        long previous = 0;
+        while (true) {
+            boolean last = done.get();
+            float[] front = buffer.read();
+            long sequence = buffer.getSequence();
+            for (int j = 0; j < size; j++) {
+                /* Sequence numbers up to 2^24 are exact as floats. */
+                if (front[j] != sequence)
+                    consistent = false;
+            }
+            if (sequence < previous)
+                ordered = false;
+            previous = sequence;
+            reads++;
+            if (last)
+                break;
+        }
+        producer.join();
+
+        assertTrue("torn vector", consistent);
+        assertTrue("sequence went back", ordered);
+        assertEquals(writes, previous);
+        assertFalse(reads == 0);
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.example.iristick.hud;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FramePacerTest {
+
+    /** Vsync period of a 60 Hz display */
+    private static final long VSYNC = 16_666_667L;
+
+    @Test
+    public void drawsEveryOtherVsyncAt30Fps() {
+        FramePacer pacer = new FramePacer(30);
+        int drawn = 0;
+        for (int i = 0; i < 600; i++) {
+            if (pacer.onVsync(1_000_000_000L + i * VSYNC))
+                drawn++;
+        }
+        assertEquals(300, drawn);
+        assertEquals(0, pacer.getDroppedCount());
+    }
+
+    @Test
+    public void doesNotDriftWithJitter() {
+        FramePacer pacer = new FramePacer(30);
+        int drawn = 0;
+        for (int i = 0; i < 6000; i++) {
+            /* Up to 2 ms of jitter on every pulse */
+            long jitter = ((i * 7919) % 5 - 2) * 1_000_000L;
+            if (pacer.onVsync(i * VSYNC + jitter))
+                drawn++;
+        }
+        assertEquals(3000, drawn);
+        assertEquals(0, pacer.getDroppedCount());
+    }
+
+    @Test
+    public void dropsFramesAfterOverrun() {
+        FramePacer pacer = new FramePacer(30);
+        assertTrue(pacer.onVsync(0));
+        assertFalse(pacer.onVsync(VSYNC));
+        assertTrue(pacer.onVsync(2 * VSYNC));
+        /* Drawing overran until 133 ms: the frames due at 67 ms and 100 ms are dropped. */
+        assertTrue(pacer.onVsync(8 * VSYNC));
+        assertEquals(2, pacer.getDroppedCount());
+        /* Back on the grid */
+        assertFalse(pacer.onVsync(9 * VSYNC));
+        assertTrue(pacer.onVsync(10 * VSYNC));
+    }
+
+    @Test
+    public void changesTargetRate() {
+        FramePacer pacer = new FramePacer(30);
+        pacer.setTargetFps(60);
+        int drawn = 0;
+        for (int i = 0; i < 60; i++) {
+            if (pacer.onVsync(i * VSYNC))
+                drawn++;
+        }
+        assertEquals(60, drawn);
+    }
+
+    @Test
+    public void rejectsInvalidRate() {
+        try {
+            new FramePacer(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            /* expected */
+        }
+    }
+
+}
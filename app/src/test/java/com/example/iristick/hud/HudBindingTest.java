@@ -0,0 +1,187 @@
+package com.example.iristick.hud;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HudBindingTest {
+
+    /** Scheduler with a manual clock, running tasks when the clock advances. */
+    private static final class ManualScheduler implements HudBinding.Scheduler {
+        long time;
+        final List<Runnable> tasks = new ArrayList<>();
+        final List<Long> deadlines = new ArrayList<>();
+
+        @Override
+        public long now() {
+            return time;
+        }
+
+        @Override
+        public void postDelayed(Runnable task, long delayMillis) {
+            tasks.add(task);
+            deadlines.add(time + delayMillis);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            for (int i = tasks.size() - 1; i >= 0; i--) {
+                if (tasks.get(i) == task) {
+                    tasks.remove(i);
+                    deadlines.remove(i);
+                }
+            }
+        }
+
+        void advanceTo(long target) {
+            while (true) {
+                int next = -1;
+                for (int i = 0; i < tasks.size(); i++) {
+                    if (deadlines.get(i) <= target && (next < 0 || deadlines.get(i) < deadlines.get(next)))
+                        next = i;
+                }
+                if (next < 0)
+                    break;
+                time = Math.max(time, deadlines.remove(next));
+                tasks.remove(next).run();
+            }
+            time = target;
+        }
+    }
+
+    @Test
+    public void conflatesToMaximumRate() {
+        ManualScheduler scheduler = new ManualScheduler();
+        List<Integer> values = new ArrayList<>();
+        HudBinding<Integer> binding = new HudBinding<>(scheduler, 10, values::add);
+
+        /* A 200 Hz producer for one second */
+        for (int i = 0; i < 200; i++) {
+            scheduler.advanceTo(i * 5);
+            binding.publish(i);
+            assertTrue(scheduler.tasks.size() <= 1);
+        }
+        scheduler.advanceTo(2000);
+
+        assertEquals(200, binding.getPublishedCount());
+        assertTrue(values.size() >= 10 && values.size() <= 11);
+        assertEquals(values.size(), binding.getDeliveredCount());
+        assertEquals(200 - values.size(), binding.getConflatedCount());
+        /* The latest value always wins. */
+        assertEquals(Integer.valueOf(199), values.get(values.size() - 1));
+        for (int i = 1; i < values.size(); i++)
+            assertTrue(values.get(i) > values.get(i - 1));
+    }
+
+    @Test
+    public void deliversFirstValueAtOnce() {
+        ManualScheduler scheduler = new ManualScheduler();
+        List<String> values = new ArrayList<>();
+        HudBinding<String> binding = new HudBinding<>(scheduler, 2, values::add);
+        scheduler.time = 1000;
+        binding.publish("a");
+        assertEquals(Long.valueOf(1000), scheduler.deadlines.get(0));
+        scheduler.advanceTo(1000);
+        assertEquals(1, values.size());
+
+        /* The next one waits for the minimum interval. */
+        binding.publish("b");
+        assertEquals(Long.valueOf(1500), scheduler.deadlines.get(0));
+    }
+
+    @Test
+    public void returnsReplacedValues() {
+        ManualScheduler scheduler = new ManualScheduler();
+        HudBinding<float[]> binding = new HudBinding<>(scheduler, 10, value -> { });
+        float[] first = new float[3];
+        float[] second = new float[3];
+        assertNull(binding.publish(first));
+        assertSame(first, binding.publish(second));
+        scheduler.advanceTo(0);
+        assertNull(binding.publish(first));
+    }
+
+    @Test
+    public void stopsWhenClosed() {
+        ManualScheduler scheduler = new ManualScheduler();
+        List<Integer> values = new ArrayList<>();
+        HudBinding<Integer> binding = new HudBinding<>(scheduler, 10, values::add);
+        binding.publish(1);
+        binding.close();
+        binding.publish(2);
+        scheduler.advanceTo(1000);
+        assertEquals(0, values.size());
+        assertEquals(0, scheduler.tasks.size());
+    }
+
+    @Test
+    public void concurrentProducers() throws InterruptedException {
+        ScheduledExecutorService widget = Executors.newSingleThreadScheduledExecutor();
+        HudBinding.Scheduler scheduler = new HudBinding.Scheduler() {
+            @Override
+            public long now() {
+                return System.nanoTime() / 1_000_000;
+            }
+
+            @Override
+            public void postDelayed(Runnable task, long delayMillis) {
+                widget.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+            }
+
+            @Override
+            public void cancel(Runnable task) {
+            }
+        };
+
+        int producers = 4;
+        int count = 200_000;
+        long[] last = new long[producers];
+        boolean[] ordered = {true};
+        CountDownLatch done = new CountDownLatch(1);
+        HudBinding<long[]> binding = new HudBinding<>(scheduler, 50, value -> {
+            /* Values of each producer arrive in order. */
+            int producer = (int) value[0];
+            if (value[1] <= last[producer])
+                ordered[0] = false;
+            last[producer] = value[1];
+            if (value[1] > count)
+                done.countDown();
+        });
+
+        long start = System.nanoTime();
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads[p] = new Thread(() -> {
+                for (int i = 1; i <= count; i++)
+                    binding.publish(new long[] {producer, i});
+            });
+            threads[p].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        /* The very last value is always delivered. */
+        binding.publish(new long[] {0, count + 1});
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        widget.shutdown();
+        assertTrue(widget.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertTrue(ordered[0]);
+        assertEquals(producers * (long) count + 1, binding.getPublishedCount());
+        assertEquals(binding.getPublishedCount(), binding.getDeliveredCount() + binding.getConflatedCount());
+        /* At most 50 per second, plus the first one */
+        assertTrue(binding.getDeliveredCount() <= elapsedMillis / 20 + 2);
+    }
+
+}
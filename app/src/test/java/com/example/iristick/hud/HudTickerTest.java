@@ -0,0 +1,43 @@
+package com.example.iristick.hud;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HudTickerTest {
+
+    @Test
+    public void markerAfterTime() {
+        /* English */
+        assertFalse(HudTicker.isMarkerFirst("h:mm:ss a"));
+        assertEquals(" ", HudTicker.markerSeparator("h:mm:ss a"));
+        /* Narrow no-break space, since Android 14 */
+        assertEquals("\u202f", HudTicker.markerSeparator("h:mm:ss\u202fa"));
+    }
+
+    @Test
+    public void markerBeforeTime() {
+        /* Chinese */
+        assertTrue(HudTicker.isMarkerFirst("ah:mm:ss"));
+        assertEquals("", HudTicker.markerSeparator("ah:mm:ss"));
+        /* Korean */
+        assertTrue(HudTicker.isMarkerFirst("a h:mm:ss"));
+        assertEquals(" ", HudTicker.markerSeparator("a h:mm:ss"));
+        assertTrue(HudTicker.isMarkerFirst("aaK:mm:ss"));
+        assertEquals("", HudTicker.markerSeparator("aaK:mm:ss"));
+    }
+
+    @Test
+    public void quotedSeparator() {
+        assertEquals(" - ", HudTicker.markerSeparator("h:mm:ss' - 'a"));
+    }
+
+    @Test
+    public void noMarker() {
+        assertFalse(HudTicker.isMarkerFirst("HH:mm:ss"));
+        assertEquals(" ", HudTicker.markerSeparator("HH:mm:ss"));
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.example.iristick.hud;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures a {@link ParticlePhysics} step for growing numbers of particles at a constant
+ * density, on the calling thread and on one worker per core.  With the grid, the time per
+ * particle should stay about constant as the count grows.
+ *
+ * The benchmark is skipped unless the {@code RUN_BENCHMARKS} environment variable is set, e.g.:
+ * <pre>RUN_BENCHMARKS=1 ./gradlew :app:testDebugUnitTest --tests '*ParticlePhysicsBenchmark'</pre>
+ */
+public class ParticlePhysicsBenchmark {
+
+    /** Surface area per particle, in square pixels */
+    private static final int AREA_PER_PARTICLE = 400;
+    private static final int WARMUP_STEPS = 100;
+    private static final int STEPS = 100;
+
+    @Before
+    public void requireOptIn() {
+        Assume.assumeTrue("RUN_BENCHMARKS not set", System.getenv("RUN_BENCHMARKS") != null);
+    }
+
+    @Test
+    public void step() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(cores);
+        try {
+            for (int count : new int[] {1_000, 10_000, 100_000}) {
+                for (ForkJoinPool workers : new ForkJoinPool[] {null, pool}) {
+                    int size = (int) Math.sqrt((double) count * AREA_PER_PARTICLE);
+                    Random random = new Random(42);
+                    ParticleSystem particles = new ParticleSystem(new int[] {0xffffffff}, size, size, count);
+                    for (int i = 0; i < count; i++)
+                        particles.add(random.nextFloat() * size, random.nextFloat() * size,
+                                random.nextFloat() * 100 - 50, random.nextFloat() * 100 - 50,
+                                random.nextInt(3) + 3, 0);
+                    ParticlePhysics physics = new ParticlePhysics(particles, size, size, workers);
+
+                    for (int step = 0; step < WARMUP_STEPS; step++) {
+                        physics.step();
+                        particles.update(1 / 30f, null);
+                    }
+                    long grid = 0, collisions = 0;
+                    for (int step = 0; step < STEPS; step++) {
+                        physics.step();
+                        particles.update(1 / 30f, null);
+                        grid += physics.getGridNanos();
+                        collisions += physics.getCollisionNanos();
+                    }
+                    grid /= STEPS;
+                    collisions /= STEPS;
+                    System.out.printf("%7d particles, %s: grid %8.1f us, collisions %8.1f us, %.1f ns/particle%n",
+                            count, workers == null ? "1 thread " : cores + " workers",
+                            grid / 1e3, collisions / 1e3, (double) (grid + collisions) / count);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.example.iristick.hud;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ParticlePhysicsTest {
+
+    private static final int[] PALETTE = {0xffffffff, 0xffff0000};
+
+    @Test
+    public void equalParticlesExchangeVelocities() {
+        ParticleSystem particles = new ParticleSystem(PALETTE, 200, 200, 2);
+        particles.add(100, 100, 10, 0, 5, 0);
+        particles.add(109, 100, -30, 0, 5, 0);
+        new ParticlePhysics(particles, 200, 200, null).step();
+
+        float[] velocities = particles.getVelocities();
+        assertEquals(-30, velocities[0], 1e-4);
+        assertEquals(0, velocities[1], 1e-4);
+        assertEquals(10, velocities[2], 1e-4);
+        assertEquals(0, velocities[3], 1e-4);
+
+        /* Pushed apart by half the overlap each */
+        float[] positions = particles.getPositions();
+        assertEquals(99.5f, positions[0], 1e-4);
+        assertEquals(109.5f, positions[2], 1e-4);
+    }
+
+    @Test
+    public void conservesMomentum() {
+        ParticleSystem particles = new ParticleSystem(PALETTE, 200, 200, 2);
+        particles.add(100, 100, 20, 5, 10, 0);
+        particles.add(112, 108, -10, 0, 5, 1);
+        float[] radii = particles.getRadii();
+        float[] velocities = particles.getVelocities();
+        float before = radii[0] * radii[0] * velocities[0] + radii[1] * radii[1] * velocities[2];
+        new ParticlePhysics(particles, 200, 200, null).step();
+        velocities = particles.getVelocities();
+        float after = radii[0] * radii[0] * velocities[0] + radii[1] * radii[1] * velocities[2];
+        assertEquals(before, after, 1e-2);
+        assertTrue(velocities[0] < 20);
+    }
+
+    @Test
+    public void ignoresSeparatedOrReceding() {
+        ParticleSystem particles = new ParticleSystem(PALETTE, 200, 200, 3);
+        particles.add(10, 10, 10, 0, 5, 0);
+        particles.add(30, 10, -10, 0, 5, 0);
+        /* Touching the first one but moving away */
+        particles.add(10, 19, 0, 10, 5, 0);
+        new ParticlePhysics(particles, 200, 200, null).step();
+        float[] velocities = particles.getVelocities();
+        assertArrayEquals(new float[] {10, 0, -10, 0, 0, 10}, Arrays.copyOf(velocities, 6), 0);
+    }
+
+    @Test
+    public void pushesAreReportedAsDamage() {
+        ParticleSystem particles = new ParticleSystem(PALETTE, 200, 200, 3);
+        particles.add(100, 100, 0, 0, 5, 0);
+        particles.add(150, 100, 0, 0, 5, 0);
+        ParticlePhysics physics = new ParticlePhysics(particles, 200, 200, null);
+        DamageTracker damage = new DamageTracker(200, 200);
+        particles.update(0, damage);
+        damage.onFrameDrawn(0, 0, 200, 200);
+
+        /* Nothing touches. */
+        physics.step();
+        particles.update(0, damage);
+        assertFalse(damage.isDirty());
+
+        /* Overlapping particles are pushed apart, even without a time step. */
+        particles.add(108, 100, 0, 0, 5, 0);
+        particles.update(0, damage);
+        damage.onFrameDrawn(0, 0, 200, 200);
+        physics.step();
+        particles.update(0, damage);
+        assertTrue(damage.isDirty());
+        assertEquals(94, damage.getLeft());
+        assertEquals(156, damage.getRight());
+    }
+
+    @Test
+    public void parallelStepIsDeterministic() {
+        float[] sequential = simulate(null);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertArrayEquals(sequential, simulate(pool), 0);
+            assertArrayEquals(sequential, simulate(pool), 0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Run a dense system from a fixed seed and return the final positions and velocities. */
+    private static float[] simulate(ForkJoinPool pool) {
+        Random random = new Random(1234);
+        ParticleSystem particles = new ParticleSystem(PALETTE, 800, 600, 10_000);
+        for (int i = 0; i < 10_000; i++)
+            particles.add(random.nextFloat() * 800, random.nextFloat() * 600,
+                    random.nextFloat() * 100 - 50, random.nextFloat() * 100 - 50,
+                    random.nextInt(3) + 2, random.nextInt(PALETTE.length));
+        ParticlePhysics physics = new ParticlePhysics(particles, 800, 600, pool);
+        for (int step = 0; step < 20; step++) {
+            physics.step();
+            particles.update(1 / 30f, null);
+        }
+        float[] positions = Arrays.copyOf(particles.getPositions(), 20_000);
+        float[] velocities = Arrays.copyOf(particles.getVelocities(), 20_000);
+        float[] state = Arrays.copyOf(positions, 40_000);
+        System.arraycopy(velocities, 0, state, 20_000, 20_000);
+        return state;
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.example.iristick.hud;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Measures the update step of the {@link ParticleSystem} for growing numbers of particles,
+ * with and without damage tracking, against the same step on one object per particle, as the
+ * bubbles were implemented before.
+ *
+ * The benchmark is skipped unless the {@code RUN_BENCHMARKS} environment variable is set, e.g.:
+ * <pre>RUN_BENCHMARKS=1 ./gradlew :app:testDebugUnitTest --tests '*ParticleSystemBenchmark'</pre>
+ */
+public class ParticleSystemBenchmark {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final int WARMUP_STEPS = 2000;
+    private static final int STEPS = 500;
+
+    /** A particle as an object, for comparison */
+    private static final class Bubble {
+        final float radius;
+        float x, y;
+        final float dx, dy;
+
+        Bubble(float x, float y, float dx, float dy, float radius) {
+            this.x = x;
+            this.y = y;
+            this.dx = dx;
+            this.dy = dy;
+            this.radius = radius;
+        }
+
+        void update(float deltaT) {
+            x += dx * deltaT;
+            y += dy * deltaT;
+            if (x < -radius)
+                x = WIDTH + radius;
+            else if (x > WIDTH + radius)
+                x = -radius;
+            if (y < -radius)
+                y = HEIGHT + radius;
+            else if (y > HEIGHT + radius)
+                y = -radius;
+        }
+    }
+
+    @Before
+    public void requireOptIn() {
+        Assume.assumeTrue("RUN_BENCHMARKS not set", System.getenv("RUN_BENCHMARKS") != null);
+    }
+
+    @Test
+    public void update() {
+        for (int count : new int[] {1_000, 10_000, 100_000}) {
+            Random random = new Random(42);
+            ParticleSystem particles = new ParticleSystem(new int[] {0xffffffff, 0xffff0000}, WIDTH, HEIGHT, count);
+            Bubble[] bubbles = new Bubble[count];
+            for (int i = 0; i < count; i++) {
+                float x = random.nextFloat() * WIDTH;
+                float y = random.nextFloat() * HEIGHT;
+                float dx = random.nextFloat() * 160 - 80;
+                float dy = random.nextFloat() * 160 - 80;
+                float radius = random.nextInt(11) + 10;
+                particles.add(x, y, dx, dy, radius, i & 1);
+                bubbles[i] = new Bubble(x, y, dx, dy, radius);
+            }
+            DamageTracker damage = new DamageTracker(WIDTH, HEIGHT);
+
+            for (int step = 0; step < WARMUP_STEPS; step++) {
+                particles.update(1 / 30f, damage);
+                for (Bubble bubble : bubbles)
+                    bubble.update(1 / 30f);
+            }
+
+            long start = System.nanoTime();
+            for (int step = 0; step < STEPS; step++)
+                particles.update(1 / 30f, null);
+            long arrays = (System.nanoTime() - start) / STEPS;
+
+            start = System.nanoTime();
+            for (int step = 0; step < STEPS; step++)
+                particles.update(1 / 30f, damage);
+            long tracked = (System.nanoTime() - start) / STEPS;
+
+            start = System.nanoTime();
+            for (int step = 0; step < STEPS; step++) {
+                for (Bubble bubble : bubbles)
+                    bubble.update(1 / 30f);
+            }
+            long objects = (System.nanoTime() - start) / STEPS;
+
+            System.out.printf("%7d particles: arrays %8.1f us/step (%.2f ns/particle), "
+                            + "with damage %8.1f us/step, objects %8.1f us/step%n",
+                    count, arrays / 1e3, (double) arrays / count, tracked / 1e3, objects / 1e3);
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.example.iristick.hud;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParticleSystemTest {
+
+    private static final int[] PALETTE = {0xffff0000, 0xff00ff00, 0xff0000ff};
+
+    @Test
+    public void groupsParticlesByColorAndRadius() {
+        ParticleSystem particles = new ParticleSystem(PALETTE, 100, 100, 1);
+        particles.add(1, 1, 0, 0, 5, 2);
+        particles.add(2, 2, 0, 0, 3, 0);
+        particles.add(3, 3, 0, 0, 5, 2);
+        particles.add(4, 4, 0, 0, 4, 2);
+        particles.add(5, 5, 0, 0, 3, 0);
+
+        assertEquals(5, particles.getCount());
+        assertArrayEquals(new int[] {0, 2, 2, 5}, particles.getBatchStarts());
+        int[] colors = particles.getColors();
+        float[] radii = particles.getRadii();
+        float[] positions = particles.getPositions();
+        assertArrayEquals(new int[] {0, 0, 2, 2, 2}, Arrays.copyOf(colors, 5));
+        assertArrayEquals(new float[] {3, 3, 4, 5, 5}, Arrays.copyOf(radii, 5), 0);
+        /* Particles are moved with all their attributes, in insertion order for equal keys. */
+        assertArrayEquals(new float[] {2, 2, 5, 5, 4, 4, 1, 1, 3, 3}, Arrays.copyOf(positions, 10), 0);
+    }
+
+    @Test
+    public void movesAndWraps() {
+        ParticleSystem particles = new ParticleSystem(PALETTE, 100, 50, 2);
+        particles.add(50, 25, 10, -20, 5, 0);
+        particles.add(104, 25, 10, 0, 5, 1);
+        particles.update(0.5f, null);
+
+        float[] positions = particles.getPositions();
+        assertEquals(55, positions[0], 1e-5);
+        assertEquals(15, positions[1], 1e-5);
+        /* Past the right border: back in from the left */
+        assertEquals(-5, positions[2], 1e-5);
+        assertEquals(25, positions[3], 1e-5);
+    }
+
+    @Test
+    public void reportsDamage() {
+        ParticleSystem particles = new ParticleSystem(PALETTE, 100, 100, 2);
+        particles.add(50, 50, 10, 0, 5, 0);
+        particles.add(10, 10, 0, 0, 5, 0);
+        DamageTracker damage = new DamageTracker(100, 100);
+
+        /* Positions before the first update are unknown. */
+        damage.onFrameDrawn(0, 0, 100, 100);
+        particles.update(1, damage);
+        assertDamage(damage, 0, 0, 100, 100);
+
+        /* Old and new bounds */
+        damage.onFrameDrawn(0, 0, 100, 100);
+        particles.update(1, damage);
+        assertDamage(damage, 5, 5, 76, 56);
+
+        /* Nothing moves */
+        damage.onFrameDrawn(0, 0, 100, 100);
+        particles.update(0, damage);
+        assertFalse(damage.isDirty());
+
+        /* Added particles are drawn even if nothing moves. */
+        particles.add(20, 20, 0, 0, 5, 1);
+        particles.update(0, damage);
+        assertDamage(damage, 0, 0, 100, 100);
+    }
+
+    private static void assertDamage(DamageTracker damage, int left, int top, int right, int bottom) {
+        assertTrue(damage.isDirty());
+        assertEquals(left, damage.getLeft());
+        assertEquals(top, damage.getTop());
+        assertEquals(right, damage.getRight());
+        assertEquals(bottom, damage.getBottom());
+    }
+
+    @Test
+    public void growsCapacity() {
+        ParticleSystem particles = new ParticleSystem(PALETTE, 100, 100, 1);
+        for (int i = 0; i < 1000; i++)
+            particles.add(i % 100, i / 10, 1, 1, 1 + i % 7, i % PALETTE.length);
+        assertEquals(1000, particles.getCount());
+        int[] starts = particles.getBatchStarts();
+        assertEquals(334, starts[1] - starts[0]);
+        assertEquals(1000, starts[PALETTE.length]);
+    }
+
+    @Test
+    public void rejectsInvalidColor() {
+        ParticleSystem particles = new ParticleSystem(PALETTE, 100, 100, 1);
+        try {
+            particles.add(0, 0, 0, 0, 1, PALETTE.length);
+            fail();
+        } catch (IllegalArgumentException e) {
+            /* expected */
+        }
+    }
+
+}
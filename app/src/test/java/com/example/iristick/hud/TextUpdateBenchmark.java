@@ -0,0 +1,84 @@
+package com.example.iristick.hud;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.text.DateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Measures the cost of formatting the HUD clock, as {@code ClockHud} did before with a
+ * {@link DateFormat} and a new {@link Date} every tick, and as it does now with a reused
+ * {@link Calendar} and {@link FieldFormatter}: time and bytes allocated per update.
+ *
+ * The allocated bytes are read from the HotSpot thread allocation counter, and reported as
+ * unknown on other JVMs.  Drawing the text is measured on a device by
+ * {@code TextDrawBenchmark}, in the instrumented tests.
+ *
+ * The benchmark is skipped unless the {@code RUN_BENCHMARKS} environment variable is set, e.g.:
+ * <pre>RUN_BENCHMARKS=1 ./gradlew :app:testDebugUnitTest --tests '*TextUpdateBenchmark'</pre>
+ */
+public class TextUpdateBenchmark {
+
+    private static final int WARMUP_UPDATES = 200_000;
+    private static final int UPDATES = 1_000_000;
+    /* One tick per second, so every update formats a new time. */
+    private static final long START_MILLIS = 1_700_000_000_000L;
+
+    private interface Update {
+        /** Format the time and return a value depending on the result. */
+        int run(long millis);
+    }
+
+    @Before
+    public void requireOptIn() {
+        Assume.assumeTrue("RUN_BENCHMARKS not set", System.getenv("RUN_BENCHMARKS") != null);
+    }
+
+    @Test
+    public void clock() {
+        DateFormat format = DateFormat.getTimeInstance(DateFormat.MEDIUM, Locale.US);
+        Update before = millis -> format.format(new Date(millis)).length();
+
+        Calendar calendar = Calendar.getInstance(Locale.US);
+        char[] buffer = new char[16];
+        Update after = millis -> {
+            calendar.setTimeInMillis(millis);
+            return FieldFormatter.formatTime(buffer, 0, calendar.get(Calendar.HOUR_OF_DAY),
+                    calendar.get(Calendar.MINUTE), calendar.get(Calendar.SECOND), true);
+        };
+
+        measure("DateFormat + Date", before);
+        measure("Calendar + FieldFormatter", after);
+    }
+
+    private static void measure(String name, Update update) {
+        int sink = 0;
+        for (int i = 0; i < WARMUP_UPDATES; i++)
+            sink += update.run(START_MILLIS + i * 1000L);
+
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < UPDATES; i++)
+            sink += update.run(START_MILLIS + i * 1000L);
+        long nanos = System.nanoTime() - start;
+        long allocated = allocatedBytes() - bytes;
+
+        System.out.printf("%-26s %7.1f ns/update  %s  (%d)%n", name, (double) nanos / UPDATES,
+                bytes < 0 ? "allocation unknown" : String.format("%6.1f bytes/update", (double) allocated / UPDATES),
+                sink);
+    }
+
+    /** Bytes allocated by the current thread so far, or -1 if unknown. */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+            return -1;
+        return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+}
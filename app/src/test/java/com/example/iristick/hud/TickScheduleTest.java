@@ -0,0 +1,112 @@
+package com.example.iristick.hud;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TickScheduleTest {
+
+    /* A whole minute, in UTC */
+    private static final long T0 = 1_700_000_040_000L;
+
+    private static final class Recorder implements TickSchedule.Listener {
+        final List<Long> ticks = new ArrayList<>();
+
+        @Override
+        public void onTick(long timeMillis) {
+            ticks.add(timeMillis);
+        }
+    }
+
+    @Test
+    public void ticksAtOnceThenOnBoundaries() {
+        TickSchedule schedule = new TickSchedule(TimeZone.getTimeZone("UTC"));
+        Recorder recorder = new Recorder();
+        schedule.add(recorder, 1000);
+        assertEquals(Long.MIN_VALUE, schedule.getNextDeadline());
+
+        assertEquals(1, schedule.dispatch(T0 + 400));
+        assertEquals(T0 + 1000, schedule.getNextDeadline());
+        /* Never early */
+        assertEquals(0, schedule.dispatch(T0 + 999));
+        assertEquals(1, schedule.dispatch(T0 + 1003));
+        /* Late wakeups do not shift the next boundary. */
+        assertEquals(T0 + 2000, schedule.getNextDeadline());
+        assertEquals(1, schedule.dispatch(T0 + 2250));
+        assertEquals(T0 + 3000, schedule.getNextDeadline());
+        assertEquals(3, recorder.ticks.size());
+        assertEquals(0, schedule.getSkippedCount());
+    }
+
+    @Test
+    public void skipsMissedTicks() {
+        TickSchedule schedule = new TickSchedule(TimeZone.getTimeZone("UTC"));
+        Recorder recorder = new Recorder();
+        schedule.add(recorder, 1000);
+        schedule.dispatch(T0);
+        assertEquals(1, schedule.dispatch(T0 + 3500));
+        /* The ticks of T0 + 2000 and T0 + 3000 are skipped, not delivered in a burst. */
+        assertEquals(2, schedule.getSkippedCount());
+        assertEquals(T0 + 4000, schedule.getNextDeadline());
+    }
+
+    @Test
+    public void mergesWakeups() {
+        TickSchedule schedule = new TickSchedule(TimeZone.getTimeZone("UTC"));
+        Recorder seconds = new Recorder();
+        Recorder minutes = new Recorder();
+        Recorder halves = new Recorder();
+        schedule.add(seconds, 1000);
+        schedule.add(minutes, 60_000);
+        schedule.add(halves, 500);
+
+        for (long t = T0; t < T0 + 120_000; t += 10) {
+            if (t >= schedule.getNextDeadline())
+                schedule.dispatch(t);
+        }
+        assertEquals(120, seconds.ticks.size());
+        assertEquals(2, minutes.ticks.size());
+        assertEquals(240, halves.ticks.size());
+        /* All ticks fall on the half-second wakeups. */
+        assertEquals(240, schedule.getWakeupCount());
+        assertEquals(362, schedule.getTickCount());
+    }
+
+    @Test
+    public void alignsOnLocalTime() {
+        /* UTC+05:30: hours start at half past in UTC. */
+        TickSchedule schedule = new TickSchedule(TimeZone.getTimeZone("Asia/Kolkata"));
+        schedule.add(new Recorder(), 3_600_000);
+        schedule.dispatch(T0);
+        long deadline = schedule.getNextDeadline();
+        assertEquals(0, (deadline + 19_800_000) % 3_600_000);
+        assertTrue(deadline > T0 && deadline <= T0 + 3_600_000);
+    }
+
+    @Test
+    public void realignsWhenClockIsSetBack() {
+        TickSchedule schedule = new TickSchedule(TimeZone.getTimeZone("UTC"));
+        Recorder recorder = new Recorder();
+        schedule.add(recorder, 1000);
+        schedule.dispatch(T0);
+        assertEquals(0, schedule.dispatch(T0 - 60_000));
+        assertEquals(T0 - 59_000, schedule.getNextDeadline());
+    }
+
+    @Test
+    public void removesDuringDispatch() {
+        TickSchedule schedule = new TickSchedule(TimeZone.getTimeZone("UTC"));
+        Recorder second = new Recorder();
+        schedule.add(timeMillis -> schedule.remove(second), 1000);
+        schedule.add(second, 1000);
+        assertEquals(1, schedule.dispatch(T0));
+        assertEquals(0, second.ticks.size());
+        assertEquals(T0 + 1000, schedule.getNextDeadline());
+    }
+
+}
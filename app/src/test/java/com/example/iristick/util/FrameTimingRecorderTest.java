@@ -0,0 +1,100 @@
+package com.example.iristick.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FrameTimingRecorderTest {
+
+    private static final long FRAME_NANOS = 33_333_333;
+
+    @Test
+    public void measuresSteadyStream() {
+        FrameTimingRecorder recorder = new FrameTimingRecorder();
+        assertEquals(0, recorder.getFps(), 0);
+        assertEquals(0, recorder.getPercentileNanos(0.5));
+        assertEquals(0, recorder.getMedianNanos());
+
+        for (int i = 0; i <= 10; i++)
+            recorder.onFrame(1_000_000_000L + i * FRAME_NANOS);
+        assertEquals(11, recorder.getFrameCount());
+        assertEquals(30, recorder.getFps(), 0.01);
+        /* Rounded up to the bucket resolution */
+        long expected = (FRAME_NANOS / FrameTimingRecorder.BUCKET_NANOS + 1) * FrameTimingRecorder.BUCKET_NANOS;
+        assertEquals(expected, recorder.getPercentileNanos(0.5));
+        assertEquals(expected, recorder.getPercentileNanos(0.99));
+        assertEquals(expected, recorder.getMedianNanos());
+        assertEquals(0, recorder.getStallCount());
+    }
+
+    @Test
+    public void keepsRollingWindow() {
+        FrameTimingRecorder recorder = new FrameTimingRecorder();
+        for (int i = 0; i < FrameTimingRecorder.WINDOW; i++)
+            recorder.addInterval(10_000_000);
+        for (int i = 0; i < FrameTimingRecorder.WINDOW; i++)
+            recorder.addInterval(20_000_000);
+        /* The first intervals are out of the window. */
+        assertEquals(50, recorder.getFps(), 0.01);
+
+        int[] counts = new int[FrameTimingRecorder.BUCKETS];
+        recorder.copyHistogram(counts);
+        assertEquals(0, counts[(int) (10_000_000 / FrameTimingRecorder.BUCKET_NANOS)]);
+        assertEquals(FrameTimingRecorder.WINDOW, counts[(int) (20_000_000 / FrameTimingRecorder.BUCKET_NANOS)]);
+    }
+
+    @Test
+    public void computesPercentiles() {
+        FrameTimingRecorder recorder = new FrameTimingRecorder();
+        /* 100 intervals of 1 to 100 ms */
+        for (int i = 1; i <= 100; i++)
+            recorder.addInterval(i * 1_000_000L);
+        assertEquals(50_250_000, recorder.getPercentileNanos(0.5));
+        assertEquals(95_250_000, recorder.getPercentileNanos(0.95));
+        assertEquals(100_250_000, recorder.getPercentileNanos(1.0));
+        /* Intervals beyond the histogram fall in the last bucket. */
+        recorder.addInterval(10_000_000_000L);
+        assertEquals(FrameTimingRecorder.BUCKETS * FrameTimingRecorder.BUCKET_NANOS, recorder.getPercentileNanos(1.0));
+    }
+
+    @Test
+    public void countsStalls() {
+        FrameTimingRecorder recorder = new FrameTimingRecorder();
+        /* Not before a quarter of the window is filled */
+        recorder.addInterval(FRAME_NANOS);
+        recorder.addInterval(10 * FRAME_NANOS);
+        assertEquals(0, recorder.getStallCount());
+
+        for (int i = 0; i < FrameTimingRecorder.WINDOW / 4; i++)
+            recorder.addInterval(FRAME_NANOS);
+        recorder.addInterval(2 * FRAME_NANOS);
+        assertEquals(0, recorder.getStallCount());
+        recorder.addInterval(4 * FRAME_NANOS);
+        assertEquals(1, recorder.getStallCount());
+
+        recorder.reset();
+        assertEquals(0, recorder.getStallCount());
+        assertEquals(0, recorder.getFrameCount());
+        assertEquals(0, recorder.getMedianNanos());
+    }
+
+    @Test
+    public void tracksMedianIncrementally() {
+        FrameTimingRecorder recorder = new FrameTimingRecorder();
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            /* Drifting intervals with occasional outliers */
+            long base = 10_000_000 + (i / 1000) * 5_000_000L;
+            long interval = random.nextInt(20) == 0 ? 300_000_000 : base + random.nextInt(4_000_000);
+            recorder.addInterval(interval);
+            assertEquals(recorder.getPercentileNanos(0.5), recorder.getMedianNanos());
+            if (i % 3000 == 2999) {
+                recorder.reset();
+                assertEquals(0, recorder.getMedianNanos());
+            }
+        }
+    }
+
+}